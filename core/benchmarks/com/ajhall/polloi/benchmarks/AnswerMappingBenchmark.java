@@ -0,0 +1,88 @@
+package com.ajhall.polloi.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ajhall.polloi.AnswerLayout;
+import com.ajhall.polloi.LoadGenerator;
+import com.ajhall.polloi.ResponseListCursor;
+import com.ajhall.polloi.Survey;
+import com.ajhall.polloi.SurveyDefinition;
+import com.ajhall.polloi.SurveyResponse;
+
+/**
+ * Mapping answers to columns: laying out a survey's columns, capturing a response from a filled in
+ * survey, and reading responses back into rows from the answer store's rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AnswerMappingBenchmark {
+	private static final int RESPONSES = 100;
+
+	@Param({ "10", "100", "1000" })
+	public int questions;
+
+	private SurveyDefinition definition;
+	private AnswerLayout layout;
+	private Survey answered;
+	private List<SurveyResponse> responses;
+	private String[] row;
+
+	@Setup
+	public void setUp() {
+		definition = SyntheticSurveys.definition(questions);
+		layout = new AnswerLayout(definition);
+		responses = SyntheticSurveys.responses(definition, RESPONSES);
+		answered = new LoadGenerator(null, definition, 2).randomSurvey();
+		row = new String[layout.getColumnCount()];
+	}
+
+	@Benchmark
+	public AnswerLayout layColumns() {
+		return new AnswerLayout(definition);
+	}
+
+	@Benchmark
+	public SurveyResponse captureResponse() {
+		return SurveyResponse.fromSurvey(answered, "user");
+	}
+
+	/**
+	 * Fill a row from each of {@value #RESPONSES} responses.
+	 */
+	@Benchmark
+	public void fillRows(Blackhole blackhole) {
+		for(SurveyResponse response : responses) {
+			layout.fillRow(response, row);
+			blackhole.consume(row);
+		}
+	}
+
+	/**
+	 * Read {@value #RESPONSES} responses from the answer store's rows.
+	 */
+	@Benchmark
+	public void readRows(Blackhole blackhole) {
+		ResponseListCursor c = new ResponseListCursor(responses, 1);
+		c.moveToFirst();
+		while(!c.isAfterLast())
+			blackhole.consume(layout.readRow(c, row));
+	}
+}
@@ -0,0 +1,131 @@
+package com.ajhall.polloi.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ajhall.polloi.AnswerLayout;
+import com.ajhall.polloi.ColumnarExporter;
+import com.ajhall.polloi.CsvExporter;
+import com.ajhall.polloi.ResponseListCursor;
+import com.ajhall.polloi.SurveyDefinition;
+import com.ajhall.polloi.SurveyResponse;
+
+/**
+ * Export throughput: writing {@value #RESPONSES} responses as CSV and as a columnar file, to
+ * streams that count the output and throw it away, so only the exporters are measured. The size of
+ * each format is printed at the end of each trial, next to the times JMH reports.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExportBenchmark {
+	private static final int RESPONSES = 1000;
+
+	@Param({ "10", "100", "1000" })
+	public int questions;
+
+	private SurveyDefinition definition;
+	private List<SurveyResponse> responses;
+
+	// the size of the last file each benchmark wrote, in bytes
+	private long csvBytes = -1;
+	private long columnarBytes = -1;
+
+	/**
+	 * Counts the characters written and throws them away. Fields are ASCII here, so characters are
+	 * bytes.
+	 */
+	private static class CountingWriter extends Writer {
+		long count;
+
+		@Override
+		public void write(char[] buffer, int offset, int length) {
+			count += length;
+		}
+
+		@Override
+		public void write(String s, int offset, int length) {
+			count += length;
+		}
+
+		@Override
+		public void write(int c) {
+			count++;
+		}
+
+		@Override
+		public void flush() {}
+
+		@Override
+		public void close() {}
+	}
+
+	/**
+	 * Counts the bytes written and throws them away.
+	 */
+	private static class CountingStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int offset, int length) {
+			count += length;
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		definition = SyntheticSurveys.definition(questions);
+		responses = SyntheticSurveys.responses(definition, RESPONSES);
+	}
+
+	@TearDown(Level.Trial)
+	public void printSizes() {
+		if(csvBytes >= 0)
+			System.out.println("\nCSV: " + csvBytes + " bytes for " + RESPONSES + " responses to " + questions + " questions");
+		if(columnarBytes >= 0)
+			System.out.println("\nColumnar: " + columnarBytes + " bytes for " + RESPONSES + " responses to " + questions + " questions");
+	}
+
+	@Benchmark
+	public int csv() throws IOException {
+		CountingWriter out = new CountingWriter();
+		CsvExporter exporter = new CsvExporter(new AnswerLayout(definition));
+		exporter.writeHeader(out);
+		int rows = exporter.writeRows(new ResponseListCursor(responses, 1), out);
+		csvBytes = out.count;
+		return rows;
+	}
+
+	@Benchmark
+	public boolean columnar() throws IOException {
+		CountingStream out = new CountingStream();
+		boolean completed = new ColumnarExporter(definition).write(new ResponseListCursor(responses, 1), out, null);
+		columnarBytes = out.count;
+		return completed;
+	}
+}
@@ -0,0 +1,66 @@
+package com.ajhall.polloi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ajhall.polloi.LoadGenerator;
+import com.ajhall.polloi.Survey;
+import com.ajhall.polloi.SurveyDefinition;
+import com.ajhall.polloi.SurveySnapshot;
+
+/**
+ * Saving and restoring a respondent's answers with {@link SurveySnapshot}, as
+ * SurveyActivity.onSaveInstanceState and onCreate do. The size of each snapshot, which has to fit
+ * in the saved instance state, is printed after its run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SnapshotBenchmark {
+	@Param({ "10", "100", "1000" })
+	public int questions;
+
+	private SurveyDefinition definition;
+	private Survey answered;
+	private byte[] snapshot;
+	private Survey restored;
+
+	@Setup
+	public void setUp() {
+		definition = SyntheticSurveys.definition(questions);
+		answered = new LoadGenerator(null, definition, 1).randomSurvey();
+		snapshot = SurveySnapshot.encode(answered);
+		restored = new Survey(definition);
+	}
+
+	@TearDown(Level.Trial)
+	public void printSize() {
+		System.out.println("\nSnapshot: " + snapshot.length + " bytes for " + questions + " answered questions");
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		return SurveySnapshot.encode(answered);
+	}
+
+	@Benchmark
+	public boolean decode() {
+		return SurveySnapshot.decode(snapshot, restored);
+	}
+}
@@ -0,0 +1,53 @@
+package com.ajhall.polloi.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ajhall.polloi.Survey;
+import com.ajhall.polloi.SurveyDefinition;
+
+/**
+ * Loading a survey: building its definition from the question rows, and handing a respondent a
+ * fresh copy of it, as SurveyCache does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SurveyLoadBenchmark {
+	@Param({ "10", "100", "1000" })
+	public int questions;
+
+	private List<SyntheticSurveys.Row> rows;
+	private SurveyDefinition definition;
+
+	@Setup
+	public void setUp() {
+		rows = SyntheticSurveys.rows(questions);
+		definition = SyntheticSurveys.load(rows);
+	}
+
+	@Benchmark
+	public SurveyDefinition buildDefinition() {
+		return SyntheticSurveys.load(rows);
+	}
+
+	@Benchmark
+	public Survey newRespondent() {
+		return new Survey(definition);
+	}
+}
@@ -0,0 +1,85 @@
+package com.ajhall.polloi.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ajhall.polloi.LoadGenerator;
+import com.ajhall.polloi.Question;
+import com.ajhall.polloi.Survey;
+import com.ajhall.polloi.SurveyDefinition;
+import com.ajhall.polloi.SurveyDefinitionBuilder;
+import com.ajhall.polloi.SurveyResponse;
+
+/**
+ * Surveys of any size and random responses to them, for the benchmarks. The questions are those of
+ * {@link LoadGenerator#syntheticSurvey}, numbered from 1 as if they'd been read from the database.
+ */
+final class SyntheticSurveys {
+	static final int CHOICES = 5;
+
+	/**
+	 * One row of SurveySchema.SELECT_SURVEY_QUESTIONS.
+	 */
+	static final class Row {
+		final int questionId;
+		final int type;
+		final String prompt;
+		final String section;
+		final String answerText;
+		final String textFieldLabel;
+		final boolean hasOption;
+
+		Row(int questionId, int type, String prompt, String section, String answerText, String textFieldLabel, boolean hasOption) {
+			this.questionId = questionId;
+			this.type = type;
+			this.prompt = prompt;
+			this.section = section;
+			this.answerText = answerText;
+			this.textFieldLabel = textFieldLabel;
+			this.hasOption = hasOption;
+		}
+	}
+
+	private SyntheticSurveys() {}
+
+	/**
+	 * @return The rows the database would return for a survey with the given number of questions
+	 */
+	static List<Row> rows(int questionCount) {
+		Survey survey = LoadGenerator.syntheticSurvey("Benchmark", questionCount, CHOICES);
+		ArrayList<Row> rows = new ArrayList<Row>();
+		for(int i = 0; i < survey.getSize(); i++) {
+			Question question = survey.getQuestion(i);
+			if(question.getChoiceCount() == 0)
+				rows.add(new Row(i + 1, question.getType(), question.getPrompt(), question.getSection(), null, null, false));
+			for(int j = 0; j < question.getChoiceCount(); j++)
+				rows.add(new Row(i + 1, question.getType(), question.getPrompt(), question.getSection(), question.getOptionLabel(j), question.getTextFieldLabel(j), true));
+		}
+		return rows;
+	}
+
+	/**
+	 * Build a survey from its rows, as SurveyDBHelper.readSurveyDefinition does.
+	 */
+	static SurveyDefinition load(List<Row> rows) {
+		SurveyDefinitionBuilder builder = new SurveyDefinitionBuilder(1, "Benchmark", null);
+		for(Row row : rows)
+			builder.addRow(row.questionId, row.type, row.prompt, row.section, row.answerText, row.textFieldLabel, row.hasOption);
+		return builder.build();
+	}
+
+	static SurveyDefinition definition(int questionCount) {
+		return load(rows(questionCount));
+	}
+
+	/**
+	 * @return The given number of random responses, from respondents user-1, user-2 and so on
+	 */
+	static List<SurveyResponse> responses(SurveyDefinition definition, int count) {
+		LoadGenerator generator = new LoadGenerator(null, definition, 1);
+		ArrayList<SurveyResponse> responses = new ArrayList<SurveyResponse>(count);
+		for(int i = 0; i < count; i++)
+			responses.add(generator.randomResponse("user-" + (i + 1)));
+		return responses;
+	}
+}
@@ -0,0 +1,292 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * What every {@link SurveyRepository} must do, checked against a new, empty repository for each
+ * test, plus a throughput run that prints how fast responses are written one at a time and in
+ * batches. JdbcSurveyRepositoryTest runs it on a plain JVM and SQLiteSurveyRepositoryTest in the
+ * test project on a device. Only the app's repository keeps the tallies table, so the tests check
+ * tallies wherever {@link #checkTallies} can, and the JDBC throughput is labelled as not
+ * comparable with the app's. It lives in a source folder of its own, which both build, since only
+ * the core tests can load the JDBC driver.
+ */
+public abstract class SurveyRepositoryContract extends TestCase {
+	private static final int THROUGHPUT_RESPONSES = 2000;
+
+	protected SurveyRepository repository;
+
+	/**
+	 * @return A repository on a new database with the survey tables and nothing in them
+	 */
+	protected abstract SurveyRepository createRepository() throws Exception;
+
+	/**
+	 * Close the repository and its database.
+	 */
+	protected abstract void closeRepository() throws Exception;
+
+	/**
+	 * Recount a survey's responses and compare the counts with the tallies the repository keeps.
+	 *
+	 * @return A description of each tally that doesn't match the recount, or null if the repository
+	 *         keeps no tallies
+	 */
+	protected abstract List<String> checkTallies(int surveyId);
+
+	private void assertTalliesMatch(int surveyId) {
+		List<String> mismatches = checkTallies(surveyId);
+		if(mismatches != null)
+			assertEquals(Collections.<String> emptyList(), mismatches);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		repository = createRepository();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		closeRepository();
+		super.tearDown();
+	}
+
+	public void testWriteSurveyGivesIdsAndSavingAgainKeepsThem() {
+		SurveyDefinition saved = repository.writeSurvey(LoadGenerator.syntheticSurvey("Contract", 9, 4), 3);
+		assertEquals(3, saved.getId());
+		assertEquals(9, saved.getSize());
+		for(int i = 0; i < saved.getSize(); i++)
+			assertTrue(saved.getQuestion(i).getId() > 0);
+
+		SurveyDefinition again = repository.writeSurvey(new Survey(saved), 3);
+		for(int i = 0; i < saved.getSize(); i++)
+			assertEquals(saved.getQuestion(i).getId(), again.getQuestion(i).getId());
+		assertEquals(Collections.singletonList(3), repository.getSurveyIds());
+	}
+
+	public void testReadSurveyDefinitionMatchesWhatWasWritten() {
+		Survey written = LoadGenerator.syntheticSurvey("Read back", 7, 5);
+		SurveyDefinition saved = repository.writeSurvey(written, 1);
+		SurveyDefinition read = repository.readSurveyDefinition(1);
+
+		assertEquals("Read back", read.getTitle());
+		assertEquals(written.getDefinition().getIntroText(), read.getIntroText());
+		assertSameQuestions(saved, read);
+		assertNull(repository.readSurveyDefinition(2));
+	}
+
+	public void testRewritingWithFewerChoicesDropsTheRest() {
+		SurveyDefinition saved = repository.writeSurvey(LoadGenerator.syntheticSurvey("Shrunk", 3, 5), 1);
+
+		ArrayList<Question> questions = new ArrayList<Question>();
+		QuestionMC fewer = new QuestionMC(saved.getQuestion(0).getPrompt(), saved.getQuestion(0).getSection());
+		fewer.setId(saved.getQuestion(0).getId());
+		fewer.addChoice("Only choice");
+		questions.add(fewer);
+		for(int i = 1; i < saved.getSize(); i++)
+			questions.add(saved.getQuestion(i));
+		repository.writeSurvey(new Survey(new SurveyDefinition(1, saved.getTitle(), saved.getIntroText(), questions)), 1);
+
+		SurveyDefinition read = repository.readSurveyDefinition(1);
+		assertEquals(saved.getQuestion(0).getId(), read.getQuestion(0).getId());
+		assertEquals(1, read.getQuestion(0).getChoiceCount());
+		assertEquals("Only choice", read.getQuestion(0).getOptionLabel(0));
+		assertEquals(5, read.getQuestion(1).getChoiceCount());
+	}
+
+	public void testHasResponse() {
+		LoadGenerator generator = newGenerator(1);
+		assertFalse(repository.hasResponse(1, "alice"));
+
+		repository.upsertResponse(generator.randomResponse("alice"));
+		assertTrue(repository.hasResponse(1, "alice"));
+		assertFalse(repository.hasResponse(1, "bob"));
+		assertFalse(repository.hasResponse(2, "alice"));
+	}
+
+	public void testUpsertReplacesTheUsersOldResponse() {
+		LoadGenerator generator = newGenerator(1);
+		long first = repository.upsertResponse(generator.randomResponse("alice"));
+		SurveyResponse second = generator.randomResponse("alice");
+		long replaced = repository.upsertResponse(second);
+
+		assertTrue(replaced > first);
+		List<String> rows = readAnswers(0);
+		assertEquals(items(replaced, second), rows);
+		assertTalliesMatch(1);
+	}
+
+	public void testUpsertResponsesReturnsIdsInOrder() {
+		LoadGenerator generator = newGenerator(1);
+		ArrayList<SurveyResponse> responses = new ArrayList<SurveyResponse>();
+		for(int i = 0; i < 10; i++)
+			responses.add(generator.randomResponse("user-" + i));
+		long[] ids = repository.upsertResponses(responses);
+
+		assertEquals(responses.size(), ids.length);
+		ArrayList<String> expected = new ArrayList<String>();
+		for(int i = 0; i < ids.length; i++) {
+			if(i > 0)
+				assertTrue(ids[i] > ids[i - 1]);
+			expected.addAll(items(ids[i], responses.get(i)));
+		}
+		assertEquals(expected, readAnswers(0));
+		assertTalliesMatch(1);
+	}
+
+	public void testTalliesFollowReplacedResponsesAndChangedSurveys() {
+		LoadGenerator generator = newGenerator(1);
+		ArrayList<SurveyResponse> responses = new ArrayList<SurveyResponse>();
+		for(int i = 0; i < 30; i++)
+			responses.add(generator.randomResponse("user-" + i % 20));
+		repository.upsertResponses(responses);
+		for(int i = 0; i < 5; i++)
+			repository.upsertResponse(generator.randomResponse("user-" + i));
+		assertTalliesMatch(1);
+
+		// a question dropped from the survey takes its tallies with it
+		SurveyDefinition saved = repository.readSurveyDefinition(1);
+		ArrayList<Question> questions = new ArrayList<Question>();
+		for(int i = 1; i < saved.getSize(); i++)
+			questions.add(saved.getQuestion(i));
+		repository.writeSurvey(new Survey(new SurveyDefinition(1, saved.getTitle(), saved.getIntroText(), questions)), 1);
+		repository.upsertResponse(new LoadGenerator(repository, repository.readSurveyDefinition(1), 2).randomResponse("user-0"));
+		assertTalliesMatch(1);
+	}
+
+	public void testQueryAnswersAfterAResponse() {
+		LoadGenerator generator = newGenerator(1);
+		long[] ids = new long[4];
+		SurveyResponse[] responses = new SurveyResponse[ids.length];
+		for(int i = 0; i < ids.length; i++) {
+			responses[i] = generator.randomResponse("user-" + i);
+			ids[i] = repository.upsertResponse(responses[i]);
+		}
+
+		ArrayList<String> expected = new ArrayList<String>();
+		expected.addAll(items(ids[2], responses[2]));
+		expected.addAll(items(ids[3], responses[3]));
+		assertEquals(expected, readAnswers(ids[1]));
+		assertEquals(Collections.<String> emptyList(), readAnswers(ids[3]));
+	}
+
+	public void testQueryAnswersGivesAnEmptyResponseOneRow() {
+		repository.writeSurvey(LoadGenerator.syntheticSurvey("Skipped", 3, 2), 1);
+		long responseId = repository.upsertResponse(new SurveyResponse(1, "nobody", 1000));
+
+		AnswerCursor c = repository.queryAnswers(1, 0);
+		try {
+			assertTrue(c.moveToNext());
+			assertEquals(responseId, c.getLong(0));
+			assertEquals("nobody", c.getString(1));
+			assertTrue(c.isNull(2));
+			assertFalse(c.moveToNext());
+		} finally {
+			c.close();
+		}
+	}
+
+	public void testThroughput() throws InterruptedException {
+		SurveyDefinition survey = repository.writeSurvey(LoadGenerator.syntheticSurvey("Throughput", 30, 5), 1);
+		StringBuilder report = new StringBuilder(getClass().getSimpleName());
+		if(checkTallies(1) == null)
+			report.append(" (keeps no tallies, so not comparable with the app)");
+
+		for(int batchSize : new int[] { 1, 50 }) {
+			LoadGenerator generator = new LoadGenerator(repository, survey, 1);
+			generator.setBatchSize(batchSize);
+			generator.setReportEvery(THROUGHPUT_RESPONSES);
+			List<LoadGenerator.Step> steps = generator.run(THROUGHPUT_RESPONSES, null);
+
+			LoadGenerator.Step step = steps.get(steps.size() - 1);
+			report.append(String.format(", %d per transaction: %.0f responses/s, p99 %d us", batchSize, step.rate, step.p99Micros));
+		}
+		System.out.println(report);
+
+		// the second run's users replaced the first run's
+		int responses = 0;
+		long last = 0;
+		AnswerCursor c = repository.queryAnswers(1, 0);
+		try {
+			while(c.moveToNext()) {
+				if(c.getLong(0) != last) {
+					last = c.getLong(0);
+					responses++;
+				}
+			}
+		} finally {
+			c.close();
+		}
+		assertEquals(THROUGHPUT_RESPONSES, responses);
+		assertTalliesMatch(1);
+	}
+
+	/**
+	 * Save a survey under survey_id 1 and make a generator of responses to it.
+	 */
+	private LoadGenerator newGenerator(long seed) {
+		SurveyDefinition survey = repository.writeSurvey(LoadGenerator.syntheticSurvey("Responses", 12, 4), 1);
+		return new LoadGenerator(repository, survey, seed);
+	}
+
+	/**
+	 * @return Every answered item after the given response, as response_id/user_id/question_id/
+	 *         option_order/value/text_field, in the cursor's order
+	 */
+	private List<String> readAnswers(long afterResponseId) {
+		ArrayList<String> rows = new ArrayList<String>();
+		AnswerCursor c = repository.queryAnswers(1, afterResponseId);
+		try {
+			while(c.moveToNext()) {
+				if(!c.isNull(2))
+					rows.add(c.getLong(0) + "/" + c.getString(1) + "/" + c.getInt(2) + "/" + c.getInt(3) + "/" + c.getString(4) + "/" + c.getString(5));
+			}
+		} finally {
+			c.close();
+		}
+		return rows;
+	}
+
+	/**
+	 * @return The response's items as {@link #readAnswers} gives them, ordered by question and
+	 *         option as the query orders them
+	 */
+	private static List<String> items(long responseId, SurveyResponse response) {
+		ArrayList<String> items = new ArrayList<String>();
+		for(int i = 0; i < response.getItemCount(); i++)
+			items.add(responseId + "/" + response.getUserId() + "/" + response.getQuestionId(i) + "/" + response.getOptionOrder(i) + "/" + response.getValue(i) + "/" + response.getTextField(i));
+		Collections.sort(items, new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				String[] x = a.split("/", 5);
+				String[] y = b.split("/", 5);
+				int question = Integer.parseInt(x[2]) - Integer.parseInt(y[2]);
+				return question != 0 ? question : Integer.parseInt(x[3]) - Integer.parseInt(y[3]);
+			}
+		});
+		return items;
+	}
+
+	private static void assertSameQuestions(SurveyDefinition expected, SurveyDefinition actual) {
+		assertEquals(expected.getSize(), actual.getSize());
+		for(int i = 0; i < expected.getSize(); i++) {
+			Question a = expected.getQuestion(i);
+			Question b = actual.getQuestion(i);
+			assertEquals(a.getId(), b.getId());
+			assertEquals(a.getType(), b.getType());
+			assertEquals(a.getPrompt(), b.getPrompt());
+			assertEquals(a.getSection(), b.getSection());
+			assertEquals(a.getChoiceCount(), b.getChoiceCount());
+			for(int j = 0; j < a.getChoiceCount(); j++) {
+				assertEquals(a.getOptionLabel(j), b.getOptionLabel(j));
+				assertEquals(a.getTextFieldLabel(j), b.getTextFieldLabel(j));
+			}
+		}
+	}
+}
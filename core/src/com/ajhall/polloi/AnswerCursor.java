@@ -0,0 +1,28 @@
+package com.ajhall.polloi;
+
+/**
+ * A forward-only view of answered items, grouped by response, with the columns response_id,
+ * user_id, question_id, option_order, value and text_field in that order. It is the part of a
+ * database cursor that {@link AnswerLayout} and the exporters read, so they can be run on the JVM
+ * with rows from anywhere. The methods mean the same as those of android.database.Cursor.
+ * Whoever opened the underlying rows closes them, with {@link #close()} or directly.
+ */
+public interface AnswerCursor {
+	boolean isBeforeFirst();
+
+	boolean isAfterLast();
+
+	boolean moveToFirst();
+
+	boolean moveToNext();
+
+	boolean isNull(int column);
+
+	int getInt(int column);
+
+	long getLong(int column);
+
+	String getString(int column);
+
+	void close();
+}
@@ -0,0 +1,194 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Describes the columns of a survey's answer export: one column for the user ID, then one or more
+ * columns per question, named the same way the old answers_N tables named them. Each column maps to
+ * one item in the answers table, identified by (question_id, option_order) plus whether the column
+ * holds the option's value or its supplemental text field.
+ *
+ * <ul>
+ * <li>Writing questions have one column, q1, stored at option_order 0.</li>
+ * <li>Multiple choice questions have one column, q1, stored at option_order 0, plus one column per
+ * text field, q1_2_text_field, stored at the option's order.</li>
+ * <li>Checkbox questions have one column per option, q1_2, plus one column per text field,
+ * q1_2_text_field, both stored at the option's order.</li>
+ * </ul>
+ */
+public class AnswerLayout {
+	public static final int USER_ID_COLUMN = 0;
+
+	private final ArrayList<String> columnNames = new ArrayList<String>();
+	private final ArrayList<Integer> questionIds = new ArrayList<Integer>();
+	private final ArrayList<Integer> optionOrders = new ArrayList<Integer>();
+	private final ArrayList<Boolean> textFields = new ArrayList<Boolean>();
+	private final HashMap<Long, Integer> itemIndex = new HashMap<Long, Integer>();
+	private final HashMap<String, Integer> nameIndex = new HashMap<String, Integer>();
+
+	/**
+	 * Build the answer columns for a survey. The survey's questions must have their IDs set, which
+	 * is the case for any survey read from the database.
+	 *
+	 * @param survey
+	 *        A survey definition
+	 */
+	public AnswerLayout(SurveyDefinition survey) {
+		addColumn("user_id", 0, 0, false);
+
+		for(int questionIterator = 0; questionIterator < survey.getSize(); questionIterator++) {
+			Question question = survey.getQuestion(questionIterator);
+			String name = "q" + (questionIterator + 1);
+			int questionId = question.getId();
+
+			if(question instanceof QuestionWriting) {
+				addColumn(name, questionId, 0, false);
+			} else if(question instanceof QuestionMC) {
+				QuestionMC mc = (QuestionMC) question;
+				addColumn(name, questionId, 0, false);
+				for(int choiceIterator = 0; choiceIterator < mc.getChoiceCount(); choiceIterator++) {
+					if(mc.textFieldAtIndex(choiceIterator))
+						addColumn(name + "_" + (choiceIterator + 1) + "_text_field", questionId, choiceIterator + 1, true);
+				}
+			} else if(question instanceof QuestionCheckbox) {
+				QuestionCheckbox checkbox = (QuestionCheckbox) question;
+				for(int choiceIterator = 0; choiceIterator < checkbox.getChoiceCount(); choiceIterator++) {
+					addColumn(name + "_" + (choiceIterator + 1), questionId, choiceIterator + 1, false);
+					if(checkbox.textFieldAtIndex(choiceIterator))
+						addColumn(name + "_" + (choiceIterator + 1) + "_text_field", questionId, choiceIterator + 1, true);
+				}
+			}
+		}
+	}
+
+	private void addColumn(String name, int questionId, int optionOrder, boolean textField) {
+		int index = columnNames.size();
+		columnNames.add(name);
+		questionIds.add(questionId);
+		optionOrders.add(optionOrder);
+		textFields.add(textField);
+		nameIndex.put(name, index);
+		if(index != USER_ID_COLUMN)
+			itemIndex.put(itemKey(questionId, optionOrder, textField), index);
+	}
+
+	private static long itemKey(int questionId, int optionOrder, boolean textField) {
+		return ((long) questionId << 32) | ((long) optionOrder << 1) | (textField ? 1 : 0);
+	}
+
+	/**
+	 * @return The number of columns, including the user ID column
+	 */
+	public int getColumnCount() {
+		return columnNames.size();
+	}
+
+	public String getColumnName(int column) {
+		return columnNames.get(column);
+	}
+
+	public String[] getColumnNames() {
+		return columnNames.toArray(new String[columnNames.size()]);
+	}
+
+	public int getQuestionId(int column) {
+		return questionIds.get(column);
+	}
+
+	public int getOptionOrder(int column) {
+		return optionOrders.get(column);
+	}
+
+	/**
+	 * @return True if the column holds a supplemental text field answer rather than the option's
+	 *         value
+	 */
+	public boolean isTextField(int column) {
+		return textFields.get(column);
+	}
+
+	/**
+	 * Find the column that holds an item from the answers table.
+	 *
+	 * @return The column index, or -1 if the survey has no such item
+	 */
+	public int indexOf(int questionId, int optionOrder, boolean textField) {
+		Integer index = itemIndex.get(itemKey(questionId, optionOrder, textField));
+		if(index != null)
+			return index;
+		else
+			return -1;
+	}
+
+	/**
+	 * Read one response from an {@link AnswerCursor} into a row, one
+	 * field per column, and move the cursor past it to the next response. Columns the response has
+	 * no answer for are set to null.
+	 *
+	 * @param c
+	 *        A cursor over answered items, grouped by response, positioned on a response's first item
+	 * @param row
+	 *        An array with one element per column
+	 * @return The response_id of the response read
+	 */
+	public long readRow(AnswerCursor c, String[] row) {
+		long responseId = c.getLong(0);
+		Arrays.fill(row, null);
+		row[USER_ID_COLUMN] = c.getString(1);
+
+		// put each answered item of this response in its column
+		while(!c.isAfterLast() && c.getLong(0) == responseId) {
+			if(!c.isNull(2)) {
+				int questionId = c.getInt(2);
+				int optionOrder = c.getInt(3);
+				int column = indexOf(questionId, optionOrder, false);
+				if(column >= 0)
+					row[column] = c.getString(4);
+				column = indexOf(questionId, optionOrder, true);
+				if(column >= 0)
+					row[column] = c.getString(5);
+			}
+			c.moveToNext();
+		}
+
+		return responseId;
+	}
+
+	/**
+	 * Put a response's answered items into a row, one field per column. Columns the response has no
+	 * answer for are set to null.
+	 *
+	 * @param response
+	 *        The response
+	 * @param row
+	 *        An array with one element per column
+	 */
+	public void fillRow(SurveyResponse response, String[] row) {
+		Arrays.fill(row, null);
+		row[USER_ID_COLUMN] = response.getUserId();
+
+		for(int i = 0; i < response.getItemCount(); i++) {
+			int column = indexOf(response.getQuestionId(i), response.getOptionOrder(i), false);
+			if(column >= 0)
+				row[column] = response.getValue(i);
+			column = indexOf(response.getQuestionId(i), response.getOptionOrder(i), true);
+			if(column >= 0)
+				row[column] = response.getTextField(i);
+		}
+	}
+
+	/**
+	 * Find a column by its name, e.g. "q3_7_text_field".
+	 *
+	 * @return The column index, or -1 if there is no such column
+	 */
+	public int indexOf(String columnName) {
+		Integer index = nameIndex.get(columnName);
+		if(index != null)
+			return index;
+		else
+			return -1;
+	}
+}
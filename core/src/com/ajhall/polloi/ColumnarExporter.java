@@ -0,0 +1,316 @@
+package com.ajhall.polloi;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Streams survey answers from the answer store into a typed, column oriented binary file, for
+ * analysis tools that would rather not parse CSV. The columns are the same as the CSV file's (see
+ * {@link AnswerLayout}), but each has a type:
+ *
+ * <ul>
+ * <li>BOOLEAN (1) for checkbox options, stored one bit per response.</li>
+ * <li>DICTIONARY (2) for multiple choice answers, stored one byte per response as an index into
+ * the column's dictionary of answers ("a", "b", ...).</li>
+ * <li>STRING (3) for the user ID, writing answers and text fields, stored as UTF-8.</li>
+ * </ul>
+ *
+ * <p>
+ * Responses are written in row groups of up to {@link #ROW_GROUP_SIZE} responses, so memory use
+ * doesn't grow with the number of respondents. The layout is similar to Parquet's: the row groups
+ * come first and the schema is in a footer at the end, where dictionaries can include answers
+ * first seen in the last row group. All integers are little-endian.
+ *
+ * <pre>
+ * file       = magic rowgroup* footer footer_length:int32 magic
+ * magic      = "PLC1"
+ * rowgroup   = one chunk per column, in column order
+ * chunk      = validity values      (validity: a bitmap, bit set if the response has a value)
+ * values     = bitmap               (BOOLEAN)
+ *            | code:uint8 * rows    (DICTIONARY; 0 where there is no value)
+ *            | offset:int32 * (rows + 1) UTF-8 bytes   (STRING; offsets into the bytes)
+ * footer     = column_count:int32 column* group_count:int32 (offset:int64 rows:int32)* total_rows:int32
+ * column     = type:uint8 name:string [entry_count:int32 entry:string*]   (entries for DICTIONARY)
+ * string     = length:int32 UTF-8 bytes
+ * </pre>
+ *
+ * Bitmaps take (rows + 7) / 8 bytes, least significant bit first. Offsets in the footer are from
+ * the start of the file.
+ */
+public class ColumnarExporter {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The number of responses in each row group, except perhaps the last.
+	 */
+	public static final int ROW_GROUP_SIZE = 1024;
+
+	public static final byte TYPE_BOOLEAN = 1;
+	public static final byte TYPE_DICTIONARY = 2;
+	public static final byte TYPE_STRING = 3;
+
+	private static final byte[] MAGIC = { 'P', 'L', 'C', '1' };
+
+	/**
+	 * The most entries a dictionary column can have, so that a code fits in a byte.
+	 */
+	private static final int MAX_DICTIONARY_SIZE = 256;
+
+	private final AnswerLayout layout;
+	private final byte[] types;
+	private final ArrayList<ArrayList<String>> dictionaries = new ArrayList<ArrayList<String>>();
+	private final ArrayList<HashMap<String, Integer>> dictionaryCodes = new ArrayList<HashMap<String, Integer>>();
+
+	private final String[][] group;
+	private int groupRows;
+	private final ArrayList<Long> groupOffsets = new ArrayList<Long>();
+	private final ArrayList<Integer> groupSizes = new ArrayList<Integer>();
+
+	private OutputStream out;
+	private long position;
+	private final byte[] scratch = new byte[8];
+	private long lastResponseId;
+	private int rowCount;
+
+	/**
+	 * Create an exporter for one survey.
+	 *
+	 * @param survey
+	 *        The survey definition, with question IDs set
+	 */
+	public ColumnarExporter(SurveyDefinition survey) {
+		layout = new AnswerLayout(survey);
+
+		HashMap<Integer, Question> questions = new HashMap<Integer, Question>();
+		for(int i = 0; i < survey.getSize(); i++)
+			questions.put(survey.getQuestion(i).getId(), survey.getQuestion(i));
+
+		types = new byte[layout.getColumnCount()];
+		for(int column = 0; column < types.length; column++) {
+			Question question = questions.get(layout.getQuestionId(column));
+			ArrayList<String> dictionary = null;
+
+			if(column == AnswerLayout.USER_ID_COLUMN || layout.isTextField(column)) {
+				types[column] = TYPE_STRING;
+			} else if(question instanceof QuestionCheckbox) {
+				types[column] = TYPE_BOOLEAN;
+			} else if(question instanceof QuestionMC) {
+				types[column] = TYPE_DICTIONARY;
+				dictionary = new ArrayList<String>();
+				for(int choice = 0; choice < question.getChoiceCount() && choice < MAX_DICTIONARY_SIZE; choice++)
+					dictionary.add(Character.toString((char) ('a' + choice)));
+			} else {
+				types[column] = TYPE_STRING;
+			}
+
+			dictionaries.add(dictionary);
+			HashMap<String, Integer> codes = null;
+			if(dictionary != null) {
+				codes = new HashMap<String, Integer>();
+				for(int i = 0; i < dictionary.size(); i++)
+					codes.put(dictionary.get(i), i);
+			}
+			dictionaryCodes.add(codes);
+		}
+
+		group = new String[ROW_GROUP_SIZE][layout.getColumnCount()];
+	}
+
+	/**
+	 * Open a buffered stream on a file, replacing it.
+	 *
+	 * @param file
+	 *        The file to write
+	 * @return A stream, which the caller must close
+	 */
+	public static OutputStream openStream(File file) throws FileNotFoundException {
+		return new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+	}
+
+	/**
+	 * Write a whole file from an {@link AnswerCursor}, one row per response. The cursor is read from
+	 * its current position to the end and is not closed. If the listener asks to stop, the file is
+	 * left without its footer and should be thrown away.
+	 *
+	 * @param c
+	 *        A cursor over answered items, grouped by response
+	 * @param out
+	 *        Where to write the file
+	 * @param listener
+	 *        Told after each response is read, or null
+	 * @return True if the whole file was written, false if the listener stopped it
+	 */
+	public boolean write(AnswerCursor c, OutputStream out, CsvExporter.RowListener listener) throws IOException {
+		this.out = out;
+		position = 0;
+		rowCount = 0;
+		groupRows = 0;
+		groupOffsets.clear();
+		groupSizes.clear();
+
+		writeBytes(MAGIC);
+
+		if(c.isBeforeFirst())
+			c.moveToFirst();
+
+		while(!c.isAfterLast()) {
+			lastResponseId = layout.readRow(c, group[groupRows]);
+			groupRows++;
+			rowCount++;
+
+			if(groupRows == ROW_GROUP_SIZE)
+				writeRowGroup();
+
+			if(listener != null && !listener.onRowWritten(rowCount))
+				return false;
+		}
+
+		if(groupRows > 0)
+			writeRowGroup();
+
+		long footerStart = position;
+		writeFooter();
+		writeInt((int) (position - footerStart));
+		writeBytes(MAGIC);
+		return true;
+	}
+
+	/**
+	 * @return The response_id of the last response written, or 0 if nothing has been written
+	 */
+	public long getLastResponseId() {
+		return lastResponseId;
+	}
+
+	/**
+	 * @return The number of responses written by the last call to write
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	private void writeRowGroup() throws IOException {
+		groupOffsets.add(position);
+		groupSizes.add(groupRows);
+
+		byte[] bitmap = new byte[(groupRows + 7) / 8];
+		for(int column = 0; column < types.length; column++) {
+			// validity
+			for(int i = 0; i < bitmap.length; i++)
+				bitmap[i] = 0;
+			for(int row = 0; row < groupRows; row++) {
+				if(group[row][column] != null)
+					bitmap[row >> 3] |= 1 << (row & 7);
+			}
+			writeBytes(bitmap);
+
+			switch(types[column]) {
+			case TYPE_BOOLEAN:
+				for(int i = 0; i < bitmap.length; i++)
+					bitmap[i] = 0;
+				for(int row = 0; row < groupRows; row++) {
+					if("1".equals(group[row][column]))
+						bitmap[row >> 3] |= 1 << (row & 7);
+				}
+				writeBytes(bitmap);
+				break;
+			case TYPE_DICTIONARY:
+				byte[] codes = new byte[groupRows];
+				for(int row = 0; row < groupRows; row++) {
+					if(group[row][column] != null)
+						codes[row] = (byte) dictionaryCode(column, group[row][column]);
+				}
+				writeBytes(codes);
+				break;
+			default:
+				byte[][] encoded = new byte[groupRows][];
+				int offset = 0;
+				writeInt(offset);
+				for(int row = 0; row < groupRows; row++) {
+					if(group[row][column] != null) {
+						encoded[row] = group[row][column].getBytes("UTF-8");
+						offset += encoded[row].length;
+					}
+					writeInt(offset);
+				}
+				for(int row = 0; row < groupRows; row++) {
+					if(encoded[row] != null)
+						writeBytes(encoded[row]);
+				}
+				break;
+			}
+		}
+
+		groupRows = 0;
+	}
+
+	/**
+	 * Find the code of an answer in a dictionary column, adding the answer to the dictionary if it
+	 * isn't there yet, e.g. because the question lost options after it was answered.
+	 */
+	private int dictionaryCode(int column, String value) throws IOException {
+		HashMap<String, Integer> codes = dictionaryCodes.get(column);
+		Integer code = codes.get(value);
+		if(code != null)
+			return code;
+
+		ArrayList<String> dictionary = dictionaries.get(column);
+		if(dictionary.size() == MAX_DICTIONARY_SIZE)
+			throw new IOException("Column " + layout.getColumnName(column) + " has more than " + MAX_DICTIONARY_SIZE + " different answers");
+		codes.put(value, dictionary.size());
+		dictionary.add(value);
+		return dictionary.size() - 1;
+	}
+
+	private void writeFooter() throws IOException {
+		writeInt(types.length);
+		for(int column = 0; column < types.length; column++) {
+			writeBytes(new byte[] { types[column] });
+			writeString(layout.getColumnName(column));
+			if(types[column] == TYPE_DICTIONARY) {
+				ArrayList<String> dictionary = dictionaries.get(column);
+				writeInt(dictionary.size());
+				for(String entry : dictionary)
+					writeString(entry);
+			}
+		}
+
+		writeInt(groupOffsets.size());
+		for(int i = 0; i < groupOffsets.size(); i++) {
+			writeLong(groupOffsets.get(i));
+			writeInt(groupSizes.get(i));
+		}
+		writeInt(rowCount);
+	}
+
+	private void writeString(String s) throws IOException {
+		byte[] bytes = s.getBytes("UTF-8");
+		writeInt(bytes.length);
+		writeBytes(bytes);
+	}
+
+	private void writeInt(int value) throws IOException {
+		for(int i = 0; i < 4; i++)
+			scratch[i] = (byte) (value >>> (8 * i));
+		out.write(scratch, 0, 4);
+		position += 4;
+	}
+
+	private void writeLong(long value) throws IOException {
+		for(int i = 0; i < 8; i++)
+			scratch[i] = (byte) (value >>> (8 * i));
+		out.write(scratch, 0, 8);
+		position += 8;
+	}
+
+	private void writeBytes(byte[] bytes) throws IOException {
+		out.write(bytes);
+		position += bytes.length;
+	}
+}
@@ -0,0 +1,248 @@
+package com.ajhall.polloi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * Reads a file written by {@link ColumnarExporter}. The footer is read when the reader is created;
+ * a row group is decoded the first time one of its rows is asked for, and kept until a row from
+ * another group is. Values come back as the strings the CSV file would hold: "1" or "0" for a
+ * checkbox option, the letter of a multiple choice answer, and null where the response has no
+ * value. tools/read_plc.py reads the same format in Python.
+ */
+public class ColumnarReader {
+	private static final byte[] MAGIC = { 'P', 'L', 'C', '1' };
+
+	private final byte[] data;
+	private final byte[] types;
+	private final String[] names;
+	private final String[][] dictionaries;
+	private final long[] groupOffsets;
+	private final int[] groupSizes;
+	private final int[] groupFirstRows;
+	private final int rowCount;
+
+	private int position;
+
+	// the decoded row group, by column then row
+	private int group = -1;
+	private String[][] groupValues;
+
+	/**
+	 * Read a file's footer.
+	 *
+	 * @param data
+	 *        The whole file
+	 * @throws IOException
+	 *         If the data isn't a complete columnar file
+	 */
+	public ColumnarReader(byte[] data) throws IOException {
+		this.data = data;
+		if(data.length < 12 || !hasMagic(0) || !hasMagic(data.length - 4))
+			throw new IOException("Not a columnar file, or an incomplete one");
+
+		position = data.length - 8;
+		int footerLength = readInt();
+		position = data.length - 8 - footerLength;
+		if(position < 4)
+			throw new IOException("Bad footer length " + footerLength);
+
+		int columnCount = readInt();
+		types = new byte[columnCount];
+		names = new String[columnCount];
+		dictionaries = new String[columnCount][];
+		for(int column = 0; column < columnCount; column++) {
+			types[column] = data[position++];
+			names[column] = readString();
+			if(types[column] == ColumnarExporter.TYPE_DICTIONARY) {
+				dictionaries[column] = new String[readInt()];
+				for(int i = 0; i < dictionaries[column].length; i++)
+					dictionaries[column][i] = readString();
+			}
+		}
+
+		int groupCount = readInt();
+		groupOffsets = new long[groupCount];
+		groupSizes = new int[groupCount];
+		groupFirstRows = new int[groupCount];
+		int rows = 0;
+		for(int i = 0; i < groupCount; i++) {
+			groupOffsets[i] = readLong();
+			groupSizes[i] = readInt();
+			groupFirstRows[i] = rows;
+			rows += groupSizes[i];
+		}
+		rowCount = readInt();
+		if(rows != rowCount)
+			throw new IOException("Row groups hold " + rows + " rows, but the footer says " + rowCount);
+	}
+
+	/**
+	 * Read a whole file into memory and then its footer.
+	 *
+	 * @param file
+	 *        The file
+	 * @return A reader over the file
+	 */
+	public static ColumnarReader open(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			byte[] data = new byte[(int) in.length()];
+			in.readFully(data);
+			return new ColumnarReader(data);
+		} finally {
+			in.close();
+		}
+	}
+
+	public int getColumnCount() {
+		return types.length;
+	}
+
+	public String getColumnName(int column) {
+		return names[column];
+	}
+
+	/**
+	 * @return One of {@link ColumnarExporter#TYPE_BOOLEAN}, {@link ColumnarExporter#TYPE_DICTIONARY}
+	 *         or {@link ColumnarExporter#TYPE_STRING}
+	 */
+	public byte getColumnType(int column) {
+		return types[column];
+	}
+
+	/**
+	 * @return The number of responses in the file
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Get one value.
+	 *
+	 * @param row
+	 *        The row, counting from 0 across every row group
+	 * @param column
+	 *        The column
+	 * @return The value, or null if the response has none
+	 * @throws IOException
+	 *         If the row group can't be decoded
+	 */
+	public String getValue(int row, int column) throws IOException {
+		if(row < 0 || row >= rowCount)
+			throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+
+		int index = Arrays.binarySearch(groupFirstRows, row);
+		if(index < 0)
+			index = -index - 2;
+		if(index != group)
+			decodeGroup(index);
+		return groupValues[column][row - groupFirstRows[index]];
+	}
+
+	/**
+	 * Get every value of one row.
+	 *
+	 * @param row
+	 *        The row, counting from 0 across every row group
+	 * @param values
+	 *        Filled in with the row's values, one per column
+	 */
+	public void readRow(int row, String[] values) throws IOException {
+		for(int column = 0; column < types.length; column++)
+			values[column] = getValue(row, column);
+	}
+
+	private void decodeGroup(int index) throws IOException {
+		int rows = groupSizes[index];
+		String[][] values = new String[types.length][rows];
+		position = (int) groupOffsets[index];
+		int bitmapSize = (rows + 7) / 8;
+
+		for(int column = 0; column < types.length; column++) {
+			int validity = position;
+			position += bitmapSize;
+
+			switch(types[column]) {
+			case ColumnarExporter.TYPE_BOOLEAN:
+				for(int row = 0; row < rows; row++) {
+					if(isSet(validity, row))
+						values[column][row] = isSet(position, row) ? "1" : "0";
+				}
+				position += bitmapSize;
+				break;
+			case ColumnarExporter.TYPE_DICTIONARY:
+				for(int row = 0; row < rows; row++) {
+					int code = data[position + row] & 0xff;
+					if(isSet(validity, row)) {
+						if(code >= dictionaries[column].length)
+							throw new IOException("Column " + names[column] + " has no dictionary entry " + code);
+						values[column][row] = dictionaries[column][code];
+					}
+				}
+				position += rows;
+				break;
+			case ColumnarExporter.TYPE_STRING:
+				int offsets = position;
+				position += 4 * (rows + 1);
+				int bytes = position;
+				for(int row = 0; row < rows; row++) {
+					int start = intAt(offsets + 4 * row);
+					int end = intAt(offsets + 4 * (row + 1));
+					if(isSet(validity, row))
+						values[column][row] = utf8(bytes + start, end - start);
+				}
+				position = bytes + intAt(offsets + 4 * rows);
+				break;
+			default:
+				throw new IOException("Column " + names[column] + " has unknown type " + types[column]);
+			}
+		}
+
+		group = index;
+		groupValues = values;
+	}
+
+	private boolean hasMagic(int offset) {
+		for(int i = 0; i < MAGIC.length; i++) {
+			if(data[offset + i] != MAGIC[i])
+				return false;
+		}
+		return true;
+	}
+
+	private boolean isSet(int bitmap, int row) {
+		return (data[bitmap + (row >> 3)] & (1 << (row & 7))) != 0;
+	}
+
+	private int intAt(int offset) {
+		return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8 | (data[offset + 2] & 0xff) << 16 | (data[offset + 3] & 0xff) << 24;
+	}
+
+	private int readInt() {
+		int value = intAt(position);
+		position += 4;
+		return value;
+	}
+
+	private long readLong() {
+		long low = readInt() & 0xffffffffL;
+		long high = readInt() & 0xffffffffL;
+		return high << 32 | low;
+	}
+
+	private String readString() throws UnsupportedEncodingException {
+		int length = readInt();
+		String s = utf8(position, length);
+		position += length;
+		return s;
+	}
+
+	private String utf8(int offset, int length) throws UnsupportedEncodingException {
+		return new String(data, offset, length, "UTF-8");
+	}
+}
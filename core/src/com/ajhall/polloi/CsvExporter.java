@@ -0,0 +1,187 @@
+package com.ajhall.polloi;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+
+/**
+ * Streams survey answers from the answer store into a CSV file, one response at a time, so memory
+ * use doesn't grow with the number of respondents. Fields are quoted as described in RFC 4180: a
+ * field is wrapped in double quotes only if it contains a comma, a double quote or a line break,
+ * and embedded double quotes are doubled. Lines end with CRLF.
+ */
+public class CsvExporter {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Told about each line as it is written, so a long export can report progress and be stopped.
+	 */
+	public interface RowListener {
+		/**
+		 * @param rowCount
+		 *        The number of lines written so far by this call to writeRows
+		 * @return True to carry on, false to stop writing
+		 */
+		boolean onRowWritten(int rowCount);
+	}
+
+	private final AnswerLayout layout;
+	private final String[] row;
+	private long lastResponseId;
+	private int rowCount;
+
+	/**
+	 * Create an exporter for one survey.
+	 *
+	 * @param layout
+	 *        The answer columns of the survey
+	 */
+	public CsvExporter(AnswerLayout layout) {
+		this.layout = layout;
+		row = new String[layout.getColumnCount()];
+	}
+
+	/**
+	 * Open a buffered UTF-8 writer on a file.
+	 *
+	 * @param file
+	 *        The file to write
+	 * @param append
+	 *        True to add to the end of the file, false to replace it
+	 * @return A writer, which the caller must close
+	 */
+	public static Writer openWriter(File file, boolean append) throws FileNotFoundException, UnsupportedEncodingException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), "UTF-8"), BUFFER_SIZE);
+	}
+
+	/**
+	 * Write the line of column names.
+	 */
+	public void writeHeader(Writer out) throws IOException {
+		for(int i = 0; i < layout.getColumnCount(); i++) {
+			if(i > 0)
+				out.write(',');
+			writeField(out, layout.getColumnName(i));
+		}
+		out.write("\r\n");
+	}
+
+	/**
+	 * Write one line per response from an {@link AnswerCursor}. The cursor is read from its current
+	 * position to the end and is not closed.
+	 *
+	 * @param c
+	 *        A cursor over answered items, grouped by response
+	 * @param out
+	 *        Where to write the lines
+	 * @return The number of lines written
+	 */
+	public int writeRows(AnswerCursor c, Writer out) throws IOException {
+		return writeRows(c, out, null);
+	}
+
+	/**
+	 * Write one line per response, as {@link #writeRows(AnswerCursor, Writer)}, telling a listener
+	 * after each line. If the listener asks to stop, the cursor is left on the first response not
+	 * written.
+	 *
+	 * @param listener
+	 *        The listener, or null
+	 * @return The number of lines written
+	 */
+	public int writeRows(AnswerCursor c, Writer out, RowListener listener) throws IOException {
+		int written = 0;
+
+		if(c.isBeforeFirst())
+			c.moveToFirst();
+
+		while(!c.isAfterLast()) {
+			lastResponseId = layout.readRow(c, row);
+			writeLine(out);
+			written++;
+
+			if(listener != null && !listener.onRowWritten(written))
+				break;
+		}
+
+		rowCount += written;
+		return written;
+	}
+
+	/**
+	 * Write one line for a response read from the {@link ResponseJournal}.
+	 *
+	 * @param out
+	 *        Where to write the line
+	 * @param responseId
+	 *        The response's response_id
+	 * @param response
+	 *        The response
+	 */
+	public void writeResponse(Writer out, long responseId, SurveyResponse response) throws IOException {
+		layout.fillRow(response, row);
+		writeLine(out);
+		lastResponseId = responseId;
+		rowCount++;
+	}
+
+	private void writeLine(Writer out) throws IOException {
+		for(int i = 0; i < row.length; i++) {
+			if(i > 0)
+				out.write(',');
+			writeField(out, row[i]);
+		}
+		out.write("\r\n");
+	}
+
+	/**
+	 * @return The response_id of the last line written, or 0 if nothing has been written
+	 */
+	public long getLastResponseId() {
+		return lastResponseId;
+	}
+
+	/**
+	 * @return The number of lines written by this exporter, not counting the header
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Write a single field, quoting it only if it needs to be quoted. A null field is written as an
+	 * empty field.
+	 */
+	public static void writeField(Writer out, String field) throws IOException {
+		if(field == null)
+			return;
+
+		boolean needsQuotes = false;
+		for(int i = 0; i < field.length() && !needsQuotes; i++) {
+			char ch = field.charAt(i);
+			needsQuotes = (ch == ',' || ch == '"' || ch == '\r' || ch == '\n');
+		}
+
+		if(!needsQuotes) {
+			out.write(field);
+			return;
+		}
+
+		out.write('"');
+		int start = 0;
+		for(int i = 0; i < field.length(); i++) {
+			if(field.charAt(i) == '"') {
+				out.write(field, start, i + 1 - start);
+				out.write('"');
+				start = i + 1;
+			}
+		}
+		out.write(field, start, field.length() - start);
+		out.write('"');
+	}
+}
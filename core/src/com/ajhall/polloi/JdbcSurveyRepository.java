@@ -0,0 +1,497 @@
+package com.ajhall.polloi;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A {@link SurveyRepository} on a SQLite database reached through JDBC, for running and timing the
+ * storage paths on a plain JVM. It writes the same tables with the same SQL as the app (see
+ * {@link SurveySchema}), and saves surveys and responses by the same rules as SurveyWriter and
+ * AnswerStore, so what it stores can be read by either. It doesn't keep the app's tallies table,
+ * and those rules are its own copy rather than the app's code, so its throughput is not comparable
+ * with the app's; SQLiteSurveyRepositoryTest on a device gives the app's figures.
+ *
+ * <p>
+ * The SQLite JDBC driver (org.xerial:sqlite-jdbc) must be on the classpath at run time; nothing
+ * here depends on it at compile time. One repository holds one connection, and its methods are
+ * synchronized, so it can be shared between threads but runs one call at a time, like the app's
+ * single connection.
+ */
+public class JdbcSurveyRepository implements SurveyRepository {
+	private final Connection connection;
+
+	// compiled the first time they're needed, and kept until close
+	private final HashMap<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+
+	/**
+	 * Use an open connection to a SQLite database that already has the survey tables.
+	 *
+	 * @param connection
+	 *        The connection, which is closed by {@link #close()}
+	 */
+	public JdbcSurveyRepository(Connection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Open a SQLite database file, creating it and its tables if it doesn't exist.
+	 *
+	 * @param path
+	 *        The database file, or ":memory:" for a database that lasts as long as the repository
+	 * @return The repository, which the caller must close
+	 */
+	public static JdbcSurveyRepository open(String path) {
+		try {
+			Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+			JdbcSurveyRepository repository = new JdbcSurveyRepository(connection);
+			repository.createTables();
+			return repository;
+		} catch (SQLException e) {
+			throw new RepositoryException("Could not open " + path, e);
+		}
+	}
+
+	/**
+	 * Turn on foreign keys and create the survey tables if there are none yet.
+	 */
+	private void createTables() throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute("PRAGMA foreign_keys = ON");
+			ResultSet rows = statement.executeQuery("SELECT count(*) FROM sqlite_master WHERE type = 'table' AND name = 'surveys'");
+			boolean exists = rows.next() && rows.getInt(1) > 0;
+			rows.close();
+			if(exists)
+				return;
+
+			boolean success = false;
+			connection.setAutoCommit(false);
+			try {
+				for(String sql : SurveySchema.CREATE_STATEMENTS)
+					statement.execute(sql);
+				connection.commit();
+				success = true;
+			} finally {
+				endTransaction(success);
+			}
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Close the statements and the connection.
+	 */
+	public synchronized void close() {
+		try {
+			for(PreparedStatement statement : statements.values())
+				statement.close();
+			statements.clear();
+			connection.close();
+		} catch (SQLException e) {
+			throw new RepositoryException("Could not close the database", e);
+		}
+	}
+
+	private PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement statement = statements.get(sql);
+		if(statement == null) {
+			statement = connection.prepareStatement(sql);
+			statements.put(sql, statement);
+		}
+		return statement;
+	}
+
+	private void endTransaction(boolean success) throws SQLException {
+		if(!success)
+			connection.rollback();
+		connection.setAutoCommit(true);
+	}
+
+	private long lastInsertRowId() throws SQLException {
+		ResultSet rows = prepare("SELECT last_insert_rowid()").executeQuery();
+		try {
+			rows.next();
+			return rows.getLong(1);
+		} finally {
+			rows.close();
+		}
+	}
+
+	private static void setStringOrNull(PreparedStatement statement, int index, String value) throws SQLException {
+		if(value != null)
+			statement.setString(index, value);
+		else
+			statement.setNull(index, Types.VARCHAR);
+	}
+
+	@Override
+	public synchronized List<Integer> getSurveyIds() {
+		ArrayList<Integer> ids = new ArrayList<Integer>();
+		try {
+			ResultSet rows = prepare("SELECT survey_id FROM surveys ORDER BY survey_id").executeQuery();
+			try {
+				while(rows.next())
+					ids.add(rows.getInt(1));
+			} finally {
+				rows.close();
+			}
+		} catch (SQLException e) {
+			throw new RepositoryException("Could not read the survey IDs", e);
+		}
+		return ids;
+	}
+
+	@Override
+	public synchronized SurveyDefinition readSurveyDefinition(int surveyId) {
+		try {
+			return read(surveyId);
+		} catch (SQLException e) {
+			throw new RepositoryException("Could not read survey " + surveyId, e);
+		}
+	}
+
+	private SurveyDefinition read(int surveyId) throws SQLException {
+		PreparedStatement survey = prepare("SELECT title, intro_text FROM surveys WHERE survey_id = ?");
+		survey.setInt(1, surveyId);
+		ResultSet rows = survey.executeQuery();
+		SurveyDefinitionBuilder builder;
+		try {
+			if(!rows.next())
+				return null;
+			builder = new SurveyDefinitionBuilder(surveyId, rows.getString(1), rows.getString(2));
+		} finally {
+			rows.close();
+		}
+
+		PreparedStatement questions = prepare(SurveySchema.SELECT_SURVEY_QUESTIONS);
+		questions.setInt(1, surveyId);
+		rows = questions.executeQuery();
+		try {
+			while(rows.next()) {
+				// option_order is NULL for a question without options
+				rows.getInt(7);
+				boolean hasOption = !rows.wasNull();
+				builder.addRow(rows.getInt(1), rows.getInt(2), rows.getString(3), rows.getString(4), rows.getString(5), rows.getString(6), hasOption);
+			}
+		} finally {
+			rows.close();
+		}
+		return builder.build();
+	}
+
+	@Override
+	public synchronized SurveyDefinition writeSurvey(Survey survey, int surveyId) {
+		boolean success = false;
+		try {
+			connection.setAutoCommit(false);
+			try {
+				write(survey, surveyId);
+				SurveyDefinition saved = read(surveyId);
+				connection.commit();
+				success = true;
+				return saved;
+			} finally {
+				endTransaction(success);
+			}
+		} catch (SQLException e) {
+			throw new RepositoryException("Could not save survey " + surveyId, e);
+		}
+	}
+
+	/**
+	 * Save a survey as SurveyWriter does: write only the rows that differ from the stored ones.
+	 *
+	 * @return The number of rows inserted, updated or deleted
+	 */
+	private int write(Survey survey, int surveyId) throws SQLException {
+		SurveyDefinition stored = read(surveyId);
+		int changedRows = 0;
+
+		// the surveys row
+		if(stored == null) {
+			PreparedStatement insert = prepare("INSERT INTO surveys (survey_id, title, intro_text) VALUES (?, ?, ?)");
+			insert.setInt(1, surveyId);
+			setStringOrNull(insert, 2, survey.getTitle());
+			setStringOrNull(insert, 3, survey.getIntroText());
+			changedRows += insert.executeUpdate();
+		} else if(!equal(stored.getTitle(), survey.getTitle()) || !equal(stored.getIntroText(), survey.getIntroText())) {
+			PreparedStatement update = prepare("UPDATE surveys SET title = ?, intro_text = ? WHERE survey_id = ?");
+			setStringOrNull(update, 1, survey.getTitle());
+			setStringOrNull(update, 2, survey.getIntroText());
+			update.setInt(3, surveyId);
+			changedRows += update.executeUpdate();
+		}
+
+		// the stored questions, by ID, with their positions
+		HashMap<Integer, Integer> storedIndex = new HashMap<Integer, Integer>();
+		if(stored != null) {
+			for(int i = 0; i < stored.getSize(); i++)
+				storedIndex.put(stored.getQuestion(i).getId(), i);
+		}
+
+		for(int i = 0; i < survey.getSize(); i++) {
+			Question question = survey.getQuestion(i);
+			Integer index = question.getId() > 0 ? storedIndex.remove(question.getId()) : null;
+
+			if(index == null) {
+				PreparedStatement insert = prepare(SurveySchema.INSERT_QUESTION);
+				insert.setInt(1, surveyId);
+				setStringOrNull(insert, 2, question.getSection());
+				insert.setInt(3, i + 1);
+				insert.setInt(4, question.getType());
+				setStringOrNull(insert, 5, question.getPrompt());
+				changedRows += insert.executeUpdate();
+				changedRows += writeOptions(lastInsertRowId(), question, null);
+			} else {
+				Question old = stored.getQuestion(index);
+				if(index != i || old.getType() != question.getType() || !equal(old.getPrompt(), question.getPrompt()) || !equal(old.getSection(), question.getSection())) {
+					PreparedStatement update = prepare(SurveySchema.UPDATE_QUESTION);
+					setStringOrNull(update, 1, question.getSection());
+					update.setInt(2, i + 1);
+					update.setInt(3, question.getType());
+					setStringOrNull(update, 4, question.getPrompt());
+					update.setInt(5, question.getId());
+					changedRows += update.executeUpdate();
+				}
+				changedRows += writeOptions(question.getId(), question, old);
+			}
+		}
+
+		// whatever is left was removed; its options go with it
+		for(int questionId : storedIndex.keySet()) {
+			PreparedStatement delete = prepare(SurveySchema.DELETE_QUESTION);
+			delete.setInt(1, questionId);
+			changedRows += delete.executeUpdate();
+		}
+		return changedRows;
+	}
+
+	/**
+	 * Write the options of a question that differ from the stored ones, and delete stored options
+	 * past the end of the new list.
+	 *
+	 * @param old
+	 *        The stored question, or null if the question is new
+	 * @return The number of rows written
+	 */
+	private int writeOptions(long questionId, Question question, Question old) throws SQLException {
+		int changedRows = 0;
+		int oldCount = old != null ? old.getChoiceCount() : 0;
+
+		for(int j = 0; j < question.getChoiceCount(); j++) {
+			if(j < oldCount && equal(old.getOptionLabel(j), question.getOptionLabel(j)) && equal(old.getTextFieldLabel(j), question.getTextFieldLabel(j)))
+				continue;
+
+			PreparedStatement replace = prepare(SurveySchema.REPLACE_OPTION);
+			replace.setLong(1, questionId);
+			replace.setInt(2, j + 1);
+			setStringOrNull(replace, 3, question.getOptionLabel(j));
+			setStringOrNull(replace, 4, question.getTextFieldLabel(j));
+			replace.executeUpdate();
+			changedRows++;
+		}
+
+		if(oldCount > question.getChoiceCount()) {
+			PreparedStatement delete = prepare(SurveySchema.DELETE_OPTIONS_AFTER);
+			delete.setLong(1, questionId);
+			delete.setInt(2, question.getChoiceCount());
+			changedRows += delete.executeUpdate();
+		}
+		return changedRows;
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	@Override
+	public synchronized boolean hasResponse(int surveyId, String userId) {
+		try {
+			PreparedStatement query = prepare("SELECT response_id FROM responses WHERE survey_id = ? AND user_id = ?");
+			query.setInt(1, surveyId);
+			query.setString(2, userId);
+			ResultSet rows = query.executeQuery();
+			try {
+				return rows.next();
+			} finally {
+				rows.close();
+			}
+		} catch (SQLException e) {
+			throw new RepositoryException("Could not look for a response from " + userId + " to survey " + surveyId, e);
+		}
+	}
+
+	@Override
+	public long upsertResponse(SurveyResponse response) {
+		ArrayList<SurveyResponse> responses = new ArrayList<SurveyResponse>(1);
+		responses.add(response);
+		return upsertResponses(responses)[0];
+	}
+
+	@Override
+	public synchronized long[] upsertResponses(List<SurveyResponse> responses) {
+		long[] responseIds = new long[responses.size()];
+		boolean success = false;
+		try {
+			connection.setAutoCommit(false);
+			try {
+				for(int i = 0; i < responses.size(); i++)
+					responseIds[i] = upsert(responses.get(i));
+				connection.commit();
+				success = true;
+			} finally {
+				endTransaction(success);
+			}
+		} catch (SQLException e) {
+			throw new RepositoryException("Could not store " + responses.size() + " responses", e);
+		}
+		return responseIds;
+	}
+
+	/**
+	 * Store a response as AnswerStore.upsertResponse does, in the caller's transaction.
+	 */
+	private long upsert(SurveyResponse response) throws SQLException {
+		PreparedStatement delete = prepare("DELETE FROM answers WHERE survey_id = ? AND user_id = ?");
+		delete.setInt(1, response.getSurveyId());
+		delete.setString(2, response.getUserId());
+		delete.executeUpdate();
+
+		// REPLACE deletes the old row on a (survey_id, user_id) conflict, so the response_id is new
+		PreparedStatement replace = prepare("INSERT OR REPLACE INTO responses (survey_id, user_id, submitted_at) VALUES (?, ?, ?)");
+		replace.setInt(1, response.getSurveyId());
+		replace.setString(2, response.getUserId());
+		replace.setLong(3, response.getSubmittedAt());
+		replace.executeUpdate();
+		long responseId = lastInsertRowId();
+
+		if(response.getItemCount() > 0) {
+			PreparedStatement insert = prepare(SurveySchema.INSERT_ANSWER);
+			for(int i = 0; i < response.getItemCount(); i++) {
+				insert.setInt(1, response.getSurveyId());
+				insert.setString(2, response.getUserId());
+				insert.setInt(3, response.getQuestionId(i));
+				insert.setInt(4, response.getOptionOrder(i));
+				setStringOrNull(insert, 5, response.getValue(i));
+				setStringOrNull(insert, 6, response.getTextField(i));
+				insert.addBatch();
+			}
+			insert.executeBatch();
+		}
+		return responseId;
+	}
+
+	@Override
+	public synchronized AnswerCursor queryAnswers(int surveyId, long afterResponseId) {
+		try {
+			// a statement of its own, since the cursor may be read while other calls are made
+			PreparedStatement query = connection.prepareStatement(SurveySchema.SELECT_SURVEY_ANSWERS);
+			query.setInt(1, surveyId);
+			query.setLong(2, afterResponseId);
+			return new ResultSetCursor(query, query.executeQuery());
+		} catch (SQLException e) {
+			throw new RepositoryException("Could not query the answers to survey " + surveyId, e);
+		}
+	}
+
+	/**
+	 * Reads a forward-only ResultSet as an {@link AnswerCursor}. It can't go back, so moveToFirst
+	 * only works before the first row.
+	 */
+	private static class ResultSetCursor implements AnswerCursor {
+		private final PreparedStatement statement;
+		private final ResultSet rows;
+		private boolean beforeFirst = true;
+		private boolean afterLast;
+
+		ResultSetCursor(PreparedStatement statement, ResultSet rows) {
+			this.statement = statement;
+			this.rows = rows;
+		}
+
+		@Override
+		public boolean isBeforeFirst() {
+			return beforeFirst;
+		}
+
+		@Override
+		public boolean isAfterLast() {
+			return afterLast;
+		}
+
+		@Override
+		public boolean moveToFirst() {
+			if(!beforeFirst)
+				throw new IllegalStateException("A JDBC answer cursor can't go back to its first row");
+			return moveToNext();
+		}
+
+		@Override
+		public boolean moveToNext() {
+			beforeFirst = false;
+			if(afterLast)
+				return false;
+			try {
+				afterLast = !rows.next();
+			} catch (SQLException e) {
+				throw new RepositoryException("Could not read the next answer", e);
+			}
+			return !afterLast;
+		}
+
+		@Override
+		public boolean isNull(int column) {
+			try {
+				return rows.getObject(column + 1) == null;
+			} catch (SQLException e) {
+				throw new RepositoryException("Could not read column " + column, e);
+			}
+		}
+
+		@Override
+		public int getInt(int column) {
+			try {
+				return rows.getInt(column + 1);
+			} catch (SQLException e) {
+				throw new RepositoryException("Could not read column " + column, e);
+			}
+		}
+
+		@Override
+		public long getLong(int column) {
+			try {
+				return rows.getLong(column + 1);
+			} catch (SQLException e) {
+				throw new RepositoryException("Could not read column " + column, e);
+			}
+		}
+
+		@Override
+		public String getString(int column) {
+			try {
+				return rows.getString(column + 1);
+			} catch (SQLException e) {
+				throw new RepositoryException("Could not read column " + column, e);
+			}
+		}
+
+		@Override
+		public void close() {
+			try {
+				rows.close();
+				statement.close();
+			} catch (SQLException e) {
+				throw new RepositoryException("Could not close the answers", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,427 @@
+package com.ajhall.polloi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes random but valid responses to a stored survey through a {@link SurveyRepository}, to see
+ * how the answer write path holds up as the answer store grows. Each response is built by filling
+ * in a {@link Survey} at random and capturing it with {@link SurveyResponse#fromSurvey}, just as a
+ * submitted survey is. Responses are written in batches, at a set rate or as fast as they go, and
+ * every {@link #setReportEvery(int)} responses a {@link Step} reports the insert latency, the size
+ * of the database file and, optionally, how long a full CSV export takes.
+ *
+ * <p>
+ * Respondents are named load-1, load-2 and so on. Once {@link #setUserCount(int)} respondents have
+ * answered, the next response comes from load-1 again and replaces its answers, so both first
+ * submissions and replacements can be timed. On a device, run it against a copy of the database:
+ * everything it writes is real.
+ */
+public class LoadGenerator {
+	/**
+	 * What was measured over one stretch of the run.
+	 */
+	public static class Step {
+		/** Responses written since the start of the run */
+		public int responses;
+		/** Answered items in those responses, i.e. rows written to the answers table */
+		public long items;
+		/** Median latency of the responses in this step, in microseconds */
+		public long p50Micros;
+		/** 99th percentile latency of the responses in this step, in microseconds */
+		public long p99Micros;
+		/** Longest latency of the responses in this step, in microseconds */
+		public long maxMicros;
+		/** Responses per second over this step, including any time spent waiting for the rate */
+		public double rate;
+		/** The size of the database file and its write-ahead log, or -1 if no file was given */
+		public long databaseBytes;
+		/** How long a full CSV export took, or -1 if exports aren't timed */
+		public long exportMillis;
+		/** The rows in that export */
+		public int exportRows;
+
+		@Override
+		public String toString() {
+			return responses + " responses, " + items + " items: p50 " + p50Micros + " us, p99 " + p99Micros + " us, max " + maxMicros + " us, " + Math.round(rate) + "/s, db " + databaseBytes + " bytes, export " + exportMillis + " ms (" + exportRows + " rows)";
+		}
+	}
+
+	/**
+	 * Told about each step as soon as it's measured.
+	 */
+	public interface Listener {
+		/**
+		 * @return True to carry on, false to stop the run
+		 */
+		boolean onStep(Step step);
+	}
+
+	private static final String[] WORDS = { "the", "survey", "answer", "class", "teacher", "often", "never", "because", "time", "school", "good", "not", "really", "more", "help", "work" };
+
+	private final SurveyRepository repository;
+	private final SurveyDefinition definition;
+	private final Random random;
+
+	private int userCount = Integer.MAX_VALUE;
+	private int batchSize = 1;
+	private double responsesPerSecond;
+	private int reportEvery = 1000;
+	private File databaseFile;
+	private boolean timeExports;
+	private double skipRate = 0.1;
+
+	/**
+	 * @param repository
+	 *        Where to write the responses
+	 * @param definition
+	 *        A survey stored in the repository, so it and its questions have IDs
+	 * @param seed
+	 *        The seed for the random answers; the same seed gives the same responses
+	 */
+	public LoadGenerator(SurveyRepository repository, SurveyDefinition definition, long seed) {
+		this.repository = repository;
+		this.definition = definition;
+		random = new Random(seed);
+	}
+
+	/**
+	 * @param userCount
+	 *        How many respondents answer before they start answering again. Unlimited by default.
+	 */
+	public void setUserCount(int userCount) {
+		this.userCount = userCount;
+	}
+
+	/**
+	 * @param batchSize
+	 *        How many responses are written in each transaction, like a batch of the
+	 *        AnswerWriteQueue. 1 by default.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param responsesPerSecond
+	 *        The rate to write at, or 0, the default, to write as fast as possible
+	 */
+	public void setRate(double responsesPerSecond) {
+		this.responsesPerSecond = responsesPerSecond;
+	}
+
+	/**
+	 * @param reportEvery
+	 *        How many responses each {@link Step} covers. 1000 by default.
+	 */
+	public void setReportEvery(int reportEvery) {
+		this.reportEvery = reportEvery;
+	}
+
+	/**
+	 * @param databaseFile
+	 *        The database file, whose size (with its -wal file) is reported, or null
+	 */
+	public void setDatabaseFile(File databaseFile) {
+		this.databaseFile = databaseFile;
+	}
+
+	/**
+	 * @param timeExports
+	 *        True to time a full CSV export of the survey at the end of each step. The export is
+	 *        written nowhere, and its time grows with the table, so it slows the run down.
+	 */
+	public void setTimeExports(boolean timeExports) {
+		this.timeExports = timeExports;
+	}
+
+	/**
+	 * @param skipRate
+	 *        The chance of leaving each question unanswered, from 0 to 1. 0.1 by default.
+	 */
+	public void setSkipRate(double skipRate) {
+		this.skipRate = skipRate;
+	}
+
+	/**
+	 * Write responses and measure each step.
+	 *
+	 * @param responses
+	 *        How many responses to write
+	 * @param listener
+	 *        Told about each step, or null
+	 * @return Every step measured
+	 */
+	public List<Step> run(int responses, Listener listener) throws InterruptedException {
+		ArrayList<Step> steps = new ArrayList<Step>();
+		ArrayList<SurveyResponse> batch = new ArrayList<SurveyResponse>(batchSize);
+		long[] latencies = new long[reportEvery + batchSize];
+		int stepLatencies = 0;
+		long items = 0;
+
+		long start = System.nanoTime();
+		long stepStart = start;
+		int written = 0;
+		while(written < responses) {
+			batch.clear();
+			for(int i = 0; i < batchSize && written + i < responses; i++)
+				batch.add(randomResponse("load-" + ((written + i) % userCount + 1)));
+
+			// hold back to the rate, measured from the start so pauses are made up
+			if(responsesPerSecond > 0) {
+				long due = start + (long) (written * 1e9 / responsesPerSecond);
+				long wait = due - System.nanoTime();
+				if(wait > 0)
+					Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+			}
+
+			long before = System.nanoTime();
+			repository.upsertResponses(batch);
+			long latency = (System.nanoTime() - before) / 1000;
+
+			for(SurveyResponse response : batch) {
+				latencies[stepLatencies++] = latency;
+				items += response.getItemCount();
+			}
+			written += batch.size();
+
+			if(stepLatencies >= reportEvery || written == responses) {
+				long now = System.nanoTime();
+				Step step = measure(written, items, latencies, stepLatencies, (now - stepStart) / 1e9);
+				steps.add(step);
+				stepLatencies = 0;
+				stepStart = System.nanoTime();
+				if(listener != null && !listener.onStep(step))
+					break;
+			}
+		}
+		return steps;
+	}
+
+	private Step measure(int responses, long items, long[] latencies, int count, double seconds) {
+		Step step = new Step();
+		step.responses = responses;
+		step.items = items;
+
+		long[] sorted = Arrays.copyOf(latencies, count);
+		Arrays.sort(sorted);
+		step.p50Micros = percentile(sorted, 50);
+		step.p99Micros = percentile(sorted, 99);
+		step.maxMicros = count > 0 ? sorted[count - 1] : 0;
+		step.rate = seconds > 0 ? count / seconds : 0;
+
+		step.databaseBytes = -1;
+		if(databaseFile != null)
+			step.databaseBytes = databaseFile.length() + new File(databaseFile.getPath() + "-wal").length();
+
+		step.exportMillis = -1;
+		if(timeExports) {
+			long before = System.nanoTime();
+			step.exportRows = export();
+			step.exportMillis = (System.nanoTime() - before) / 1000000;
+		}
+		return step;
+	}
+
+	private static long percentile(long[] sorted, int percent) {
+		if(sorted.length == 0)
+			return 0;
+		return sorted[(sorted.length - 1) * percent / 100];
+	}
+
+	/**
+	 * Export the whole survey as CSV, throwing the output away.
+	 *
+	 * @return The number of rows written
+	 */
+	private int export() {
+		CsvExporter exporter = new CsvExporter(new AnswerLayout(definition));
+		Writer out = new Writer() {
+			@Override
+			public void write(char[] buffer, int offset, int length) {}
+
+			@Override
+			public void write(int c) {}
+
+			@Override
+			public void write(String s, int offset, int length) {}
+
+			@Override
+			public void flush() {}
+
+			@Override
+			public void close() {}
+		};
+
+		AnswerCursor c = repository.queryAnswers(definition.getId(), 0);
+		try {
+			exporter.writeHeader(out);
+			return exporter.writeRows(c, out);
+		} catch (IOException e) {
+			// the writer doesn't throw
+			throw new AssertionError(e);
+		} finally {
+			c.close();
+		}
+	}
+
+	/**
+	 * Build a response to the survey with random answers.
+	 *
+	 * @param userId
+	 *        The respondent
+	 * @return The response, as it would be submitted
+	 */
+	public SurveyResponse randomResponse(String userId) {
+		return SurveyResponse.fromSurvey(randomSurvey(), userId);
+	}
+
+	/**
+	 * Fill in the survey with random answers, as a respondent would before submitting.
+	 *
+	 * @return A new copy of the survey, answered
+	 */
+	public Survey randomSurvey() {
+		Survey survey = new Survey(definition);
+		ResponseState state = survey.getResponse();
+
+		for(int i = 0; i < survey.getSize(); i++) {
+			if(random.nextDouble() < skipRate)
+				continue;
+
+			Question question = survey.getQuestion(i);
+			if(question instanceof QuestionMC) {
+				QuestionMC mc = (QuestionMC) question;
+				if(mc.getChoiceCount() == 0)
+					continue;
+				int choice = random.nextInt(mc.getChoiceCount());
+				state.setSelected(i, choice);
+				if(mc.textFieldAtIndex(choice))
+					state.setTextFieldAnswer(i, choice, randomText(40));
+			} else if(question instanceof QuestionCheckbox) {
+				QuestionCheckbox checkbox = (QuestionCheckbox) question;
+				for(int j = 0; j < checkbox.getChoiceCount(); j++) {
+					if(!random.nextBoolean())
+						continue;
+					state.setChecked(i, j, true);
+					if(checkbox.textFieldAtIndex(j))
+						state.setTextFieldAnswer(i, j, randomText(40));
+				}
+			} else if(question instanceof QuestionWriting) {
+				state.setText(i, randomText(200));
+			}
+		}
+
+		return survey;
+	}
+
+	/**
+	 * @return Random words, up to about maxLength characters
+	 */
+	private String randomText(int maxLength) {
+		int length = 1 + random.nextInt(maxLength);
+		StringBuilder text = new StringBuilder(length + 10);
+		while(text.length() < length) {
+			if(text.length() > 0)
+				text.append(random.nextInt(12) == 0 ? ", " : " ");
+			text.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Build a survey of the given size for a load test on an empty database, cycling through
+	 * multiple choice, checkbox and writing questions. Every fourth option has a text field.
+	 *
+	 * @param title
+	 *        The survey's title, which must not already be taken
+	 * @param questionCount
+	 *        The number of questions
+	 * @param choiceCount
+	 *        The number of choices of each multiple choice and checkbox question
+	 * @return An unsaved survey
+	 */
+	public static Survey syntheticSurvey(String title, int questionCount, int choiceCount) {
+		ArrayList<Question> questions = new ArrayList<Question>(questionCount);
+		for(int i = 0; i < questionCount; i++) {
+			String prompt = "Question " + (i + 1);
+			String section = "Section " + (i / 10 + 1);
+			switch(i % 3) {
+			case 0:
+				QuestionMC mc = new QuestionMC(prompt, section);
+				for(int j = 0; j < choiceCount; j++)
+					mc.addChoice("Choice " + (j + 1), j % 4 == 3 ? "Please explain" : null);
+				questions.add(mc);
+				break;
+			case 1:
+				QuestionCheckbox checkbox = new QuestionCheckbox(prompt, section);
+				for(int j = 0; j < choiceCount; j++)
+					checkbox.addChoice("Option " + (j + 1), j % 4 == 3 ? "Other" : null);
+				questions.add(checkbox);
+				break;
+			default:
+				questions.add(new QuestionWriting(prompt, section));
+				break;
+			}
+		}
+		return new Survey(new SurveyDefinition(-1, title, "A survey made up for a load test", questions));
+	}
+
+	/**
+	 * Run a load test on a SQLite file through JDBC, with the sqlite-jdbc driver on the classpath.
+	 * Arguments: database file, number of responses, and optionally the number of respondents,
+	 * batch size, rate per second (0 for as fast as possible), survey_id and "export" to time
+	 * exports. With no survey_id, a synthetic survey of 30 questions is stored and used.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		if(args.length < 2) {
+			System.err.println("Usage: LoadGenerator <database file> <responses> [respondents] [batch size] [rate/s] [survey_id] [export]");
+			System.exit(2);
+		}
+
+		String path = args[0];
+		int responses = Integer.parseInt(args[1]);
+		JdbcSurveyRepository repository = JdbcSurveyRepository.open(path);
+		try {
+			SurveyDefinition definition;
+			if(args.length > 5) {
+				int surveyId = Integer.parseInt(args[5]);
+				definition = repository.readSurveyDefinition(surveyId);
+				if(definition == null) {
+					System.err.println("No survey " + surveyId + " in " + path);
+					System.exit(1);
+				}
+			} else {
+				List<Integer> ids = repository.getSurveyIds();
+				int surveyId = ids.isEmpty() ? 1 : ids.get(ids.size() - 1) + 1;
+				definition = repository.writeSurvey(syntheticSurvey("Load test " + surveyId, 30, 5), surveyId);
+			}
+
+			LoadGenerator generator = new LoadGenerator(repository, definition, 1);
+			generator.setDatabaseFile(new File(path));
+			if(args.length > 2)
+				generator.setUserCount(Integer.parseInt(args[2]));
+			if(args.length > 3)
+				generator.setBatchSize(Integer.parseInt(args[3]));
+			if(args.length > 4)
+				generator.setRate(Double.parseDouble(args[4]));
+			generator.setTimeExports(args.length > 6 && args[6].equals("export"));
+			generator.setReportEvery(Math.max(1000, responses / 20));
+
+			generator.run(responses, new Listener() {
+				@Override
+				public boolean onStep(Step step) {
+					System.out.println(step);
+					return true;
+				}
+			});
+		} finally {
+			repository.close();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.ajhall.polloi;
+
+/**
+ * The definition of one question: its prompt, section and, in subclasses, its choices. A Question
+ * holds no answers; those live in a {@link ResponseState}, so one Question can be shared by every
+ * respondent once its {@link SurveyDefinition} has been built. Questions are shown to the user by
+ * QuestionViews and put in a Parcel by SurveyParcel, in the Android app.
+ */
+public class Question {
+	private int id;
+	private String prompt;
+	private String section;
+
+	final public static int QUESTION = 0;
+	final public static int QUESTION_CHECKBOX = 1;
+	final public static int QUESTION_MC = 2;
+	final public static int QUESTION_WRITING = 3;
+
+	/**
+	 * The base Question should (probably?) never be used - instead use
+	 * QuestionMC for multiple choice, QuestionCheckbox for checkboxes, etc.
+	 * Maybe this shouldn't be a regular class, but I don't know the right way
+	 * to do it.
+	 * 
+	 * @param prompt
+	 */
+	public Question(String prompt) {
+		setPrompt(prompt);
+	}
+
+	public Question(String prompt, String section) {
+		setPrompt(prompt);
+		setSection(section);
+	}
+
+	/**
+	 * Set the question_id this question is stored under in the database.
+	 * 
+	 * @param id
+	 *        A question_id from the questions table
+	 */
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	public void setPrompt(String newPrompt) {
+		prompt = newPrompt;
+	}
+
+	public void setSection(String section) {
+		this.section = section;
+	}
+
+	/**
+	 * Get the question_id this question is stored under in the database.
+	 * 
+	 * @return A question_id from the questions table, or 0 if the question hasn't been stored
+	 */
+	public int getId() {
+		return id;
+	}
+
+	public String getPrompt() {
+		return prompt;
+	}
+
+	public String getSection() {
+		return section;
+	}
+
+	/**
+	 * Get the number of choices associated with this question. Questions without choices have
+	 * none.
+	 * 
+	 * @return The number of choices associated with this question.
+	 */
+	public int getChoiceCount() {
+		return 0;
+	}
+
+	/**
+	 * Get the label of a choice. Questions without choices have none.
+	 * 
+	 * @param optionIndex
+	 *        The index of a choice
+	 * @return The label, or null
+	 */
+	public String getOptionLabel(int optionIndex) {
+		return null;
+	}
+
+	/**
+	 * Get the label of the supplemental text field of a choice. Questions without choices have
+	 * none.
+	 * 
+	 * @param optionIndex
+	 *        The index of a choice
+	 * @return The label, or null if the choice has no text field
+	 */
+	public String getTextFieldLabel(int optionIndex) {
+		return null;
+	}
+
+	/**
+	 * Each subclass of Question returns a unique integer, one of the QUESTION_* constants. It is
+	 * stored as the question's type in the database.
+	 */
+	public int getType() {
+		return Question.QUESTION;
+	}
+}
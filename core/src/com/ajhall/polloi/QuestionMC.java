@@ -0,0 +1,142 @@
+/**
+ * This and QuestionCheckbox should probably both subclasses of something that includes the textField
+ */
+
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+
+public class QuestionMC extends Question {
+	private ArrayList<String> choices;
+	private ArrayList<String> textField;
+
+	/**
+	 * A question with possible answers displayed as a list of radio buttons.
+	 * Only one choice can be selected.
+	 * 
+	 * @param prompt
+	 *        The question prompt
+	 */
+	public QuestionMC(String prompt) {
+		super(prompt);
+		choices = new ArrayList<String>();
+		textField = new ArrayList<String>();
+	}
+
+	/**
+	 * A question with possible answers displayed as a list of checkboxes. Any
+	 * combination and any number of answers can be chosen.
+	 * 
+	 * @param prompt
+	 *        The question prompt
+	 * @param section
+	 *        The "section name" of the question, displayed at the top of the
+	 *        page
+	 */
+	public QuestionMC(String prompt, String section) {
+		super(prompt, section);
+		choices = new ArrayList<String>();
+		textField = new ArrayList<String>();
+	}
+
+	/**
+	 * Add a single choice to the question.
+	 * 
+	 * @param newChoice
+	 *        The text displayed next to the new choice.
+	 */
+	public void addChoice(String newChoice) {
+		choices.add(newChoice);
+		textField.add(null);
+	}
+
+	/**
+	 * Add a single choice with a supplemental text field to the question. The
+	 * text field will appear when the choice is selected.
+	 * 
+	 * @param newChoice
+	 *        The text displayed next to the new choice.
+	 * @param textFieldLabel
+	 *        The text displayed next to the supplemental text field.
+	 */
+	public void addChoice(String newChoice, String textFieldLabel) {
+		addChoice(newChoice);
+		setTextField(choices.lastIndexOf(newChoice), textFieldLabel);
+	}
+
+	/**
+	 * Add a supplemental text field associated with the choice at the specified
+	 * index. The text field will appear when the choice is selected.
+	 * 
+	 * @param index
+	 *        The index of a choice.
+	 * @param label
+	 *        The text displayed next to the supplemental text field
+	 */
+	public void setTextField(int index, String label) {
+		if(choices.get(index) != null)
+			textField.set(index, label);
+	}
+
+	/**
+	 * Get the number of choices associated with this question.
+	 * 
+	 * @return The number of choices associated with this question.
+	 */
+	@Override
+	public int getChoiceCount() {
+		return choices.size();
+	}
+
+	/**
+	 * Test whether a supplemental text field exists at the specified index.
+	 * 
+	 * @param index
+	 *        The index of a choice.
+	 * @return The truth value indicating whether a supplemental text field is
+	 *         associated with the choice at the specified index.
+	 */
+	public boolean textFieldAtIndex(int index) {
+		if(textField.get(index) != null)
+			return true;
+		else
+			return false;
+	}
+
+	/**
+	 * Remove the supplemental text field associated with the choice at the
+	 * specified index.
+	 * 
+	 * @param index
+	 *        The index of a choice.
+	 */
+	public void removeTextField(int index) {
+		if(choices.get(index) != null)
+			textField.set(index, null);
+	}
+
+	/**
+	 * Each subclass of {@link Question} returns a unique integer. Refer to the
+	 * constants in {@link Question} for more detail.
+	 */
+	@Override
+	public int getType() {
+		return Question.QUESTION_MC;
+	}
+	
+	@Override
+	public String getOptionLabel(int optionIndex) {
+		if(choices.get(optionIndex) != null)
+			return choices.get(optionIndex);
+		else
+			return null;
+	}
+	
+	@Override
+	public String getTextFieldLabel(int optionIndex) {
+		if(textFieldAtIndex(optionIndex))
+			return textField.get(optionIndex);
+		else
+			return null;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.ajhall.polloi;
+
+public class QuestionWriting extends Question {
+
+	/**
+	 * A question that asks the user to write some text. Displays the question
+	 * prompt and a text box.
+	 * 
+	 * @param prompt
+	 *        The question prompt
+	 */
+	public QuestionWriting(String prompt) {
+		super(prompt);
+	}
+
+	/**
+	 * A question that asks the user to write some text. Displays the question
+	 * prompt and a text box.
+	 * 
+	 * @param prompt
+	 *        The question prompt
+	 * @param section
+	 *        The "section name" of the question, displayed at the top of the
+	 *        page
+	 */
+	public QuestionWriting(String prompt, String section) {
+		super(prompt, section);
+	}
+
+	/**
+	 * Each subclass of {@link Question} returns a unique integer. Refer to the
+	 * constants in {@link Question} for more detail.
+	 */
+	@Override
+	public int getType() {
+		return Question.QUESTION_WRITING;
+	}
+}
\ No newline at end of file
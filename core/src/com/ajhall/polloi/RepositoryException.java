@@ -0,0 +1,13 @@
+package com.ajhall.polloi;
+
+/**
+ * Thrown by a {@link SurveyRepository} when the database can't be read or written. Unchecked, like
+ * android.database.SQLException, so both kinds of repository fail the same way.
+ */
+public class RepositoryException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public RepositoryException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
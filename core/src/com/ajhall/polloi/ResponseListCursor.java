@@ -0,0 +1,115 @@
+package com.ajhall.polloi;
+
+import java.util.List;
+
+/**
+ * An {@link AnswerCursor} over responses held in memory, with the rows the answer store's query
+ * would return for them: one row per answered item, or a single row with a null question_id for a
+ * response with no items. The responses are given consecutive response_ids. Used to feed the
+ * exporters without a database, in benchmarks and tests.
+ */
+public class ResponseListCursor implements AnswerCursor {
+	private final List<SurveyResponse> responses;
+	private final long firstResponseId;
+
+	private int response = -1; // the response the cursor is on, -1 before the first
+	private int item; // the item of that response
+
+	/**
+	 * @param responses
+	 *        The responses, in the order they should be read
+	 * @param firstResponseId
+	 *        The response_id of the first response
+	 */
+	public ResponseListCursor(List<SurveyResponse> responses, long firstResponseId) {
+		this.responses = responses;
+		this.firstResponseId = firstResponseId;
+	}
+
+	@Override
+	public boolean isBeforeFirst() {
+		return response < 0;
+	}
+
+	@Override
+	public boolean isAfterLast() {
+		return response >= responses.size();
+	}
+
+	@Override
+	public boolean moveToFirst() {
+		response = 0;
+		item = 0;
+		return !isAfterLast();
+	}
+
+	@Override
+	public boolean moveToNext() {
+		if(response < 0)
+			return moveToFirst();
+		if(isAfterLast())
+			return false;
+
+		item++;
+		if(item >= Math.max(1, responses.get(response).getItemCount())) {
+			response++;
+			item = 0;
+		}
+		return !isAfterLast();
+	}
+
+	@Override
+	public boolean isNull(int column) {
+		SurveyResponse current = responses.get(response);
+		if(column < 2)
+			return column == 1 && current.getUserId() == null;
+		if(current.getItemCount() == 0)
+			return true;
+		if(column == 4)
+			return current.getValue(item) == null;
+		if(column == 5)
+			return current.getTextField(item) == null;
+		return false;
+	}
+
+	@Override
+	public int getInt(int column) {
+		return (int) getLong(column);
+	}
+
+	@Override
+	public long getLong(int column) {
+		switch(column) {
+		case 0:
+			return firstResponseId + response;
+		case 2:
+			return isNull(2) ? 0 : responses.get(response).getQuestionId(item);
+		case 3:
+			return isNull(3) ? 0 : responses.get(response).getOptionOrder(item);
+		default:
+			throw new IllegalArgumentException("Column " + column + " is not an integer");
+		}
+	}
+
+	@Override
+	public String getString(int column) {
+		SurveyResponse current = responses.get(response);
+		switch(column) {
+		case 0:
+		case 2:
+		case 3:
+			return isNull(column) ? null : Long.toString(getLong(column));
+		case 1:
+			return current.getUserId();
+		case 4:
+			return isNull(4) ? null : current.getValue(item);
+		case 5:
+			return isNull(5) ? null : current.getTextField(item);
+		default:
+			throw new IllegalArgumentException("No column " + column);
+		}
+	}
+
+	@Override
+	public void close() {}
+}
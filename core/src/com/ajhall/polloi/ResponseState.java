@@ -0,0 +1,251 @@
+package com.ajhall.polloi;
+
+import java.util.Arrays;
+
+/**
+ * One respondent's answers to a survey, laid out by its {@link SurveyDefinition}. This is the only
+ * per-respondent state; the definition is shared. Answers are kept in primitive arrays so that
+ * selecting a choice or toggling a checkbox doesn't allocate:
+ * <ul>
+ * <li>multiple choice: the index of the selected choice per question, or -1</li>
+ * <li>checkbox: one bit per choice in a single bitset, starting at
+ * {@link SurveyDefinition#getCheckedOffset(int)}</li>
+ * <li>writing: the text per question</li>
+ * <li>supplemental text fields: a sorted array of keys, made from the question and choice, and
+ * the contents alongside, holding only those filled in</li>
+ * </ul>
+ *
+ * A {@link ChangeListener} can be told about every answer as it is given, e.g. to journal it.
+ */
+public class ResponseState {
+	/**
+	 * Told about each change to the answers, on the thread that made it. Not told about
+	 * {@link ResponseState#clear()}.
+	 */
+	public interface ChangeListener {
+		void onSelectedChanged(int question, int choice);
+
+		void onCheckedChanged(int question, int choice, boolean isChecked);
+
+		void onTextChanged(int question, String answer);
+
+		void onTextFieldChanged(int question, int choice, String answer);
+	}
+
+	/**
+	 * The answer strings for the first choices, "a", "b", "c"..., built once so that reading an
+	 * answer doesn't allocate.
+	 */
+	private static final String[] ANSWER_TAGS = new String[64];
+	static {
+		for(int i = 0; i < ANSWER_TAGS.length; i++)
+			ANSWER_TAGS[i] = Character.toString((char) ('a' + i));
+	}
+
+	private final SurveyDefinition definition;
+	private final int[] selected;
+	private final long[] checked;
+	private final String[] text;
+	// the filled in text fields, sorted by key; the first textFieldCount entries are in use
+	private int[] textFieldKeys = new int[4];
+	private String[] textFieldValues = new String[4];
+	private int textFieldCount;
+	private ChangeListener listener;
+
+	/**
+	 * Create an unanswered response to a survey.
+	 *
+	 * @param definition
+	 *        The survey being answered
+	 */
+	public ResponseState(SurveyDefinition definition) {
+		this.definition = definition;
+		selected = new int[definition.getSize()];
+		Arrays.fill(selected, -1);
+		checked = new long[(definition.getCheckedCount() + 63) >> 6];
+		text = new String[definition.getSize()];
+	}
+
+	public SurveyDefinition getDefinition() {
+		return definition;
+	}
+
+	/**
+	 * @param listener
+	 *        The listener to tell about each change, or null for none
+	 */
+	public void setChangeListener(ChangeListener listener) {
+		this.listener = listener;
+	}
+
+	private static int textFieldKey(int question, int choice) {
+		return (question << 16) | choice;
+	}
+
+	/**
+	 * Get the selected choice of a multiple choice question.
+	 *
+	 * @return The index of the selected choice, or -1 if no choice is selected.
+	 */
+	public int getSelected(int question) {
+		return selected[question];
+	}
+
+	/**
+	 * Select a choice of a multiple choice question.
+	 *
+	 * @param choice
+	 *        The index of a choice, or -1 to clear the selection.
+	 */
+	public void setSelected(int question, int choice) {
+		if(choice < -1 || choice >= definition.getQuestion(question).getChoiceCount())
+			return;
+
+		selected[question] = choice;
+		if(listener != null)
+			listener.onSelectedChanged(question, choice);
+	}
+
+	/**
+	 * Test whether a choice of a checkbox question is checked.
+	 */
+	public boolean isChecked(int question, int choice) {
+		int bit = definition.getCheckedOffset(question) + choice;
+		return (checked[bit >> 6] & (1L << bit)) != 0;
+	}
+
+	/**
+	 * Mark a choice of a checkbox question as checked or not.
+	 */
+	public void setChecked(int question, int choice, boolean isChecked) {
+		if(choice < 0 || choice >= definition.getQuestion(question).getChoiceCount())
+			return;
+
+		int bit = definition.getCheckedOffset(question) + choice;
+		if(isChecked)
+			checked[bit >> 6] |= 1L << bit;
+		else
+			checked[bit >> 6] &= ~(1L << bit);
+		if(listener != null)
+			listener.onCheckedChanged(question, choice, isChecked);
+	}
+
+	/**
+	 * Get the text written for a writing question.
+	 *
+	 * @return The text, or null if nothing has been written
+	 */
+	public String getText(int question) {
+		return text[question];
+	}
+
+	public void setText(int question, String answer) {
+		text[question] = answer;
+		if(listener != null)
+			listener.onTextChanged(question, answer);
+	}
+
+	/**
+	 * Get the contents of the supplemental text field of a choice.
+	 *
+	 * @return The contents, or null if the text field is empty or hidden
+	 */
+	public String getTextFieldAnswer(int question, int choice) {
+		int i = Arrays.binarySearch(textFieldKeys, 0, textFieldCount, textFieldKey(question, choice));
+		return i >= 0 ? textFieldValues[i] : null;
+	}
+
+	/**
+	 * Set the contents of the supplemental text field of a choice.
+	 *
+	 * @param answer
+	 *        The contents, or null to clear them
+	 */
+	public void setTextFieldAnswer(int question, int choice, String answer) {
+		int key = textFieldKey(question, choice);
+		int i = Arrays.binarySearch(textFieldKeys, 0, textFieldCount, key);
+		if(answer != null && i >= 0) {
+			textFieldValues[i] = answer;
+		} else if(answer != null) {
+			i = -i - 1;
+			if(textFieldCount == textFieldKeys.length) {
+				textFieldKeys = Arrays.copyOf(textFieldKeys, textFieldCount * 2);
+				textFieldValues = Arrays.copyOf(textFieldValues, textFieldCount * 2);
+			}
+			System.arraycopy(textFieldKeys, i, textFieldKeys, i + 1, textFieldCount - i);
+			System.arraycopy(textFieldValues, i, textFieldValues, i + 1, textFieldCount - i);
+			textFieldKeys[i] = key;
+			textFieldValues[i] = answer;
+			textFieldCount++;
+		} else if(i >= 0) {
+			textFieldCount--;
+			System.arraycopy(textFieldKeys, i + 1, textFieldKeys, i, textFieldCount - i);
+			System.arraycopy(textFieldValues, i + 1, textFieldValues, i, textFieldCount - i);
+			textFieldValues[textFieldCount] = null;
+		}
+		if(listener != null)
+			listener.onTextFieldChanged(question, choice, answer);
+	}
+
+	/**
+	 * Get the answer to a question as it is stored in the answers table: the letter of the
+	 * selected choice for multiple choice ("a" for the first), the text for writing questions.
+	 * Checkbox questions are stored one choice at a time, so for them this is a summary such as
+	 * "a, c".
+	 *
+	 * @return The answer, or null if the question hasn't been answered
+	 */
+	public String getAnswer(int question) {
+		Question q = definition.getQuestion(question);
+
+		if(q instanceof QuestionMC) {
+			int choice = selected[question];
+			if(choice < 0)
+				return null;
+			else if(choice < ANSWER_TAGS.length)
+				return ANSWER_TAGS[choice];
+			else
+				return Character.toString((char) ('a' + choice));
+		} else if(q instanceof QuestionCheckbox) {
+			StringBuilder answer = null;
+			for(int i = 0; i < q.getChoiceCount(); i++) {
+				if(isChecked(question, i)) {
+					if(answer == null)
+						answer = new StringBuilder();
+					else
+						answer.append(", ");
+					answer.append((char) ('a' + i));
+				}
+			}
+			return answer != null ? answer.toString() : null;
+		} else {
+			return text[question];
+		}
+	}
+
+	/**
+	 * Get one 64-choice word of the checkbox bitset. Refer to
+	 * {@link SurveyDefinition#getCheckedOffset(int)} for which bit belongs to which choice.
+	 */
+	public long getCheckedWord(int word) {
+		return checked[word];
+	}
+
+	/**
+	 * @return The number of 64-bit words in the checkbox bitset
+	 */
+	public int getCheckedWordCount() {
+		return checked.length;
+	}
+
+	/**
+	 * Clear every answer.
+	 */
+	public void clear() {
+		Arrays.fill(selected, -1);
+		Arrays.fill(checked, 0);
+		Arrays.fill(text, null);
+		Arrays.fill(textFieldValues, 0, textFieldCount, null);
+		textFieldCount = 0;
+	}
+}
@@ -0,0 +1,82 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+
+/**
+ * A survey being answered by one respondent: a shared, immutable {@link SurveyDefinition} paired
+ * with the respondent's own {@link ResponseState}. The Android app puts surveys in a Parcel with
+ * SurveyParcel.
+ */
+public class Survey {
+
+	private final SurveyDefinition definition;
+	private final ResponseState response;
+
+	/**
+	 * A Survey is a series of Questions.
+	 *
+	 * @param definition
+	 *        The survey's structure, which may be shared with other Surveys
+	 * @param response
+	 *        The answers, which must have been created for the same definition
+	 */
+	public Survey(SurveyDefinition definition, ResponseState response) {
+		this.definition = definition;
+		this.response = response;
+	}
+
+	/**
+	 * Create an unanswered survey.
+	 *
+	 * @param definition
+	 *        The survey's structure, which may be shared with other Surveys
+	 */
+	public Survey(SurveyDefinition definition) {
+		this(definition, new ResponseState(definition));
+	}
+
+	public Survey(String title) {
+		this(title, null);
+	}
+
+	public Survey(String title, String introText) {
+		this(new SurveyDefinition(-1, title, introText, new ArrayList<Question>()));
+	}
+
+	public SurveyDefinition getDefinition() {
+		return definition;
+	}
+
+	public ResponseState getResponse() {
+		return response;
+	}
+
+	public Question getQuestion(int index) {
+		return definition.getQuestion(index);
+	}
+
+	/**
+	 * Get the survey_id this survey is stored under in the database.
+	 *
+	 * @return A survey_id from the surveys table, or -1 if the survey hasn't been stored
+	 */
+	public int getId() {
+		return definition.getId();
+	}
+
+	public boolean hasTitle() {
+		return definition.hasTitle();
+	}
+
+	public int getSize() {
+		return definition.getSize();
+	}
+
+	public String getTitle() {
+		return definition.getTitle();
+	}
+
+	public String getIntroText() {
+		return definition.getIntroText();
+	}
+}
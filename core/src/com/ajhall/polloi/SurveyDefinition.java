@@ -0,0 +1,127 @@
+package com.ajhall.polloi;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The structure of a survey: its title, intro text and questions, with no answers. A
+ * SurveyDefinition is immutable once built and is shared by every respondent taking the survey;
+ * each respondent's answers are kept in their own {@link ResponseState}. The questions passed in
+ * must not be changed after the definition has been built.
+ *
+ * <p>
+ * The definition also lays out the answer state: every checkbox choice in the survey gets one bit
+ * in a single bitset, and {@link #getCheckedOffset(int)} gives the first bit of each question.
+ */
+public class SurveyDefinition {
+	private final int id;
+	private final String title;
+	private final String introText;
+	private final Question[] questions;
+	private final int[] checkedOffsets;
+	private final int checkedCount;
+	// question_id to index, made when first needed, since IDs are set once questions are saved
+	private volatile HashMap<Integer, Integer> questionIndexes;
+
+	/**
+	 * Build a survey definition.
+	 *
+	 * @param id
+	 *        The survey_id the survey is stored under in the database, or -1 if it isn't stored
+	 * @param title
+	 *        The survey title, or null
+	 * @param introText
+	 *        The text shown on the title page, or null
+	 * @param questions
+	 *        The questions, in order
+	 */
+	public SurveyDefinition(int id, String title, String introText, List<Question> questions) {
+		this.id = id;
+		this.title = title;
+		this.introText = introText;
+		this.questions = questions.toArray(new Question[questions.size()]);
+
+		checkedOffsets = new int[this.questions.length];
+		int offset = 0;
+		for(int i = 0; i < this.questions.length; i++) {
+			checkedOffsets[i] = offset;
+			if(this.questions[i] instanceof QuestionCheckbox)
+				offset += this.questions[i].getChoiceCount();
+		}
+		checkedCount = offset;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public boolean hasTitle() {
+		return title != null;
+	}
+
+	public String getIntroText() {
+		return introText;
+	}
+
+	public int getSize() {
+		return questions.length;
+	}
+
+	public Question getQuestion(int index) {
+		return questions[index];
+	}
+
+	/**
+	 * Find a question by its question_id.
+	 *
+	 * @param questionId
+	 *        The question_id
+	 * @return The question's index, or -1 if the survey has no such question
+	 */
+	public int indexOfQuestion(int questionId) {
+		HashMap<Integer, Integer> indexes = questionIndexes;
+		if(indexes == null) {
+			indexes = new HashMap<Integer, Integer>();
+			for(int i = 0; i < questions.length; i++)
+				indexes.put(questions[i].getId(), i);
+			questionIndexes = indexes;
+		}
+		Integer index = indexes.get(questionId);
+		return index != null ? index : -1;
+	}
+
+	/**
+	 * Get the position in the answer bitset of the first choice of a checkbox question.
+	 *
+	 * @param index
+	 *        The index of a question
+	 * @return The bit of the question's first choice; choice j is at this plus j
+	 */
+	public int getCheckedOffset(int index) {
+		return checkedOffsets[index];
+	}
+
+	/**
+	 * @return The total number of checkbox choices in the survey, i.e. the size of the answer
+	 *         bitset
+	 */
+	public int getCheckedCount() {
+		return checkedCount;
+	}
+
+	/**
+	 * Create an empty tally that counts every question of this survey.
+	 *
+	 * @return A tally with no responses counted yet
+	 */
+	public SurveyTally newTally() {
+		SurveyTally tally = new SurveyTally(id);
+		for(Question question : questions)
+			tally.addQuestion(question.getId(), question.getType(), question.getChoiceCount());
+		return tally;
+	}
+}
@@ -0,0 +1,101 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Builds a {@link SurveyDefinition} from the rows of {@link SurveySchema#SELECT_SURVEY_QUESTIONS},
+ * whichever database they come from. Rows must be added in the order the query returns them.
+ * Repeated strings such as section names and "Yes"/"No" choices are shared rather than kept as
+ * separate copies.
+ */
+public class SurveyDefinitionBuilder {
+	private final int surveyId;
+	private final String title;
+	private final String introText;
+	private final ArrayList<Question> questions = new ArrayList<Question>();
+	private final HashMap<String, String> strings = new HashMap<String, String>();
+	private Question question;
+
+	/**
+	 * @param surveyId
+	 *        The survey_id
+	 * @param title
+	 *        The survey's title
+	 * @param introText
+	 *        The survey's intro text, or null
+	 */
+	public SurveyDefinitionBuilder(int surveyId, String title, String introText) {
+		this.surveyId = surveyId;
+		this.title = title;
+		this.introText = introText;
+	}
+
+	/**
+	 * Add one row of the query.
+	 *
+	 * @param hasOption
+	 *        False if the option columns are NULL, i.e. the question has no options
+	 */
+	public void addRow(int questionId, int type, String prompt, String section, String answerText, String textFieldLabel, boolean hasOption) {
+		// a new question id means we've finished the previous question and can start the next
+		if(question == null || questionId != question.getId()) {
+			if(question != null)
+				questions.add(question);
+
+			section = intern(section);
+
+			// figure out the question type and create the corresponding object
+			if(type == Question.QUESTION_MC)
+				question = new QuestionMC(prompt, section);
+			else if(type == Question.QUESTION_CHECKBOX)
+				question = new QuestionCheckbox(prompt, section);
+			else
+				question = new QuestionWriting(prompt, section);
+			question.setId(questionId);
+		}
+
+		// if it's a multiple choice or checkbox question, add the option on this row
+		if(!hasOption)
+			return;
+
+		String choice = intern(answerText);
+		textFieldLabel = intern(textFieldLabel);
+		if(question instanceof QuestionMC) {
+			if(textFieldLabel != null)
+				((QuestionMC) question).addChoice(choice, textFieldLabel);
+			else
+				((QuestionMC) question).addChoice(choice);
+		} else if(question instanceof QuestionCheckbox) {
+			if(textFieldLabel != null)
+				((QuestionCheckbox) question).addChoice(choice, textFieldLabel);
+			else
+				((QuestionCheckbox) question).addChoice(choice);
+		}
+	}
+
+	/**
+	 * @return The definition of the survey, with every question added so far
+	 */
+	public SurveyDefinition build() {
+		if(question != null) {
+			questions.add(question);
+			question = null;
+		}
+		return new SurveyDefinition(surveyId, title, introText, questions);
+	}
+
+	/**
+	 * Return the copy of a string already in the pool, adding it if it's new.
+	 */
+	private String intern(String s) {
+		if(s == null)
+			return null;
+		String pooled = strings.get(s);
+		if(pooled == null) {
+			strings.put(s, s);
+			pooled = s;
+		}
+		return pooled;
+	}
+}
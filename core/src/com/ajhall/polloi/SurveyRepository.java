@@ -0,0 +1,73 @@
+package com.ajhall.polloi;
+
+import java.util.List;
+
+/**
+ * Reads and writes surveys and their answers, laid out as in {@link SurveySchema}. The app uses
+ * SQLiteSurveyRepository, on the shared database connection; {@link JdbcSurveyRepository} stores
+ * the same tables through JDBC, so the storage paths can be run and timed on a plain JVM.
+ * Implementations throw {@link RepositoryException}, or another unchecked exception, if the
+ * database fails.
+ */
+public interface SurveyRepository {
+	/**
+	 * @return The survey_id of every stored survey, in order
+	 */
+	List<Integer> getSurveyIds();
+
+	/**
+	 * Read the definition of one survey.
+	 *
+	 * @return The survey's definition, or null if there is no such survey
+	 */
+	SurveyDefinition readSurveyDefinition(int surveyId);
+
+	/**
+	 * Save a survey under the given survey_id, creating the survey if there is none with that ID.
+	 * Questions that came from the database keep their IDs, and only rows that differ from the
+	 * stored ones are written, in one transaction. Answers already collected are kept.
+	 *
+	 * @param survey
+	 *        The survey to save
+	 * @param surveyId
+	 *        The survey_id to save under
+	 * @return The survey as saved, read back in the same transaction: it has the survey_id, and
+	 *         its new questions have the IDs they were given, so saving it again changes nothing
+	 */
+	SurveyDefinition writeSurvey(Survey survey, int surveyId);
+
+	/**
+	 * Check whether a user has already submitted a response to a survey.
+	 *
+	 * @return True if there is a response from the user for the survey
+	 */
+	boolean hasResponse(int surveyId, String userId);
+
+	/**
+	 * Store one user's answers to a survey, replacing any answers the user already submitted for
+	 * it, in a transaction of its own.
+	 *
+	 * @return The response_id of the stored response; a new one even if it replaced an old one
+	 */
+	long upsertResponse(SurveyResponse response);
+
+	/**
+	 * Store several responses, as {@link #upsertResponse}, in one transaction. If any of them
+	 * can't be stored, none are.
+	 *
+	 * @param responses
+	 *        The responses, stored in order
+	 * @return The response_id of each, in the same order
+	 */
+	long[] upsertResponses(List<SurveyResponse> responses);
+
+	/**
+	 * Query the answered items of every response to a survey submitted after the given response,
+	 * grouped by response, as {@link SurveySchema#SELECT_SURVEY_ANSWERS}.
+	 *
+	 * @param afterResponseId
+	 *        Only responses with a greater response_id are returned; 0 for all
+	 * @return A cursor before the first row, which the caller must close
+	 */
+	AnswerCursor queryAnswers(int surveyId, long afterResponseId);
+}
@@ -0,0 +1,131 @@
+package com.ajhall.polloi;
+
+import java.util.Arrays;
+
+/**
+ * One user's submitted answers to one survey, captured as the list of items that go into the
+ * answers table. A SurveyResponse is a snapshot: once built it doesn't change when the Survey it
+ * was built from does, so it can safely be handed to a background thread.
+ */
+public class SurveyResponse {
+	private final int surveyId;
+	private final String userId;
+	private final long submittedAt;
+
+	private int itemCount;
+	private int[] questionIds = new int[16];
+	private int[] optionOrders = new int[16];
+	private String[] values = new String[16];
+	private String[] textFields = new String[16];
+
+	/**
+	 * Create an empty response. Add answered items with
+	 * {@link #addItem(int, int, String, String)}.
+	 *
+	 * @param surveyId
+	 *        The survey that was answered
+	 * @param userId
+	 *        The user who answered it
+	 * @param submittedAt
+	 *        When the answers were submitted, in milliseconds since the epoch
+	 */
+	public SurveyResponse(int surveyId, String userId, long submittedAt) {
+		this.surveyId = surveyId;
+		this.userId = userId;
+		this.submittedAt = submittedAt;
+	}
+
+	/**
+	 * Capture the answers a respondent has given to a survey. Items with no answer are left out, except
+	 * checkbox options, which are always stored as "1" or "0". Refer to {@link AnswerLayout} for
+	 * which option_order each item is stored under.
+	 *
+	 * @param survey
+	 *        A survey read from the database, so it and its questions have IDs
+	 * @param userId
+	 *        The user who answered it
+	 */
+	public static SurveyResponse fromSurvey(Survey survey, String userId) {
+		SurveyResponse response = new SurveyResponse(survey.getId(), userId, System.currentTimeMillis());
+		ResponseState state = survey.getResponse();
+
+		for(int questionIterator = 0; questionIterator < survey.getSize(); questionIterator++) {
+			Question question = survey.getQuestion(questionIterator);
+
+			if(question instanceof QuestionWriting) {
+				response.addItem(question.getId(), 0, state.getText(questionIterator), null);
+			} else if(question instanceof QuestionMC) {
+				QuestionMC mc = (QuestionMC) question;
+				response.addItem(mc.getId(), 0, state.getAnswer(questionIterator), null);
+				for(int choiceIterator = 0; choiceIterator < mc.getChoiceCount(); choiceIterator++) {
+					if(mc.textFieldAtIndex(choiceIterator))
+						response.addItem(mc.getId(), choiceIterator + 1, null, state.getTextFieldAnswer(questionIterator, choiceIterator));
+				}
+			} else if(question instanceof QuestionCheckbox) {
+				QuestionCheckbox checkbox = (QuestionCheckbox) question;
+				for(int choiceIterator = 0; choiceIterator < checkbox.getChoiceCount(); choiceIterator++) {
+					String textField = null;
+					if(checkbox.textFieldAtIndex(choiceIterator))
+						textField = state.getTextFieldAnswer(questionIterator, choiceIterator);
+					response.addItem(checkbox.getId(), choiceIterator + 1, state.isChecked(questionIterator, choiceIterator) ? "1" : "0", textField);
+				}
+			}
+		}
+
+		return response;
+	}
+
+	/**
+	 * Add one answered item. Items with neither a value nor a text field answer are ignored.
+	 */
+	public void addItem(int questionId, int optionOrder, String value, String textField) {
+		if(value == null && textField == null)
+			return;
+
+		if(itemCount == questionIds.length) {
+			int capacity = itemCount * 2;
+			questionIds = Arrays.copyOf(questionIds, capacity);
+			optionOrders = Arrays.copyOf(optionOrders, capacity);
+			values = Arrays.copyOf(values, capacity);
+			textFields = Arrays.copyOf(textFields, capacity);
+		}
+
+		questionIds[itemCount] = questionId;
+		optionOrders[itemCount] = optionOrder;
+		values[itemCount] = value;
+		textFields[itemCount] = textField;
+		itemCount++;
+	}
+
+	public int getSurveyId() {
+		return surveyId;
+	}
+
+	public String getUserId() {
+		return userId;
+	}
+
+	public long getSubmittedAt() {
+		return submittedAt;
+	}
+
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	public int getQuestionId(int item) {
+		return questionIds[item];
+	}
+
+	public int getOptionOrder(int item) {
+		return optionOrders[item];
+	}
+
+	public String getValue(int item) {
+		return values[item];
+	}
+
+	public String getTextField(int item) {
+		return textFields[item];
+	}
+}
@@ -0,0 +1,53 @@
+package com.ajhall.polloi;
+
+/**
+ * The SQL of the survey database: its tables and the queries that read surveys and answers. It is
+ * SQLite SQL, shared by the app's database and by {@link JdbcSurveyRepository}, so both store
+ * surveys the same way. The tallies table is left out; only the app keeps it (see TallyTable).
+ */
+public class SurveySchema {
+	public static final String CREATE_TABLE_SURVEYS = "CREATE TABLE surveys (survey_id INTEGER PRIMARY KEY, title TEXT UNIQUE NOT NULL, intro_text TEXT)";
+	public static final String CREATE_TABLE_QUESTIONS = "CREATE TABLE questions (question_id INTEGER PRIMARY KEY AUTOINCREMENT, survey_id INTEGER NOT NULL REFERENCES surveys (survey_id) ON DELETE CASCADE, section TEXT, question_order INTEGER, type TEXT, prompt TEXT)";
+	public static final String CREATE_INDEX_QUESTIONS = "CREATE INDEX questions_survey_order ON questions (survey_id, question_order)";
+	public static final String CREATE_TABLE_QUESTION_OPTIONS = "CREATE TABLE question_options (question_id INTEGER NOT NULL REFERENCES questions (question_id) ON DELETE CASCADE, option_order INTEGER NOT NULL, answer_text TEXT, text_field_label TEXT, PRIMARY KEY (question_id, option_order))";
+	public static final String CREATE_TABLE_RESPONSES = "CREATE TABLE IF NOT EXISTS responses (response_id INTEGER PRIMARY KEY AUTOINCREMENT, survey_id INTEGER NOT NULL, user_id TEXT NOT NULL COLLATE NOCASE, submitted_at INTEGER, UNIQUE (survey_id, user_id))";
+	public static final String CREATE_TABLE_ANSWERS = "CREATE TABLE IF NOT EXISTS answers (survey_id INTEGER NOT NULL, user_id TEXT NOT NULL COLLATE NOCASE, question_id INTEGER NOT NULL, option_order INTEGER NOT NULL, value TEXT, text_field TEXT, PRIMARY KEY (survey_id, user_id, question_id, option_order))";
+
+	/**
+	 * Every question of a survey with its options, one row per option and one row with NULL option
+	 * columns for a question without options, in question and option order. Read the rows with a
+	 * {@link SurveyDefinitionBuilder}.
+	 * Columns: question_id, type, prompt, section, answer_text, text_field_label, option_order
+	 */
+	public static final String SELECT_SURVEY_QUESTIONS = "SELECT q.question_id, q.type, q.prompt, q.section, o.answer_text, o.text_field_label, o.option_order FROM questions q LEFT JOIN question_options o ON o.question_id = q.question_id WHERE q.survey_id = ? ORDER BY q.question_order, q.question_id, o.option_order";
+
+	/**
+	 * Every answered item in a survey submitted after a given response_id, grouped by response in
+	 * the order the responses were submitted. A response with no answered items still gets one row, with NULL item columns.
+	 * Columns: response_id, user_id, question_id, option_order, value, text_field
+	 */
+	public static final String SELECT_SURVEY_ANSWERS = "SELECT r.response_id, r.user_id, a.question_id, a.option_order, a.value, a.text_field FROM responses r LEFT JOIN answers a ON a.survey_id = r.survey_id AND a.user_id = r.user_id WHERE r.survey_id = ? AND r.response_id > ? ORDER BY r.response_id, a.question_id, a.option_order";
+
+	/**
+	 * Every answered item of one user's response to a survey, as SELECT_SURVEY_ANSWERS.
+	 */
+	public static final String SELECT_USER_ANSWERS = "SELECT r.response_id, r.user_id, a.question_id, a.option_order, a.value, a.text_field FROM responses r LEFT JOIN answers a ON a.survey_id = r.survey_id AND a.user_id = r.user_id WHERE r.survey_id = ? AND r.user_id = ? ORDER BY a.question_id, a.option_order";
+
+	/**
+	 * The statements that save an edited survey a row at a time (see SurveyWriter).
+	 */
+	public static final String INSERT_QUESTION = "INSERT INTO questions (survey_id, section, question_order, type, prompt) VALUES (?, ?, ?, ?, ?)";
+	public static final String UPDATE_QUESTION = "UPDATE questions SET section = ?, question_order = ?, type = ?, prompt = ? WHERE question_id = ?";
+	public static final String DELETE_QUESTION = "DELETE FROM questions WHERE question_id = ?";
+	public static final String REPLACE_OPTION = "INSERT OR REPLACE INTO question_options (question_id, option_order, answer_text, text_field_label) VALUES (?, ?, ?, ?)";
+	public static final String DELETE_OPTIONS_AFTER = "DELETE FROM question_options WHERE question_id = ? AND option_order > ?";
+
+	public static final String INSERT_ANSWER = "INSERT INTO answers (survey_id, user_id, question_id, option_order, value, text_field) VALUES (?, ?, ?, ?, ?, ?)";
+
+	/**
+	 * Every table and index, in the order they must be created.
+	 */
+	public static final String[] CREATE_STATEMENTS = { CREATE_TABLE_SURVEYS, CREATE_TABLE_QUESTIONS, CREATE_INDEX_QUESTIONS, CREATE_TABLE_QUESTION_OPTIONS, CREATE_TABLE_RESPONSES, CREATE_TABLE_ANSWERS };
+
+	private SurveySchema() {}
+}
@@ -0,0 +1,238 @@
+package com.ajhall.polloi;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * Encodes the answers in a survey, and nothing else, into a compact byte array that can be saved
+ * in onSaveInstanceState. The survey definition (prompts, choices, text field labels) is not
+ * included; it is read again from the database on restore and the answers are applied to it.
+ *
+ * <p>
+ * Format, version 1. Integers are unsigned LEB128 varints, and survey_id is zigzag encoded first so
+ * that -1 stays small. A string is a varint of its UTF-8 length plus one, followed by its bytes, and
+ * a length of 0 means null.
+ * <ul>
+ * <li>version byte</li>
+ * <li>survey_id</li>
+ * <li>number of questions</li>
+ * <li>for each question, its type from {@link Question#getType()}, then:
+ * <ul>
+ * <li>writing: the answer string</li>
+ * <li>multiple choice: the selected choice index plus one (0 for none), then one string per
+ * choice that has a text field</li>
+ * <li>checkbox: a bitset of the checked choices, one bit per choice rounded up to whole bytes,
+ * then one string per choice that has a text field</li>
+ * </ul>
+ * </li>
+ * </ul>
+ */
+public class SurveySnapshot {
+	private static final int VERSION = 1;
+
+	private byte[] buffer;
+	private int position;
+
+	private SurveySnapshot(byte[] buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Encode the answers in a survey.
+	 *
+	 * @param survey
+	 *        A survey read from the database
+	 * @return The encoded answers
+	 */
+	public static byte[] encode(Survey survey) {
+		SurveySnapshot out = new SurveySnapshot(new byte[64 + survey.getSize() * 2]);
+
+		out.writeByte(VERSION);
+		out.writeVarint(zigzag(survey.getId()));
+		out.writeVarint(survey.getSize());
+
+		ResponseState state = survey.getResponse();
+		for(int i = 0; i < survey.getSize(); i++) {
+			Question question = survey.getQuestion(i);
+			out.writeByte(question.getType());
+
+			if(question instanceof QuestionMC) {
+				QuestionMC mc = (QuestionMC) question;
+				out.writeVarint(state.getSelected(i) + 1);
+				for(int j = 0; j < mc.getChoiceCount(); j++) {
+					if(mc.textFieldAtIndex(j))
+						out.writeString(state.getTextFieldAnswer(i, j));
+				}
+			} else if(question instanceof QuestionCheckbox) {
+				QuestionCheckbox checkbox = (QuestionCheckbox) question;
+				int bits = 0;
+				for(int j = 0; j < checkbox.getChoiceCount(); j++) {
+					if(state.isChecked(i, j))
+						bits |= 1 << (j & 7);
+					if((j & 7) == 7 || j == checkbox.getChoiceCount() - 1) {
+						out.writeByte(bits);
+						bits = 0;
+					}
+				}
+				for(int j = 0; j < checkbox.getChoiceCount(); j++) {
+					if(checkbox.textFieldAtIndex(j))
+						out.writeString(state.getTextFieldAnswer(i, j));
+				}
+			} else {
+				out.writeString(state.getText(i));
+			}
+		}
+
+		return Arrays.copyOf(out.buffer, out.position);
+	}
+
+	/**
+	 * Read which survey a snapshot belongs to, so its definition can be loaded.
+	 *
+	 * @param snapshot
+	 *        A snapshot from {@link #encode(Survey)}
+	 * @return The survey_id, or -1 if the snapshot is not in a format this version understands
+	 */
+	public static int getSurveyId(byte[] snapshot) {
+		SurveySnapshot in = new SurveySnapshot(snapshot);
+		if(snapshot.length == 0 || in.readByte() != VERSION)
+			return -1;
+		return unzigzag(in.readVarint());
+	}
+
+	/**
+	 * Apply the answers in a snapshot to a survey.
+	 *
+	 * @param snapshot
+	 *        A snapshot from {@link #encode(Survey)}
+	 * @param survey
+	 *        A survey with the same definition as the one that was encoded, normally freshly read
+	 *        from the database
+	 * @return True if the answers were restored. False if the snapshot doesn't match the survey's
+	 *         definition, in which case the survey may be partly filled in and should be discarded.
+	 */
+	public static boolean decode(byte[] snapshot, Survey survey) {
+		SurveySnapshot in = new SurveySnapshot(snapshot);
+
+		try {
+			if(in.readByte() != VERSION || unzigzag(in.readVarint()) != survey.getId() || in.readVarint() != survey.getSize())
+				return false;
+
+			ResponseState state = survey.getResponse();
+			for(int i = 0; i < survey.getSize(); i++) {
+				Question question = survey.getQuestion(i);
+				if(in.readByte() != question.getType())
+					return false;
+
+				if(question instanceof QuestionMC) {
+					QuestionMC mc = (QuestionMC) question;
+					int selected = in.readVarint() - 1;
+					if(selected >= mc.getChoiceCount())
+						return false;
+					state.setSelected(i, selected);
+					for(int j = 0; j < mc.getChoiceCount(); j++) {
+						if(mc.textFieldAtIndex(j))
+							state.setTextFieldAnswer(i, j, in.readString());
+					}
+				} else if(question instanceof QuestionCheckbox) {
+					QuestionCheckbox checkbox = (QuestionCheckbox) question;
+					int bits = 0;
+					for(int j = 0; j < checkbox.getChoiceCount(); j++) {
+						if((j & 7) == 0)
+							bits = in.readByte();
+						state.setChecked(i, j, (bits & (1 << (j & 7))) != 0);
+					}
+					for(int j = 0; j < checkbox.getChoiceCount(); j++) {
+						if(checkbox.textFieldAtIndex(j))
+							state.setTextFieldAnswer(i, j, in.readString());
+					}
+				} else {
+					state.setText(i, in.readString());
+				}
+			}
+
+			return in.position == snapshot.length;
+		} catch (ArrayIndexOutOfBoundsException e) {
+			// truncated snapshot
+			return false;
+		}
+	}
+
+	private static int zigzag(int n) {
+		return (n << 1) ^ (n >> 31);
+	}
+
+	private static int unzigzag(int n) {
+		return (n >>> 1) ^ -(n & 1);
+	}
+
+	private void ensureCapacity(int extra) {
+		if(position + extra > buffer.length)
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+	}
+
+	private void writeByte(int b) {
+		ensureCapacity(1);
+		buffer[position++] = (byte) b;
+	}
+
+	private void writeVarint(int n) {
+		ensureCapacity(5);
+		while((n & ~0x7f) != 0) {
+			buffer[position++] = (byte) ((n & 0x7f) | 0x80);
+			n >>>= 7;
+		}
+		buffer[position++] = (byte) n;
+	}
+
+	private void writeString(String s) {
+		if(s == null) {
+			writeVarint(0);
+			return;
+		}
+
+		byte[] bytes;
+		try {
+			bytes = s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+		writeVarint(bytes.length + 1);
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, buffer, position, bytes.length);
+		position += bytes.length;
+	}
+
+	private int readByte() {
+		return buffer[position++] & 0xff;
+	}
+
+	private int readVarint() {
+		int n = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = readByte();
+			n |= (b & 0x7f) << shift;
+			shift += 7;
+		} while((b & 0x80) != 0);
+		return n;
+	}
+
+	private String readString() {
+		int length = readVarint();
+		if(length == 0)
+			return null;
+		length--;
+
+		if(position + length > buffer.length)
+			throw new ArrayIndexOutOfBoundsException(position + length);
+		try {
+			String s = new String(buffer, position, length, "UTF-8");
+			position += length;
+			return s;
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
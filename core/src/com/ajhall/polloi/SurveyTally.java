@@ -0,0 +1,300 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Running result counts for one survey, kept up to date one response at a time so they never
+ * need the whole answer store read again. For each question it counts how many responses
+ * answered it and how often each option was chosen; for each text field, how many responses
+ * filled it in; and for each pair of multiple choice questions, a cross-tab of how often each
+ * pair of answers was given together.
+ *
+ * <p>
+ * Options are numbered by option_order, from 1, as in the answers table. Questions are told apart
+ * by question_id and their type, one of {@link #CHECKBOX}, {@link #MULTIPLE_CHOICE} or
+ * {@link #WRITING}, which are the same as the Question.QUESTION_* constants. A tally is fed
+ * {@link SurveyResponse}s, so it only uses plain Java and can be used and checked on the JVM
+ * without a device. All methods are thread safe.
+ */
+public class SurveyTally {
+	public static final int CHECKBOX = 1;
+	public static final int MULTIPLE_CHOICE = 2;
+	public static final int WRITING = 3;
+
+	/**
+	 * The counts for one question.
+	 */
+	private static class QuestionCounts {
+		final int questionId;
+		final int type;
+		final int[] optionCounts;
+		final int[] textFieldCounts;
+		int answered;
+		// the position in mcQuestions, or -1
+		int mcIndex = -1;
+		// the response last counted as answering this question, so it's only counted once
+		int lastStamp;
+
+		QuestionCounts(int questionId, int type, int optionCount) {
+			this.questionId = questionId;
+			this.type = type;
+			optionCounts = new int[optionCount];
+			textFieldCounts = new int[optionCount];
+		}
+
+		/**
+		 * @return The 0-based index of an option_order, or -1 if the question has no such option
+		 */
+		int optionIndex(int optionOrder) {
+			return optionOrder >= 1 && optionOrder <= optionCounts.length ? optionOrder - 1 : -1;
+		}
+	}
+
+	private final int surveyId;
+	private final HashMap<Integer, QuestionCounts> questions = new HashMap<Integer, QuestionCounts>();
+	private final ArrayList<QuestionCounts> mcQuestions = new ArrayList<QuestionCounts>();
+	// cross-tabs by the two questions' positions in mcQuestions, made when first needed
+	private final HashMap<Long, int[]> crossTabs = new HashMap<Long, int[]>();
+	private int responseCount;
+	private int stamp;
+
+	/**
+	 * Create an empty tally. Add the survey's questions with {@link #addQuestion} before counting
+	 * any responses.
+	 *
+	 * @param surveyId
+	 *        The survey whose responses will be counted
+	 */
+	public SurveyTally(int surveyId) {
+		this.surveyId = surveyId;
+	}
+
+	/**
+	 * Add a question to count. Items of questions that weren't added are ignored.
+	 *
+	 * @param questionId
+	 *        The question's question_id
+	 * @param type
+	 *        {@link #CHECKBOX}, {@link #MULTIPLE_CHOICE} or {@link #WRITING}; questions of any
+	 *        other type are ignored
+	 * @param optionCount
+	 *        The number of options the question has
+	 * @throws IllegalStateException
+	 *         If responses have already been counted
+	 */
+	public synchronized void addQuestion(int questionId, int type, int optionCount) {
+		if(responseCount != 0)
+			throw new IllegalStateException("Questions must be added before responses are counted");
+		if(type != CHECKBOX && type != MULTIPLE_CHOICE && type != WRITING)
+			return;
+
+		QuestionCounts counts = new QuestionCounts(questionId, type, optionCount);
+		questions.put(questionId, counts);
+		if(type == MULTIPLE_CHOICE) {
+			counts.mcIndex = mcQuestions.size();
+			mcQuestions.add(counts);
+		}
+	}
+
+	/**
+	 * Count a response.
+	 *
+	 * @throws IllegalArgumentException
+	 *         If the response is to another survey
+	 */
+	public synchronized void add(SurveyResponse response) {
+		apply(response, 1);
+	}
+
+	/**
+	 * Stop counting a response that was counted before, e.g. because the user submitted again and
+	 * the old response was replaced.
+	 *
+	 * @throws IllegalArgumentException
+	 *         If the response is to another survey
+	 */
+	public synchronized void remove(SurveyResponse response) {
+		apply(response, -1);
+	}
+
+	private void apply(SurveyResponse response, int delta) {
+		if(response.getSurveyId() != surveyId)
+			throw new IllegalArgumentException("Response to survey " + response.getSurveyId() + " can't be counted in survey " + surveyId);
+
+		responseCount += delta;
+		stamp++;
+		int[] choices = new int[mcQuestions.size()];
+		for(int i = 0; i < choices.length; i++)
+			choices[i] = -1;
+
+		for(int item = 0; item < response.getItemCount(); item++) {
+			QuestionCounts question = questions.get(response.getQuestionId(item));
+			if(question == null)
+				continue;
+
+			int optionOrder = response.getOptionOrder(item);
+			String value = response.getValue(item);
+			int option = question.optionIndex(optionOrder);
+
+			switch(question.type) {
+			case WRITING:
+				if(optionOrder == 0 && !isEmpty(value))
+					countAnswered(question, delta);
+				break;
+			case MULTIPLE_CHOICE:
+				// the choice is stored at option_order 0 as a letter: "a" for option 1
+				if(optionOrder == 0 && value != null && value.length() == 1) {
+					int choice = value.charAt(0) - 'a';
+					if(choice >= 0 && choice < question.optionCounts.length) {
+						question.optionCounts[choice] += delta;
+						choices[question.mcIndex] = choice;
+					}
+					countAnswered(question, delta);
+				}
+				break;
+			case CHECKBOX:
+				if(option >= 0 && "1".equals(value)) {
+					question.optionCounts[option] += delta;
+					countAnswered(question, delta);
+				}
+				break;
+			}
+
+			if(option >= 0 && !isEmpty(response.getTextField(item)))
+				question.textFieldCounts[option] += delta;
+		}
+
+		for(int a = 0; a < choices.length; a++) {
+			if(choices[a] < 0)
+				continue;
+			for(int b = a + 1; b < choices.length; b++) {
+				if(choices[b] < 0)
+					continue;
+				int[] table = getCrossTab(a, b, true);
+				table[choices[a] * mcQuestions.get(b).optionCounts.length + choices[b]] += delta;
+			}
+		}
+	}
+
+	private void countAnswered(QuestionCounts question, int delta) {
+		if(question.lastStamp != stamp) {
+			question.lastStamp = stamp;
+			question.answered += delta;
+		}
+	}
+
+	private int[] getCrossTab(int a, int b, boolean create) {
+		long key = ((long) a << 32) | b;
+		int[] table = crossTabs.get(key);
+		if(table == null && create) {
+			table = new int[mcQuestions.get(a).optionCounts.length * mcQuestions.get(b).optionCounts.length];
+			crossTabs.put(key, table);
+		}
+		return table;
+	}
+
+	private static boolean isEmpty(String s) {
+		return s == null || s.length() == 0;
+	}
+
+	public int getSurveyId() {
+		return surveyId;
+	}
+
+	/**
+	 * @return The number of responses counted
+	 */
+	public synchronized int getResponseCount() {
+		return responseCount;
+	}
+
+	/**
+	 * @return The number of responses that answered a question: chose an option, checked at least
+	 *         one box or wrote something. 0 if the question isn't counted.
+	 */
+	public synchronized int getAnsweredCount(int questionId) {
+		QuestionCounts question = questions.get(questionId);
+		return question != null ? question.answered : 0;
+	}
+
+	/**
+	 * @return The number of responses that chose or checked an option, or 0 if the question or
+	 *         option isn't counted
+	 */
+	public synchronized int getOptionCount(int questionId, int optionOrder) {
+		QuestionCounts question = questions.get(questionId);
+		if(question == null || question.optionIndex(optionOrder) < 0)
+			return 0;
+		return question.optionCounts[question.optionIndex(optionOrder)];
+	}
+
+	/**
+	 * @return How often each option of a question was chosen or checked, indexed by option_order -
+	 *         1; empty if the question isn't counted
+	 */
+	public synchronized int[] getOptionCounts(int questionId) {
+		QuestionCounts question = questions.get(questionId);
+		return question != null ? question.optionCounts.clone() : new int[0];
+	}
+
+	/**
+	 * @return The number of responses that filled in the text field of an option
+	 */
+	public synchronized int getTextFieldCount(int questionId, int optionOrder) {
+		QuestionCounts question = questions.get(questionId);
+		if(question == null || question.optionIndex(optionOrder) < 0)
+			return 0;
+		return question.textFieldCounts[question.optionIndex(optionOrder)];
+	}
+
+	/**
+	 * @return The fraction of all responses that filled in the text field of an option, from 0 to
+	 *         1; 0 if there are no responses
+	 */
+	public synchronized double getTextFieldRate(int questionId, int optionOrder) {
+		if(responseCount == 0)
+			return 0;
+		return (double) getTextFieldCount(questionId, optionOrder) / responseCount;
+	}
+
+	/**
+	 * Cross-tabulate two multiple choice questions.
+	 *
+	 * @param rowQuestionId
+	 *        The question whose options are the rows
+	 * @param columnQuestionId
+	 *        The question whose options are the columns
+	 * @return table[i][j] is the number of responses that chose option i + 1 of the first question
+	 *         and option j + 1 of the second, or null if either isn't a counted multiple choice
+	 *         question or they are the same question
+	 */
+	public synchronized int[][] getCrossTab(int rowQuestionId, int columnQuestionId) {
+		QuestionCounts rowQuestion = questions.get(rowQuestionId);
+		QuestionCounts columnQuestion = questions.get(columnQuestionId);
+		if(rowQuestion == null || columnQuestion == null || rowQuestion.mcIndex < 0 || columnQuestion.mcIndex < 0 || rowQuestion == columnQuestion)
+			return null;
+
+		int a = rowQuestion.mcIndex;
+		int b = columnQuestion.mcIndex;
+
+		int rows = mcQuestions.get(a).optionCounts.length;
+		int columns = mcQuestions.get(b).optionCounts.length;
+		int[][] result = new int[rows][columns];
+		// only one of each pair is kept, with the earlier question first
+		int[] table = a < b ? getCrossTab(a, b, false) : getCrossTab(b, a, false);
+		if(table == null)
+			return result;
+
+		for(int i = 0; i < rows; i++) {
+			for(int j = 0; j < columns; j++)
+				result[i][j] = a < b ? table[i * columns + j] : table[j * rows + i];
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SurveyTally [survey " + surveyId + ", " + responseCount + " responses, " + questions.size() + " questions, " + crossTabs.size() + " cross-tabs]";
+	}
+}
@@ -0,0 +1,162 @@
+package com.ajhall.polloi;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * The change one submitted response makes to its survey's counts, less the response it replaces,
+ * as rows of the tallies table: (question_id, option_order) with a change to its chosen and
+ * text_fields counts. The counts mean the same as in {@link SurveyTally}, but only the rows the two
+ * responses touch are worked out, so the cost depends on the number of answered items rather than
+ * on the size of the survey. Rows that don't change are left out.
+ */
+public class TallyChange {
+	private final HashMap<Long, Integer> index = new HashMap<Long, Integer>();
+	private int[] questionIds = new int[16];
+	private int[] optionOrders = new int[16];
+	private int[] chosen = new int[16];
+	private int[] textFields = new int[16];
+	private int size;
+
+	private TallyChange() {}
+
+	/**
+	 * Work out the change a response makes.
+	 *
+	 * @param survey
+	 *        The definition of the survey the response is to
+	 * @param replaced
+	 *        The user's response that is being replaced, or null if this is the user's first
+	 * @param response
+	 *        The response being stored
+	 * @return The change, with no row whose counts are both unchanged
+	 * @throws IllegalArgumentException
+	 *         If a response is to another survey
+	 */
+	public static TallyChange of(SurveyDefinition survey, SurveyResponse replaced, SurveyResponse response) {
+		TallyChange change = new TallyChange();
+		// the responses row, (0, 0)
+		if(replaced == null)
+			change.add(0, 0, 1, 0);
+		else
+			change.count(survey, replaced, -1);
+		change.count(survey, response, 1);
+		change.dropUnchanged();
+		return change;
+	}
+
+	private void count(SurveyDefinition survey, SurveyResponse response, int delta) {
+		if(response.getSurveyId() != survey.getId())
+			throw new IllegalArgumentException("Response to survey " + response.getSurveyId() + " can't be counted in survey " + survey.getId());
+		HashSet<Integer> answered = new HashSet<Integer>();
+
+		for(int item = 0; item < response.getItemCount(); item++) {
+			int questionId = response.getQuestionId(item);
+			int questionIndex = survey.indexOfQuestion(questionId);
+			if(questionIndex < 0)
+				continue;
+			Question question = survey.getQuestion(questionIndex);
+
+			int optionOrder = response.getOptionOrder(item);
+			boolean isOption = optionOrder >= 1 && optionOrder <= question.getChoiceCount();
+			String value = response.getValue(item);
+
+			switch(question.getType()) {
+			case SurveyTally.WRITING:
+				if(optionOrder == 0 && !isEmpty(value) && answered.add(questionId))
+					add(questionId, 0, delta, 0);
+				break;
+			case SurveyTally.MULTIPLE_CHOICE:
+				// the choice is stored at option_order 0 as a letter: "a" for option 1
+				if(optionOrder == 0 && value != null && value.length() == 1) {
+					int choice = value.charAt(0) - 'a';
+					if(choice >= 0 && choice < question.getChoiceCount())
+						add(questionId, choice + 1, delta, 0);
+					if(answered.add(questionId))
+						add(questionId, 0, delta, 0);
+				}
+				break;
+			case SurveyTally.CHECKBOX:
+				if(isOption && "1".equals(value)) {
+					add(questionId, optionOrder, delta, 0);
+					if(answered.add(questionId))
+						add(questionId, 0, delta, 0);
+				}
+				break;
+			default:
+				continue;
+			}
+
+			if(isOption && !isEmpty(response.getTextField(item)))
+				add(questionId, optionOrder, 0, delta);
+		}
+	}
+
+	private void add(int questionId, int optionOrder, int chosenDelta, int textFieldDelta) {
+		long key = ((long) questionId << 32) | (optionOrder & 0xffffffffL);
+		Integer row = index.get(key);
+		if(row == null) {
+			if(size == questionIds.length) {
+				questionIds = Arrays.copyOf(questionIds, size * 2);
+				optionOrders = Arrays.copyOf(optionOrders, size * 2);
+				chosen = Arrays.copyOf(chosen, size * 2);
+				textFields = Arrays.copyOf(textFields, size * 2);
+			}
+			row = size++;
+			index.put(key, row);
+			questionIds[row] = questionId;
+			optionOrders[row] = optionOrder;
+		}
+		chosen[row] += chosenDelta;
+		textFields[row] += textFieldDelta;
+	}
+
+	private void dropUnchanged() {
+		int kept = 0;
+		for(int row = 0; row < size; row++) {
+			if(chosen[row] == 0 && textFields[row] == 0)
+				continue;
+			questionIds[kept] = questionIds[row];
+			optionOrders[kept] = optionOrders[row];
+			chosen[kept] = chosen[row];
+			textFields[kept] = textFields[row];
+			kept++;
+		}
+		size = kept;
+		index.clear();
+	}
+
+	private static boolean isEmpty(String s) {
+		return s == null || s.length() == 0;
+	}
+
+	/**
+	 * @return The number of rows that change
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getQuestionId(int row) {
+		return questionIds[row];
+	}
+
+	public int getOptionOrder(int row) {
+		return optionOrders[row];
+	}
+
+	/**
+	 * @return The change to the row's chosen count
+	 */
+	public int getChosen(int row) {
+		return chosen[row];
+	}
+
+	/**
+	 * @return The change to the row's text_fields count
+	 */
+	public int getTextFields(int row) {
+		return textFields[row];
+	}
+}
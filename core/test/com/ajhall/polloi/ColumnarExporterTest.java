@@ -0,0 +1,86 @@
+package com.ajhall.polloi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Writes responses with {@link ColumnarExporter} and reads them back with {@link ColumnarReader},
+ * checking every value against the row the CSV exporter would write.
+ */
+public class ColumnarExporterTest extends TestCase {
+	private SurveyDefinition survey;
+	private AnswerLayout layout;
+
+	@Override
+	protected void setUp() {
+		survey = LoadGenerator.syntheticSurvey("Columnar", 12, 4).getDefinition();
+		for(int i = 0; i < survey.getSize(); i++)
+			survey.getQuestion(i).setId(i + 1);
+		layout = new AnswerLayout(survey);
+	}
+
+	public void testRoundTrip() throws IOException {
+		// enough responses for three row groups, the last one partly full
+		ArrayList<SurveyResponse> responses = new ArrayList<SurveyResponse>();
+		LoadGenerator generator = new LoadGenerator(null, survey, 3);
+		for(int i = 0; i < 2 * ColumnarExporter.ROW_GROUP_SIZE + 100; i++)
+			responses.add(generator.randomResponse("user-" + i));
+
+		// an empty response, and text that CSV would have to quote
+		responses.add(new SurveyResponse(survey.getId(), "nobody", 0));
+		SurveyResponse awkward = new SurveyResponse(survey.getId(), "awkward", 0);
+		awkward.addItem(1, 0, "d", null);
+		awkward.addItem(1, 4, null, "a \"quote\", a comma,\r\nand caf\u00e9");
+		awkward.addItem(3, 0, "", null);
+		responses.add(awkward);
+
+		ColumnarReader reader = roundTrip(responses);
+		assertEquals(responses.size(), reader.getRowCount());
+		assertEquals(layout.getColumnCount(), reader.getColumnCount());
+		for(int column = 0; column < layout.getColumnCount(); column++)
+			assertEquals(layout.getColumnName(column), reader.getColumnName(column));
+
+		AnswerCursor c = new ResponseListCursor(responses, 1);
+		c.moveToFirst();
+		String[] expected = new String[layout.getColumnCount()];
+		String[] actual = new String[layout.getColumnCount()];
+		for(int row = 0; row < responses.size(); row++) {
+			layout.readRow(c, expected);
+			reader.readRow(row, actual);
+			for(int column = 0; column < expected.length; column++)
+				assertEquals("row " + row + ", " + layout.getColumnName(column), expected[column], actual[column]);
+		}
+	}
+
+	public void testColumnTypes() throws IOException {
+		ColumnarReader reader = roundTrip(new ArrayList<SurveyResponse>());
+		assertEquals(0, reader.getRowCount());
+		assertEquals(ColumnarExporter.TYPE_STRING, reader.getColumnType(AnswerLayout.USER_ID_COLUMN));
+		assertEquals(ColumnarExporter.TYPE_DICTIONARY, reader.getColumnType(layout.indexOf(1, 0, false)));
+		assertEquals(ColumnarExporter.TYPE_STRING, reader.getColumnType(layout.indexOf(1, 4, true)));
+		assertEquals(ColumnarExporter.TYPE_BOOLEAN, reader.getColumnType(layout.indexOf(2, 1, false)));
+		assertEquals(ColumnarExporter.TYPE_STRING, reader.getColumnType(layout.indexOf(3, 0, false)));
+	}
+
+	public void testIncompleteFileIsRejected() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ColumnarExporter(survey).write(new ResponseListCursor(new ArrayList<SurveyResponse>(), 1), out, null);
+		byte[] data = out.toByteArray();
+		try {
+			new ColumnarReader(Arrays.copyOf(data, data.length - 1));
+			fail("A truncated file was read");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private ColumnarReader roundTrip(ArrayList<SurveyResponse> responses) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue(new ColumnarExporter(survey).write(new ResponseListCursor(responses, 1), out, null));
+		return new ColumnarReader(out.toByteArray());
+	}
+}
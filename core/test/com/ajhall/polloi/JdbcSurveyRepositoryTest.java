@@ -0,0 +1,25 @@
+package com.ajhall.polloi;
+
+import java.util.List;
+
+/**
+ * Runs the {@link SurveyRepositoryContract} against {@link JdbcSurveyRepository} on an in-memory
+ * SQLite database. The sqlite-jdbc driver must be on the test classpath.
+ */
+public class JdbcSurveyRepositoryTest extends SurveyRepositoryContract {
+	@Override
+	protected SurveyRepository createRepository() {
+		return JdbcSurveyRepository.open(":memory:");
+	}
+
+	@Override
+	protected List<String> checkTallies(int surveyId) {
+		// the JDBC repository keeps no tallies table
+		return null;
+	}
+
+	@Override
+	protected void closeRepository() {
+		((JdbcSurveyRepository) repository).close();
+	}
+}
@@ -0,0 +1,62 @@
+package com.ajhall.polloi;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the supplemental text fields of a {@link ResponseState} against a plain map, through a
+ * long run of random changes.
+ */
+public class ResponseStateTest extends TestCase {
+	private SurveyDefinition survey;
+
+	@Override
+	protected void setUp() {
+		survey = LoadGenerator.syntheticSurvey("State", 30, 6).getDefinition();
+	}
+
+	public void testTextFieldsMatchAMap() {
+		ResponseState state = new ResponseState(survey);
+		HashMap<String, String> expected = new HashMap<String, String>();
+		Random random = new Random(11);
+
+		for(int i = 0; i < 5000; i++) {
+			int question = random.nextInt(survey.getSize());
+			int choice = random.nextInt(6);
+			String answer = random.nextInt(3) == 0 ? null : "answer " + i;
+			state.setTextFieldAnswer(question, choice, answer);
+			if(answer != null)
+				expected.put(question + "/" + choice, answer);
+			else
+				expected.remove(question + "/" + choice);
+
+			if(i % 500 == 499)
+				assertSameTextFields(expected, state);
+		}
+
+		state.clear();
+		expected.clear();
+		assertSameTextFields(expected, state);
+	}
+
+	public void testOverwriteAndClearOneTextField() {
+		ResponseState state = new ResponseState(survey);
+		state.setTextFieldAnswer(2, 3, "first");
+		state.setTextFieldAnswer(2, 3, "second");
+		state.setTextFieldAnswer(2, 4, "next to it");
+		assertEquals("second", state.getTextFieldAnswer(2, 3));
+
+		state.setTextFieldAnswer(2, 3, null);
+		assertNull(state.getTextFieldAnswer(2, 3));
+		assertEquals("next to it", state.getTextFieldAnswer(2, 4));
+	}
+
+	private void assertSameTextFields(HashMap<String, String> expected, ResponseState state) {
+		for(int question = 0; question < survey.getSize(); question++) {
+			for(int choice = 0; choice < 6; choice++)
+				assertEquals(question + "/" + choice, expected.get(question + "/" + choice), state.getTextFieldAnswer(question, choice));
+		}
+	}
+}
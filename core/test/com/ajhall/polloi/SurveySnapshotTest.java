@@ -0,0 +1,166 @@
+package com.ajhall.polloi;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Encodes answers with {@link SurveySnapshot} and decodes them into a fresh copy of the survey, as
+ * SurveyActivity does across onSaveInstanceState, and checks what it does with snapshots that
+ * don't fit.
+ */
+public class SurveySnapshotTest extends TestCase {
+	private SurveyDefinition definition;
+
+	@Override
+	protected void setUp() {
+		ArrayList<Question> questions = new ArrayList<Question>();
+		QuestionMC mc = new QuestionMC("Pick one", "First");
+		mc.addChoice("Yes");
+		mc.addChoice("No");
+		mc.addChoice("Other", "What?");
+		questions.add(mc);
+
+		// more than 8 choices, so the checked bits take 2 bytes
+		QuestionCheckbox checkbox = new QuestionCheckbox("Pick any", "First");
+		for(int j = 0; j < 10; j++)
+			checkbox.addChoice("Option " + (j + 1), j == 1 || j == 9 ? "Which?" : null);
+		questions.add(checkbox);
+
+		questions.add(new QuestionWriting("Anything else?", "Second"));
+		questions.add(new QuestionWriting("Left blank", "Second"));
+		definition = new SurveyDefinition(7, "Snapshot", "Intro", questions);
+	}
+
+	public void testRoundTrip() {
+		Survey survey = new Survey(definition);
+		ResponseState state = survey.getResponse();
+		state.setSelected(0, 2);
+		state.setTextFieldAnswer(0, 2, "Something else");
+		state.setChecked(1, 0, true);
+		state.setChecked(1, 1, true);
+		state.setTextFieldAnswer(1, 1, "");
+		state.setChecked(1, 8, true);
+		state.setChecked(1, 9, true);
+		state.setTextFieldAnswer(1, 9, "The last one");
+		state.setText(2, "Multi-byte: caf\u00e9 \u2713 \ud83d\ude00");
+
+		byte[] snapshot = SurveySnapshot.encode(survey);
+		assertEquals(7, SurveySnapshot.getSurveyId(snapshot));
+
+		Survey restored = new Survey(definition);
+		assertTrue(SurveySnapshot.decode(snapshot, restored));
+		assertSameAnswers(survey, restored);
+		assertEquals("", restored.getResponse().getTextFieldAnswer(1, 1));
+		assertNull(restored.getResponse().getText(3));
+	}
+
+	public void testUnansweredRoundTrip() {
+		Survey survey = new Survey(definition);
+		Survey restored = new Survey(definition);
+		assertTrue(SurveySnapshot.decode(SurveySnapshot.encode(survey), restored));
+		assertSameAnswers(survey, restored);
+		assertEquals(-1, restored.getResponse().getSelected(0));
+	}
+
+	/**
+	 * A snapshot holds a few bytes per question plus the text typed in, however large the survey.
+	 */
+	public void testSizeOfALargeSurvey() {
+		SurveyDefinition large = LoadGenerator.syntheticSurvey("Large", 1000, 5).getDefinition();
+
+		// a type, a choice or a byte of checked bits, and an empty string for each text field
+		byte[] empty = SurveySnapshot.encode(new Survey(large));
+		assertTrue(empty.length + " bytes", empty.length <= 3 * large.getSize() + 8);
+
+		Survey answered = new LoadGenerator(null, large, 1).randomSurvey();
+		int textBytes = 0;
+		ResponseState state = answered.getResponse();
+		for(int i = 0; i < large.getSize(); i++) {
+			textBytes += utf8Length(state.getText(i));
+			for(int j = 0; j < large.getQuestion(i).getChoiceCount(); j++)
+				textBytes += utf8Length(state.getTextFieldAnswer(i, j));
+		}
+		// a string's length takes a byte more once it's over 126 bytes, and no question here has
+		// more than one string
+		byte[] snapshot = SurveySnapshot.encode(answered);
+		assertTrue(snapshot.length + " bytes", snapshot.length <= empty.length + textBytes + large.getSize());
+
+		Survey restored = new Survey(large);
+		assertTrue(SurveySnapshot.decode(snapshot, restored));
+		assertSameAnswers(answered, restored);
+	}
+
+	public void testRejectsTruncatedOrPaddedSnapshots() {
+		Survey survey = new Survey(definition);
+		survey.getResponse().setText(2, "Some text to cut short");
+		byte[] snapshot = SurveySnapshot.encode(survey);
+
+		for(int length = 0; length < snapshot.length; length++)
+			assertFalse("length " + length, SurveySnapshot.decode(Arrays.copyOf(snapshot, length), new Survey(definition)));
+		assertFalse(SurveySnapshot.decode(Arrays.copyOf(snapshot, snapshot.length + 1), new Survey(definition)));
+		assertEquals(-1, SurveySnapshot.getSurveyId(new byte[0]));
+	}
+
+	public void testRejectsAnotherVersionOrSurvey() {
+		byte[] snapshot = SurveySnapshot.encode(new Survey(definition));
+
+		byte[] newer = snapshot.clone();
+		newer[0]++;
+		assertEquals(-1, SurveySnapshot.getSurveyId(newer));
+		assertFalse(SurveySnapshot.decode(newer, new Survey(definition)));
+
+		SurveyDefinition other = new SurveyDefinition(8, definition.getTitle(), definition.getIntroText(), questionsOf(definition));
+		assertFalse(SurveySnapshot.decode(snapshot, new Survey(other)));
+
+		// the same survey_id, but the questions changed since the snapshot was taken
+		ArrayList<Question> reordered = questionsOf(definition);
+		reordered.add(0, reordered.remove(2));
+		assertFalse(SurveySnapshot.decode(snapshot, new Survey(new SurveyDefinition(7, definition.getTitle(), definition.getIntroText(), reordered))));
+	}
+
+	public void testRejectsAChoiceOutOfRange() {
+		Survey survey = new Survey(definition);
+		survey.getResponse().setSelected(0, 2);
+		byte[] snapshot = SurveySnapshot.encode(survey);
+
+		// version, survey_id, question count and the first question's type come before its choice
+		assertEquals(3, snapshot[4]);
+		snapshot[4] = 4;
+		assertFalse(SurveySnapshot.decode(snapshot, new Survey(definition)));
+	}
+
+	private static ArrayList<Question> questionsOf(SurveyDefinition definition) {
+		ArrayList<Question> questions = new ArrayList<Question>();
+		for(int i = 0; i < definition.getSize(); i++)
+			questions.add(definition.getQuestion(i));
+		return questions;
+	}
+
+	private static int utf8Length(String s) {
+		try {
+			return s == null ? 0 : s.getBytes("UTF-8").length;
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static void assertSameAnswers(Survey expected, Survey actual) {
+		ResponseState a = expected.getResponse();
+		ResponseState b = actual.getResponse();
+		for(int i = 0; i < expected.getSize(); i++) {
+			Question question = expected.getQuestion(i);
+			if(question instanceof QuestionMC)
+				assertEquals("question " + i, a.getSelected(i), b.getSelected(i));
+			else if(question instanceof QuestionWriting)
+				assertEquals("question " + i, a.getText(i), b.getText(i));
+			for(int j = 0; j < question.getChoiceCount(); j++) {
+				if(question instanceof QuestionCheckbox)
+					assertEquals("question " + i + " choice " + j, a.isChecked(i, j), b.isChecked(i, j));
+				assertEquals("question " + i + " choice " + j, a.getTextFieldAnswer(i, j), b.getTextFieldAnswer(i, j));
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.ajhall.polloi;
+
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that a {@link SurveyTally} kept up to date one response at a time, with replaced responses
+ * taken away, always matches a tally counted from scratch.
+ */
+public class SurveyTallyTest extends TestCase {
+	private SurveyDefinition survey;
+
+	@Override
+	protected void setUp() {
+		survey = LoadGenerator.syntheticSurvey("Tally", 12, 4).getDefinition();
+		for(int i = 0; i < survey.getSize(); i++)
+			survey.getQuestion(i).setId(i + 1);
+	}
+
+	public void testIncrementalMatchesRecount() {
+		LoadGenerator generator = new LoadGenerator(null, survey, 42);
+		SurveyTally incremental = survey.newTally();
+		HashMap<String, SurveyResponse> latest = new HashMap<String, SurveyResponse>();
+
+		// 40 respondents, most of whom submit more than once
+		for(int i = 0; i < 300; i++) {
+			SurveyResponse response = generator.randomResponse("user-" + (i * 7 % 40));
+			SurveyResponse replaced = latest.put(response.getUserId(), response);
+			if(replaced != null)
+				incremental.remove(replaced);
+			incremental.add(response);
+
+			if(i % 50 == 49)
+				assertSameCounts(recount(latest), incremental);
+		}
+		assertSameCounts(recount(latest), incremental);
+		assertEquals(40, incremental.getResponseCount());
+	}
+
+	public void testRemoveUndoesAdd() {
+		LoadGenerator generator = new LoadGenerator(null, survey, 7);
+		SurveyTally tally = survey.newTally();
+		SurveyResponse response = generator.randomResponse("user");
+		tally.add(response);
+		tally.remove(response);
+		assertSameCounts(survey.newTally(), tally);
+	}
+
+	public void testCountsAnAnswer() {
+		// question 1 is multiple choice, question 2 checkbox, question 3 writing
+		SurveyResponse response = new SurveyResponse(survey.getId(), "user", 0);
+		response.addItem(1, 0, "b", null);
+		response.addItem(1, 4, null, "because");
+		response.addItem(2, 1, "1", null);
+		response.addItem(2, 2, "0", null);
+		response.addItem(3, 0, "", null);
+
+		SurveyTally tally = survey.newTally();
+		tally.add(response);
+		assertEquals(1, tally.getResponseCount());
+		assertEquals(1, tally.getAnsweredCount(1));
+		assertEquals(1, tally.getOptionCount(1, 2));
+		assertEquals(0, tally.getOptionCount(1, 1));
+		assertEquals(1, tally.getTextFieldCount(1, 4));
+		assertEquals(1, tally.getAnsweredCount(2));
+		assertEquals(1, tally.getOptionCount(2, 1));
+		assertEquals(0, tally.getOptionCount(2, 2));
+		assertEquals(0, tally.getAnsweredCount(3));
+	}
+
+	private SurveyTally recount(HashMap<String, SurveyResponse> responses) {
+		SurveyTally tally = survey.newTally();
+		for(SurveyResponse response : responses.values())
+			tally.add(response);
+		return tally;
+	}
+
+	private void assertSameCounts(SurveyTally expected, SurveyTally actual) {
+		assertEquals("responses", expected.getResponseCount(), actual.getResponseCount());
+		for(int i = 0; i < survey.getSize(); i++) {
+			Question question = survey.getQuestion(i);
+			int id = question.getId();
+			assertEquals("answered " + id, expected.getAnsweredCount(id), actual.getAnsweredCount(id));
+			for(int optionOrder = 1; optionOrder <= question.getChoiceCount(); optionOrder++) {
+				assertEquals("option " + id + "/" + optionOrder, expected.getOptionCount(id, optionOrder), actual.getOptionCount(id, optionOrder));
+				assertEquals("text field " + id + "/" + optionOrder, expected.getTextFieldCount(id, optionOrder), actual.getTextFieldCount(id, optionOrder));
+			}
+
+			for(int j = 0; j < survey.getSize(); j++) {
+				int[][] expectedTab = expected.getCrossTab(id, survey.getQuestion(j).getId());
+				int[][] actualTab = actual.getCrossTab(id, survey.getQuestion(j).getId());
+				if(expectedTab == null) {
+					assertNull(actualTab);
+					continue;
+				}
+				for(int row = 0; row < expectedTab.length; row++) {
+					for(int column = 0; column < expectedTab[row].length; column++)
+						assertEquals("cross-tab " + id + "x" + survey.getQuestion(j).getId(), expectedTab[row][column], actualTab[row][column]);
+				}
+			}
+		}
+	}
+}
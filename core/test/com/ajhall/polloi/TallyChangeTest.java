@@ -0,0 +1,105 @@
+package com.ajhall.polloi;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that adding up the {@link TallyChange} of every submitted response, as the tallies table
+ * does, gives the same counts as a {@link SurveyTally} counted from scratch.
+ */
+public class TallyChangeTest extends TestCase {
+	private SurveyDefinition survey;
+
+	@Override
+	protected void setUp() {
+		survey = LoadGenerator.syntheticSurvey("Tally", 12, 4).getDefinition();
+		for(int i = 0; i < survey.getSize(); i++)
+			survey.getQuestion(i).setId(i + 1);
+	}
+
+	public void testChangesAddUpToRecount() {
+		LoadGenerator generator = new LoadGenerator(null, survey, 42);
+		// (chosen, text_fields) by (question_id, option_order), like the tallies table
+		HashMap<Long, int[]> rows = new HashMap<Long, int[]>();
+		HashMap<String, SurveyResponse> latest = new HashMap<String, SurveyResponse>();
+
+		for(int i = 0; i < 300; i++) {
+			SurveyResponse response = generator.randomResponse("user-" + (i * 7 % 40));
+			SurveyResponse replaced = latest.put(response.getUserId(), response);
+			TallyChange change = TallyChange.of(survey, replaced, response);
+			for(int row = 0; row < change.size(); row++) {
+				assertTrue(change.getChosen(row) != 0 || change.getTextFields(row) != 0);
+				int[] counts = row(rows, change.getQuestionId(row), change.getOptionOrder(row));
+				counts[0] += change.getChosen(row);
+				counts[1] += change.getTextFields(row);
+			}
+
+			if(i % 50 == 49)
+				assertSameCounts(recount(latest), rows);
+		}
+		assertSameCounts(recount(latest), rows);
+	}
+
+	public void testResubmittingTheSameAnswersChangesNothing() {
+		SurveyResponse response = new LoadGenerator(null, survey, 7).randomResponse("user");
+		assertEquals(0, TallyChange.of(survey, response, response).size());
+	}
+
+	public void testFirstResponseIsCounted() {
+		SurveyResponse response = new SurveyResponse(survey.getId(), "user", 0);
+		response.addItem(1, 0, "b", null);
+		TallyChange change = TallyChange.of(survey, null, response);
+
+		HashMap<Long, int[]> rows = new HashMap<Long, int[]>();
+		for(int row = 0; row < change.size(); row++)
+			row(rows, change.getQuestionId(row), change.getOptionOrder(row))[0] += change.getChosen(row);
+		assertEquals(3, rows.size());
+		assertEquals(1, row(rows, 0, 0)[0]);
+		assertEquals(1, row(rows, 1, 0)[0]);
+		assertEquals(1, row(rows, 1, 2)[0]);
+	}
+
+	private static int[] row(HashMap<Long, int[]> rows, int questionId, int optionOrder) {
+		long key = ((long) questionId << 32) | optionOrder;
+		int[] counts = rows.get(key);
+		if(counts == null) {
+			counts = new int[2];
+			rows.put(key, counts);
+		}
+		return counts;
+	}
+
+	private SurveyTally recount(HashMap<String, SurveyResponse> responses) {
+		SurveyTally tally = survey.newTally();
+		for(SurveyResponse response : responses.values())
+			tally.add(response);
+		return tally;
+	}
+
+	private void assertSameCounts(SurveyTally expected, HashMap<Long, int[]> rows) {
+		HashMap<Long, int[]> left = new HashMap<Long, int[]>(rows);
+		assertEquals("responses", expected.getResponseCount(), remove(left, 0, 0)[0]);
+		for(int i = 0; i < survey.getSize(); i++) {
+			Question question = survey.getQuestion(i);
+			int id = question.getId();
+			assertEquals("answered " + id, expected.getAnsweredCount(id), remove(left, id, 0)[0]);
+			for(int optionOrder = 1; optionOrder <= question.getChoiceCount(); optionOrder++) {
+				int[] counts = remove(left, id, optionOrder);
+				assertEquals("option " + id + "/" + optionOrder, expected.getOptionCount(id, optionOrder), counts[0]);
+				assertEquals("text field " + id + "/" + optionOrder, expected.getTextFieldCount(id, optionOrder), counts[1]);
+			}
+		}
+		// every other row must have added up to nothing
+		for(Map.Entry<Long, int[]> row : left.entrySet()) {
+			assertEquals(0, row.getValue()[0]);
+			assertEquals(0, row.getValue()[1]);
+		}
+	}
+
+	private static int[] remove(HashMap<Long, int[]> rows, int questionId, int optionOrder) {
+		int[] counts = rows.remove(((long) questionId << 32) | optionOrder);
+		return counts != null ? counts : new int[2];
+	}
+}
@@ -0,0 +1,171 @@
+package com.ajhall.polloi;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Stores survey answers in two narrow tables shared by every survey, instead of one wide answers_N
+ * table per survey. The responses table has one row per submitted set of answers. The answers table
+ * has one row per answered item, keyed by (survey_id, user_id, question_id, option_order). Refer to
+ * {@link AnswerLayout} for how items map to export columns.
+ */
+public class AnswerStore {
+	private AnswerStore() {}
+
+	/**
+	 * Store one user's answers to a survey, replacing any answers the user already submitted for
+	 * it. The response gets a new response_id even if it replaces an old one. This doesn't start a
+	 * transaction of its own, so callers writing more than one response should wrap them in one.
+	 *
+	 * @param db
+	 *        The database
+	 * @param response
+	 *        The answers to store
+	 * @return The response_id of the stored response
+	 */
+	public static long upsertResponse(SQLiteDatabase db, SurveyResponse response) {
+		String[] whereArgs = new String[] { Integer.toString(response.getSurveyId()), response.getUserId() };
+		db.delete("answers", "survey_id=? AND user_id=?", whereArgs);
+
+		// REPLACE deletes the old row on a (survey_id, user_id) conflict, so the response_id is new
+		ContentValues cv = new ContentValues();
+		cv.put("survey_id", response.getSurveyId());
+		cv.put("user_id", response.getUserId());
+		cv.put("submitted_at", response.getSubmittedAt());
+		long responseId = db.replaceOrThrow("responses", null, cv);
+
+		SQLiteStatement insert = db.compileStatement(SurveySchema.INSERT_ANSWER);
+		try {
+			for(int i = 0; i < response.getItemCount(); i++) {
+				insert.bindLong(1, response.getSurveyId());
+				insert.bindString(2, response.getUserId());
+				insert.bindLong(3, response.getQuestionId(i));
+				insert.bindLong(4, response.getOptionOrder(i));
+				bindStringOrNull(insert, 5, response.getValue(i));
+				bindStringOrNull(insert, 6, response.getTextField(i));
+				insert.executeInsert();
+			}
+		} finally {
+			insert.close();
+		}
+		return responseId;
+	}
+
+	private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+		if(value != null)
+			statement.bindString(index, value);
+		else
+			statement.bindNull(index);
+	}
+
+	/**
+	 * Check whether a user has already submitted a set of answers for a survey.
+	 *
+	 * @return True if there is a response from the user for the survey
+	 */
+	public static boolean hasResponse(SQLiteDatabase db, int surveyId, String userId) {
+		Cursor c = null;
+		try {
+			c = db.query("responses", new String[] { "response_id" }, "survey_id=? AND user_id=?", new String[] { Integer.toString(surveyId), userId }, null, null, null);
+			return c.getCount() > 0;
+		} finally {
+			DatabaseManager.closeCursor(c);
+		}
+	}
+
+	/**
+	 * Query every answered item in a survey, grouped by response. The caller must close the cursor.
+	 *
+	 * @return A cursor with the columns response_id, user_id, question_id, option_order, value and
+	 *         text_field
+	 */
+	public static Cursor queryAnswers(SQLiteDatabase db, int surveyId) {
+		return queryAnswers(db, surveyId, 0);
+	}
+
+	/**
+	 * Query the answered items of every response submitted after the given response, grouped by
+	 * response. Response IDs only ever increase, and a response that is overwritten gets a new ID,
+	 * so this returns exactly the responses written since afterResponseId was read. The caller must
+	 * close the cursor.
+	 *
+	 * @param afterResponseId
+	 *        Only responses with a greater response_id are returned
+	 * @return A cursor with the columns response_id, user_id, question_id, option_order, value and
+	 *         text_field
+	 */
+	public static Cursor queryAnswers(SQLiteDatabase db, int surveyId, long afterResponseId) {
+		return db.rawQuery(SurveySchema.SELECT_SURVEY_ANSWERS, new String[] { Integer.toString(surveyId), Long.toString(afterResponseId) });
+	}
+
+	/**
+	 * Read the response a user has stored for a survey.
+	 *
+	 * @return The response, or null if the user hasn't answered the survey. Its submission time is
+	 *         not read and is 0.
+	 */
+	public static SurveyResponse readResponse(SQLiteDatabase db, int surveyId, String userId) {
+		Cursor c = null;
+		try {
+			c = db.rawQuery(SurveySchema.SELECT_USER_ANSWERS, new String[] { Integer.toString(surveyId), userId });
+			if(!c.moveToFirst())
+				return null;
+			return nextResponse(c, surveyId);
+		} finally {
+			DatabaseManager.closeCursor(c);
+		}
+	}
+
+	/**
+	 * Read one response from a cursor returned by {@link #queryAnswers} and move the cursor past it
+	 * to the next response.
+	 *
+	 * @param c
+	 *        A cursor over answered items, grouped by response, positioned on a response's first item
+	 * @param surveyId
+	 *        The survey the cursor was queried for
+	 * @return The response. Its submission time is not in the cursor and is 0.
+	 */
+	public static SurveyResponse nextResponse(Cursor c, int surveyId) {
+		long responseId = c.getLong(0);
+		SurveyResponse response = new SurveyResponse(surveyId, c.getString(1), 0);
+		while(!c.isAfterLast() && c.getLong(0) == responseId) {
+			if(!c.isNull(2))
+				response.addItem(c.getInt(2), c.getInt(3), c.getString(4), c.getString(5));
+			c.moveToNext();
+		}
+		return response;
+	}
+
+	/**
+	 * Count the responses to every survey.
+	 */
+	public static int countResponses(SQLiteDatabase db) {
+		Cursor c = null;
+		try {
+			c = db.rawQuery("SELECT count(*) FROM responses", null);
+			c.moveToFirst();
+			return c.getInt(0);
+		} finally {
+			DatabaseManager.closeCursor(c);
+		}
+	}
+
+	/**
+	 * Count the responses to a survey with a response_id no greater than the given one. If this is
+	 * less than the number of responses that were there when upToResponseId was read, some of them
+	 * have since been overwritten or deleted.
+	 */
+	public static int countResponses(SQLiteDatabase db, int surveyId, long upToResponseId) {
+		Cursor c = null;
+		try {
+			c = db.rawQuery("SELECT count(*) FROM responses WHERE survey_id = ? AND response_id <= ?", new String[] { Integer.toString(surveyId), Long.toString(upToResponseId) });
+			c.moveToFirst();
+			return c.getInt(0);
+		} finally {
+			DatabaseManager.closeCursor(c);
+		}
+	}
+}
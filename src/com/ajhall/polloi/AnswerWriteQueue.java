@@ -0,0 +1,312 @@
+package com.ajhall.polloi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Writes submitted responses to the answer store on a single background thread, so submitting a
+ * survey never waits on the database. Whatever has been queued by the time the writer thread wakes
+ * up is written as one batch in one transaction. Once a batch has committed, its responses are
+ * appended to the {@link ResponseJournal} and an incremental CSV export of every survey in the
+ * batch is requested from the {@link ExportWorker}, which reads the new responses from the journal.
+ * The tallies table is updated in the same transaction as each response (see {@link TallyTable}),
+ * and the {@link ResultTallies} once it has committed, so each response a user replaces is read
+ * back inside the transaction before it is overwritten. If a batch fails, its responses are written
+ * one at a time, and any that still fail are kept with {@link ResponseJournal#appendFailed(List)}
+ * rather than dropped. Get the shared instance from
+ * {@link GlobalsApp#getAnswerWriteQueue(Context)}.
+ */
+public class AnswerWriteQueue {
+	private static final String TAG = "AnswerWriteQueue";
+
+	private final Context context;
+	private final LinkedBlockingQueue<Entry> queue = new LinkedBlockingQueue<Entry>();
+
+	// statistics, guarded by this
+	private int depth;
+	private long batchCount;
+	private long responseCount;
+	private long failedCount;
+	private long lastFlushLatency;
+	private long maxFlushLatency;
+	private long totalFlushLatency;
+
+	/**
+	 * A queued response and when it was queued, for measuring flush latency.
+	 */
+	private static class Entry {
+		final SurveyResponse response;
+		final long queuedAt;
+
+		Entry(SurveyResponse response, long queuedAt) {
+			this.response = response;
+			this.queuedAt = queuedAt;
+		}
+	}
+
+	/**
+	 * Create the queue and start its writer thread.
+	 *
+	 * @param context
+	 *        A context; only its application context is kept
+	 */
+	public AnswerWriteQueue(Context context) {
+		this.context = context.getApplicationContext();
+
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, TAG);
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Queue a response to be written. Returns immediately.
+	 *
+	 * @param response
+	 *        The answers to write. If the user already has a response to the survey, it is
+	 *        replaced.
+	 */
+	public void enqueue(SurveyResponse response) {
+		synchronized(this) {
+			depth++;
+		}
+		queue.add(new Entry(response, System.nanoTime()));
+	}
+
+	private void writeLoop() {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+		ArrayList<Entry> batch = new ArrayList<Entry>();
+
+		while(true) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			queue.drainTo(batch);
+
+			try {
+				writeBatch(batch);
+			} catch (RuntimeException e) {
+				// whatever went wrong, the writer has to stay alive for the responses after these
+				Log.e(TAG, "Batch of " + batch.size() + " failed after writing", e);
+			} finally {
+				synchronized(this) {
+					depth -= batch.size();
+					notifyAll();
+				}
+			}
+			batch.clear();
+		}
+	}
+
+	private void writeBatch(ArrayList<Entry> batch) {
+		// the responses committed, and their IDs, for the journal
+		ArrayList<SurveyResponse> committed = new ArrayList<SurveyResponse>(batch.size());
+		ArrayList<Long> responseIds = new ArrayList<Long>(batch.size());
+		ArrayList<SurveyResponse> replaced = new ArrayList<SurveyResponse>(batch.size());
+		ArrayList<SurveyResponse> failed = new ArrayList<SurveyResponse>();
+		long start = Tracer.begin();
+
+		try {
+			SQLiteDatabase db = GlobalsApp.getDatabase(context);
+			db.beginTransaction();
+			try {
+				for(Entry entry : batch) {
+					replaced.add(store(db, entry.response));
+					responseIds.add(AnswerStore.upsertResponse(db, entry.response));
+					committed.add(entry.response);
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+			for(Entry entry : batch)
+				Tracer.end(Tracer.SUBMIT_TO_COMMIT, entry.queuedAt);
+		} catch (RuntimeException e) {
+			// don't let one bad response take the rest of the batch down with it; usually an
+			// SQLiteException, but a malformed response can make the tallies throw too
+			Log.e(TAG, "Batch of " + batch.size() + " failed, writing one at a time", e);
+			committed.clear();
+			responseIds.clear();
+			replaced.clear();
+			for(Entry entry : batch) {
+				try {
+					SQLiteDatabase db = GlobalsApp.getDatabase(context);
+					db.beginTransaction();
+					try {
+						SurveyResponse old = store(db, entry.response);
+						long responseId = AnswerStore.upsertResponse(db, entry.response);
+						db.setTransactionSuccessful();
+						replaced.add(old);
+						responseIds.add(responseId);
+						committed.add(entry.response);
+					} finally {
+						db.endTransaction();
+					}
+					Tracer.end(Tracer.SUBMIT_TO_COMMIT, entry.queuedAt);
+				} catch (RuntimeException e2) {
+					Log.e(TAG, "Could not write response from " + entry.response.getUserId() + " to survey " + entry.response.getSurveyId(), e2);
+					failed.add(entry.response);
+				}
+			}
+		}
+
+		Tracer.end(Tracer.WRITE_BATCH, start);
+		Tracer.count(Tracer.RESPONSES_WRITTEN, committed.size());
+		Tracer.count(Tracer.WRITE_FAILURES, failed.size());
+
+		// keep what couldn't be written, so it can be recovered by hand; the drafts of these
+		// responses are kept too, so their respondents get their answers back if they log in again
+		if(!failed.isEmpty()) {
+			try {
+				GlobalsApp.getResponseJournal(context).appendFailed(failed);
+			} catch (IOException e) {
+				Log.e(TAG, "Could not keep " + failed.size() + " failed responses", e);
+			}
+		}
+
+		ResultTallies tallies = GlobalsApp.getResultTallies();
+		for(int i = 0; i < committed.size(); i++) {
+			try {
+				tallies.update(responseIds.get(i), replaced.get(i), committed.get(i));
+			} catch (RuntimeException e) {
+				// counted again from the database the next time it's asked for
+				Log.e(TAG, "Could not update the tally of survey " + committed.get(i).getSurveyId(), e);
+				tallies.invalidate(committed.get(i).getSurveyId());
+			}
+		}
+
+		// if this fails the exporter finds responses missing from the journal and rewrites the
+		// whole file from the database instead
+		try {
+			GlobalsApp.getResponseJournal(context).append(committed, responseIds);
+		} catch (IOException e) {
+			Log.e(TAG, "Could not journal " + committed.size() + " responses", e);
+		}
+
+		// the drafts of the committed responses are no longer needed to recover them
+		for(SurveyResponse response : committed)
+			DraftJournal.delete(context, response.getSurveyId(), response.getUserId());
+
+		long latency = (System.nanoTime() - batch.get(0).queuedAt) / 1000000;
+		synchronized(this) {
+			batchCount++;
+			responseCount += committed.size();
+			failedCount += failed.size();
+			lastFlushLatency = latency;
+			maxFlushLatency = Math.max(maxFlushLatency, latency);
+			totalFlushLatency += latency;
+		}
+
+		// bring the CSV file of each survey in the batch up to date, once per survey; the export
+		// worker coalesces these with any export still waiting
+		LinkedHashSet<Integer> surveyIds = new LinkedHashSet<Integer>();
+		for(SurveyResponse response : committed)
+			surveyIds.add(response.getSurveyId());
+		for(int surveyId : surveyIds)
+			SurveyDBHelper.appendAnswersToCsv(context, surveyId);
+	}
+
+	/**
+	 * Read the response that a response is about to replace and update the tallies table for it.
+	 * Called inside the transaction, just before the response is stored.
+	 *
+	 * @return The replaced response, or null if this is the user's first
+	 */
+	static SurveyResponse store(SQLiteDatabase db, SurveyResponse response) {
+		SurveyResponse old = AnswerStore.readResponse(db, response.getSurveyId(), response.getUserId());
+		SurveyDefinition survey = GlobalsApp.getSurveyCache().getDefinition(db, response.getSurveyId());
+		if(survey != null)
+			TallyTable.apply(db, survey, old, response);
+		return old;
+	}
+
+	/**
+	 * Wait until every queued response has been written.
+	 *
+	 * @param timeoutMillis
+	 *        The longest time to wait
+	 * @return True if the queue is empty, false if the wait timed out
+	 */
+	public synchronized boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while(depth > 0) {
+			long remaining = deadline - System.currentTimeMillis();
+			if(remaining <= 0)
+				return false;
+			wait(remaining);
+		}
+		return true;
+	}
+
+	/**
+	 * @return The number of responses queued or being written that haven't been committed yet
+	 */
+	public synchronized int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return The number of batches committed so far
+	 */
+	public synchronized long getBatchCount() {
+		return batchCount;
+	}
+
+	/**
+	 * @return The number of responses committed so far
+	 */
+	public synchronized long getResponseCount() {
+		return responseCount;
+	}
+
+	/**
+	 * @return The number of responses that couldn't be written and were kept in the
+	 *         {@link ResponseJournal}'s failed responses instead
+	 */
+	public synchronized long getFailedCount() {
+		return failedCount;
+	}
+
+	/**
+	 * @return How long the oldest response of the last batch waited between being queued and
+	 *         being committed, in milliseconds
+	 */
+	public synchronized long getLastFlushLatency() {
+		return lastFlushLatency;
+	}
+
+	/**
+	 * @return The longest flush latency seen so far, in milliseconds
+	 */
+	public synchronized long getMaxFlushLatency() {
+		return maxFlushLatency;
+	}
+
+	/**
+	 * @return The mean flush latency over all batches, in milliseconds
+	 */
+	public synchronized long getAverageFlushLatency() {
+		if(batchCount == 0)
+			return 0;
+		return totalFlushLatency / batchCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "AnswerWriteQueue [depth " + depth + ", batches " + batchCount + ", responses " + responseCount + ", failed " + failedCount + ", flush latency last " + lastFlushLatency + " ms, max " + maxFlushLatency + " ms, mean " + getAverageFlushLatency() + " ms]";
+	}
+}
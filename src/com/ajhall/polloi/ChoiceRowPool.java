@@ -0,0 +1,179 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.content.Context;
+import android.text.TextWatcher;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.CompoundButton;
+import android.widget.EditText;
+
+/**
+ * Recycles the choice rows (a RadioButton or CheckBox and its supplemental EditText) that
+ * {@link QuestionMC} and {@link QuestionCheckbox} build their pages from. When a page is destroyed
+ * its rows are returned with {@link #recycle(View)}, and the next page to be built takes them
+ * instead of inflating new ones. A pool belongs to one Activity, since its views hold that
+ * Activity's context.
+ *
+ * <p>
+ * Pooled rows never save or restore their own view state. A RadioGroup gives each button a view ID,
+ * which a reused button would otherwise carry to another page, and the state the pager saved for the
+ * old page could then check it there. Pages are always filled in from the {@link ResponseState}.
+ */
+public class ChoiceRowPool {
+	/**
+	 * A choice button and the text field shown under it.
+	 */
+	public static class ChoiceRow {
+		public final CompoundButton button;
+		public final EditText textField;
+		private final int layout;
+		private TextWatcher watcher;
+
+		private ChoiceRow(CompoundButton button, EditText textField, int layout) {
+			this.button = button;
+			this.textField = textField;
+			this.layout = layout;
+		}
+
+		/**
+		 * Watch the text field, replacing the watcher set by whichever page used this row before.
+		 */
+		public void setTextWatcher(TextWatcher newWatcher) {
+			if(watcher != null)
+				textField.removeTextChangedListener(watcher);
+			watcher = newWatcher;
+			if(watcher != null)
+				textField.addTextChangedListener(watcher);
+		}
+
+		/**
+		 * Put the row back the way a freshly inflated one would be.
+		 */
+		private void reset() {
+			button.setOnCheckedChangeListener(null);
+			button.setId(View.NO_ID);
+			button.setChecked(false);
+			button.setTag(null);
+			setTextWatcher(null);
+			textField.setText("");
+			textField.setHint(null);
+			textField.setTag(null);
+			textField.setVisibility(View.VISIBLE);
+		}
+	}
+
+	private final int maxRows;
+	private final HashMap<Integer, ArrayList<ChoiceRow>> free = new HashMap<Integer, ArrayList<ChoiceRow>>();
+	private final HashMap<View, ChoiceRow> inUse = new HashMap<View, ChoiceRow>();
+	private int inflateCount;
+	private int reuseCount;
+
+	/**
+	 * @param maxRows
+	 *        The most free rows of each layout to keep; any more are dropped
+	 */
+	public ChoiceRowPool(int maxRows) {
+		this.maxRows = maxRows;
+	}
+
+	/**
+	 * Get a choice row, reusing a free one if there is one. The caller adds the button and text
+	 * field to its page.
+	 *
+	 * @param inflater
+	 *        For inflating a new row
+	 * @param layout
+	 *        The layout of the button, R.layout.radio_button_style or R.layout.checkbox_style
+	 * @param parent
+	 *        The view the button will be added to, which supplies its layout params
+	 * @return A row in its initial state
+	 */
+	public ChoiceRow obtain(LayoutInflater inflater, int layout, ViewGroup parent) {
+		ChoiceRow row = null;
+		ArrayList<ChoiceRow> rows = free.get(layout);
+		if(rows != null && !rows.isEmpty()) {
+			row = rows.remove(rows.size() - 1);
+			reuseCount++;
+		} else {
+			Context context = inflater.getContext();
+			CompoundButton button = (CompoundButton) inflater.inflate(layout, parent, false);
+			button.setSaveEnabled(false);
+			EditText textField = new EditText(context);
+			textField.setSaveEnabled(false);
+			row = new ChoiceRow(button, textField, layout);
+			inflateCount++;
+		}
+
+		inUse.put(row.button, row);
+		return row;
+	}
+
+	/**
+	 * Take back every choice row in a page that is being destroyed. The rows are detached from
+	 * the page.
+	 *
+	 * @param page
+	 *        The root view of the page
+	 */
+	public void recycle(View page) {
+		if(!(page instanceof ViewGroup))
+			return;
+
+		ViewGroup group = (ViewGroup) page;
+		for(int i = group.getChildCount() - 1; i >= 0; i--) {
+			View child = group.getChildAt(i);
+			ChoiceRow row = inUse.remove(child);
+			if(row != null) {
+				// the text field always follows its button, so walking backwards both are at or
+				// after i
+				group.removeView(row.button);
+				group.removeView(row.textField);
+				release(row);
+			} else {
+				recycle(child);
+			}
+		}
+	}
+
+	private void release(ChoiceRow row) {
+		row.reset();
+		ArrayList<ChoiceRow> rows = free.get(row.layout);
+		if(rows == null) {
+			rows = new ArrayList<ChoiceRow>();
+			free.put(row.layout, rows);
+		}
+		if(rows.size() < maxRows)
+			rows.add(row);
+	}
+
+	/**
+	 * Drop every row, e.g. when the Activity is destroyed.
+	 */
+	public void clear() {
+		free.clear();
+		inUse.clear();
+	}
+
+	/**
+	 * @return The number of rows inflated because none was free
+	 */
+	public int getInflateCount() {
+		return inflateCount;
+	}
+
+	/**
+	 * @return The number of rows reused instead of being inflated
+	 */
+	public int getReuseCount() {
+		return reuseCount;
+	}
+
+	@Override
+	public String toString() {
+		return "ChoiceRowPool [inflated " + inflateCount + ", reused " + reuseCount + ", in use " + inUse.size() + "]";
+	}
+}
@@ -0,0 +1,109 @@
+package com.ajhall.polloi;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Owns the single, long-lived connection to surveys.db. Opening the database file is expensive, so
+ * instead of building a new DatabaseHelper for every query, everything in the app shares the
+ * SQLiteDatabase handed out by {@link #getDatabase()}. The connection is opened once, with
+ * write-ahead logging enabled so background writes don't block readers, and stays open for the
+ * life of the process. Callers must never close it themselves. Get the shared instance from
+ * {@link GlobalsApp#getDatabaseManager(Context)}.
+ */
+public class DatabaseManager {
+	private final Context context;
+	private final DatabaseHelper helper;
+	private SQLiteDatabase db;
+	private int openCount;
+	private int closeCount;
+
+	/**
+	 * Create a manager for surveys.db. The database is not opened until the first call to
+	 * {@link #getDatabase()}.
+	 * 
+	 * @param context
+	 *        A context; only its application context is kept
+	 */
+	public DatabaseManager(Context context) {
+		this.context = context.getApplicationContext();
+		helper = new DatabaseHelper(this.context);
+	}
+
+	/**
+	 * Get the shared database, opening it if this is the first call or if it has been closed.
+	 * 
+	 * @return The shared, writable database. Do not close it.
+	 */
+	public synchronized SQLiteDatabase getDatabase() {
+		if(db == null || !db.isOpen()) {
+			db = helper.getWritableDatabase();
+			db.enableWriteAheadLogging();
+			openCount++;
+		}
+		return db;
+	}
+
+	/**
+	 * Start opening the shared database on a background thread, so that creating or upgrading it
+	 * happens while the app is starting up rather than on the first query from the UI thread. A
+	 * call to {@link #getDatabase()} made while this is running waits for it to finish. Debuggable
+	 * builds then check every survey's tallies against a recount (see TallyTable).
+	 */
+	public void openInBackground() {
+		Thread opener = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				SQLiteDatabase db = getDatabase();
+				if((context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0)
+					TallyTable.checkAll(db);
+			}
+		}, "DatabaseManager");
+		opener.setDaemon(true);
+		opener.start();
+	}
+
+	/**
+	 * Close the shared database. Only needed when the process is going away; the next call to
+	 * {@link #getDatabase()} will reopen it.
+	 */
+	public synchronized void close() {
+		if(db != null && db.isOpen()) {
+			helper.close();
+			closeCount++;
+		}
+		db = null;
+	}
+
+	/**
+	 * @return The number of times the database file has been opened by this manager
+	 */
+	public synchronized int getOpenCount() {
+		return openCount;
+	}
+
+	/**
+	 * @return The number of times the database file has been closed by this manager
+	 */
+	public synchronized int getCloseCount() {
+		return closeCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "DatabaseManager [opened " + openCount + ", closed " + closeCount + "]";
+	}
+
+	/**
+	 * Close a cursor if it exists and hasn't been closed already. Safe to call from a finally block.
+	 * 
+	 * @param c
+	 *        A cursor, or null
+	 */
+	public static void closeCursor(Cursor c) {
+		if(c != null && !c.isClosed())
+			c.close();
+	}
+}
@@ -0,0 +1,332 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Upgrades surveys.db in place from whatever version a device has to {@link #LATEST_VERSION},
+ * keeping every survey and response on it. Each schema change is a {@link Migration} in
+ * {@link #MIGRATIONS}; to change the schema, add a step with the next version number to the end of
+ * the list. Never edit or remove a step that has shipped.
+ *
+ * <p>
+ * All the steps needed run in a single transaction, so a device is either fully upgraded or left
+ * exactly as it was. How long each step took is logged.
+ */
+public class DatabaseMigrator {
+	private static final String TAG = "DatabaseMigrator";
+
+	/**
+	 * The number of rows {@link #copyInChunks} copies per statement.
+	 */
+	public static final int CHUNK_SIZE = 500;
+
+	/**
+	 * Every schema change, in order. Version 1 is the original schema and has no step. Each step
+	 * holds the SQL it runs, rather than using SurveySchema or the classes that use the tables
+	 * today, so that changing those later doesn't change what an old database is upgraded with.
+	 */
+	private static final Migration[] MIGRATIONS = {
+		new Migration(2, "move answers_N tables into responses and answers") {
+			@Override
+			public void migrate(SQLiteDatabase db) {
+				db.execSQL("CREATE TABLE IF NOT EXISTS responses (response_id INTEGER PRIMARY KEY AUTOINCREMENT, survey_id INTEGER NOT NULL, user_id TEXT NOT NULL COLLATE NOCASE, submitted_at INTEGER, UNIQUE (survey_id, user_id))");
+				db.execSQL("CREATE TABLE IF NOT EXISTS answers (survey_id INTEGER NOT NULL, user_id TEXT NOT NULL COLLATE NOCASE, question_id INTEGER NOT NULL, option_order INTEGER NOT NULL, value TEXT, text_field TEXT, PRIMARY KEY (survey_id, user_id, question_id, option_order))");
+				moveAnswerTables(db);
+			}
+		},
+		new Migration(3, "index questions, key question_options, add foreign keys, allocate question IDs from a sequence") {
+			@Override
+			public void migrate(SQLiteDatabase db) {
+				// question_options will refer to questions by name, so build each new table under
+				// another name and rename it into place after the old one is gone
+				db.execSQL("CREATE TABLE questions_v3 (question_id INTEGER PRIMARY KEY AUTOINCREMENT, survey_id INTEGER NOT NULL REFERENCES surveys (survey_id) ON DELETE CASCADE, section TEXT, question_order INTEGER, type TEXT, prompt TEXT)");
+				copyInChunks(db, "questions", "questions_v3", "question_id, survey_id, section, question_order, type, prompt");
+				db.execSQL("DROP TABLE questions");
+				db.execSQL("ALTER TABLE questions_v3 RENAME TO questions");
+				db.execSQL("CREATE INDEX questions_survey_order ON questions (survey_id, question_order)");
+
+				db.execSQL("CREATE TABLE question_options_v3 (question_id INTEGER NOT NULL REFERENCES questions (question_id) ON DELETE CASCADE, option_order INTEGER NOT NULL, answer_text TEXT, text_field_label TEXT, PRIMARY KEY (question_id, option_order))");
+				copyInChunks(db, "question_options", "question_options_v3", "question_id, option_order, answer_text, text_field_label");
+				db.execSQL("DROP TABLE question_options");
+				db.execSQL("ALTER TABLE question_options_v3 RENAME TO question_options");
+			}
+		},
+		new Migration(4, "add tallies table") {
+			@Override
+			public void migrate(SQLiteDatabase db) {
+				db.execSQL("CREATE TABLE IF NOT EXISTS tallies (survey_id INTEGER NOT NULL, question_id INTEGER NOT NULL, option_order INTEGER NOT NULL, chosen INTEGER NOT NULL DEFAULT 0, text_fields INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (survey_id, question_id, option_order))");
+				for(String sql : COUNT_TALLIES)
+					db.execSQL(sql);
+			}
+		},
+	};
+
+	/**
+	 * Fill in the tallies table of version 4 from the answers, with the counts SurveyTally makes.
+	 * Questions of type 1 are checkbox questions, type 2 multiple choice, and any other type
+	 * writing. A choice is stored at option_order 0 as a letter, "a" for the first option, and a
+	 * checked box as "1" at its option's position. Options are counted by position, not by their
+	 * stored option_order.
+	 */
+	private static final String[] COUNT_TALLIES = {
+		// a row for each survey, question and option, as a survey's tallies are first written
+		"INSERT INTO tallies (survey_id, question_id, option_order, chosen) SELECT s.survey_id, 0, 0, (SELECT count(*) FROM responses r WHERE r.survey_id = s.survey_id) FROM surveys s",
+		"INSERT INTO tallies (survey_id, question_id, option_order) SELECT survey_id, question_id, 0 FROM questions",
+		"INSERT INTO tallies (survey_id, question_id, option_order) SELECT q.survey_id, q.question_id, (SELECT count(*) FROM question_options p WHERE p.question_id = o.question_id AND p.option_order <= o.option_order) FROM question_options o JOIN questions q ON q.question_id = o.question_id WHERE q.type = 1 OR q.type = 2",
+
+		// responses that answered each question
+		"UPDATE tallies SET chosen = (SELECT count(*) FROM answers a WHERE a.survey_id = tallies.survey_id AND a.question_id = tallies.question_id AND a.option_order = 0 AND length(a.value) = 1) WHERE option_order = 0 AND question_id IN (SELECT question_id FROM questions WHERE type = 2)",
+		"UPDATE tallies SET chosen = (SELECT count(DISTINCT a.user_id) FROM answers a WHERE a.survey_id = tallies.survey_id AND a.question_id = tallies.question_id AND a.value = '1' AND a.option_order BETWEEN 1 AND (SELECT count(*) FROM question_options p WHERE p.question_id = tallies.question_id)) WHERE option_order = 0 AND question_id IN (SELECT question_id FROM questions WHERE type = 1)",
+		"UPDATE tallies SET chosen = (SELECT count(*) FROM answers a WHERE a.survey_id = tallies.survey_id AND a.question_id = tallies.question_id AND a.option_order = 0 AND a.value <> '') WHERE option_order = 0 AND question_id IN (SELECT question_id FROM questions WHERE type <> 1 AND type <> 2)",
+
+		// responses that chose or checked each option, and filled in its text field
+		"UPDATE tallies SET chosen = (SELECT count(*) FROM answers a WHERE a.survey_id = tallies.survey_id AND a.question_id = tallies.question_id AND a.option_order = 0 AND length(a.value) = 1 AND a.value = substr('abcdefghijklmnopqrstuvwxyz', tallies.option_order, 1)) WHERE option_order > 0 AND question_id IN (SELECT question_id FROM questions WHERE type = 2)",
+		"UPDATE tallies SET chosen = (SELECT count(*) FROM answers a WHERE a.survey_id = tallies.survey_id AND a.question_id = tallies.question_id AND a.option_order = tallies.option_order AND a.value = '1') WHERE option_order > 0 AND question_id IN (SELECT question_id FROM questions WHERE type = 1)",
+		"UPDATE tallies SET text_fields = (SELECT count(*) FROM answers a WHERE a.survey_id = tallies.survey_id AND a.question_id = tallies.question_id AND a.option_order = tallies.option_order AND a.text_field <> '') WHERE option_order > 0",
+	};
+
+	/**
+	 * The version a database has once every migration has run.
+	 */
+	public static final int LATEST_VERSION = MIGRATIONS[MIGRATIONS.length - 1].getVersion();
+
+	static {
+		for(int i = 0; i < MIGRATIONS.length; i++) {
+			if(MIGRATIONS[i].getVersion() != i + 2)
+				throw new AssertionError(MIGRATIONS[i] + " is out of order");
+		}
+	}
+
+	/**
+	 * Run every migration after oldVersion up to newVersion, in order, in one transaction.
+	 *
+	 * @param db
+	 *        The database to upgrade
+	 * @param oldVersion
+	 *        The version the database has now
+	 * @param newVersion
+	 *        The version to upgrade to, at most {@link #LATEST_VERSION}
+	 * @throws IllegalArgumentException
+	 *         If there is no way to get from oldVersion to newVersion
+	 */
+	public static void upgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+		if(oldVersion < 1 || newVersion > LATEST_VERSION || oldVersion > newVersion)
+			throw new IllegalArgumentException("No migration from version " + oldVersion + " to " + newVersion);
+
+		long start = SystemClock.uptimeMillis();
+		db.beginTransaction();
+		try {
+			for(Migration migration : MIGRATIONS) {
+				if(migration.getVersion() <= oldVersion || migration.getVersion() > newVersion)
+					continue;
+
+				long stepStart = SystemClock.uptimeMillis();
+				migration.migrate(db);
+				Log.i(TAG, migration + " took " + (SystemClock.uptimeMillis() - stepStart) + " ms");
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		Log.i(TAG, "Upgraded from version " + oldVersion + " to " + newVersion + " in " + (SystemClock.uptimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Copy every row of one table into another, {@link #CHUNK_SIZE} rows at a time in rowid order.
+	 * For rebuilding a table, e.g. to change its constraints: create the new table under a temporary
+	 * name, copy the old one into it, drop the old one and rename the new one. (Renaming the old
+	 * table out of the way instead would also rewrite the foreign keys that refer to it.) Foreign
+	 * keys are off while migrations run, so dropping the old table doesn't cascade.
+	 *
+	 * <p>
+	 * Every chunk runs in the caller's transaction, which for a migration is the whole upgrade; chunks
+	 * only keep each statement short and show where in the old table a copy failed. A row that
+	 * breaks a constraint of the new table, e.g. a second row with the same key, fails the copy with
+	 * an SQLiteConstraintException, after the chunk's rowid range is logged. The upgrade then rolls
+	 * back and the database keeps its old version and every row, rather than being upgraded without
+	 * them.
+	 *
+	 * @param db
+	 *        The database, normally inside a migration
+	 * @param from
+	 *        The table to copy from
+	 * @param to
+	 *        The table to copy into
+	 * @param columns
+	 *        A comma separated list of the columns to copy, which both tables must have
+	 * @return The number of rows copied, which is every row of the old table
+	 * @throws SQLiteConstraintException
+	 *         If a row breaks a constraint of the new table
+	 */
+	public static int copyInChunks(SQLiteDatabase db, String from, String to, String columns) {
+		SQLiteStatement chunkEnd = db.compileStatement("SELECT max(rowid) FROM (SELECT rowid FROM " + from + " WHERE rowid > ? ORDER BY rowid LIMIT " + CHUNK_SIZE + ")");
+		SQLiteStatement copy = db.compileStatement("INSERT INTO " + to + " (" + columns + ") SELECT " + columns + " FROM " + from + " WHERE rowid > ? AND rowid <= ? ORDER BY rowid");
+		int copied = 0;
+
+		try {
+			long lastRowId = Long.MIN_VALUE;
+			while(true) {
+				chunkEnd.bindLong(1, lastRowId);
+				String end = chunkEnd.simpleQueryForString();
+				if(end == null)
+					break;
+				long endRowId = Long.parseLong(end);
+
+				copy.bindLong(1, lastRowId);
+				copy.bindLong(2, endRowId);
+				try {
+					copied += copy.executeUpdateDelete();
+				} catch (SQLiteConstraintException e) {
+					Log.e(TAG, "A row of " + from + " with a rowid from " + (lastRowId == Long.MIN_VALUE ? "the first" : Long.toString(lastRowId + 1)) + " to " + endRowId + " breaks a constraint of " + to, e);
+					throw e;
+				}
+				lastRowId = endRowId;
+			}
+		} finally {
+			chunkEnd.close();
+			copy.close();
+		}
+
+		Log.d(TAG, "Copied " + copied + " rows from " + from + " to " + to);
+		return copied;
+	}
+
+	/**
+	 * Move every answers_N table of version 1 into the responses and answers tables of version 2,
+	 * then drop it. Each answers_N table has a user_id column and columns named after the survey's
+	 * questions, by position: q1 for a multiple choice or writing question's answer, stored at
+	 * option_order 0, q1_2 for a checkbox option, and q1_2_text_field for an option's text field,
+	 * both stored at the option's position. Every non-NULL value is copied. A table with a value in
+	 * a column that matches no question is kept, so the value isn't lost, and logged.
+	 */
+	private static void moveAnswerTables(SQLiteDatabase db) {
+		ArrayList<Integer> surveyIds = new ArrayList<Integer>();
+		Cursor c = null;
+		try {
+			c = db.rawQuery("SELECT s.survey_id FROM surveys s JOIN sqlite_master m ON m.type = 'table' AND m.name = 'answers_' || s.survey_id", null);
+			while(c.moveToNext())
+				surveyIds.add(c.getInt(0));
+		} finally {
+			DatabaseManager.closeCursor(c);
+		}
+
+		SQLiteStatement insertResponse = db.compileStatement("INSERT INTO responses (survey_id, user_id, submitted_at) VALUES (?, ?, ?)");
+		SQLiteStatement insertAnswer = db.compileStatement("INSERT INTO answers (survey_id, user_id, question_id, option_order, value, text_field) VALUES (?, ?, ?, ?, ?, ?)");
+		try {
+			for(int surveyId : surveyIds) {
+				int unmatched = moveAnswerTable(db, surveyId, insertResponse, insertAnswer);
+				if(unmatched == 0)
+					db.execSQL("DROP TABLE answers_" + surveyId);
+				else
+					Log.w(TAG, "Kept answers_" + surveyId + ": " + unmatched + " values are in columns that match no question");
+			}
+		} finally {
+			insertResponse.close();
+			insertAnswer.close();
+		}
+	}
+
+	/**
+	 * Copy one answers_N table.
+	 *
+	 * @return The number of non-NULL values left behind because their column matches no question
+	 */
+	private static int moveAnswerTable(SQLiteDatabase db, int surveyId, SQLiteStatement insertResponse, SQLiteStatement insertAnswer) {
+		// column name to {question_id, option_order, 1 if it's a text field}
+		HashMap<String, int[]> columns = new HashMap<String, int[]>();
+		Cursor c = null;
+		try {
+			c = db.rawQuery("SELECT q.question_id, q.type, o.option_order, o.text_field_label FROM questions q LEFT JOIN question_options o ON o.question_id = q.question_id WHERE q.survey_id = ? ORDER BY q.question_order, q.question_id, o.option_order", new String[] { Integer.toString(surveyId) });
+			int questionId = 0;
+			int position = 0;
+			int option = 0;
+			while(c.moveToNext()) {
+				int type = c.getInt(1);
+				String name;
+				if(position == 0 || c.getInt(0) != questionId) {
+					questionId = c.getInt(0);
+					position++;
+					option = 0;
+					if(type != 1)
+						columns.put("q" + position, new int[] { questionId, 0, 0 });
+				}
+				if(c.isNull(2) || (type != 1 && type != 2))
+					continue;
+
+				option++;
+				name = "q" + position + "_" + option;
+				if(type == 1)
+					columns.put(name, new int[] { questionId, option, 0 });
+				if(!c.isNull(3))
+					columns.put(name + "_text_field", new int[] { questionId, option, 1 });
+			}
+		} finally {
+			DatabaseManager.closeCursor(c);
+		}
+
+		int unmatched = 0;
+		try {
+			c = db.rawQuery("SELECT * FROM answers_" + surveyId + " ORDER BY rowid", null);
+			String[] names = c.getColumnNames();
+			int userIdColumn = c.getColumnIndexOrThrow("user_id");
+			long now = System.currentTimeMillis();
+
+			while(c.moveToNext()) {
+				String userId = c.getString(userIdColumn);
+				insertResponse.bindLong(1, surveyId);
+				insertResponse.bindString(2, userId);
+				insertResponse.bindLong(3, now);
+				insertResponse.executeInsert();
+
+				// an option's value and its text field go in one row of answers
+				LinkedHashMap<Long, String[]> items = new LinkedHashMap<Long, String[]>();
+				for(int i = 0; i < names.length; i++) {
+					if(i == userIdColumn || c.isNull(i))
+						continue;
+					int[] column = columns.get(names[i]);
+					if(column == null) {
+						unmatched++;
+						continue;
+					}
+					long key = ((long) column[0] << 32) | column[1];
+					String[] item = items.get(key);
+					if(item == null) {
+						item = new String[2];
+						items.put(key, item);
+					}
+					item[column[2]] = c.getString(i);
+				}
+
+				for(Map.Entry<Long, String[]> item : items.entrySet()) {
+					insertAnswer.bindLong(1, surveyId);
+					insertAnswer.bindString(2, userId);
+					insertAnswer.bindLong(3, item.getKey() >> 32);
+					insertAnswer.bindLong(4, (int) (long) item.getKey());
+					bindStringOrNull(insertAnswer, 5, item.getValue()[0]);
+					bindStringOrNull(insertAnswer, 6, item.getValue()[1]);
+					insertAnswer.executeInsert();
+				}
+			}
+		} finally {
+			DatabaseManager.closeCursor(c);
+		}
+		return unmatched;
+	}
+
+	private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+		if(value == null)
+			statement.bindNull(index);
+		else
+			statement.bindString(index, value);
+	}
+}
@@ -0,0 +1,84 @@
+package com.ajhall.polloi;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+/**
+ * Shows what the {@link Tracer} has recorded, with the state of the database, the answer write
+ * queue and the export worker, and saves it all to /[sdcard]/Survey/trace-[date]-[time].txt to be
+ * sent in. Respondents never see it: it's opened by a long press on the title of the login screen.
+ */
+public class DiagnosticsActivity extends Activity {
+	private TextView mText;
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.diagnostics_activity);
+
+		mText = (TextView) findViewById(R.id.diagnostics_text);
+
+		final Button saveButton = (Button) findViewById(R.id.diagnostics_save);
+		saveButton.setOnClickListener(new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				saveButton.setEnabled(false);
+				final String header = getHeader();
+				new Thread(new Runnable() {
+					@Override
+					public void run() {
+						String message;
+						try {
+							message = "Saved " + Tracer.dumpToFile(ExportWorker.getExportDir(), header).getName();
+						} catch (IOException e) {
+							e.printStackTrace();
+							message = "Could not save: " + e.getMessage();
+						}
+
+						final String result = message;
+						runOnUiThread(new Runnable() {
+							@Override
+							public void run() {
+								saveButton.setEnabled(true);
+								Toast.makeText(DiagnosticsActivity.this, result, Toast.LENGTH_LONG).show();
+							}
+						});
+					}
+				}, "DiagnosticsActivity").start();
+			}
+		});
+
+		Button resetButton = (Button) findViewById(R.id.diagnostics_reset);
+		resetButton.setOnClickListener(new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				Tracer.reset();
+				refresh();
+			}
+		});
+	}
+
+	@Override
+	protected void onResume() {
+		super.onResume();
+		refresh();
+	}
+
+	private void refresh() {
+		mText.setText(getHeader() + "\n\n" + Tracer.dump());
+	}
+
+	/**
+	 * @return The statistics the app's workers keep for themselves, one per line
+	 */
+	private String getHeader() {
+		return GlobalsApp.getDatabaseManager(this) + "\n" + GlobalsApp.getAnswerWriteQueue(this) + "\n" + GlobalsApp.getExportWorker(this) + "\nDatabase " + getDatabasePath(DatabaseHelper.DB_NAME).length() + " bytes";
+	}
+}
@@ -0,0 +1,523 @@
+package com.ajhall.polloi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * An append-only journal of the answers to a survey that is still being filled in, so they survive
+ * the process being killed before the user submits. There is one file per user and survey. It
+ * starts with the answers as they were when the journal was opened, as a {@link SurveySnapshot},
+ * and each change after that is appended as a small delta: the question index, the choice and the
+ * new value. Changes are written by a background thread, which waits up to
+ * {@link #FLUSH_DELAY_MS} after a change so that the changes made close together, like the
+ * keystrokes of a writing answer, share one write and one fsync.
+ *
+ * <p>
+ * The file is a sequence of frames, each the length of its payload and the payload's CRC32 as
+ * big-endian int32s, then the payload. A frame cut short by a crash, or one that fails its
+ * checksum, ends the journal. The first frame holds {@link #VERSION}, the user ID and the snapshot;
+ * each later one holds one or more changes, each an op byte then varints and strings as in
+ * {@link SurveySnapshot}:
+ * <ul>
+ * <li>{@link #OP_SELECT}: question, selected choice plus one (0 for none)</li>
+ * <li>{@link #OP_CHECK} or {@link #OP_UNCHECK}: question, choice</li>
+ * <li>{@link #OP_TEXT}: question, answer</li>
+ * <li>{@link #OP_TEXT_FIELD}: question, choice, answer</li>
+ * </ul>
+ *
+ * SurveyActivity replays the journal with {@link #replay} before it shows the first page, then
+ * opens a new one, which starts from the replayed answers, so a journal never holds more than one
+ * visit's changes. The {@link AnswerWriteQueue} deletes the journal once the submitted response
+ * has committed.
+ */
+public class DraftJournal implements ResponseState.ChangeListener {
+	private static final String TAG = "DraftJournal";
+
+	private static final int VERSION = 1;
+
+	/**
+	 * How long the writer waits after a change for more changes to write with it.
+	 */
+	public static final long FLUSH_DELAY_MS = 500;
+
+	/**
+	 * Frames longer than this are taken to be damage rather than answers.
+	 */
+	private static final int MAX_FRAME_LENGTH = 4 * 1024 * 1024;
+
+	private static final int OP_SELECT = 1;
+	private static final int OP_CHECK = 2;
+	private static final int OP_UNCHECK = 3;
+	private static final int OP_TEXT = 4;
+	private static final int OP_TEXT_FIELD = 5;
+
+	private final File file;
+	private final byte[] header;
+	private final Thread writer;
+
+	// the changes not yet handed to the writer, by answer, so a later change to the same answer
+	// replaces the earlier one; guarded by this
+	private final LinkedHashMap<Long, byte[]> pending = new LinkedHashMap<Long, byte[]>();
+	private long firstPendingAt;
+	private boolean urgent;
+	private boolean closed;
+	private boolean failed;
+
+	private DraftJournal(File file, byte[] header) {
+		this.file = file;
+		this.header = header;
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, TAG);
+		writer.setPriority(Thread.NORM_PRIORITY - 1);
+	}
+
+	static File getFile(Context context, int surveyId, String userId) {
+		StringBuilder name = new StringBuilder("survey_").append(surveyId).append('_');
+		for(byte b : toUtf8(userId != null ? userId : ""))
+			name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		return new File(new File(context.getApplicationContext().getFilesDir(), "drafts"), name.append(".draft").toString());
+	}
+
+	/**
+	 * Start a new journal for a survey's answers, replacing any journal the user already had for
+	 * it, and start recording each change made to the answers. The file is written in the
+	 * background.
+	 *
+	 * @param context
+	 *        A context; the journals are kept in its private files directory
+	 * @param survey
+	 *        The survey being filled in, with the answers it has so far
+	 * @param userId
+	 *        The user filling it in
+	 * @return The journal, which the caller must close
+	 */
+	public static DraftJournal open(Context context, Survey survey, String userId) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buffer);
+		try {
+			out.writeByte(VERSION);
+			writeString(out, userId);
+			out.write(SurveySnapshot.encode(survey));
+			out.flush();
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+
+		DraftJournal journal = new DraftJournal(getFile(context, survey.getId(), userId), buffer.toByteArray());
+		journal.writer.start();
+		survey.getResponse().setChangeListener(journal);
+		return journal;
+	}
+
+	/**
+	 * Apply the answers in a user's journal for a survey, if there is one.
+	 *
+	 * @param context
+	 *        A context
+	 * @param survey
+	 *        The survey, freshly read from the database
+	 * @param userId
+	 *        The user filling it in
+	 * @return True if answers were restored from a journal. False if there was none or it didn't
+	 *         match the survey's current definition, in which case the survey's answers are
+	 *         cleared.
+	 */
+	public static boolean replay(Context context, Survey survey, String userId) {
+		File file = getFile(context, survey.getId(), userId);
+		if(!file.exists())
+			return false;
+
+		long start = SystemClock.uptimeMillis();
+		byte[] bytes;
+		try {
+			bytes = readFile(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+
+		int offset = 0;
+		int frames = 0;
+		byte[] payload;
+		while((payload = readFrame(bytes, offset)) != null) {
+			try {
+				if(frames == 0 ? !applyHeader(payload, survey, userId) : !applyChanges(payload, survey))
+					break;
+			} catch (IOException e) {
+				// a change cut short, which the checksum should have caught
+				break;
+			}
+			offset += 8 + payload.length;
+			frames++;
+		}
+		// without its first frame, a journal's changes have nothing to apply to
+		if(frames == 0)
+			survey.getResponse().clear();
+
+		if(offset < bytes.length)
+			Log.w(TAG, "Ignoring " + (bytes.length - offset) + " bytes at the end of " + file.getName());
+		Log.d(TAG, "Replayed " + frames + " frames of " + file.getName() + " in " + (SystemClock.uptimeMillis() - start) + " ms");
+		return frames > 0;
+	}
+
+	/**
+	 * Delete a user's journal for a survey, e.g. because the response has been committed.
+	 */
+	public static void delete(Context context, int surveyId, String userId) {
+		getFile(context, surveyId, userId).delete();
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			byte[] bytes = new byte[(int) file.length()];
+			int read = 0;
+			while(read < bytes.length) {
+				int n = in.read(bytes, read, bytes.length - read);
+				if(n < 0)
+					break;
+				read += n;
+			}
+			return read == bytes.length ? bytes : Arrays.copyOf(bytes, read);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return The payload of the frame at an offset, or null if there isn't a whole, undamaged one
+	 */
+	private static byte[] readFrame(byte[] bytes, int offset) {
+		if(bytes.length - offset < 8)
+			return null;
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, offset, 8));
+		int length;
+		int crc;
+		try {
+			length = in.readInt();
+			crc = in.readInt();
+		} catch (IOException e) {
+			return null;
+		}
+		if(length < 0 || length > MAX_FRAME_LENGTH || length > bytes.length - offset - 8)
+			return null;
+
+		byte[] payload = Arrays.copyOfRange(bytes, offset + 8, offset + 8 + length);
+		CRC32 check = new CRC32();
+		check.update(payload);
+		return (int) check.getValue() == crc ? payload : null;
+	}
+
+	private static boolean applyHeader(byte[] payload, Survey survey, String userId) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		if(in.readUnsignedByte() != VERSION)
+			return false;
+		String journalUserId = readString(in);
+		if(journalUserId == null ? userId != null : !journalUserId.equals(userId))
+			return false;
+
+		byte[] snapshot = new byte[in.available()];
+		in.readFully(snapshot);
+		return SurveySnapshot.getSurveyId(snapshot) == survey.getId() && SurveySnapshot.decode(snapshot, survey);
+	}
+
+	/**
+	 * Apply the changes in one frame.
+	 *
+	 * @return False if a change doesn't fit the survey, in which case the changes before it have
+	 *         been applied
+	 */
+	private static boolean applyChanges(byte[] payload, Survey survey) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		ResponseState state = survey.getResponse();
+		while(in.available() > 0) {
+			int op = in.readUnsignedByte();
+			int question = readVarint(in);
+			if(question >= survey.getSize())
+				return false;
+			int choiceCount = survey.getQuestion(question).getChoiceCount();
+
+			switch(op) {
+			case OP_SELECT:
+				int selected = readVarint(in) - 1;
+				if(selected >= choiceCount)
+					return false;
+				state.setSelected(question, selected);
+				break;
+			case OP_CHECK:
+			case OP_UNCHECK:
+				int choice = readVarint(in);
+				if(choice >= choiceCount)
+					return false;
+				state.setChecked(question, choice, op == OP_CHECK);
+				break;
+			case OP_TEXT:
+				state.setText(question, readString(in));
+				break;
+			case OP_TEXT_FIELD:
+				int textFieldChoice = readVarint(in);
+				if(textFieldChoice >= choiceCount)
+					return false;
+				state.setTextFieldAnswer(question, textFieldChoice, readString(in));
+				break;
+			default:
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void onSelectedChanged(int question, int choice) {
+		ByteArrayOutputStream change = newChange(OP_SELECT, question);
+		writeVarint(change, choice + 1);
+		add(key(OP_SELECT, question, 0), change);
+	}
+
+	@Override
+	public void onCheckedChanged(int question, int choice, boolean isChecked) {
+		ByteArrayOutputStream change = newChange(isChecked ? OP_CHECK : OP_UNCHECK, question);
+		writeVarint(change, choice);
+		add(key(OP_CHECK, question, choice), change);
+	}
+
+	@Override
+	public void onTextChanged(int question, String answer) {
+		ByteArrayOutputStream change = newChange(OP_TEXT, question);
+		writeString(change, answer);
+		add(key(OP_TEXT, question, 0), change);
+	}
+
+	@Override
+	public void onTextFieldChanged(int question, int choice, String answer) {
+		ByteArrayOutputStream change = newChange(OP_TEXT_FIELD, question);
+		writeVarint(change, choice);
+		writeString(change, answer);
+		add(key(OP_TEXT_FIELD, question, choice), change);
+	}
+
+	private static ByteArrayOutputStream newChange(int op, int question) {
+		ByteArrayOutputStream change = new ByteArrayOutputStream(16);
+		change.write(op);
+		writeVarint(change, question);
+		return change;
+	}
+
+	/**
+	 * The answer a change is to, so that only the last change to each answer is written.
+	 */
+	private static long key(int op, int question, int choice) {
+		return ((long) op << 56) | ((long) question << 24) | choice;
+	}
+
+	private synchronized void add(long key, ByteArrayOutputStream change) {
+		if(closed || failed)
+			return;
+
+		if(pending.isEmpty())
+			firstPendingAt = SystemClock.uptimeMillis();
+		// removed first, so the change goes after any change to another answer made since
+		pending.remove(key);
+		pending.put(key, change.toByteArray());
+		notifyAll();
+	}
+
+	/**
+	 * Write the changes made so far without waiting for more, e.g. because the Activity is being
+	 * paused and the process may be killed. Returns without waiting for the write.
+	 */
+	public synchronized void flush() {
+		urgent = true;
+		notifyAll();
+	}
+
+	/**
+	 * Stop recording changes and write those not written yet, keeping the journal for the next
+	 * visit. Waits for the write to finish, so that a journal opened next sees every change.
+	 *
+	 * @param survey
+	 *        The survey the journal was opened for
+	 */
+	public void close(Survey survey) {
+		survey.getResponse().setChangeListener(null);
+		synchronized(this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Stop recording changes and delete the journal, e.g. because the user chose to discard their
+	 * answers.
+	 *
+	 * @param survey
+	 *        The survey the journal was opened for
+	 */
+	public void discard(Survey survey) {
+		synchronized(this) {
+			pending.clear();
+		}
+		close(survey);
+		file.delete();
+	}
+
+	/**
+	 * The writer thread: write the header, then each group of changes, syncing after each.
+	 */
+	private void write() {
+		FileOutputStream out = null;
+		try {
+			// a new journal replaces the old one only once it's safely written
+			file.getParentFile().mkdirs();
+			File tmp = new File(file.getPath() + ".tmp");
+			out = new FileOutputStream(tmp);
+			writeFrame(out, header);
+			if(!tmp.renameTo(file))
+				throw new IOException("Could not rename " + tmp + " to " + file);
+
+			byte[] frame;
+			while((frame = takeChanges()) != null)
+				writeFrame(out, frame);
+		} catch (IOException e) {
+			Log.e(TAG, "Could not write " + file.getName() + "; answers will not be kept if the app is killed", e);
+			synchronized(this) {
+				failed = true;
+				pending.clear();
+			}
+		} catch (InterruptedException e) {
+			Log.w(TAG, "Interrupted writing " + file.getName());
+		} finally {
+			if(out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wait for changes, then for up to {@link #FLUSH_DELAY_MS} after the first for more.
+	 *
+	 * @return The changes, or null once the journal is closed and every change has been taken
+	 */
+	private synchronized byte[] takeChanges() throws InterruptedException {
+		while(pending.isEmpty() && !closed)
+			wait();
+		while(!urgent && !closed) {
+			long wait = firstPendingAt + FLUSH_DELAY_MS - SystemClock.uptimeMillis();
+			if(wait <= 0)
+				break;
+			wait(wait);
+		}
+		urgent = false;
+		if(pending.isEmpty())
+			return null;
+
+		ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		for(byte[] change : pending.values())
+			frame.write(change, 0, change.length);
+		pending.clear();
+		return frame.toByteArray();
+	}
+
+	private static void writeFrame(FileOutputStream out, byte[] payload) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		ByteArrayOutputStream frame = new ByteArrayOutputStream(8 + payload.length);
+		DataOutputStream header = new DataOutputStream(frame);
+		header.writeInt(payload.length);
+		header.writeInt((int) crc.getValue());
+		header.write(payload);
+		header.flush();
+
+		out.write(frame.toByteArray());
+		out.getFD().sync();
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, int n) {
+		while((n & ~0x7f) != 0) {
+			out.write((n & 0x7f) | 0x80);
+			n >>>= 7;
+		}
+		out.write(n);
+	}
+
+	private static int readVarint(DataInputStream in) throws IOException {
+		int n = 0;
+		int shift = 0;
+		int b;
+		do {
+			if(shift > 28)
+				throw new EOFException("Varint too long");
+			b = in.readUnsignedByte();
+			n |= (b & 0x7f) << shift;
+			shift += 7;
+		} while((b & 0x80) != 0);
+		return n;
+	}
+
+	/**
+	 * Write a string as a varint of its UTF-8 length plus one and its bytes; 0 for null.
+	 */
+	private static void writeString(ByteArrayOutputStream out, String s) {
+		if(s == null) {
+			writeVarint(out, 0);
+			return;
+		}
+		byte[] bytes = toUtf8(s);
+		writeVarint(out, bytes.length + 1);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		writeString(buffer, s);
+		buffer.writeTo(out);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = readVarint(in) - 1;
+		if(length < 0)
+			return null;
+		if(length > in.available())
+			throw new EOFException();
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static byte[] toUtf8(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
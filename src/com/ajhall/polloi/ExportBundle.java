@@ -0,0 +1,594 @@
+package com.ajhall.polloi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.JsonReader;
+import android.util.JsonWriter;
+import android.util.Log;
+
+/**
+ * Writes every survey and all of its answers into one directory of gzip compressed chunks, for
+ * copying off a tablet at the end of the day. The first chunk holds the survey definitions, in the
+ * format of assets/seed_surveys.json (see {@link SurveySeed}). Each following chunk holds up to
+ * {@link #CHUNK_ROWS} lines of one survey's CSV export; a survey's first chunk starts with the
+ * header line. Since gzip files can be concatenated, unzipping a survey's chunks one after another
+ * gives its whole CSV file, though a user may appear in it more than once (see below).
+ *
+ * <p>
+ * manifest.json lists the chunks in order, each with its size and the CRC32 of its compressed
+ * bytes, so that a copy can be checked and only missing or damaged chunks copied again. The
+ * manifest is rewritten after each chunk is synced to the card, so if the app is stopped part way,
+ * the next bundle request carries on from the last whole chunk instead of starting again.
+ * "complete" is set once every survey has been written. Responses are streamed from the database
+ * one chunk at a time, so memory use doesn't grow with the number of respondents.
+ *
+ * <p>
+ * A survey's chunks can hold more than one row for the same user: a resumed bundle carries on
+ * after the last response_id written, and a respondent who submits again in between gets a new
+ * response_id, so their new answers land in a later chunk while the old ones stay in an earlier
+ * one. Within a survey, rows are in response_id order across its chunks, so the last row for a
+ * user_id is the one that counts. {@link #readAnswers} reads a survey's CSV back that way.
+ */
+public class ExportBundle {
+	private static final String TAG = "ExportBundle";
+
+	/**
+	 * The most responses in one chunk.
+	 */
+	public static final int CHUNK_ROWS = 2000;
+
+	/**
+	 * The manifest format version.
+	 */
+	public static final int VERSION = 1;
+
+	public static final String MANIFEST = "manifest.json";
+	private static final String DIR_PREFIX = "bundle-";
+	private static final String KIND_SURVEYS = "surveys";
+	private static final String KIND_ANSWERS = "answers";
+
+	/**
+	 * One chunk file, as listed in the manifest.
+	 */
+	private static class Chunk {
+		String file;
+		String kind;
+		int surveyId = -1;
+		long lastResponseId;
+		int rows;
+		long bytes;
+		long crc32;
+	}
+
+	private final File dir;
+	private final ArrayList<Chunk> chunks = new ArrayList<Chunk>();
+	private long created;
+	private boolean complete;
+	private int rowCount;
+
+	private ExportBundle(File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Find the newest bundle under a directory that was never finished, or start a new one.
+	 *
+	 * @param parent
+	 *        The directory that holds the bundles, e.g. /[sdcard]/Survey
+	 * @return The bundle, ready for {@link #write}
+	 */
+	public static ExportBundle openOrCreate(File parent) throws IOException {
+		File[] dirs = parent.listFiles();
+		File newest = null;
+		if(dirs != null) {
+			for(File dir : dirs) {
+				if(dir.isDirectory() && dir.getName().startsWith(DIR_PREFIX) && (newest == null || dir.getName().compareTo(newest.getName()) > 0))
+					newest = dir;
+			}
+		}
+
+		if(newest != null && new File(newest, MANIFEST).exists()) {
+			ExportBundle bundle = new ExportBundle(newest);
+			bundle.readManifest();
+			if(!bundle.complete) {
+				bundle.dropDamagedChunks();
+				Log.i(TAG, "Resuming " + newest.getName() + " after " + bundle.chunks.size() + " chunks");
+				return bundle;
+			}
+		}
+
+		File dir = new File(parent, DIR_PREFIX + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()));
+		if(!dir.mkdirs())
+			throw new IOException("Could not create " + dir);
+		ExportBundle bundle = new ExportBundle(dir);
+		bundle.created = System.currentTimeMillis();
+		return bundle;
+	}
+
+	public File getDir() {
+		return dir;
+	}
+
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * @return The number of responses written by the last call to write
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Write the chunks that aren't written yet. Responses submitted to a survey while its chunks are
+	 * being written are included if they come before its last chunk, and otherwise go in the next
+	 * bundle.
+	 *
+	 * @param db
+	 *        The database
+	 * @param listener
+	 *        Told after each response is written, or null; returning false stops the bundle after
+	 *        its last whole chunk, to be resumed later
+	 * @return True if the bundle is complete, false if the listener stopped it
+	 */
+	public boolean write(SQLiteDatabase db, final CsvExporter.RowListener listener) throws IOException {
+		rowCount = 0;
+		if(complete)
+			return true;
+
+		if(chunks.isEmpty())
+			addChunk(writeSurveysChunk(db));
+
+		Chunk last = chunks.get(chunks.size() - 1);
+		for(int surveyId : SurveyDBHelper.getSurveyIds(db)) {
+			// surveys are written in survey_id order, so any before the last chunk's are done
+			if(last.kind.equals(KIND_ANSWERS) && surveyId < last.surveyId)
+				continue;
+			boolean started = last.kind.equals(KIND_ANSWERS) && surveyId == last.surveyId;
+			long afterResponseId = started ? last.lastResponseId : 0;
+
+			SurveyDefinition survey = SurveyDBHelper.readSurveyDefinition(db, surveyId);
+			if(survey == null)
+				continue;
+			CsvExporter exporter = new CsvExporter(new AnswerLayout(survey));
+
+			Cursor c = null;
+			try {
+				c = AnswerStore.queryAnswers(db, surveyId, afterResponseId);
+				c.moveToFirst();
+				// a survey with no new responses still gets a chunk with its header, if it has none
+				while(!c.isAfterLast() || !started) {
+					final boolean[] stopped = new boolean[1];
+					final int chunkStart = rowCount;
+					Chunk chunk = writeAnswersChunk(surveyId, exporter, c, !started, new CsvExporter.RowListener() {
+						@Override
+						public boolean onRowWritten(int count) {
+							if(listener != null && !listener.onRowWritten(chunkStart + count))
+								stopped[0] = true;
+							return !stopped[0] && count < CHUNK_ROWS;
+						}
+					});
+					if(stopped[0]) {
+						new File(dir, chunk.file).delete();
+						return false;
+					}
+					if(chunk.rows == 0)
+						chunk.lastResponseId = afterResponseId;
+					afterResponseId = chunk.lastResponseId;
+					addChunk(chunk);
+					rowCount += chunk.rows;
+					started = true;
+				}
+			} finally {
+				DatabaseManager.closeCursor(c);
+			}
+		}
+
+		complete = true;
+		writeManifest();
+		Log.i(TAG, "Wrote " + dir.getName() + ": " + chunks.size() + " chunks");
+		return true;
+	}
+
+	private Chunk newChunk(String kind, String extension) {
+		Chunk chunk = new Chunk();
+		chunk.kind = kind;
+		chunk.file = String.format(Locale.US, "chunk-%05d.%s.gz", chunks.size(), extension);
+		return chunk;
+	}
+
+	/**
+	 * A chunk file open for writing, compressed and checksummed.
+	 */
+	private static class ChunkStream {
+		private final FileOutputStream file;
+		private final CheckedOutputStream checked;
+		private final GZIPOutputStream gzip;
+		final Writer writer;
+
+		ChunkStream(File f) throws IOException {
+			file = new FileOutputStream(f);
+			checked = new CheckedOutputStream(file, new CRC32());
+			gzip = new GZIPOutputStream(checked, 8192);
+			writer = new BufferedWriter(new OutputStreamWriter(gzip, "UTF-8"), 64 * 1024);
+		}
+
+		/**
+		 * Finish the gzip stream and make sure the chunk is on the card before it goes in the
+		 * manifest.
+		 *
+		 * @return The CRC32 of the compressed bytes
+		 */
+		long finish() throws IOException {
+			writer.flush();
+			gzip.finish();
+			checked.flush();
+			file.getFD().sync();
+			return checked.getChecksum().getValue();
+		}
+
+		void close() {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private Chunk writeSurveysChunk(SQLiteDatabase db) throws IOException {
+		Chunk chunk = newChunk(KIND_SURVEYS, "json");
+		File file = new File(dir, chunk.file);
+		ChunkStream out = new ChunkStream(file);
+		try {
+			JsonWriter json = new JsonWriter(out.writer);
+			json.beginObject();
+			json.name("version").value(SurveySeed.VERSION);
+			json.name("surveys").beginArray();
+			for(int surveyId : SurveyDBHelper.getSurveyIds(db)) {
+				SurveyDefinition survey = SurveyDBHelper.readSurveyDefinition(db, surveyId);
+				if(survey != null)
+					writeSurvey(json, survey);
+			}
+			json.endArray();
+			json.endObject();
+			json.flush();
+			chunk.crc32 = out.finish();
+		} finally {
+			out.close();
+		}
+		chunk.bytes = file.length();
+		return chunk;
+	}
+
+	private static void writeSurvey(JsonWriter json, SurveyDefinition survey) throws IOException {
+		json.beginObject();
+		json.name("survey_id").value(survey.getId());
+		json.name("title").value(survey.getTitle());
+		if(survey.getIntroText() != null)
+			json.name("intro_text").value(survey.getIntroText());
+		json.name("questions").beginArray();
+		for(int i = 0; i < survey.getSize(); i++) {
+			Question question = survey.getQuestion(i);
+			json.beginObject();
+			json.name("question_id").value(question.getId());
+			json.name("question_order").value(i + 1);
+			json.name("type").value(question.getType());
+			json.name("prompt").value(question.getPrompt());
+			if(question.getSection() != null)
+				json.name("section").value(question.getSection());
+			if(question.getChoiceCount() > 0) {
+				json.name("options").beginArray();
+				for(int j = 0; j < question.getChoiceCount(); j++) {
+					json.beginObject();
+					json.name("option_order").value(j + 1);
+					json.name("answer_text").value(question.getOptionLabel(j));
+					if(question.getTextFieldLabel(j) != null)
+						json.name("text_field_label").value(question.getTextFieldLabel(j));
+					json.endObject();
+				}
+				json.endArray();
+			}
+			json.endObject();
+		}
+		json.endArray();
+		json.endObject();
+	}
+
+	private Chunk writeAnswersChunk(int surveyId, CsvExporter exporter, Cursor c, boolean header, CsvExporter.RowListener listener) throws IOException {
+		Chunk chunk = newChunk(KIND_ANSWERS, "csv");
+		chunk.surveyId = surveyId;
+		File file = new File(dir, chunk.file);
+		ChunkStream out = new ChunkStream(file);
+		try {
+			if(header)
+				exporter.writeHeader(out.writer);
+			if(!c.isAfterLast())
+				chunk.rows = exporter.writeRows(new SQLiteAnswerCursor(c), out.writer, listener);
+			chunk.lastResponseId = exporter.getLastResponseId();
+			chunk.crc32 = out.finish();
+		} finally {
+			out.close();
+		}
+		chunk.bytes = file.length();
+		return chunk;
+	}
+
+	private void addChunk(Chunk chunk) throws IOException {
+		chunks.add(chunk);
+		writeManifest();
+	}
+
+	/**
+	 * Write the manifest to a temporary file and rename it into place, so there is always a whole
+	 * manifest on the card.
+	 */
+	private void writeManifest() throws IOException {
+		File tmp = new File(dir, MANIFEST + ".tmp");
+		FileOutputStream file = new FileOutputStream(tmp);
+		JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(file, "UTF-8")));
+		try {
+			json.setIndent("\t");
+			json.beginObject();
+			json.name("version").value(VERSION);
+			json.name("created").value(created);
+			json.name("complete").value(complete);
+			json.name("chunks").beginArray();
+			for(Chunk chunk : chunks) {
+				json.beginObject();
+				json.name("file").value(chunk.file);
+				json.name("kind").value(chunk.kind);
+				if(chunk.kind.equals(KIND_ANSWERS)) {
+					json.name("survey_id").value(chunk.surveyId);
+					json.name("last_response_id").value(chunk.lastResponseId);
+					json.name("rows").value(chunk.rows);
+				}
+				json.name("bytes").value(chunk.bytes);
+				json.name("crc32").value(chunk.crc32);
+				json.endObject();
+			}
+			json.endArray();
+			json.endObject();
+			json.flush();
+			file.getFD().sync();
+		} finally {
+			json.close();
+		}
+
+		if(!tmp.renameTo(new File(dir, MANIFEST)))
+			throw new IOException("Could not rename " + tmp);
+	}
+
+	private void readManifest() throws IOException {
+		JsonReader json = new JsonReader(new InputStreamReader(new FileInputStream(new File(dir, MANIFEST)), "UTF-8"));
+		try {
+			json.beginObject();
+			while(json.hasNext()) {
+				String name = json.nextName();
+				if(name.equals("version")) {
+					int version = json.nextInt();
+					if(version > VERSION)
+						throw new IOException(MANIFEST + " has version " + version + ", newer than " + VERSION);
+				} else if(name.equals("created")) {
+					created = json.nextLong();
+				} else if(name.equals("complete")) {
+					complete = json.nextBoolean();
+				} else if(name.equals("chunks")) {
+					json.beginArray();
+					while(json.hasNext())
+						chunks.add(readChunk(json));
+					json.endArray();
+				} else {
+					json.skipValue();
+				}
+			}
+			json.endObject();
+		} finally {
+			json.close();
+		}
+	}
+
+	private static Chunk readChunk(JsonReader json) throws IOException {
+		Chunk chunk = new Chunk();
+		json.beginObject();
+		while(json.hasNext()) {
+			String name = json.nextName();
+			if(name.equals("file"))
+				chunk.file = json.nextString();
+			else if(name.equals("kind"))
+				chunk.kind = json.nextString();
+			else if(name.equals("survey_id"))
+				chunk.surveyId = json.nextInt();
+			else if(name.equals("last_response_id"))
+				chunk.lastResponseId = json.nextLong();
+			else if(name.equals("rows"))
+				chunk.rows = json.nextInt();
+			else if(name.equals("bytes"))
+				chunk.bytes = json.nextLong();
+			else if(name.equals("crc32"))
+				chunk.crc32 = json.nextLong();
+			else
+				json.skipValue();
+		}
+		json.endObject();
+		return chunk;
+	}
+
+	/**
+	 * Read one survey's CSV file back out of a bundle, with one line per user: where a user has
+	 * more than one row, only the last is kept, in the place of that last row.
+	 *
+	 * @param dir
+	 *        The bundle's directory
+	 * @param surveyId
+	 *        The survey
+	 * @param out
+	 *        Where to write the header line and the rows, as the CSV export writes them
+	 * @return The number of rows written, not counting the header
+	 * @throws IOException
+	 *         If a chunk is missing or damaged, or can't be read
+	 */
+	public static int readAnswers(File dir, int surveyId, Writer out) throws IOException {
+		ExportBundle bundle = new ExportBundle(dir);
+		bundle.readManifest();
+		ArrayList<String> damaged = bundle.verify();
+		if(!damaged.isEmpty())
+			throw new IOException("Damaged chunks in " + dir.getName() + ": " + damaged);
+
+		String header = null;
+		LinkedHashMap<String, String> rows = new LinkedHashMap<String, String>();
+		for(Chunk chunk : bundle.chunks) {
+			if(!chunk.kind.equals(KIND_ANSWERS) || chunk.surveyId != surveyId)
+				continue;
+
+			Reader in = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(new File(dir, chunk.file))), "UTF-8"));
+			try {
+				String record;
+				while((record = readRecord(in)) != null) {
+					if(header == null) {
+						header = record;
+						continue;
+					}
+					// the user_id is the first field; a later row replaces the earlier one and its place
+					String userId = firstField(record);
+					rows.remove(userId);
+					rows.put(userId, record);
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		if(header != null)
+			out.write(header);
+		for(String record : rows.values())
+			out.write(record);
+		return rows.size();
+	}
+
+	/**
+	 * @return The next CSV record, with its line ending, or null at the end of the stream. Line
+	 *         breaks inside quoted fields don't end the record.
+	 */
+	private static String readRecord(Reader in) throws IOException {
+		StringBuilder record = new StringBuilder();
+		boolean quoted = false;
+		int ch;
+		while((ch = in.read()) >= 0) {
+			record.append((char) ch);
+			if(ch == '"')
+				quoted = !quoted;
+			else if(ch == '\n' && !quoted)
+				return record.toString();
+		}
+		return record.length() > 0 ? record.toString() : null;
+	}
+
+	private static String firstField(String record) {
+		if(!record.startsWith("\"")) {
+			int end = 0;
+			while(end < record.length() && record.charAt(end) != ',' && record.charAt(end) != '\r')
+				end++;
+			return record.substring(0, end);
+		}
+
+		StringBuilder field = new StringBuilder();
+		for(int i = 1; i < record.length(); i++) {
+			char ch = record.charAt(i);
+			if(ch == '"') {
+				if(i + 1 < record.length() && record.charAt(i + 1) == '"')
+					i++;
+				else
+					break;
+			}
+			field.append(ch);
+		}
+		return field.toString();
+	}
+
+	/**
+	 * Before resuming, drop every chunk from the first one that isn't on the card as the manifest
+	 * describes it, and delete files the manifest doesn't list, such as a chunk that was being
+	 * written when the app stopped.
+	 */
+	private void dropDamagedChunks() throws IOException {
+		for(int i = 0; i < chunks.size(); i++) {
+			if(!isIntact(chunks.get(i))) {
+				Log.w(TAG, chunks.get(i).file + " is damaged, writing it again");
+				while(chunks.size() > i)
+					chunks.remove(chunks.size() - 1);
+				writeManifest();
+				break;
+			}
+		}
+
+		HashSet<String> listed = new HashSet<String>();
+		for(Chunk chunk : chunks)
+			listed.add(chunk.file);
+		listed.add(MANIFEST);
+		File[] files = dir.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				if(!listed.contains(file.getName()))
+					file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Check every chunk against the manifest.
+	 *
+	 * @return The names of the chunks that are missing or whose size or CRC32 doesn't match; empty
+	 *         if the bundle is intact
+	 */
+	public ArrayList<String> verify() throws IOException {
+		ArrayList<String> damaged = new ArrayList<String>();
+		for(Chunk chunk : chunks) {
+			if(!isIntact(chunk))
+				damaged.add(chunk.file);
+		}
+		return damaged;
+	}
+
+	private boolean isIntact(Chunk chunk) throws IOException {
+		File file = new File(dir, chunk.file);
+		if(!file.exists() || file.length() != chunk.bytes)
+			return false;
+
+		CRC32 crc = new CRC32();
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			byte[] buffer = new byte[8192];
+			int count;
+			while((count = in.read(buffer)) > 0)
+				crc.update(buffer, 0, count);
+		} finally {
+			in.close();
+		}
+		return crc.getValue() == chunk.crc32;
+	}
+}
@@ -0,0 +1,636 @@
+package com.ajhall.polloi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Writes survey CSV files, and the columnar files written by {@link ColumnarExporter}, on a single
+ * background thread, so nothing that asks for an export waits for it. Requests are coalesced:
+ * asking again for a survey that is already waiting doesn't queue a second export, and a full
+ * export asked for while an incremental one is waiting replaces it. Surveys are exported in the
+ * order they were first asked for.
+ *
+ * <p>
+ * A full export is written to a temporary file that is renamed over the old file only once it is
+ * complete, so the file on the card is always a whole export. An incremental export reads the
+ * responses submitted since the last export from the {@link ResponseJournal} rather than the
+ * database, and appends them to the file in place; the file is cut back to its old length if the
+ * export fails or is cancelled. Columnar files are always written in full. Progress and completion are reported to {@link ExportListener}s on the main thread.
+ * Get the shared instance from {@link GlobalsApp#getExportWorker(Context)}.
+ */
+public class ExportWorker {
+	private static final String TAG = "ExportWorker";
+
+	/**
+	 * The SharedPreferences file holding each survey's export checkpoint.
+	 */
+	private static final String CSV_CHECKPOINTS = "csv_export";
+
+	/**
+	 * How many lines to write between progress reports.
+	 */
+	private static final int PROGRESS_INTERVAL = 100;
+
+	/**
+	 * The survey ID that bundle exports are reported and cancelled under, since a bundle covers
+	 * every survey.
+	 */
+	public static final int ALL_SURVEYS = -2;
+
+	private static final int IDLE = -1;
+
+	// what is waiting to be written for a survey
+	private static final int APPEND_CSV = 1;
+	private static final int FULL_CSV = 2;
+	private static final int COLUMNAR = 4;
+	private static final int BUNDLE = 8;
+
+	/**
+	 * Told how exports are going. Called on the main thread.
+	 */
+	public interface ExportListener {
+		/**
+		 * @param surveyId
+		 *        The survey being exported, or {@link ExportWorker#ALL_SURVEYS} for a bundle
+		 * @param rowsWritten
+		 *        The number of responses written so far
+		 * @param totalRows
+		 *        The number of responses this export will write
+		 */
+		void onExportProgress(int surveyId, int rowsWritten, int totalRows);
+
+		/**
+		 * @param surveyId
+		 *        The survey that was exported, or {@link ExportWorker#ALL_SURVEYS} for a bundle
+		 * @param file
+		 *        The CSV or columnar file, or the bundle's directory
+		 * @param completed
+		 *        True if the file is up to date, false if the export failed or was cancelled and the
+		 *        file was left as it was
+		 */
+		void onExportFinished(int surveyId, File file, boolean completed);
+	}
+
+	private final Context context;
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	private final CopyOnWriteArrayList<ExportListener> listeners = new CopyOnWriteArrayList<ExportListener>();
+
+	// guarded by this
+	private final LinkedHashMap<Integer, Integer> pending = new LinkedHashMap<Integer, Integer>();
+	private int running = IDLE;
+	private boolean cancelRunning;
+	private long exportCount;
+	private long coalescedCount;
+
+	/**
+	 * Create the worker and start its thread.
+	 *
+	 * @param context
+	 *        A context; only its application context is kept
+	 */
+	public ExportWorker(Context context) {
+		this.context = context.getApplicationContext();
+
+		Thread worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				workLoop();
+			}
+		}, TAG);
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Ask for a survey's CSV file to be brought up to date. Returns immediately.
+	 *
+	 * @param surveyId
+	 *        The survey to export
+	 * @param incremental
+	 *        True to append the responses submitted since the last export, if the file still
+	 *        matches that export; false to write the whole file again
+	 */
+	public synchronized void requestExport(int surveyId, boolean incremental) {
+		enqueue(surveyId, incremental ? APPEND_CSV : FULL_CSV);
+	}
+
+	/**
+	 * Ask for a survey's columnar file, [Survey Title].plc, to be written again. Returns
+	 * immediately.
+	 *
+	 * @param surveyId
+	 *        The survey to export
+	 */
+	public synchronized void requestColumnarExport(int surveyId) {
+		enqueue(surveyId, COLUMNAR);
+	}
+
+	/**
+	 * Ask for every survey and its answers to be written to a compressed bundle for copying off the
+	 * device, as described in {@link ExportBundle}. If the last bundle was never finished, it is
+	 * carried on with instead. Progress is reported under {@link #ALL_SURVEYS}, which is also what to
+	 * pass to {@link #cancel(int)}. Returns immediately.
+	 */
+	public synchronized void requestBundle() {
+		enqueue(ALL_SURVEYS, BUNDLE);
+	}
+
+	private void enqueue(int surveyId, int work) {
+		Integer waiting = pending.get(surveyId);
+		if(waiting != null) {
+			coalescedCount++;
+			work |= waiting;
+		}
+		// a full export covers the responses an append would have written
+		if((work & FULL_CSV) != 0)
+			work &= ~APPEND_CSV;
+		pending.put(surveyId, work);
+		notifyAll();
+	}
+
+	/**
+	 * Cancel a survey's exports, whether they are waiting or being written. A cancelled export
+	 * leaves the file as it was.
+	 *
+	 * @param surveyId
+	 *        The survey whose export to cancel
+	 */
+	public synchronized void cancel(int surveyId) {
+		pending.remove(surveyId);
+		if(running == surveyId)
+			cancelRunning = true;
+	}
+
+	public void addListener(ExportListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(ExportListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Wait until every requested export has finished.
+	 *
+	 * @param timeoutMillis
+	 *        The longest time to wait
+	 * @return True if the worker is idle, false if the wait timed out
+	 */
+	public synchronized boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while(running != IDLE || !pending.isEmpty()) {
+			long remaining = deadline - System.currentTimeMillis();
+			if(remaining <= 0)
+				return false;
+			wait(remaining);
+		}
+		return true;
+	}
+
+	private void workLoop() {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+		while(true) {
+			int surveyId;
+			int work;
+			synchronized(this) {
+				try {
+					while(pending.isEmpty())
+						wait();
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				Iterator<Map.Entry<Integer, Integer>> first = pending.entrySet().iterator();
+				Map.Entry<Integer, Integer> request = first.next();
+				first.remove();
+				surveyId = request.getKey();
+				work = request.getValue();
+				running = surveyId;
+				cancelRunning = false;
+			}
+
+			try {
+				if((work & BUNDLE) != 0) {
+					long start = Tracer.begin();
+					exportBundle();
+					Tracer.end(Tracer.EXPORT_BUNDLE, start);
+				}
+				if((work & (APPEND_CSV | FULL_CSV)) != 0) {
+					long start = Tracer.begin();
+					export(surveyId, (work & FULL_CSV) == 0);
+					Tracer.end(Tracer.EXPORT_CSV, start);
+				}
+				if((work & COLUMNAR) != 0 && !isCancelled()) {
+					long start = Tracer.begin();
+					exportColumnar(surveyId);
+					Tracer.end(Tracer.EXPORT_COLUMNAR, start);
+				}
+			} catch (RuntimeException e) {
+				// e.g. the database being closed under us; the next request starts afresh
+				Log.e(TAG, "Export of survey " + surveyId + " failed", e);
+			}
+
+			synchronized(this) {
+				running = IDLE;
+				exportCount++;
+				notifyAll();
+			}
+		}
+	}
+
+	private synchronized boolean isCancelled() {
+		return cancelRunning;
+	}
+
+	private void export(final int surveyId, boolean incremental) {
+		SQLiteDatabase db = GlobalsApp.getDatabase(context);
+		SurveyDefinition survey = GlobalsApp.getSurveyCache().getDefinition(db, surveyId);
+		if(survey == null)
+			return;
+
+		File outputFile = new File(getExportDir(), survey.getTitle() + ".csv");
+
+		/*
+		 * The last export's checkpoint: the newest response_id written, how many responses it
+		 * covered, how long the file was and how far into the response journal it had read.
+		 * Appending is only safe if the file is exactly as that export left it and none of the
+		 * responses it covered has been overwritten since.
+		 */
+		SharedPreferences checkpoints = context.getSharedPreferences(CSV_CHECKPOINTS, Context.MODE_PRIVATE);
+		long lastResponseId = checkpoints.getLong(lastResponseKey(surveyId), 0);
+		int exported = checkpoints.getInt(exportedKey(surveyId), 0);
+		long bytes = checkpoints.getLong(bytesKey(surveyId), -1);
+		long journalOffset = checkpoints.getLong(journalKey(surveyId), -1);
+
+		if(incremental && journalOffset >= 0 && outputFile.length() > 0 && outputFile.length() == bytes && AnswerStore.countResponses(db, surveyId, lastResponseId) == exported) {
+			Boolean completed = appendFromJournal(db, survey, outputFile, checkpoints, lastResponseId, exported, journalOffset);
+			if(completed != null) {
+				reportFinished(surveyId, outputFile, completed);
+				return;
+			}
+			Log.i(TAG, "The response journal of survey " + surveyId + " is missing responses, writing " + outputFile.getName() + " again");
+		}
+
+		// read before the query, so that responses committed during the export are read again
+		// from the journal next time rather than skipped; appendFromJournal ignores those it has
+		long startOffset = GlobalsApp.getResponseJournal(context).length(surveyId);
+		long start = SystemClock.uptimeMillis();
+		final int totalRows = AnswerStore.countResponses(db, surveyId, Long.MAX_VALUE);
+		File target = new File(outputFile.getPath() + ".tmp");
+		CsvExporter exporter = new CsvExporter(new AnswerLayout(survey));
+		boolean completed = false;
+		Cursor c = null;
+		Writer writer = null;
+		try {
+			c = AnswerStore.queryAnswers(db, surveyId, 0);
+			writer = CsvExporter.openWriter(target, false);
+			exporter.writeHeader(writer);
+
+			reportProgress(surveyId, 0, totalRows);
+			exporter.writeRows(new SQLiteAnswerCursor(c), writer, new CsvExporter.RowListener() {
+				@Override
+				public boolean onRowWritten(int rowCount) {
+					if(rowCount % PROGRESS_INTERVAL == 0)
+						reportProgress(surveyId, rowCount, totalRows);
+					return !isCancelled();
+				}
+			});
+			writer.close();
+			writer = null;
+
+			if(!isCancelled() && target.renameTo(outputFile)) {
+				saveCheckpoint(checkpoints, surveyId, exporter.getLastResponseId(), exporter.getRowCount(), outputFile.length(), startOffset);
+				discardJournal(checkpoints, surveyId, startOffset);
+				completed = true;
+				reportProgress(surveyId, exporter.getRowCount(), totalRows);
+				Tracer.count(Tracer.ROWS_EXPORTED, exporter.getRowCount());
+				Log.i(TAG, "Wrote " + exporter.getRowCount() + " responses to " + outputFile.getName() + ", " + outputFile.length() + " bytes, in " + (SystemClock.uptimeMillis() - start) + " ms");
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			DatabaseManager.closeCursor(c);
+			if(writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+
+			// leave the file on the card as the last complete export left it
+			if(!completed)
+				target.delete();
+		}
+
+		reportFinished(surveyId, outputFile, completed);
+	}
+
+	/**
+	 * Append the responses journaled since the last export to a CSV file. A user who submitted
+	 * more than once since then gets only one line, for their newest response. Afterwards the
+	 * database is asked how many responses there are up to the last one written; if that isn't
+	 * the number of lines in the file, the journal missed a response or one written has since been
+	 * replaced, and the file is cut back so that it can be written again in full.
+	 *
+	 * @return True if the file is up to date, false if the export failed or was cancelled and the
+	 *         file was left as it was, or null if the file needs to be written in full
+	 */
+	private Boolean appendFromJournal(SQLiteDatabase db, SurveyDefinition survey, File outputFile, SharedPreferences checkpoints, long lastResponseId, int exported, long journalOffset) {
+		final int surveyId = survey.getId();
+		ResponseJournal journal = GlobalsApp.getResponseJournal(context);
+		if(journalOffset > journal.length(surveyId))
+			return null;
+
+		long start = SystemClock.uptimeMillis();
+		long startLength = outputFile.length();
+		CsvExporter exporter = new CsvExporter(new AnswerLayout(survey));
+		boolean completed = false;
+		boolean stale = false;
+		ResponseJournal.Reader reader = null;
+		Writer writer = null;
+		try {
+			// first pass: the newest response of each user
+			HashMap<String, Long> newest = new HashMap<String, Long>();
+			reader = journal.read(surveyId, journalOffset);
+			while(reader.next()) {
+				if(reader.getResponseId() > lastResponseId)
+					newest.put(userKey(reader.getResponse()), reader.getResponseId());
+			}
+			reader.close();
+			long endOffset = reader.getOffset();
+			int totalRows = newest.size();
+
+			// second pass: write them
+			reader = journal.read(surveyId, journalOffset);
+			writer = CsvExporter.openWriter(outputFile, true);
+			reportProgress(surveyId, 0, totalRows);
+			while(reader.getOffset() < endOffset && reader.next() && !isCancelled()) {
+				Long responseId = newest.get(userKey(reader.getResponse()));
+				if(responseId == null || responseId != reader.getResponseId())
+					continue;
+
+				exporter.writeResponse(writer, responseId, reader.getResponse());
+				if(exporter.getRowCount() % PROGRESS_INTERVAL == 0)
+					reportProgress(surveyId, exporter.getRowCount(), totalRows);
+			}
+			writer.close();
+			writer = null;
+
+			if(!isCancelled()) {
+				if(exporter.getRowCount() > 0)
+					lastResponseId = exporter.getLastResponseId();
+				if(AnswerStore.countResponses(db, surveyId, lastResponseId) != exported + exporter.getRowCount()) {
+					stale = true;
+				} else {
+					saveCheckpoint(checkpoints, surveyId, lastResponseId, exported + exporter.getRowCount(), outputFile.length(), endOffset);
+					discardJournal(checkpoints, surveyId, endOffset);
+					completed = true;
+					reportProgress(surveyId, exporter.getRowCount(), totalRows);
+					Tracer.count(Tracer.ROWS_EXPORTED, exporter.getRowCount());
+					Log.i(TAG, "Appended " + exporter.getRowCount() + " responses to " + outputFile.getName() + " from the journal in " + (SystemClock.uptimeMillis() - start) + " ms");
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				if(reader != null)
+					reader.close();
+				if(writer != null)
+					writer.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+
+			if(!completed)
+				truncate(outputFile, startLength);
+		}
+
+		return stale ? null : completed;
+	}
+
+	/**
+	 * Drop the records of a survey's journal that an export has just written to its CSV file, so
+	 * the journal doesn't grow without bound, and move the checkpoint to the start of what's left.
+	 * The checkpoint's offset is forgotten while the journal changes, so if the process dies in
+	 * between, the next export writes the file in full rather than reading from a stale offset.
+	 *
+	 * @param journalOffset
+	 *        The offset just saved in the checkpoint
+	 */
+	private void discardJournal(SharedPreferences checkpoints, int surveyId, long journalOffset) {
+		if(journalOffset <= 0)
+			return;
+		checkpoints.edit().remove(journalKey(surveyId)).commit();
+		try {
+			GlobalsApp.getResponseJournal(context).discardBefore(surveyId, journalOffset);
+			journalOffset = 0;
+		} catch (IOException e) {
+			// the journal is only longer than it needs to be
+			e.printStackTrace();
+		}
+		checkpoints.edit().putLong(journalKey(surveyId), journalOffset).commit();
+	}
+
+	/**
+	 * user_id is compared without regard to case, as in the responses table.
+	 */
+	private static String userKey(SurveyResponse response) {
+		return response.getUserId().toLowerCase(Locale.US);
+	}
+
+	/**
+	 * Write a survey's columnar file in full, to a temporary file that replaces the old one once it
+	 * is complete. The time taken and the file size are logged next to the CSV export's; the
+	 * export benchmarks in core/benchmarks compare the two formats under controlled conditions.
+	 */
+	private void exportColumnar(final int surveyId) {
+		SQLiteDatabase db = GlobalsApp.getDatabase(context);
+		SurveyDefinition survey = GlobalsApp.getSurveyCache().getDefinition(db, surveyId);
+		if(survey == null)
+			return;
+
+		long start = SystemClock.uptimeMillis();
+		File outputFile = new File(getExportDir(), survey.getTitle() + ".plc");
+		File target = new File(outputFile.getPath() + ".tmp");
+		final int totalRows = AnswerStore.countResponses(db, surveyId, Long.MAX_VALUE);
+		ColumnarExporter exporter = new ColumnarExporter(survey);
+		boolean completed = false;
+		Cursor c = null;
+		OutputStream out = null;
+		try {
+			c = AnswerStore.queryAnswers(db, surveyId, 0);
+			out = ColumnarExporter.openStream(target);
+
+			reportProgress(surveyId, 0, totalRows);
+			boolean written = exporter.write(new SQLiteAnswerCursor(c), out, new CsvExporter.RowListener() {
+				@Override
+				public boolean onRowWritten(int rowCount) {
+					if(rowCount % PROGRESS_INTERVAL == 0)
+						reportProgress(surveyId, rowCount, totalRows);
+					return !isCancelled();
+				}
+			});
+			out.close();
+			out = null;
+
+			if(written && !isCancelled() && target.renameTo(outputFile)) {
+				completed = true;
+				reportProgress(surveyId, exporter.getRowCount(), totalRows);
+				Tracer.count(Tracer.ROWS_EXPORTED, exporter.getRowCount());
+				Log.i(TAG, "Wrote " + exporter.getRowCount() + " responses to " + outputFile.getName() + ", " + outputFile.length() + " bytes, in " + (SystemClock.uptimeMillis() - start) + " ms");
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			DatabaseManager.closeCursor(c);
+			if(out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			if(!completed)
+				target.delete();
+		}
+
+		reportFinished(surveyId, outputFile, completed);
+	}
+
+	/**
+	 * Write or carry on with a bundle of every survey. A cancelled bundle keeps its whole chunks and
+	 * is carried on with by the next request.
+	 */
+	private void exportBundle() {
+		SQLiteDatabase db = GlobalsApp.getDatabase(context);
+		long start = SystemClock.uptimeMillis();
+		final int totalRows = AnswerStore.countResponses(db);
+		File dir = getExportDir();
+		boolean completed = false;
+		try {
+			ExportBundle bundle = ExportBundle.openOrCreate(dir);
+			dir = bundle.getDir();
+			reportProgress(ALL_SURVEYS, 0, totalRows);
+			completed = bundle.write(db, new CsvExporter.RowListener() {
+				@Override
+				public boolean onRowWritten(int rowCount) {
+					if(rowCount % PROGRESS_INTERVAL == 0)
+						reportProgress(ALL_SURVEYS, rowCount, totalRows);
+					return !isCancelled();
+				}
+			});
+			if(completed) {
+				Tracer.count(Tracer.ROWS_EXPORTED, bundle.getRowCount());
+				Log.i(TAG, "Wrote " + bundle.getRowCount() + " responses to " + dir.getName() + " in " + (SystemClock.uptimeMillis() - start) + " ms");
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		reportFinished(ALL_SURVEYS, dir, completed);
+	}
+
+	static File getExportDir() {
+		File dir = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/Survey");
+		dir.mkdirs();
+		return dir;
+	}
+
+	private static void truncate(File file, long length) {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(length);
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void reportProgress(final int surveyId, final int rowsWritten, final int totalRows) {
+		if(listeners.isEmpty())
+			return;
+		mainHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				for(ExportListener listener : listeners)
+					listener.onExportProgress(surveyId, rowsWritten, totalRows);
+			}
+		});
+	}
+
+	private void reportFinished(final int surveyId, final File file, final boolean completed) {
+		if(listeners.isEmpty())
+			return;
+		mainHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				for(ExportListener listener : listeners)
+					listener.onExportFinished(surveyId, file, completed);
+			}
+		});
+	}
+
+	/**
+	 * Forget a survey's export checkpoint, so its next export rewrites the whole file. Needed when
+	 * the survey's columns change.
+	 *
+	 * @param context
+	 *        A context
+	 * @param surveyId
+	 *        The survey
+	 */
+	public static void clearCheckpoint(Context context, int surveyId) {
+		context.getSharedPreferences(CSV_CHECKPOINTS, Context.MODE_PRIVATE).edit().remove(lastResponseKey(surveyId)).remove(exportedKey(surveyId)).remove(bytesKey(surveyId)).remove(journalKey(surveyId)).commit();
+	}
+
+	private static String lastResponseKey(int surveyId) {
+		return "last_response_" + surveyId;
+	}
+
+	private static String exportedKey(int surveyId) {
+		return "exported_" + surveyId;
+	}
+
+	private static String bytesKey(int surveyId) {
+		return "bytes_" + surveyId;
+	}
+
+	private static String journalKey(int surveyId) {
+		return "journal_" + surveyId;
+	}
+
+	private static void saveCheckpoint(SharedPreferences checkpoints, int surveyId, long lastResponseId, int exported, long bytes, long journalOffset) {
+		checkpoints.edit().putLong(lastResponseKey(surveyId), lastResponseId).putInt(exportedKey(surveyId), exported).putLong(bytesKey(surveyId), bytes).putLong(journalKey(surveyId), journalOffset).commit();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ExportWorker [pending " + pending.size() + ", running " + running + ", exports " + exportCount + ", coalesced " + coalescedCount + "]";
+	}
+}
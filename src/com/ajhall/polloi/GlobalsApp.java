@@ -1,12 +1,132 @@
 package com.ajhall.polloi;
 
 import android.app.Application;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
 
 /**
- * Provides global, static access to the current survey and the logged-in user's
- * ID.
+ * Provides global, static access to the current survey, the logged-in user's
+ * ID, and the shared database connection.
  */
 public class GlobalsApp extends Application {
 	public static Survey survey; // the survey to be displayed and completed, read in SurveyDBHelper
 	public static String userId; // the ID of the currently logged-in user
+
+	private static DatabaseManager databaseManager; // the one connection to surveys.db
+	private static AnswerWriteQueue answerWriteQueue; // writes submitted responses in the background
+	private static SurveyCache surveyCache; // recently used survey definitions
+	private static ExportWorker exportWorker; // writes CSV exports in the background
+	private static ResponseJournal responseJournal; // submitted responses, for incremental exports
+	private static ResultTallies resultTallies; // running result counts per survey
+
+	@Override
+	public void onCreate() {
+		super.onCreate();
+		getDatabaseManager(this).openInBackground();
+	}
+
+	@Override
+	public void onTerminate() {
+		super.onTerminate();
+		if(databaseManager != null)
+			databaseManager.close();
+	}
+
+	/**
+	 * Get the process-wide database manager, creating it if needed.
+	 * 
+	 * @param context
+	 *        A context, used only if the manager hasn't been created yet
+	 * @return The shared database manager
+	 */
+	public static synchronized DatabaseManager getDatabaseManager(Context context) {
+		if(databaseManager == null)
+			databaseManager = new DatabaseManager(context);
+		return databaseManager;
+	}
+
+	/**
+	 * Get the process-wide queue that writes submitted responses, creating it if needed.
+	 * 
+	 * @param context
+	 *        A context, used only if the queue hasn't been created yet
+	 * @return The shared answer write queue
+	 */
+	public static synchronized AnswerWriteQueue getAnswerWriteQueue(Context context) {
+		if(answerWriteQueue == null)
+			answerWriteQueue = new AnswerWriteQueue(context);
+		return answerWriteQueue;
+	}
+
+	/**
+	 * Get the process-wide CSV export worker, creating it if needed.
+	 * 
+	 * @param context
+	 *        A context, used only if the worker hasn't been created yet
+	 * @return The shared export worker
+	 */
+	public static synchronized ExportWorker getExportWorker(Context context) {
+		if(exportWorker == null)
+			exportWorker = new ExportWorker(context);
+		return exportWorker;
+	}
+
+	/**
+	 * Get a repository on the shared database connection. Repositories hold nothing but the
+	 * connection, so a new one is made each time.
+	 * 
+	 * @param context
+	 *        A context, used only if the database hasn't been opened yet
+	 * @return A repository
+	 */
+	public static SurveyRepository getSurveyRepository(Context context) {
+		return new SQLiteSurveyRepository(getDatabase(context));
+	}
+
+	/**
+	 * Get the process-wide journal of submitted responses, creating it if needed.
+	 * 
+	 * @param context
+	 *        A context, used only if the journal hasn't been created yet
+	 * @return The shared response journal
+	 */
+	public static synchronized ResponseJournal getResponseJournal(Context context) {
+		if(responseJournal == null)
+			responseJournal = new ResponseJournal(context);
+		return responseJournal;
+	}
+
+	/**
+	 * Get the process-wide result tallies, creating them if needed.
+	 * 
+	 * @return The shared result tallies
+	 */
+	public static synchronized ResultTallies getResultTallies() {
+		if(resultTallies == null)
+			resultTallies = new ResultTallies();
+		return resultTallies;
+	}
+
+	/**
+	 * Get the process-wide cache of survey definitions, creating it if needed.
+	 * 
+	 * @return The shared survey cache
+	 */
+	public static synchronized SurveyCache getSurveyCache() {
+		if(surveyCache == null)
+			surveyCache = new SurveyCache(4);
+		return surveyCache;
+	}
+
+	/**
+	 * Shortcut for getDatabaseManager(context).getDatabase(). The returned database is shared and
+	 * must not be closed.
+	 * 
+	 * @param context
+	 *        A context
+	 * @return The shared database
+	 */
+	public static SQLiteDatabase getDatabase(Context context) {
+		return getDatabaseManager(context).getDatabase();
+	}
 }
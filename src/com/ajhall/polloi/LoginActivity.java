@@ -28,6 +28,7 @@ public class LoginActivity extends Activity {
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
+		long start = Tracer.begin();
 		setContentView(R.layout.login_activity);
 
 		final EditText loginField = (EditText) findViewById(R.id.login_field);
@@ -41,6 +42,7 @@ public class LoginActivity extends Activity {
 			@Override
 			public void onClick(View v) {
 				if(!loginField.getText().toString().trim().equals("")) {
+					long start = Tracer.begin();
 					String userId = loginField.getText().toString().trim();
 
 					final Intent startSurvey = new Intent(LoginActivity.this, SurveyActivity.class);
@@ -76,10 +78,35 @@ public class LoginActivity extends Activity {
 						imm.hideSoftInputFromWindow(loginField.getWindowToken(), 0);
 						startActivity(startSurvey);
 					}
+					Tracer.end(Tracer.LOGIN, start);
 				}
 			}
 		});
 
+		// hidden from respondents: a long press on the login button shows the selected survey's
+		// results so far
+		loginButton.setOnLongClickListener(new View.OnLongClickListener() {
+			@Override
+			public boolean onLongClick(View v) {
+				if(surveySelector.getSelectedItem() == null)
+					return false;
+				Intent showResults = new Intent(LoginActivity.this, ResultsActivity.class);
+				showResults.putExtra("surveyId", SurveyDBHelper.getSurveyId(LoginActivity.this, surveySelector.getSelectedItem().toString()));
+				startActivity(showResults);
+				return true;
+			}
+		});
+
+		// hidden from respondents: a long press on the title opens the diagnostics screen
+		findViewById(R.id.login_title).setOnLongClickListener(new View.OnLongClickListener() {
+			@Override
+			public boolean onLongClick(View v) {
+				startActivity(new Intent(LoginActivity.this, DiagnosticsActivity.class));
+				return true;
+			}
+		});
+
+		Tracer.end(Tracer.LOGIN_CREATE, start);
 	}
 
 	@Override
@@ -0,0 +1,45 @@
+package com.ajhall.polloi;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * One step in upgrading surveys.db from one version to the next. Steps are listed in order in
+ * {@link DatabaseMigrator} and run inside the upgrade's transaction, so a step must not commit or
+ * end that transaction itself, and must keep the data it is given.
+ */
+public abstract class Migration {
+	private final int version;
+	private final String description;
+
+	/**
+	 * @param version
+	 *        The database version this step upgrades to, from the version before it
+	 * @param description
+	 *        What the step changes, for the log
+	 */
+	public Migration(int version, String description) {
+		this.version = version;
+		this.description = description;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * Change the schema from version getVersion() - 1 to getVersion(), keeping the data.
+	 *
+	 * @param db
+	 *        The database, inside the upgrade's transaction
+	 */
+	public abstract void migrate(SQLiteDatabase db);
+
+	@Override
+	public String toString() {
+		return "Migration " + version + " (" + description + ")";
+	}
+}
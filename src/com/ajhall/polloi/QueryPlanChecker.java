@@ -0,0 +1,81 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * Checks that the queries the app runs on every survey load, submission and export are answered
+ * from an index. Each query is run through EXPLAIN QUERY PLAN, and any step that scans a whole
+ * table is reported. {@link DatabaseHelper} runs the check every time a debuggable build opens the
+ * database, so a schema change or query edit that loses an index shows up in the log at once, and
+ * QueryPlanCheckerTest in the test project fails on it.
+ */
+public class QueryPlanChecker {
+	private static final String TAG = "QueryPlanChecker";
+
+	/**
+	 * The queries to check, with the number of parameters each takes. Queries that are meant to
+	 * read a whole table, such as the list of survey titles, are not included.
+	 */
+	private static final String[] HOT_QUERIES = {
+		SurveySchema.SELECT_SURVEY_QUESTIONS,
+		"SELECT title, intro_text FROM surveys WHERE survey_id = ?",
+		"SELECT survey_id FROM surveys WHERE title = ?",
+		"DELETE FROM questions WHERE survey_id = ?",
+		"DELETE FROM question_options WHERE question_id > ? AND question_id < ?",
+		SurveySchema.SELECT_SURVEY_ANSWERS,
+		SurveySchema.SELECT_USER_ANSWERS,
+		TallyTable.UPDATE_TALLY,
+		"SELECT chosen FROM tallies WHERE survey_id = ? AND question_id = ? AND option_order = ?",
+		"SELECT count(*) FROM responses WHERE survey_id = ? AND response_id <= ?",
+		"SELECT response_id FROM responses WHERE survey_id = ? AND user_id = ?",
+		"DELETE FROM answers WHERE survey_id = ? AND user_id = ?",
+	};
+
+	/**
+	 * Explain every hot query and log a warning for each full table scan.
+	 *
+	 * @param db
+	 *        The database, with the current schema
+	 * @return The plan steps that scan a whole table, each prefixed with its query; empty if every
+	 *         query uses an index
+	 */
+	public static ArrayList<String> check(SQLiteDatabase db) {
+		ArrayList<String> scans = new ArrayList<String>();
+
+		for(String query : HOT_QUERIES) {
+			String[] args = new String[countParameters(query)];
+			for(int i = 0; i < args.length; i++)
+				args[i] = "0";
+
+			Cursor c = null;
+			try {
+				c = db.rawQuery("EXPLAIN QUERY PLAN " + query, args);
+				int detail = c.getColumnIndexOrThrow("detail");
+				while(c.moveToNext()) {
+					// "SCAN TABLE t" or, in newer versions of SQLite, "SCAN t"; searches are fine
+					if(c.getString(detail).startsWith("SCAN "))
+						scans.add(query + ": " + c.getString(detail));
+				}
+			} finally {
+				DatabaseManager.closeCursor(c);
+			}
+		}
+
+		for(String scan : scans)
+			Log.w(TAG, "Full table scan in " + scan);
+		return scans;
+	}
+
+	private static int countParameters(String query) {
+		int count = 0;
+		for(int i = 0; i < query.length(); i++) {
+			if(query.charAt(i) == '?')
+				count++;
+		}
+		return count;
+	}
+}
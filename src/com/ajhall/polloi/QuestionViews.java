@@ -0,0 +1,318 @@
+package com.ajhall.polloi;
+
+import android.content.Context;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.Gravity;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.inputmethod.InputMethodManager;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.RadioButton;
+import android.widget.RadioGroup;
+import android.widget.TextView;
+
+/**
+ * Builds the page that shows a {@link Question} to the user. The questions themselves are plain
+ * Java and know nothing of views, so this picks the layout by the question's type. Answers entered
+ * in the view are stored in the respondent's ResponseState.
+ */
+public class QuestionViews {
+	private QuestionViews() {}
+
+	/**
+	 * Build a View of a Question to be displayed to the user.
+	 * 
+	 * @param context
+	 *        A context
+	 * @param container
+	 *        The view the page will be attached to
+	 * @param question
+	 *        The question to show
+	 * @param state
+	 *        The respondent's answers, which the view shows and updates
+	 * @param index
+	 *        The index of the question in its survey
+	 * @param rows
+	 *        Where choice rows are taken from, so that rows from destroyed pages are reused
+	 */
+	public static View getQuestionView(Context context, ViewGroup container, Question question, ResponseState state, int index, ChoiceRowPool rows) {
+		if(question instanceof QuestionMC)
+			return getMCView(context, container, (QuestionMC) question, state, index, rows);
+		else if(question instanceof QuestionCheckbox)
+			return getCheckboxView(context, container, (QuestionCheckbox) question, state, index, rows);
+		else if(question instanceof QuestionWriting)
+			return getWritingView(context, container, (QuestionWriting) question, state, index, rows);
+
+		TextView tv = new TextView(context);
+		tv.setText("this is the parent class and you shouldn't be seeing this");
+		return tv;
+	}
+
+	/**
+	 * Build the View of a multiple choice question. The view includes a prompt and a list of options
+	 * with associated radio buttons.
+	 */
+	private static View getMCView(final Context context, final ViewGroup container, final QuestionMC question, final ResponseState state, final int index, ChoiceRowPool rows) {
+		// build the basic page layout
+		LayoutInflater inflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+		View view = inflater.inflate(R.layout.survey_page, container, false);
+		LinearLayout pollPage = (LinearLayout) view.findViewById(R.id.poll_page_container);
+
+		// start adding answer buttons to the layout
+		if(question.getChoiceCount() > 0) {
+			// add a RadioGroup to hold the RadioButtons
+			RadioGroup rg = new RadioGroup(context);
+			rg.setLayoutParams(new RadioGroup.LayoutParams(RadioGroup.LayoutParams.MATCH_PARENT, RadioGroup.LayoutParams.WRAP_CONTENT));
+			pollPage.addView(rg);
+
+			// assign an alphabetic tag to each button
+			char tag = 'a';
+			int checkIndex = -1;
+			Character checkedTag = null;
+
+			for(int i = 0; i < question.getChoiceCount(); i++) {
+				// build the button
+				String choiceLabel = question.getOptionLabel(i);
+				final ChoiceRowPool.ChoiceRow row = rows.obtain(inflater, R.layout.radio_button_style, rg);
+				final RadioButton rb = (RadioButton) row.button;
+				rb.setText(choiceLabel);
+
+				// set the alphabetic tag for the button
+				rb.setTag(tag);
+
+				// check whether the button should be checked (selected)
+				if(state.getSelected(index) == i)
+					checkedTag = tag;
+				tag++;
+
+				/*
+				 * every row comes with an EditText field in case there should
+				 * be an associated textField
+				 */
+				final EditText et = row.textField;
+
+				if(state.getTextFieldAnswer(index, i) != null)
+					et.setText(state.getTextFieldAnswer(index, i));
+				else
+					et.setVisibility(View.GONE);
+
+				/*
+				 * If a text field exists at the specified index, build it and
+				 * style it so it's ready to be displayed
+				 */
+				if(question.textFieldAtIndex(i)) {
+					String textFieldLabel = question.getTextFieldLabel(i);
+					et.setHint(textFieldLabel);
+					et.setTag(tag);
+					RadioGroup.LayoutParams layoutParams = new RadioGroup.LayoutParams(RadioGroup.LayoutParams.MATCH_PARENT, RadioGroup.LayoutParams.WRAP_CONTENT);
+					layoutParams.setMargins(50, 0, 0, 15);
+					et.setLayoutParams(layoutParams);
+					row.setTextWatcher(new TextWatcher() {
+						@Override
+						public void afterTextChanged(Editable s) {}
+
+						@Override
+						public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+						@Override
+						public void onTextChanged(CharSequence s, int start, int before, int count) {
+							int tag = (Character) rb.getTag();
+							tag = tag - 'a';
+							state.setTextFieldAnswer(index, tag, s.toString());
+						}
+					});
+				}
+
+				/*
+				 * When the radio button is checked, test whether there's an
+				 * associated textField and show/hide it
+				 */
+				rb.setOnCheckedChangeListener(new android.widget.CompoundButton.OnCheckedChangeListener() {
+					@Override
+					public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+						if(isChecked && et.getTag() != null) {
+							et.setVisibility(View.VISIBLE);
+							int etTag = (Character) rb.getTag();
+							etTag = etTag - 'a';
+							state.setTextFieldAnswer(index, etTag, et.getText().toString());
+							et.requestFocus();
+						} else {
+							et.setVisibility(View.GONE);
+							int tag = (Character) rb.getTag();
+							tag = tag - 'a';
+							state.setTextFieldAnswer(index, tag, null);
+							final InputMethodManager imm = (InputMethodManager) context.getSystemService(Context.INPUT_METHOD_SERVICE);
+							imm.hideSoftInputFromWindow(et.getWindowToken(), 0);
+						}
+
+					}
+				});
+				// add the button to the RadioGroup
+				rg.addView(rb);
+				rg.addView(et);
+			}
+
+			// mark the checked button as checked
+			if(checkedTag != null) {
+				checkIndex = rg.findViewWithTag(checkedTag).getId();
+			}
+			rg.check(checkIndex);
+
+			/*
+			 * when the answer is changed, save it to the respondent's
+			 * ResponseState
+			 */
+			rg.setOnCheckedChangeListener(new android.widget.RadioGroup.OnCheckedChangeListener() {
+				public void onCheckedChanged(RadioGroup radioGroup, int checkedId) {
+					RadioButton checked = (RadioButton) radioGroup.findViewById(checkedId);
+					if(checked != null)
+						state.setSelected(index, (Character) checked.getTag() - 'a');
+					else
+						state.setSelected(index, -1);
+				}
+			});
+		}
+
+		return view;
+	}
+
+	/**
+	 * Build the View of a checkbox question. The view includes a prompt and a list of options with
+	 * associated checkboxes.
+	 */
+	private static View getCheckboxView(final Context context, final ViewGroup container, final QuestionCheckbox question, final ResponseState state, final int index, ChoiceRowPool rows) {
+		// inflate the basic page layout
+		LayoutInflater inflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+		View view = inflater.inflate(R.layout.survey_page, container, false);
+		LinearLayout pollPage = (LinearLayout) view.findViewById(R.id.poll_page_container);
+
+		// start adding answer options to the layout
+		if(question.getChoiceCount() > 0) {
+			for(int i = 0; i < question.getChoiceCount(); i++) {
+				// build the button
+				String choiceLabel = question.getOptionLabel(i);
+				final ChoiceRowPool.ChoiceRow row = rows.obtain(inflater, R.layout.checkbox_style, pollPage);
+				final CheckBox cb = (CheckBox) row.button;
+				cb.setText(choiceLabel);
+
+				// set the alphabetic tag for the button
+				cb.setTag(i);
+
+				// restore the checked status
+				if(state.isChecked(index, i)) {
+					cb.setChecked(true);
+				}
+
+				/*
+				 * Every row comes with an EditText field in case there should be an associated
+				 * textField. Hide it if there is no textField for that choice.
+				 */
+				final EditText et = row.textField;
+
+				if(state.getTextFieldAnswer(index, i) != null)
+					et.setText(state.getTextFieldAnswer(index, i));
+				else
+					et.setVisibility(View.GONE);
+
+				if(question.textFieldAtIndex(i)) {
+					String textFieldLabel = question.getTextFieldLabel(i);
+					et.setHint(textFieldLabel);
+					et.setTag(i);
+					LinearLayout.LayoutParams layoutParams = new LinearLayout.LayoutParams(LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.WRAP_CONTENT);
+					layoutParams.setMargins(50, 0, 0, 15);
+					et.setLayoutParams(layoutParams);
+					row.setTextWatcher(new TextWatcher() {
+						@Override
+						public void afterTextChanged(Editable s) {}
+
+						@Override
+						public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+						@Override
+						public void onTextChanged(CharSequence s, int start, int before, int count) {
+							state.setTextFieldAnswer(index, (Integer) et.getTag(), s.toString());
+						}
+					});
+				}
+
+				/*
+				 * When the answer is changed, save it to the respondent's ResponseState.
+				 */
+				cb.setOnCheckedChangeListener(new android.widget.CompoundButton.OnCheckedChangeListener() {
+					@Override
+					public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+						/*
+						 * The QuestionCheckbox class handles this slightly differently than the
+						 * other subclasses of Question. The tag is used to store the index, which
+						 * is retrieved from the callback method and used to set the choice's bit in
+						 * the ResponseState's bitset.
+						 */
+						state.setChecked(index, (Integer) cb.getTag(), isChecked);
+
+						if(isChecked && et.getTag() != null) {
+							et.setVisibility(View.VISIBLE);
+							state.setTextFieldAnswer(index, (Integer) cb.getTag(), et.getText().toString());
+							et.requestFocus();
+						} else {
+							et.setVisibility(View.GONE);
+							state.setTextFieldAnswer(index, (Integer) cb.getTag(), null);
+							final InputMethodManager imm = (InputMethodManager) context.getSystemService(Context.INPUT_METHOD_SERVICE);
+							imm.hideSoftInputFromWindow(et.getWindowToken(), 0);
+						}
+					}
+				});
+
+				pollPage.addView(cb);
+				pollPage.addView(et);
+			}
+
+		}
+
+		return view;
+	}
+
+	/**
+	 * Build the View of a writing question. The view includes a prompt and a text box.
+	 */
+	private static View getWritingView(Context context, final ViewGroup container, QuestionWriting question, final ResponseState state, final int index, ChoiceRowPool rows) {
+		// build the basic page layout
+		LayoutInflater inflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+		View view = inflater.inflate(R.layout.survey_page, container, false);
+		LinearLayout pollPage = (LinearLayout) view.findViewById(R.id.poll_page_container);
+
+		// make a text box and style it
+		EditText inputBox = new EditText(context);
+		inputBox.setHint("Write your response here");
+		if(state.getText(index) != null && state.getText(index).length() > 0)
+			inputBox.setText(state.getText(index));
+		inputBox.setMinLines(5);
+		inputBox.setGravity(Gravity.TOP | Gravity.LEFT);
+
+		/*
+		 * when the answer is changed, save it to the respondent's
+		 * ResponseState
+		 */
+		inputBox.addTextChangedListener(new TextWatcher() {
+			@Override
+			public void afterTextChanged(Editable s) {}
+
+			@Override
+			public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+			@Override
+			public void onTextChanged(CharSequence s, int start, int before, int count) {
+				state.setText(index, s.toString());
+			}
+		});
+
+		// add the text box to the page
+		pollPage.addView(inputBox);
+
+		return view;
+	}
+}
@@ -0,0 +1,399 @@
+package com.ajhall.polloi;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * An append-only log of submitted responses, one file per survey, so an export can pick up from
+ * where the last one stopped without going back to the database. The {@link AnswerWriteQueue}
+ * appends each response once its transaction has committed, and the {@link ExportWorker} reads
+ * the records after the offset it saved with its last export. Once an export has written a
+ * survey's records to its CSV file they are dropped with {@link #discardBefore(int, long)}, so a
+ * journal only holds what hasn't been exported yet. Get the shared instance from
+ * {@link GlobalsApp#getResponseJournal(Context)}.
+ *
+ * <p>
+ * Each record is the length of its payload and the payload's CRC32, both as big-endian int32s,
+ * then the payload: the response_id, survey_id, user ID, submission time and answered items. A
+ * record cut short by a crash, or one that fails its checksum, ends the journal; the next append
+ * overwrites it. The database stays the master copy: a response that never made it into the
+ * journal is noticed by the exporter, which then rewrites the whole file from the database.
+ */
+public class ResponseJournal {
+	private static final String TAG = "ResponseJournal";
+
+	/**
+	 * Records longer than this are taken to be damage rather than a response.
+	 */
+	private static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+
+	private final File dir;
+
+	// the length of each survey's journal up to the end of its last whole record; guarded by this
+	private final HashMap<Integer, Long> validLengths = new HashMap<Integer, Long>();
+
+	/**
+	 * @param context
+	 *        A context; the journals are kept in its private files directory
+	 */
+	public ResponseJournal(Context context) {
+		dir = new File(context.getApplicationContext().getFilesDir(), "journal");
+	}
+
+	private File getFile(int surveyId) {
+		return new File(dir, "survey_" + surveyId + ".journal");
+	}
+
+	/**
+	 * Append committed responses to their surveys' journals.
+	 *
+	 * @param responses
+	 *        The responses, in the order they were committed
+	 * @param responseIds
+	 *        The response_id each was stored under, in the same order
+	 */
+	public synchronized void append(List<SurveyResponse> responses, List<Long> responseIds) throws IOException {
+		// one write per survey
+		HashMap<Integer, ByteArrayOutputStream> records = new HashMap<Integer, ByteArrayOutputStream>();
+		for(int i = 0; i < responses.size(); i++) {
+			SurveyResponse response = responses.get(i);
+			ByteArrayOutputStream buffer = records.get(response.getSurveyId());
+			if(buffer == null) {
+				buffer = new ByteArrayOutputStream();
+				records.put(response.getSurveyId(), buffer);
+			}
+			writeRecord(buffer, responseIds.get(i), response);
+		}
+
+		dir.mkdirs();
+		for(int surveyId : records.keySet()) {
+			long length = getValidLength(surveyId);
+			RandomAccessFile file = new RandomAccessFile(getFile(surveyId), "rw");
+			try {
+				// drop anything after the last whole record, so a torn write can't hide this one
+				file.setLength(length);
+				file.seek(length);
+				byte[] bytes = records.get(surveyId).toByteArray();
+				try {
+					file.write(bytes);
+				} catch (IOException e) {
+					file.setLength(length);
+					throw e;
+				}
+				validLengths.put(surveyId, length + bytes.length);
+			} finally {
+				file.close();
+			}
+		}
+	}
+
+	/**
+	 * Drop the records of a survey's journal before an offset, once an export has written them.
+	 * Records after it, e.g. ones appended while the export was running, are moved to the start of
+	 * the journal, so offsets read before this call are no longer valid: the first record kept is
+	 * now at offset 0. The failed responses file is never touched.
+	 *
+	 * @param surveyId
+	 *        The survey
+	 * @param offset
+	 *        The offset just past the last record exported
+	 */
+	public synchronized void discardBefore(int surveyId, long offset) throws IOException {
+		long length = getValidLength(surveyId);
+		if(offset <= 0)
+			return;
+		if(offset > length)
+			throw new IOException("Offset " + offset + " is past the end of the journal of survey " + surveyId);
+
+		File file = getFile(surveyId);
+		if(offset == length) {
+			RandomAccessFile journal = new RandomAccessFile(file, "rw");
+			try {
+				journal.setLength(0);
+			} finally {
+				journal.close();
+			}
+		} else {
+			// copy the records that are left to a new file, which replaces the journal only once
+			// it is complete
+			byte[] kept = new byte[(int) (length - offset)];
+			RandomAccessFile journal = new RandomAccessFile(file, "r");
+			try {
+				journal.seek(offset);
+				journal.readFully(kept);
+			} finally {
+				journal.close();
+			}
+
+			File replacement = new File(dir, file.getName() + ".tmp");
+			FileOutputStream out = new FileOutputStream(replacement);
+			try {
+				out.write(kept);
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+			if(!replacement.renameTo(file)) {
+				replacement.delete();
+				throw new IOException("Could not replace " + file.getName());
+			}
+		}
+		validLengths.put(surveyId, length - offset);
+	}
+
+	/**
+	 * Keep responses that couldn't be written to the database, so that they can be recovered by
+	 * hand rather than lost. They go in their own file, failed.journal, in the same record format
+	 * with a response_id of 0; read them with {@link #readFailed()}.
+	 *
+	 * @param responses
+	 *        The responses
+	 */
+	public synchronized void appendFailed(List<SurveyResponse> responses) throws IOException {
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		for(SurveyResponse response : responses)
+			writeRecord(records, 0, response);
+
+		dir.mkdirs();
+		FileOutputStream out = new FileOutputStream(getFailedFile(), true);
+		try {
+			out.write(records.toByteArray());
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Read the responses kept by {@link #appendFailed(List)}.
+	 *
+	 * @return A reader, which the caller must close
+	 */
+	public Reader readFailed() throws IOException {
+		return new Reader(getFailedFile(), 0);
+	}
+
+	private File getFailedFile() {
+		return new File(dir, "failed.journal");
+	}
+
+	/**
+	 * @return The length of a survey's journal up to the end of its last whole record; where the
+	 *         next record will start
+	 */
+	public synchronized long length(int surveyId) {
+		return getValidLength(surveyId);
+	}
+
+	private long getValidLength(int surveyId) {
+		Long length = validLengths.get(surveyId);
+		if(length != null)
+			return length;
+
+		// find the end of the last whole record, once per survey per process
+		long valid = 0;
+		File file = getFile(surveyId);
+		if(file.exists()) {
+			try {
+				Reader reader = read(surveyId, 0);
+				try {
+					while(reader.next())
+						;
+					valid = reader.getOffset();
+				} finally {
+					reader.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			if(valid < file.length())
+				Log.w(TAG, "Ignoring " + (file.length() - valid) + " bytes at the end of " + file.getName());
+		}
+		validLengths.put(surveyId, valid);
+		return valid;
+	}
+
+	/**
+	 * Read a survey's journal from an offset, as far as it was written when this was called.
+	 *
+	 * @param surveyId
+	 *        The survey
+	 * @param offset
+	 *        Where to start; 0 or an offset returned by {@link Reader#getOffset()} or
+	 *        {@link #length(int)}
+	 * @return A reader, which the caller must close
+	 */
+	public Reader read(int surveyId, long offset) throws IOException {
+		return new Reader(getFile(surveyId), offset);
+	}
+
+	/**
+	 * Reads the records of one journal in order.
+	 */
+	public static class Reader {
+		private final DataInputStream in;
+		private final long end;
+		private long offset;
+		private long responseId;
+		private SurveyResponse response;
+
+		private Reader(File file, long offset) throws IOException {
+			this.offset = offset;
+			end = file.length();
+			if(offset > end)
+				throw new IOException(file.getName() + " is shorter than offset " + offset);
+
+			if(end == 0) {
+				in = null;
+			} else {
+				// seek rather than skip, which may skip nothing and give no reason
+				FileInputStream stream = new FileInputStream(file);
+				try {
+					stream.getChannel().position(offset);
+				} catch (IOException e) {
+					stream.close();
+					throw e;
+				}
+				in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+			}
+		}
+
+		/**
+		 * Move to the next record.
+		 *
+		 * @return True if there is one, false at the end of the journal or at a damaged record
+		 */
+		public boolean next() throws IOException {
+			if(in == null || end - offset < 8)
+				return false;
+
+			int length = in.readInt();
+			int crc = in.readInt();
+			if(length < 0 || length > MAX_RECORD_LENGTH || length > end - offset - 8)
+				return false;
+
+			byte[] payload = new byte[length];
+			in.readFully(payload);
+			CRC32 check = new CRC32();
+			check.update(payload);
+			if((int) check.getValue() != crc)
+				return false;
+
+			try {
+				readPayload(payload);
+			} catch (EOFException e) {
+				return false;
+			}
+			offset += 8 + length;
+			return true;
+		}
+
+		private void readPayload(byte[] payload) throws IOException {
+			DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+			responseId = record.readLong();
+			int surveyId = record.readInt();
+			String userId = readString(record);
+			long submittedAt = record.readLong();
+
+			response = new SurveyResponse(surveyId, userId, submittedAt);
+			int itemCount = record.readInt();
+			for(int i = 0; i < itemCount; i++) {
+				int questionId = record.readInt();
+				int optionOrder = record.readInt();
+				String value = readString(record);
+				String textField = readString(record);
+				response.addItem(questionId, optionOrder, value, textField);
+			}
+		}
+
+		/**
+		 * @return The response_id of the current record
+		 */
+		public long getResponseId() {
+			return responseId;
+		}
+
+		/**
+		 * @return The response in the current record
+		 */
+		public SurveyResponse getResponse() {
+			return response;
+		}
+
+		/**
+		 * @return The offset just past the current record, where reading can pick up again later
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		public void close() throws IOException {
+			if(in != null)
+				in.close();
+		}
+	}
+
+	private static void writeRecord(ByteArrayOutputStream out, long responseId, SurveyResponse response) throws IOException {
+		ByteArrayOutputStream payload = new ByteArrayOutputStream(64 + response.getItemCount() * 16);
+		DataOutputStream record = new DataOutputStream(payload);
+		record.writeLong(responseId);
+		record.writeInt(response.getSurveyId());
+		writeString(record, response.getUserId());
+		record.writeLong(response.getSubmittedAt());
+		record.writeInt(response.getItemCount());
+		for(int i = 0; i < response.getItemCount(); i++) {
+			record.writeInt(response.getQuestionId(i));
+			record.writeInt(response.getOptionOrder(i));
+			writeString(record, response.getValue(i));
+			writeString(record, response.getTextField(i));
+		}
+		record.flush();
+
+		byte[] bytes = payload.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		DataOutputStream header = new DataOutputStream(out);
+		header.writeInt(bytes.length);
+		header.writeInt((int) crc.getValue());
+		header.flush();
+		out.write(bytes);
+	}
+
+	/**
+	 * Write a string as its UTF-8 length and bytes; -1 for null. Unlike writeUTF, this has no
+	 * 64 KB limit, which a long writing answer could reach.
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if(s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if(length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+}
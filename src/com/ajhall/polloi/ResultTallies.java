@@ -0,0 +1,172 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Keeps a {@link SurveyTally} for each survey whose results have been looked at. A survey's tally
+ * is counted from the answer store the first time it's asked for, and from then on the
+ * {@link AnswerWriteQueue} updates it as each response is committed, so it is never counted from
+ * scratch again unless the survey's questions change. Get the shared instance from
+ * {@link GlobalsApp#getResultTallies()}.
+ */
+public class ResultTallies {
+	private static final String TAG = "ResultTallies";
+
+	/**
+	 * A tally and the newest response it has counted.
+	 */
+	private static class Entry {
+		// null until it has been counted; guarded by ResultTallies.this
+		SurveyTally tally;
+		long lastResponseId;
+		// the responses committed while the tally was being counted, applied once it has been
+		ArrayList<Update> pending = new ArrayList<Update>();
+	}
+
+	/**
+	 * A committed response, as passed to {@link ResultTallies#update}.
+	 */
+	private static class Update {
+		final long responseId;
+		final SurveyResponse replaced;
+		final SurveyResponse response;
+
+		Update(long responseId, SurveyResponse replaced, SurveyResponse response) {
+			this.responseId = responseId;
+			this.replaced = replaced;
+			this.response = response;
+		}
+	}
+
+	// guarded by this
+	private final HashMap<Integer, Entry> entries = new HashMap<Integer, Entry>();
+
+	/**
+	 * Get a survey's tally, counting every response to it if this is the first time it's been
+	 * asked for. That reads the whole survey, so don't call this on the main thread.
+	 *
+	 * @param db
+	 *        The database
+	 * @param surveyId
+	 *        The survey
+	 * @return The shared, live tally, or null if there is no such survey
+	 */
+	public SurveyTally get(SQLiteDatabase db, int surveyId) {
+		// put the entry in before counting, so that responses committed during the count are kept
+		// for it rather than missed
+		Entry entry;
+		synchronized(this) {
+			entry = entries.get(surveyId);
+			if(entry == null) {
+				entry = new Entry();
+				entries.put(surveyId, entry);
+			} else if(entry.tally != null) {
+				return entry.tally;
+			}
+		}
+
+		// one thread counts, and any others asking for the same survey wait here for it; the count
+		// is done without holding this, which the writer thread takes while it holds the database
+		synchronized(entry) {
+			synchronized(this) {
+				if(entry.tally != null)
+					return entry.tally;
+			}
+
+			SurveyTally tally = null;
+			long lastResponseId = 0;
+			try {
+				SurveyDefinition survey = GlobalsApp.getSurveyCache().getDefinition(db, surveyId);
+				if(survey == null)
+					return null;
+
+				long start = SystemClock.uptimeMillis();
+				SurveyTally counting = survey.newTally();
+				Cursor c = null;
+				// in a transaction, so no response is committed part way through
+				db.beginTransactionNonExclusive();
+				try {
+					c = AnswerStore.queryAnswers(db, surveyId, 0);
+					c.moveToFirst();
+					while(!c.isAfterLast()) {
+						lastResponseId = c.getLong(0);
+						counting.add(AnswerStore.nextResponse(c, surveyId));
+					}
+					db.setTransactionSuccessful();
+				} finally {
+					DatabaseManager.closeCursor(c);
+					db.endTransaction();
+				}
+				Log.d(TAG, "Counted " + counting + " in " + (SystemClock.uptimeMillis() - start) + " ms");
+				tally = counting;
+			} finally {
+				synchronized(this) {
+					if(tally == null) {
+						// let the next caller try again
+						if(entries.get(surveyId) == entry)
+							entries.remove(surveyId);
+					} else {
+						// responses committed before the count began are in it already
+						entry.tally = tally;
+						entry.lastResponseId = lastResponseId;
+						for(Update update : entry.pending)
+							apply(entry, update.responseId, update.replaced, update.response);
+						entry.pending = null;
+					}
+				}
+			}
+			return tally;
+		}
+	}
+
+	/**
+	 * Count a response that has just been committed, if its survey's tally has been counted and
+	 * doesn't include it already. If the tally is being counted, the response is counted as soon
+	 * as it has been.
+	 *
+	 * @param responseId
+	 *        The response_id it was stored under
+	 * @param replaced
+	 *        The user's response that it replaced, or null if it's the user's first
+	 * @param response
+	 *        The response
+	 */
+	public synchronized void update(long responseId, SurveyResponse replaced, SurveyResponse response) {
+		Entry entry = entries.get(response.getSurveyId());
+		if(entry == null)
+			return;
+		if(entry.tally == null)
+			entry.pending.add(new Update(responseId, replaced, response));
+		else
+			apply(entry, responseId, replaced, response);
+	}
+
+	private static void apply(Entry entry, long responseId, SurveyResponse replaced, SurveyResponse response) {
+		if(responseId <= entry.lastResponseId)
+			return;
+
+		if(replaced != null)
+			entry.tally.remove(replaced);
+		entry.tally.add(response);
+		entry.lastResponseId = responseId;
+	}
+
+	/**
+	 * Forget a survey's tally, e.g. because its questions changed. It's counted again the next time
+	 * it's asked for.
+	 */
+	public synchronized void invalidate(int surveyId) {
+		entries.remove(surveyId);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ResultTallies [" + entries.size() + " surveys]";
+	}
+}
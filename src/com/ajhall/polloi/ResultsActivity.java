@@ -0,0 +1,138 @@
+package com.ajhall.polloi;
+
+import java.io.File;
+
+import android.app.Activity;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+/**
+ * Shows a survey's results so far from its {@link ResultTallies} entry: how many responses answered
+ * each question, how often each option was chosen and how often each text field was filled in.
+ * The first time a survey's results are shown they are counted from the answer store; after that
+ * they are kept up to date as responses are submitted. The survey's answers can also be exported
+ * from here to a columnar file (see {@link ColumnarExporter}), and every survey to a bundle for
+ * copying off the tablet at the end of the day (see {@link ExportBundle}). Pass the survey's ID as
+ * the "surveyId" extra. Respondents never see it: it's opened by a long press on the login button.
+ */
+public class ResultsActivity extends Activity implements ExportWorker.ExportListener {
+	private TextView mText;
+	private Button mExportButton;
+	private Button mBundleButton;
+	private int mSurveyId;
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.results_activity);
+
+		mText = (TextView) findViewById(R.id.results_text);
+		mSurveyId = getIntent().getIntExtra("surveyId", 0);
+
+		mExportButton = (Button) findViewById(R.id.results_export_columnar);
+		mExportButton.setOnClickListener(new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				mExportButton.setEnabled(false);
+				SurveyDBHelper.answersToColumnar(ResultsActivity.this, mSurveyId);
+			}
+		});
+
+		mBundleButton = (Button) findViewById(R.id.results_export_bundle);
+		mBundleButton.setOnClickListener(new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				mBundleButton.setEnabled(false);
+				SurveyDBHelper.exportBundle(ResultsActivity.this);
+			}
+		});
+	}
+
+	@Override
+	protected void onPause() {
+		super.onPause();
+		GlobalsApp.getExportWorker(this).removeListener(this);
+	}
+
+	@Override
+	protected void onResume() {
+		super.onResume();
+		GlobalsApp.getExportWorker(this).addListener(this);
+		mText.setText(R.string.results_counting);
+
+		// counting a survey for the first time reads all of its answers
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				SQLiteDatabase db = GlobalsApp.getDatabase(ResultsActivity.this);
+				SurveyDefinition survey = GlobalsApp.getSurveyCache().getDefinition(db, mSurveyId);
+				SurveyTally tally = GlobalsApp.getResultTallies().get(db, mSurveyId);
+				final String results = survey != null && tally != null ? describe(survey, tally) : "No survey " + mSurveyId;
+
+				runOnUiThread(new Runnable() {
+					@Override
+					public void run() {
+						mText.setText(results);
+					}
+				});
+			}
+		}, "ResultsActivity").start();
+	}
+
+	@Override
+	public void onExportProgress(int surveyId, int rowsWritten, int totalRows) {}
+
+	@Override
+	public void onExportFinished(int surveyId, File file, boolean completed) {
+		if(surveyId == ExportWorker.ALL_SURVEYS) {
+			mBundleButton.setEnabled(true);
+			String message = completed ? "Wrote every survey to " + file.getAbsolutePath() : "Could not finish " + file.getAbsolutePath() + "; the next export carries on from its last whole chunk";
+			Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+			return;
+		}
+
+		// the CSV file is exported after every submission; only the columnar file was asked for here
+		if(surveyId != mSurveyId || !file.getName().endsWith(".plc"))
+			return;
+		mExportButton.setEnabled(true);
+		Toast.makeText(this, (completed ? "Wrote " : "Could not write ") + file.getName(), Toast.LENGTH_LONG).show();
+	}
+
+	/**
+	 * @return A survey's results as text, one line per question, option and text field
+	 */
+	private static String describe(SurveyDefinition survey, SurveyTally tally) {
+		int responses = tally.getResponseCount();
+		StringBuilder text = new StringBuilder();
+		text.append(survey.getTitle()).append("\n").append(responses).append(" responses\n");
+
+		for(int i = 0; i < survey.getSize(); i++) {
+			Question question = survey.getQuestion(i);
+			int questionId = question.getId();
+			text.append("\n").append(i + 1).append(". ").append(question.getPrompt()).append("\n");
+			text.append("   answered by ").append(tally.getAnsweredCount(questionId)).append(percent(tally.getAnsweredCount(questionId), responses)).append("\n");
+
+			for(int optionOrder = 1; optionOrder <= question.getChoiceCount(); optionOrder++) {
+				int chosen = tally.getOptionCount(questionId, optionOrder);
+				text.append("   ").append(question.getOptionLabel(optionOrder - 1)).append(": ").append(chosen).append(percent(chosen, responses)).append("\n");
+
+				String textField = question.getTextFieldLabel(optionOrder - 1);
+				if(textField != null) {
+					int filledIn = tally.getTextFieldCount(questionId, optionOrder);
+					text.append("      ").append(textField).append(" filled in: ").append(filledIn).append(percent(filledIn, responses)).append("\n");
+				}
+			}
+		}
+		return text.toString();
+	}
+
+	private static String percent(int count, int total) {
+		if(total == 0)
+			return "";
+		return " (" + Math.round(100.0 * count / total) + "%)";
+	}
+}
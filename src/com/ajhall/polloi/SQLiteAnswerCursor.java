@@ -0,0 +1,60 @@
+package com.ajhall.polloi;
+
+import android.database.Cursor;
+
+/**
+ * Lets the exporters read a cursor returned by {@link AnswerStore#queryAnswers}. Closing this closes
+ * the cursor.
+ */
+public class SQLiteAnswerCursor implements AnswerCursor {
+	private final Cursor c;
+
+	public SQLiteAnswerCursor(Cursor c) {
+		this.c = c;
+	}
+
+	@Override
+	public boolean isBeforeFirst() {
+		return c.isBeforeFirst();
+	}
+
+	@Override
+	public boolean isAfterLast() {
+		return c.isAfterLast();
+	}
+
+	@Override
+	public boolean moveToFirst() {
+		return c.moveToFirst();
+	}
+
+	@Override
+	public boolean moveToNext() {
+		return c.moveToNext();
+	}
+
+	@Override
+	public boolean isNull(int column) {
+		return c.isNull(column);
+	}
+
+	@Override
+	public int getInt(int column) {
+		return c.getInt(column);
+	}
+
+	@Override
+	public long getLong(int column) {
+		return c.getLong(column);
+	}
+
+	@Override
+	public String getString(int column) {
+		return c.getString(column);
+	}
+
+	@Override
+	public void close() {
+		c.close();
+	}
+}
@@ -0,0 +1,76 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * The app's {@link SurveyRepository}, on the shared database connection. Surveys are saved with
+ * {@link SurveyWriter} and responses with {@link AnswerStore}, keeping the tallies table up to date
+ * as the {@link AnswerWriteQueue} does. Responses stored here go straight to the database: the
+ * response journal, CSV files and in-memory tallies only hear about responses submitted through
+ * the queue, so the app itself should keep submitting there.
+ */
+public class SQLiteSurveyRepository implements SurveyRepository {
+	private final SQLiteDatabase db;
+
+	/**
+	 * @param db
+	 *        The database, normally from {@link GlobalsApp#getDatabase}
+	 */
+	public SQLiteSurveyRepository(SQLiteDatabase db) {
+		this.db = db;
+	}
+
+	@Override
+	public List<Integer> getSurveyIds() {
+		return SurveyDBHelper.getSurveyIds(db);
+	}
+
+	@Override
+	public SurveyDefinition readSurveyDefinition(int surveyId) {
+		return SurveyDBHelper.readSurveyDefinition(db, surveyId);
+	}
+
+	@Override
+	public SurveyDefinition writeSurvey(Survey survey, int surveyId) {
+		SurveyDefinition saved = SurveyWriter.write(db, survey, surveyId);
+		// responses written after this are tallied against the saved questions
+		GlobalsApp.getSurveyCache().invalidate(surveyId);
+		return saved;
+	}
+
+	@Override
+	public boolean hasResponse(int surveyId, String userId) {
+		return AnswerStore.hasResponse(db, surveyId, userId);
+	}
+
+	@Override
+	public long upsertResponse(SurveyResponse response) {
+		ArrayList<SurveyResponse> responses = new ArrayList<SurveyResponse>(1);
+		responses.add(response);
+		return upsertResponses(responses)[0];
+	}
+
+	@Override
+	public long[] upsertResponses(List<SurveyResponse> responses) {
+		long[] responseIds = new long[responses.size()];
+		db.beginTransaction();
+		try {
+			for(int i = 0; i < responses.size(); i++) {
+				AnswerWriteQueue.store(db, responses.get(i));
+				responseIds[i] = AnswerStore.upsertResponse(db, responses.get(i));
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		return responseIds;
+	}
+
+	@Override
+	public AnswerCursor queryAnswers(int surveyId, long afterResponseId) {
+		return new SQLiteAnswerCursor(AnswerStore.queryAnswers(db, surveyId, afterResponseId));
+	}
+}
@@ -21,33 +21,52 @@ public class SurveyActivity extends FragmentActivity {
 
 	/**
 	 * The {@link android.support.v4.view.PagerAdapter} that will provide fragments for each of the
-	 * sections. We use a {@link android.support.v4.app.FragmentPagerAdapter} derivative, which will
-	 * keep every loaded fragment in memory. If this becomes too memory intensive, it may be best to
-	 * switch to a {@link android.support.v4.app.FragmentStatePagerAdapter}.
+	 * sections. We use a {@link android.support.v4.app.FragmentStatePagerAdapter} derivative, which
+	 * only keeps the pages next to the current one, so long surveys don't hold every page in memory.
 	 */
 	private SurveyPagerAdapter mSurveyPagerAdapter;
 
+	/**
+	 * The choice rows of destroyed pages, reused by the pages built after them.
+	 */
+	private ChoiceRowPool mChoiceRowPool = new ChoiceRowPool(32);
+
 	/**
 	 * The {@link ViewPager} that will host the section contents.
 	 */
 	private ViewPager mViewPager;
 	private Survey mSurvey;
 
+	/**
+	 * Records each answer as it's given, so it can be recovered if the process is killed.
+	 */
+	private DraftJournal mDraftJournal;
+
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
+		long start = Tracer.begin();
 
 		GlobalsApp.userId = getIntent().getStringExtra("userId");
 		int surveyId = getIntent().getIntExtra("surveyId", 0);
 
 		setContentView(R.layout.survey_activity_viewpager);
 
-		if(savedInstanceState != null)
-			mSurvey = savedInstanceState.getParcelable("survey");
-		else
-			mSurvey = SurveyDBHelper.readSurvey(this, surveyId);
+		mSurvey = SurveyDBHelper.readSurvey(this, surveyId);
+
+		// restore the answers that were in progress, if the survey hasn't changed since; the draft
+		// journal has every change, so it's preferred over the saved state
+		boolean restored = DraftJournal.replay(this, mSurvey, GlobalsApp.userId);
+		if(restored)
+			Tracer.count(Tracer.DRAFTS_RESTORED);
+		if(!restored && savedInstanceState != null) {
+			byte[] snapshot = savedInstanceState.getByteArray("answers");
+			if(snapshot != null && SurveySnapshot.getSurveyId(snapshot) == surveyId && !SurveySnapshot.decode(snapshot, mSurvey))
+				mSurvey.getResponse().clear();
+		}
 
 		GlobalsApp.survey = mSurvey;
+		mDraftJournal = DraftJournal.open(this, mSurvey, GlobalsApp.userId);
 
 		/*
 		 * Create the adapter that will return a fragment for each of the primary sections of the
@@ -83,16 +102,52 @@ public class SurveyActivity extends FragmentActivity {
 			@Override
 			public void onPageScrollStateChanged(int state) {}
 		});
+
+		Tracer.end(Tracer.SURVEY_CREATE, start);
 	}
 
 	/**
-	 * If the user leaves the program, save the state of the global survey. The survey gets restored
-	 * in SurveyActivity.onCreate().
+	 * If the user leaves the program, save the answers in the global survey. Only the answers are
+	 * saved (see {@link SurveySnapshot}); the survey itself is read again from the database in
+	 * SurveyActivity.onCreate() and the answers are restored onto it.
 	 */
 	@Override
 	protected void onSaveInstanceState(Bundle outState) {
 		super.onSaveInstanceState(outState);
-		outState.putParcelable("survey", GlobalsApp.survey);
+		outState.putByteArray("answers", SurveySnapshot.encode(GlobalsApp.survey));
+	}
+
+	@Override
+	protected void onPause() {
+		super.onPause();
+		// the process may be killed any time after this
+		if(mDraftJournal != null)
+			mDraftJournal.flush();
+	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		closeDraftJournal();
+		mChoiceRowPool.clear();
+	}
+
+	/**
+	 * Stop recording changes to the answers, writing any not written yet. The journal is kept until
+	 * the {@link AnswerWriteQueue} has committed the response, or until the next visit replaces it.
+	 */
+	public void closeDraftJournal() {
+		if(mDraftJournal != null) {
+			mDraftJournal.close(mSurvey);
+			mDraftJournal = null;
+		}
+	}
+
+	/**
+	 * Get the pool that this Activity's survey pages take their choice rows from.
+	 */
+	public ChoiceRowPool getChoiceRowPool() {
+		return mChoiceRowPool;
 	}
 
 
@@ -104,6 +159,10 @@ public class SurveyActivity extends FragmentActivity {
 		new AlertDialog.Builder(this).setTitle("End survey?").setIcon(R.drawable.ic_dialog_alert_holo_light).setMessage("You will be logged out and any data you entered will be discarded.").setPositiveButton("OK", new DialogInterface.OnClickListener() {
 			@Override
 			public void onClick(DialogInterface dialog, int which) {
+				if(mDraftJournal != null) {
+					mDraftJournal.discard(mSurvey);
+					mDraftJournal = null;
+				}
 				finish();
 			}
 		}).setNegativeButton("Cancel", null).show();
@@ -0,0 +1,117 @@
+package com.ajhall.polloi;
+
+import java.util.HashMap;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.LruCache;
+
+/**
+ * Keeps the most recently used survey definitions in memory, so that logging in to a survey that
+ * has been taken before doesn't read it from the database again. Each respondent gets a fresh,
+ * unanswered {@link ResponseState} paired with the cached definition. Get the
+ * shared instance from {@link GlobalsApp#getSurveyCache()}.
+ *
+ * <p>
+ * A definition is read from the database without holding a lock, so a survey can be saved and
+ * invalidated while it is being read. Each invalidation is numbered, and a definition is only
+ * cached if its survey hasn't been invalidated since the read began; otherwise the next lookup
+ * reads it again.
+ */
+public class SurveyCache {
+	private final LruCache<Integer, SurveyDefinition> definitions;
+
+	// the number of the last invalidation, of each survey and of every survey; guarded by this
+	private long generation;
+	private final HashMap<Integer, Long> invalidatedAt = new HashMap<Integer, Long>();
+	private long clearedAt;
+
+	/**
+	 * @param maxSurveys
+	 *        The number of survey definitions to keep; the least recently used is dropped first
+	 */
+	public SurveyCache(int maxSurveys) {
+		definitions = new LruCache<Integer, SurveyDefinition>(maxSurveys);
+	}
+
+	/**
+	 * Get an unanswered copy of a survey, reading its definition from the database only if it
+	 * isn't cached.
+	 * 
+	 * @param db
+	 *        The database to read from on a miss
+	 * @param surveyId
+	 *        The survey to get
+	 * @return A new Survey for one respondent, or null if there is no such survey
+	 */
+	public Survey get(SQLiteDatabase db, int surveyId) {
+		SurveyDefinition definition = getDefinition(db, surveyId);
+		if(definition == null)
+			return null;
+		return new Survey(definition);
+	}
+
+	/**
+	 * Get the cached definition of a survey itself, reading it from the database only if it isn't
+	 * cached.
+	 * 
+	 * @param db
+	 *        The database to read from on a miss
+	 * @param surveyId
+	 *        The survey to get
+	 * @return The shared definition, or null if there is no such survey
+	 */
+	public SurveyDefinition getDefinition(SQLiteDatabase db, int surveyId) {
+		SurveyDefinition definition = definitions.get(surveyId);
+		if(definition == null) {
+			long readAt;
+			synchronized(this) {
+				readAt = generation;
+			}
+			definition = SurveyDBHelper.readSurveyDefinition(db, surveyId);
+			if(definition != null) {
+				synchronized(this) {
+					Long invalidated = invalidatedAt.get(surveyId);
+					if(clearedAt <= readAt && (invalidated == null || invalidated <= readAt))
+						definitions.put(surveyId, definition);
+				}
+			}
+		}
+		return definition;
+	}
+
+	/**
+	 * Drop a survey from the cache, e.g. because its definition has changed in the database.
+	 */
+	public synchronized void invalidate(int surveyId) {
+		invalidatedAt.put(surveyId, ++generation);
+		definitions.remove(surveyId);
+	}
+
+	/**
+	 * Drop every survey from the cache.
+	 */
+	public synchronized void clear() {
+		clearedAt = ++generation;
+		invalidatedAt.clear();
+		definitions.evictAll();
+	}
+
+	/**
+	 * @return The number of lookups that found the survey in the cache
+	 */
+	public int getHitCount() {
+		return definitions.hitCount();
+	}
+
+	/**
+	 * @return The number of lookups that had to read the survey from the database
+	 */
+	public int getMissCount() {
+		return definitions.missCount();
+	}
+
+	@Override
+	public String toString() {
+		return "SurveyCache [" + definitions.size() + " surveys, " + getHitCount() + " hits, " + getMissCount() + " misses]";
+	}
+}
@@ -31,7 +31,6 @@ public class SurveyFinishPage extends Fragment {
 					@Override
 					public void onClick(DialogInterface dialog, int which) {
 						SurveyDBHelper.writeSurveyAnswers(getActivity());
-						SurveyDBHelper.answersToCsv(getActivity(), SurveyDBHelper.getSurveyId(getActivity(), GlobalsApp.survey.getTitle()));
 					}
 				}).setNegativeButton("No", null)
 				.show();
@@ -8,7 +8,6 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 public class SurveyPage extends Fragment {
-	View pageView;
 
 	/**
 	 * To create a survey page, pass a bundle containing an integer "qIndex"
@@ -17,25 +16,20 @@ public class SurveyPage extends Fragment {
 	}
 
 	/**
-	 * Creates a fragment by turning a survey question into a View.
+	 * Creates a fragment by turning a survey question into a View. The view is built from the
+	 * respondent's ResponseState every time, so a page that was destroyed after being swiped away
+	 * comes back with its answers.
 	 */
 	@Override
 	public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+		long start = Tracer.begin();
 
 		Bundle args = getArguments();
 		int index = (int) args.getInt("qIndex");
 		Question question = GlobalsApp.survey.getQuestion(index);
 
-		// keep input alive even when you swipe to a faraway page
-		if(pageView == null) {
-			// normally inflate the view hierarchy
-			pageView = question.getQuestionView(getActivity(), container);
-		} else {
-			// view is still attached to the previous view hierarchy
-			// we need to remove it and re-attach it to the current one
-			ViewGroup parent = (ViewGroup) pageView.getParent();
-			parent.removeView(pageView);
-		}
+		ChoiceRowPool rows = ((SurveyActivity) getActivity()).getChoiceRowPool();
+		View pageView = QuestionViews.getQuestionView(getActivity(), container, question, GlobalsApp.survey.getResponse(), index, rows);
 
 		TextView promptTextView = (TextView) pageView.findViewById(R.id.prompt);
 		promptTextView.setText(question.getPrompt());
@@ -48,6 +42,18 @@ public class SurveyPage extends Fragment {
 			sectionTextView.setVisibility(View.VISIBLE);
 		}
 
+		Tracer.count(Tracer.PAGES_CREATED);
+		Tracer.end(Tracer.PAGE_CREATE, start);
 		return pageView;
 	}
+
+	/**
+	 * Hand this page's choice rows back to the pool for the next page to use.
+	 */
+	@Override
+	public void onDestroyView() {
+		if(getView() != null)
+			((SurveyActivity) getActivity()).getChoiceRowPool().recycle(getView());
+		super.onDestroyView();
+	}
 }
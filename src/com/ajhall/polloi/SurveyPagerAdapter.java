@@ -4,13 +4,16 @@ import android.content.Context;
 import android.os.Bundle;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.app.Fragment;
-import android.support.v4.app.FragmentPagerAdapter;
+import android.support.v4.app.FragmentStatePagerAdapter;
 
 /**
- * A {@link FragmentPagerAdapter} that returns a fragment corresponding to one
- * of the primary sections of the app.
+ * A {@link FragmentStatePagerAdapter} that returns a fragment corresponding to one
+ * of the primary sections of the app. Only the pages near the current one are
+ * kept alive; the rest are destroyed and rebuilt from the respondent's
+ * ResponseState when the user swipes back to them, so even a very long survey
+ * only holds a few pages in memory.
  */
-public class SurveyPagerAdapter extends FragmentPagerAdapter {
+public class SurveyPagerAdapter extends FragmentStatePagerAdapter {
 	private Survey survey;
 
 	public SurveyPagerAdapter(FragmentManager fm, Context context) {
@@ -23,7 +26,7 @@ public class SurveyPagerAdapter extends FragmentPagerAdapter {
 	 * through) and turn it into a Fragment to be shown by the ViewPager in
 	 * MainPoll. (non-Javadoc)
 	 * 
-	 * @see android.support.v4.app.FragmentPagerAdapter#getItem(int)
+	 * @see android.support.v4.app.FragmentStatePagerAdapter#getItem(int)
 	 */
 	@Override
 	public Fragment getItem(int i) {
@@ -0,0 +1,128 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Puts a {@link Survey} in a Parcel: its definition, question by question, and its answers as a
+ * {@link SurveySnapshot}. Used where a survey that may not be in the database yet, such as one
+ * being built in the survey editor, has to be kept in a Bundle.
+ */
+public class SurveyParcel implements Parcelable {
+	private final Survey survey;
+
+	/**
+	 * @param survey
+	 *        The survey to put in a Parcel
+	 */
+	public SurveyParcel(Survey survey) {
+		this.survey = survey;
+	}
+
+	public Survey getSurvey() {
+		return survey;
+	}
+
+	private static Survey readFromParcel(Parcel in) {
+		int id = in.readInt();
+		String title = in.readString();
+		String introText = in.readString();
+		int size = in.readInt();
+		ArrayList<Question> questions = new ArrayList<Question>(size);
+		for(int i = 0; i < size; i++)
+			questions.add(readQuestion(in));
+
+		Survey survey = new Survey(new SurveyDefinition(id, title, introText, questions));
+		SurveySnapshot.decode(in.createByteArray(), survey);
+		return survey;
+	}
+
+	/**
+	 * Read a question written by {@link #writeQuestion}.
+	 */
+	private static Question readQuestion(Parcel in) {
+		int type = in.readInt();
+		String prompt = in.readString();
+		String section = in.readString();
+		int id = in.readInt();
+
+		Question question;
+		switch(type) {
+		case Question.QUESTION_CHECKBOX:
+			QuestionCheckbox checkbox = new QuestionCheckbox(prompt, section);
+			int checkboxChoices = in.readInt();
+			for(int i = 0; i < checkboxChoices; i++)
+				checkbox.addChoice(in.readString(), in.readString());
+			question = checkbox;
+			break;
+		case Question.QUESTION_MC:
+			QuestionMC mc = new QuestionMC(prompt, section);
+			int mcChoices = in.readInt();
+			for(int i = 0; i < mcChoices; i++)
+				mc.addChoice(in.readString(), in.readString());
+			question = mc;
+			break;
+		case Question.QUESTION_WRITING:
+			question = new QuestionWriting(prompt, section);
+			break;
+		default:
+			question = new Question(prompt, section);
+			break;
+		}
+		question.setId(id);
+		return question;
+	}
+
+	/**
+	 * Write a question's type, prompt, section and question_id, then, for questions with choices,
+	 * the number of choices and each choice's label and text field label.
+	 */
+	private static void writeQuestion(Parcel dest, Question question) {
+		dest.writeInt(question.getType());
+		dest.writeString(question.getPrompt());
+		dest.writeString(question.getSection());
+		dest.writeInt(question.getId());
+
+		if(question instanceof QuestionMC || question instanceof QuestionCheckbox) {
+			dest.writeInt(question.getChoiceCount());
+			for(int i = 0; i < question.getChoiceCount(); i++) {
+				dest.writeString(question.getOptionLabel(i));
+				dest.writeString(question.getTextFieldLabel(i));
+			}
+		}
+	}
+
+	@Override
+	public int describeContents() {
+		return 0;
+	}
+
+	@Override
+	public void writeToParcel(Parcel dest, int flags) {
+		SurveyDefinition definition = survey.getDefinition();
+		dest.writeInt(definition.getId());
+		dest.writeString(definition.getTitle());
+		dest.writeString(definition.getIntroText());
+
+		dest.writeInt(definition.getSize());
+		for(int i = 0; i < definition.getSize(); i++)
+			writeQuestion(dest, definition.getQuestion(i));
+
+		dest.writeByteArray(SurveySnapshot.encode(survey));
+	}
+
+	public static final Parcelable.Creator<SurveyParcel> CREATOR = new Parcelable.Creator<SurveyParcel>() {
+
+		@Override
+		public SurveyParcel createFromParcel(Parcel source) {
+			return new SurveyParcel(readFromParcel(source));
+		}
+
+		@Override
+		public SurveyParcel[] newArray(int size) {
+			return new SurveyParcel[size];
+		}
+	};
+}
@@ -0,0 +1,256 @@
+package com.ajhall.polloi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+/**
+ * Loads the surveys bundled with the app from assets/seed_surveys.json into a new database. The
+ * file is streamed, and every row is written with one of three compiled INSERT statements inside a
+ * single transaction, so seeding costs one commit no matter how many surveys there are.
+ *
+ * <p>
+ * The file is a JSON object with a "version" (the format version, see {@link #VERSION}) and an
+ * array of "surveys". Each survey has a survey_id, title, optional intro_text and an array of
+ * "questions"; each question has a question_id, question_order, type (a Question.QUESTION_*
+ * constant), prompt, optional section and, for MC and checkbox questions, an array of "options"
+ * with option_order, answer_text and optional text_field_label. The columns match the tables in
+ * {@link DatabaseHelper}. Because the file is streamed, "version" must come before "surveys", and
+ * the fields of a survey or question must come before its nested array.
+ */
+public class SurveySeed {
+	private static final String TAG = "SurveySeed";
+
+	public static final String ASSET_NAME = "seed_surveys.json";
+
+	/**
+	 * The newest format version this loader understands.
+	 */
+	public static final int VERSION = 1;
+
+	private static final String INSERT_SURVEY = "INSERT INTO surveys (survey_id, title, intro_text) VALUES (?, ?, ?)";
+	private static final String INSERT_QUESTION = "INSERT INTO questions (question_id, survey_id, section, question_order, type, prompt) VALUES (?, ?, ?, ?, ?, ?)";
+	private static final String INSERT_OPTION = "INSERT INTO question_options (question_id, option_order, answer_text, text_field_label) VALUES (?, ?, ?, ?)";
+
+	private final SQLiteStatement insertSurvey;
+	private final SQLiteStatement insertQuestion;
+	private final SQLiteStatement insertOption;
+	private int surveyCount;
+	private int rowCount;
+
+	private SurveySeed(SQLiteDatabase db) {
+		insertSurvey = db.compileStatement(INSERT_SURVEY);
+		insertQuestion = db.compileStatement(INSERT_QUESTION);
+		insertOption = db.compileStatement(INSERT_OPTION);
+	}
+
+	/**
+	 * Write the bundled surveys to the database. Either every survey is written or, if the file
+	 * can't be read or a row can't be inserted, none is.
+	 *
+	 * @param context
+	 *        For opening the asset
+	 * @param db
+	 *        A database whose survey tables have just been created
+	 * @throws IOException
+	 *         If the asset is missing, malformed or a newer format version
+	 */
+	public static void load(Context context, SQLiteDatabase db) throws IOException {
+		long start = SystemClock.uptimeMillis();
+		SurveySeed seed = new SurveySeed(db);
+		InputStream in = context.getAssets().open(ASSET_NAME);
+		JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+
+		db.beginTransaction();
+		try {
+			seed.readPackage(reader);
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+			reader.close();
+			seed.close();
+		}
+
+		Log.i(TAG, "Seeded " + seed.surveyCount + " surveys (" + seed.rowCount + " rows) in " + (SystemClock.uptimeMillis() - start) + " ms");
+	}
+
+	private void readPackage(JsonReader reader) throws IOException {
+		int version = -1;
+
+		reader.beginObject();
+		while(reader.hasNext()) {
+			String name = reader.nextName();
+			if(name.equals("version")) {
+				version = reader.nextInt();
+				if(version > VERSION)
+					throw new IOException(ASSET_NAME + " is format version " + version + ", newer than " + VERSION);
+			} else if(name.equals("surveys")) {
+				if(version < 0)
+					throw new IOException(ASSET_NAME + " has no version before its surveys");
+				reader.beginArray();
+				while(reader.hasNext())
+					readSurvey(reader);
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+
+	private void readSurvey(JsonReader reader) throws IOException {
+		long surveyId = -1;
+		String title = null;
+		String introText = null;
+		boolean inserted = false;
+
+		reader.beginObject();
+		while(reader.hasNext()) {
+			String name = reader.nextName();
+			if(name.equals("survey_id")) {
+				surveyId = reader.nextLong();
+			} else if(name.equals("title")) {
+				title = nextString(reader);
+			} else if(name.equals("intro_text")) {
+				introText = nextString(reader);
+			} else if(name.equals("questions")) {
+				// the survey row has to exist before its questions
+				insertSurvey(surveyId, title, introText);
+				inserted = true;
+				reader.beginArray();
+				while(reader.hasNext())
+					readQuestion(reader, surveyId);
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if(!inserted)
+			insertSurvey(surveyId, title, introText);
+		surveyCount++;
+	}
+
+	private void insertSurvey(long surveyId, String title, String introText) throws IOException {
+		if(surveyId < 0 || title == null)
+			throw new IOException("Survey in " + ASSET_NAME + " needs a survey_id and a title before its questions");
+
+		insertSurvey.bindLong(1, surveyId);
+		insertSurvey.bindString(2, title);
+		bindStringOrNull(insertSurvey, 3, introText);
+		insertSurvey.executeInsert();
+		rowCount++;
+	}
+
+	private void readQuestion(JsonReader reader, long surveyId) throws IOException {
+		long questionId = -1;
+		long questionOrder = 0;
+		long type = Question.QUESTION;
+		String prompt = null;
+		String section = null;
+		boolean inserted = false;
+
+		reader.beginObject();
+		while(reader.hasNext()) {
+			String name = reader.nextName();
+			if(name.equals("question_id")) {
+				questionId = reader.nextLong();
+			} else if(name.equals("question_order")) {
+				questionOrder = reader.nextLong();
+			} else if(name.equals("type")) {
+				type = reader.nextLong();
+			} else if(name.equals("prompt")) {
+				prompt = nextString(reader);
+			} else if(name.equals("section")) {
+				section = nextString(reader);
+			} else if(name.equals("options")) {
+				insertQuestion(surveyId, questionId, questionOrder, type, prompt, section);
+				inserted = true;
+				reader.beginArray();
+				while(reader.hasNext())
+					readOption(reader, questionId);
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if(!inserted)
+			insertQuestion(surveyId, questionId, questionOrder, type, prompt, section);
+	}
+
+	private void insertQuestion(long surveyId, long questionId, long questionOrder, long type, String prompt, String section) throws IOException {
+		if(questionId < 0)
+			throw new IOException("Question in " + ASSET_NAME + " needs a question_id before its options");
+
+		insertQuestion.bindLong(1, questionId);
+		insertQuestion.bindLong(2, surveyId);
+		bindStringOrNull(insertQuestion, 3, section);
+		insertQuestion.bindLong(4, questionOrder);
+		insertQuestion.bindLong(5, type);
+		bindStringOrNull(insertQuestion, 6, prompt);
+		insertQuestion.executeInsert();
+		rowCount++;
+	}
+
+	private void readOption(JsonReader reader, long questionId) throws IOException {
+		long optionOrder = 0;
+		String answerText = null;
+		String textFieldLabel = null;
+
+		reader.beginObject();
+		while(reader.hasNext()) {
+			String name = reader.nextName();
+			if(name.equals("option_order"))
+				optionOrder = reader.nextLong();
+			else if(name.equals("answer_text"))
+				answerText = nextString(reader);
+			else if(name.equals("text_field_label"))
+				textFieldLabel = nextString(reader);
+			else
+				reader.skipValue();
+		}
+		reader.endObject();
+
+		insertOption.bindLong(1, questionId);
+		insertOption.bindLong(2, optionOrder);
+		bindStringOrNull(insertOption, 3, answerText);
+		bindStringOrNull(insertOption, 4, textFieldLabel);
+		insertOption.executeInsert();
+		rowCount++;
+	}
+
+	/**
+	 * Read a string that may be given as null.
+	 */
+	private static String nextString(JsonReader reader) throws IOException {
+		if(reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		}
+		return reader.nextString();
+	}
+
+	private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+		if(value != null)
+			statement.bindString(index, value);
+		else
+			statement.bindNull(index);
+	}
+
+	private void close() {
+		insertSurvey.close();
+		insertQuestion.close();
+		insertOption.close();
+	}
+}
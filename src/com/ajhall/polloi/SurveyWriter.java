@@ -0,0 +1,204 @@
+package com.ajhall.polloi;
+
+import java.util.HashMap;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+/**
+ * Saves an edited survey by comparing it with the definition already stored and writing only the
+ * rows that changed, all in one transaction. Questions are matched by question_id: an edited
+ * question with the ID of a stored one updates it, a question with no ID (0) is inserted and given
+ * the next ID from the questions table's sequence, and a stored question that is no longer in the
+ * survey is deleted along with its options. Options are matched by option_order. The survey is
+ * read back once saved, so the editor can carry on with the IDs its new questions were given.
+ *
+ * <p>
+ * Answers already collected are kept. Removing a question leaves its answers in the answer store
+ * (they are simply no longer exported), and added questions start out unanswered, so the answer
+ * columns of a survey only ever grow. If anything changed, the survey's tallies are counted again
+ * in the same transaction (see {@link TallyTable}).
+ */
+public class SurveyWriter {
+	private static final String TAG = "SurveyWriter";
+
+	private final SQLiteDatabase db;
+	private final int surveyId;
+	private SQLiteStatement insertQuestion;
+	private SQLiteStatement updateQuestion;
+	private SQLiteStatement deleteQuestion;
+	private SQLiteStatement replaceOption;
+	private SQLiteStatement deleteOptionsAfter;
+	private int changedRows;
+
+	private SurveyWriter(SQLiteDatabase db, int surveyId) {
+		this.db = db;
+		this.surveyId = surveyId;
+	}
+
+	/**
+	 * Save a survey under the given survey_id, creating the survey if there is none with that ID.
+	 *
+	 * @param db
+	 *        The database
+	 * @param survey
+	 *        The edited survey. Its questions that came from the database keep their IDs.
+	 * @param surveyId
+	 *        The survey_id to save under
+	 * @return The survey as saved, with the IDs of its new questions
+	 * @throws android.database.SQLException
+	 *         If a row can't be written, e.g. because another survey has the same title. Nothing is
+	 *         saved in that case.
+	 */
+	public static SurveyDefinition write(SQLiteDatabase db, Survey survey, int surveyId) {
+		SurveyWriter writer = new SurveyWriter(db, surveyId);
+		SurveyDefinition saved;
+
+		db.beginTransaction();
+		try {
+			writer.writeSurvey(survey);
+			if(writer.changedRows > 0)
+				TallyTable.rebuild(db, surveyId);
+			saved = SurveyDBHelper.readSurveyDefinition(db, surveyId);
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+			writer.close();
+		}
+
+		Log.d(TAG, "Saved survey " + surveyId + ": " + writer.changedRows + " rows changed");
+		return saved;
+	}
+
+	private void writeSurvey(Survey survey) {
+		SurveyDefinition stored = SurveyDBHelper.readSurveyDefinition(db, surveyId);
+
+		// the surveys row
+		if(stored == null) {
+			ContentValues cv = new ContentValues();
+			cv.put("survey_id", surveyId);
+			cv.put("title", survey.getTitle());
+			cv.put("intro_text", survey.getIntroText());
+			db.insertOrThrow("surveys", null, cv);
+			changedRows++;
+		} else if(!equal(stored.getTitle(), survey.getTitle()) || !equal(stored.getIntroText(), survey.getIntroText())) {
+			ContentValues cv = new ContentValues();
+			cv.put("title", survey.getTitle());
+			cv.put("intro_text", survey.getIntroText());
+			changedRows += db.update("surveys", cv, "survey_id=?", new String[] { Integer.toString(surveyId) });
+		}
+
+		// the stored questions, by ID, with their positions
+		HashMap<Integer, Integer> storedIndex = new HashMap<Integer, Integer>();
+		if(stored != null) {
+			for(int i = 0; i < stored.getSize(); i++)
+				storedIndex.put(stored.getQuestion(i).getId(), i);
+		}
+
+		for(int i = 0; i < survey.getSize(); i++) {
+			Question question = survey.getQuestion(i);
+			Integer index = question.getId() > 0 ? storedIndex.remove(question.getId()) : null;
+
+			if(index == null) {
+				long questionId = insertQuestion(question, i + 1);
+				writeOptions(questionId, question, null);
+			} else {
+				Question old = stored.getQuestion(index);
+				if(index != i || !sameQuestion(old, question))
+					updateQuestion(question, i + 1);
+				writeOptions(question.getId(), question, old);
+			}
+		}
+
+		// whatever is left was removed in the editor; its options go with it
+		for(int questionId : storedIndex.keySet()) {
+			deleteQuestion = compile(deleteQuestion, SurveySchema.DELETE_QUESTION);
+			deleteQuestion.bindLong(1, questionId);
+			changedRows += deleteQuestion.executeUpdateDelete();
+		}
+	}
+
+	private long insertQuestion(Question question, int order) {
+		insertQuestion = compile(insertQuestion, SurveySchema.INSERT_QUESTION);
+		insertQuestion.bindLong(1, surveyId);
+		bindStringOrNull(insertQuestion, 2, question.getSection());
+		insertQuestion.bindLong(3, order);
+		insertQuestion.bindLong(4, question.getType());
+		bindStringOrNull(insertQuestion, 5, question.getPrompt());
+		changedRows++;
+		return insertQuestion.executeInsert();
+	}
+
+	private void updateQuestion(Question question, int order) {
+		updateQuestion = compile(updateQuestion, SurveySchema.UPDATE_QUESTION);
+		bindStringOrNull(updateQuestion, 1, question.getSection());
+		updateQuestion.bindLong(2, order);
+		updateQuestion.bindLong(3, question.getType());
+		bindStringOrNull(updateQuestion, 4, question.getPrompt());
+		updateQuestion.bindLong(5, question.getId());
+		changedRows += updateQuestion.executeUpdateDelete();
+	}
+
+	/**
+	 * Write the options of a question that differ from the stored ones, and delete stored options
+	 * past the end of the new list.
+	 *
+	 * @param old
+	 *        The stored question, or null if the question is new
+	 */
+	private void writeOptions(long questionId, Question question, Question old) {
+		int oldCount = old != null ? old.getChoiceCount() : 0;
+
+		for(int j = 0; j < question.getChoiceCount(); j++) {
+			if(j < oldCount && equal(old.getOptionLabel(j), question.getOptionLabel(j)) && equal(old.getTextFieldLabel(j), question.getTextFieldLabel(j)))
+				continue;
+
+			replaceOption = compile(replaceOption, SurveySchema.REPLACE_OPTION);
+			replaceOption.bindLong(1, questionId);
+			replaceOption.bindLong(2, j + 1);
+			bindStringOrNull(replaceOption, 3, question.getOptionLabel(j));
+			bindStringOrNull(replaceOption, 4, question.getTextFieldLabel(j));
+			replaceOption.executeInsert();
+			changedRows++;
+		}
+
+		if(oldCount > question.getChoiceCount()) {
+			deleteOptionsAfter = compile(deleteOptionsAfter, SurveySchema.DELETE_OPTIONS_AFTER);
+			deleteOptionsAfter.bindLong(1, questionId);
+			deleteOptionsAfter.bindLong(2, question.getChoiceCount());
+			changedRows += deleteOptionsAfter.executeUpdateDelete();
+		}
+	}
+
+	private static boolean sameQuestion(Question a, Question b) {
+		return a.getType() == b.getType() && equal(a.getPrompt(), b.getPrompt()) && equal(a.getSection(), b.getSection());
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * Compile a statement the first time it's needed; most saves only touch a few kinds of row.
+	 */
+	private SQLiteStatement compile(SQLiteStatement statement, String sql) {
+		return statement != null ? statement : db.compileStatement(sql);
+	}
+
+	private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+		if(value != null)
+			statement.bindString(index, value);
+		else
+			statement.bindNull(index);
+	}
+
+	private void close() {
+		SQLiteStatement[] statements = { insertQuestion, updateQuestion, deleteQuestion, replaceOption, deleteOptionsAfter };
+		for(SQLiteStatement statement : statements) {
+			if(statement != null)
+				statement.close();
+		}
+	}
+}
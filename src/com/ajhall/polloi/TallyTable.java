@@ -0,0 +1,237 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Keeps result counts for every survey in the tallies table, so a survey's results can be read
+ * without going through its answers. Each row holds two counts for one (survey_id, question_id,
+ * option_order):
+ *
+ * <ul>
+ * <li>(survey, 0, 0): chosen is the number of responses.</li>
+ * <li>(survey, question, 0): chosen is the number of responses that answered the question.</li>
+ * <li>(survey, question, option): chosen is the number of responses that chose or checked the
+ * option, and text_fields the number that filled in its text field.</li>
+ * </ul>
+ *
+ * The counts mean the same as in {@link SurveyTally}. The {@link AnswerWriteQueue} calls
+ * {@link #apply} in the same transaction as each response it stores, which adds the
+ * {@link TallyChange} the response makes, and a survey's rows are counted again from scratch with
+ * a SurveyTally when its questions change.
+ * {@link #check} recounts a survey from the answers and reports any row that doesn't match.
+ */
+public class TallyTable {
+	private static final String TAG = "TallyTable";
+
+	public static final String CREATE_TABLE_TALLIES = "CREATE TABLE IF NOT EXISTS tallies (survey_id INTEGER NOT NULL, question_id INTEGER NOT NULL, option_order INTEGER NOT NULL, chosen INTEGER NOT NULL DEFAULT 0, text_fields INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (survey_id, question_id, option_order))";
+
+	static final String UPDATE_TALLY = "UPDATE tallies SET chosen = chosen + ?, text_fields = text_fields + ? WHERE survey_id = ? AND question_id = ? AND option_order = ?";
+	private static final String INSERT_TALLY = "INSERT INTO tallies (survey_id, question_id, option_order, chosen, text_fields) VALUES (?, ?, ?, ?, ?)";
+
+	private TallyTable() {}
+
+	/**
+	 * Update a survey's tallies for a response about to be stored, taking away the response it
+	 * replaces. Must be called inside the transaction that stores the response.
+	 *
+	 * @param db
+	 *        The database, in a transaction
+	 * @param survey
+	 *        The definition of the survey the response is to
+	 * @param replaced
+	 *        The user's response that is being replaced, or null if this is the user's first
+	 * @param response
+	 *        The response being stored
+	 */
+	public static void apply(SQLiteDatabase db, SurveyDefinition survey, SurveyResponse replaced, SurveyResponse response) {
+		// only the rows the two responses touch: a full SurveyTally would also build cross-tabs
+		TallyChange change = TallyChange.of(survey, replaced, response);
+		SQLiteStatement update = db.compileStatement(UPDATE_TALLY);
+		SQLiteStatement insert = db.compileStatement(INSERT_TALLY);
+		try {
+			for(int row = 0; row < change.size(); row++)
+				add(update, insert, survey.getId(), change.getQuestionId(row), change.getOptionOrder(row), change.getChosen(row), change.getTextFields(row));
+		} finally {
+			update.close();
+			insert.close();
+		}
+	}
+
+	/**
+	 * Count every response to a survey again and replace its tallies. Must be called inside a
+	 * transaction.
+	 *
+	 * @param db
+	 *        The database, in a transaction
+	 * @param surveyId
+	 *        The survey
+	 */
+	public static void rebuild(SQLiteDatabase db, int surveyId) {
+		db.delete("tallies", "survey_id=?", new String[] { Integer.toString(surveyId) });
+		SurveyDefinition survey = SurveyDBHelper.readSurveyDefinition(db, surveyId);
+		if(survey != null)
+			write(db, survey, count(db, survey), true);
+	}
+
+	/**
+	 * Add the counts in a tally to a survey's rows, or, if fresh, insert them as new rows.
+	 */
+	private static void write(SQLiteDatabase db, SurveyDefinition survey, SurveyTally tally, boolean fresh) {
+		SQLiteStatement update = fresh ? null : db.compileStatement(UPDATE_TALLY);
+		SQLiteStatement insert = db.compileStatement(INSERT_TALLY);
+		try {
+			int surveyId = survey.getId();
+			add(update, insert, surveyId, 0, 0, tally.getResponseCount(), 0);
+			for(int i = 0; i < survey.getSize(); i++) {
+				Question question = survey.getQuestion(i);
+				add(update, insert, surveyId, question.getId(), 0, tally.getAnsweredCount(question.getId()), 0);
+				for(int optionOrder = 1; optionOrder <= question.getChoiceCount(); optionOrder++)
+					add(update, insert, surveyId, question.getId(), optionOrder, tally.getOptionCount(question.getId(), optionOrder), tally.getTextFieldCount(question.getId(), optionOrder));
+			}
+		} finally {
+			if(update != null)
+				update.close();
+			insert.close();
+		}
+	}
+
+	private static void add(SQLiteStatement update, SQLiteStatement insert, int surveyId, int questionId, int optionOrder, int chosen, int textFields) {
+		if(update != null) {
+			if(chosen == 0 && textFields == 0)
+				return;
+			update.bindLong(1, chosen);
+			update.bindLong(2, textFields);
+			update.bindLong(3, surveyId);
+			update.bindLong(4, questionId);
+			update.bindLong(5, optionOrder);
+			if(update.executeUpdateDelete() > 0)
+				return;
+		}
+
+		insert.bindLong(1, surveyId);
+		insert.bindLong(2, questionId);
+		insert.bindLong(3, optionOrder);
+		insert.bindLong(4, chosen);
+		insert.bindLong(5, textFields);
+		insert.executeInsert();
+	}
+
+	/**
+	 * Count every response to a survey.
+	 */
+	private static SurveyTally count(SQLiteDatabase db, SurveyDefinition survey) {
+		SurveyTally tally = survey.newTally();
+		Cursor c = null;
+		try {
+			c = AnswerStore.queryAnswers(db, survey.getId(), 0);
+			c.moveToFirst();
+			while(!c.isAfterLast())
+				tally.add(AnswerStore.nextResponse(c, survey.getId()));
+		} finally {
+			DatabaseManager.closeCursor(c);
+		}
+		return tally;
+	}
+
+	/**
+	 * Read one count from the tallies table.
+	 *
+	 * @return The chosen count of (surveyId, questionId, optionOrder), or 0 if there is no such row
+	 */
+	public static int getChosen(SQLiteDatabase db, int surveyId, int questionId, int optionOrder) {
+		Cursor c = null;
+		try {
+			c = db.rawQuery("SELECT chosen FROM tallies WHERE survey_id = ? AND question_id = ? AND option_order = ?", new String[] { Integer.toString(surveyId), Integer.toString(questionId), Integer.toString(optionOrder) });
+			return c.moveToFirst() ? c.getInt(0) : 0;
+		} finally {
+			DatabaseManager.closeCursor(c);
+		}
+	}
+
+	/**
+	 * Recount a survey from its answers and compare the result with its tallies, logging a warning
+	 * for each row that doesn't match. The recount and the comparison happen in one transaction,
+	 * so responses being written meanwhile can't cause false alarms.
+	 *
+	 * @param db
+	 *        The database
+	 * @param surveyId
+	 *        The survey to check
+	 * @return A description of each row that doesn't match; empty if the tallies are right
+	 */
+	public static ArrayList<String> check(SQLiteDatabase db, int surveyId) {
+		ArrayList<String> mismatches = new ArrayList<String>();
+
+		db.beginTransactionNonExclusive();
+		try {
+			SurveyDefinition survey = SurveyDBHelper.readSurveyDefinition(db, surveyId);
+			if(survey == null)
+				return mismatches;
+			SurveyTally tally = count(db, survey);
+
+			// the stored rows, as (chosen, text_fields) by (question_id, option_order)
+			HashMap<Long, int[]> stored = new HashMap<Long, int[]>();
+			Cursor c = null;
+			try {
+				c = db.rawQuery("SELECT question_id, option_order, chosen, text_fields FROM tallies WHERE survey_id = ?", new String[] { Integer.toString(surveyId) });
+				while(c.moveToNext())
+					stored.put(key(c.getInt(0), c.getInt(1)), new int[] { c.getInt(2), c.getInt(3) });
+			} finally {
+				DatabaseManager.closeCursor(c);
+			}
+
+			compare(mismatches, stored, 0, 0, tally.getResponseCount(), 0);
+			for(int i = 0; i < survey.getSize(); i++) {
+				Question question = survey.getQuestion(i);
+				compare(mismatches, stored, question.getId(), 0, tally.getAnsweredCount(question.getId()), 0);
+				for(int optionOrder = 1; optionOrder <= question.getChoiceCount(); optionOrder++)
+					compare(mismatches, stored, question.getId(), optionOrder, tally.getOptionCount(question.getId(), optionOrder), tally.getTextFieldCount(question.getId(), optionOrder));
+			}
+
+			// anything left over belongs to no current question and should be empty
+			for(Long key : new ArrayList<Long>(stored.keySet()))
+				compare(mismatches, stored, (int) (key >> 32), (int) (long) key, 0, 0);
+
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+
+		for(String mismatch : mismatches)
+			Log.w(TAG, "Survey " + surveyId + ": " + mismatch);
+		return mismatches;
+	}
+
+	private static void compare(ArrayList<String> mismatches, HashMap<Long, int[]> stored, int questionId, int optionOrder, int chosen, int textFields) {
+		int[] row = stored.remove(key(questionId, optionOrder));
+		int storedChosen = row != null ? row[0] : 0;
+		int storedTextFields = row != null ? row[1] : 0;
+		if(storedChosen != chosen || storedTextFields != textFields)
+			mismatches.add("question " + questionId + " option " + optionOrder + " has " + storedChosen + "/" + storedTextFields + ", recount " + chosen + "/" + textFields);
+	}
+
+	private static long key(int questionId, int optionOrder) {
+		return ((long) questionId << 32) | (optionOrder & 0xffffffffL);
+	}
+
+	/**
+	 * Check every survey's tallies, as {@link #check(SQLiteDatabase, int)}.
+	 *
+	 * @return The number of rows that don't match
+	 */
+	public static int checkAll(SQLiteDatabase db) {
+		long start = SystemClock.uptimeMillis();
+		int mismatches = 0;
+		for(int surveyId : SurveyDBHelper.getSurveyIds(db))
+			mismatches += check(db, surveyId).size();
+		Log.d(TAG, "Checked tallies in " + (SystemClock.uptimeMillis() - start) + " ms, " + mismatches + " mismatches");
+		return mismatches;
+	}
+}
@@ -0,0 +1,279 @@
+package com.ajhall.polloi;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import android.util.Log;
+
+/**
+ * Times the app's hot paths and counts what they do, cheaply enough to be left on in the field.
+ * Spans and counters are fixed ints, so recording one allocates nothing:
+ *
+ * <pre>
+ * long start = Tracer.begin();
+ * ...
+ * Tracer.end(Tracer.PAGE_CREATE, start);
+ * </pre>
+ *
+ * Each span's durations go into a histogram of log-spaced buckets, four to every power of two, so
+ * a percentile read from it is within 25% of the real one. The last {@link #RING_SIZE} spans are
+ * also kept, in order, in a ring buffer of primitive arrays. {@link #dump(Writer)} writes all of
+ * it as text, and the hidden {@link DiagnosticsActivity} shows it and saves it to a file.
+ */
+public class Tracer {
+	private static final String TAG = "Tracer";
+
+	// spans
+	public static final int LOGIN_CREATE = 0;
+	public static final int LOGIN = 1;
+	public static final int SURVEY_CREATE = 2;
+	public static final int PAGE_CREATE = 3;
+	public static final int SUBMIT = 4;
+	public static final int WRITE_BATCH = 5;
+	public static final int SUBMIT_TO_COMMIT = 6;
+	public static final int EXPORT_CSV = 7;
+	public static final int EXPORT_COLUMNAR = 8;
+	public static final int EXPORT_BUNDLE = 9;
+
+	private static final String[] SPAN_NAMES = { "login.create", "login", "survey.create", "page.create", "submit", "write.batch", "submit.to.commit", "export.csv", "export.columnar", "export.bundle" };
+
+	// counters
+	public static final int RESPONSES_SUBMITTED = 0;
+	public static final int RESPONSES_WRITTEN = 1;
+	public static final int WRITE_FAILURES = 2;
+	public static final int DRAFTS_RESTORED = 3;
+	public static final int PAGES_CREATED = 4;
+	public static final int ROWS_EXPORTED = 5;
+
+	private static final String[] COUNTER_NAMES = { "responses.submitted", "responses.written", "write.failures", "drafts.restored", "pages.created", "rows.exported" };
+
+	/** How many of the most recent spans are kept */
+	public static final int RING_SIZE = 512;
+
+	/** Histogram buckets per span: four for each power of two of microseconds up to 2^40 */
+	private static final int BUCKETS = 160;
+
+	private static final AtomicLongArray counters = new AtomicLongArray(COUNTER_NAMES.length);
+	private static final AtomicLongArray histograms = new AtomicLongArray(SPAN_NAMES.length * BUCKETS);
+	// per span: count, total and longest duration, in microseconds
+	private static final AtomicLongArray totals = new AtomicLongArray(SPAN_NAMES.length * 3);
+
+	// the ring buffer, guarded by itself
+	private static final long[] ringStart = new long[RING_SIZE];
+	private static final long[] ringDuration = new long[RING_SIZE];
+	private static final long[] ringThread = new long[RING_SIZE];
+	private static final int[] ringSpan = new int[RING_SIZE];
+	private static long ringCount;
+
+	/** When the process started tracing, the origin of the times in the ring */
+	private static final long origin = System.nanoTime();
+
+	private Tracer() {}
+
+	/**
+	 * @return The start time of a span, to pass to {@link #end(int, long)}
+	 */
+	public static long begin() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * End a span that started at the given time.
+	 *
+	 * @param span
+	 *        The span, one of the span constants
+	 * @param start
+	 *        What {@link #begin()} returned
+	 */
+	public static void end(int span, long start) {
+		long now = System.nanoTime();
+		long micros = (now - start) / 1000;
+
+		histograms.incrementAndGet(span * BUCKETS + bucket(micros));
+		totals.incrementAndGet(span * 3);
+		totals.addAndGet(span * 3 + 1, micros);
+		long longest;
+		do {
+			longest = totals.get(span * 3 + 2);
+		} while(micros > longest && !totals.compareAndSet(span * 3 + 2, longest, micros));
+
+		synchronized(ringSpan) {
+			int slot = (int) (ringCount++ % RING_SIZE);
+			ringSpan[slot] = span;
+			ringStart[slot] = start - origin;
+			ringDuration[slot] = now - start;
+			ringThread[slot] = Thread.currentThread().getId();
+		}
+	}
+
+	/**
+	 * Add one to a counter.
+	 *
+	 * @param counter
+	 *        The counter, one of the counter constants
+	 */
+	public static void count(int counter) {
+		counters.incrementAndGet(counter);
+	}
+
+	/**
+	 * Add to a counter.
+	 *
+	 * @param counter
+	 *        The counter, one of the counter constants
+	 * @param n
+	 *        How much to add
+	 */
+	public static void count(int counter, long n) {
+		counters.addAndGet(counter, n);
+	}
+
+	/**
+	 * The histogram bucket of a duration. Below 4 us each microsecond has its own bucket; above,
+	 * each power of two is split into four.
+	 */
+	private static int bucket(long micros) {
+		if(micros < 4)
+			return (int) Math.max(micros, 0);
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int) (micros >> (exponent - 2)) & 3;
+		return Math.min((exponent - 1) * 4 + sub, BUCKETS - 1);
+	}
+
+	/**
+	 * @return The longest duration that falls in a bucket, in microseconds
+	 */
+	private static long bucketLimit(int bucket) {
+		if(bucket < 4)
+			return bucket;
+		int exponent = bucket / 4 + 1;
+		long lower = (4L + bucket % 4) << (exponent - 2);
+		return lower + (1L << (exponent - 2)) - 1;
+	}
+
+	/**
+	 * Estimate a percentile of a span from its histogram.
+	 *
+	 * @param span
+	 *        The span
+	 * @param percent
+	 *        The percentile, from 0 to 100
+	 * @return The duration, in microseconds, or 0 if the span hasn't happened
+	 */
+	public static long percentile(int span, double percent) {
+		long count = totals.get(span * 3);
+		if(count == 0)
+			return 0;
+		// the rank of the percentile, counting from 1
+		long rank = Math.max(1, (long) Math.ceil(count * percent / 100));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += histograms.get(span * BUCKETS + i);
+			if(seen >= rank)
+				return Math.min(bucketLimit(i), totals.get(span * 3 + 2));
+		}
+		return totals.get(span * 3 + 2);
+	}
+
+	/**
+	 * Forget everything recorded so far.
+	 */
+	public static void reset() {
+		for(int i = 0; i < counters.length(); i++)
+			counters.set(i, 0);
+		for(int i = 0; i < histograms.length(); i++)
+			histograms.set(i, 0);
+		for(int i = 0; i < totals.length(); i++)
+			totals.set(i, 0);
+		synchronized(ringSpan) {
+			ringCount = 0;
+		}
+	}
+
+	/**
+	 * Write the counters, a summary of every span that has happened and then the most recent spans,
+	 * oldest first, as text. Times are in microseconds; the start of each recent span is measured
+	 * from when tracing started.
+	 *
+	 * @param out
+	 *        Where to write
+	 */
+	public static void dump(Writer out) throws IOException {
+		out.write("counters\n");
+		for(int i = 0; i < COUNTER_NAMES.length; i++)
+			out.write("  " + COUNTER_NAMES[i] + " " + counters.get(i) + "\n");
+
+		out.write("\nspans (us): count mean p50 p90 p99 max\n");
+		for(int i = 0; i < SPAN_NAMES.length; i++) {
+			long count = totals.get(i * 3);
+			if(count == 0)
+				continue;
+			out.write("  " + SPAN_NAMES[i] + " " + count + " " + totals.get(i * 3 + 1) / count + " " + percentile(i, 50) + " " + percentile(i, 90) + " " + percentile(i, 99) + " " + totals.get(i * 3 + 2) + "\n");
+		}
+
+		// copy the ring first so spans ending meanwhile aren't held up by the writing
+		long[] start = new long[RING_SIZE];
+		long[] duration = new long[RING_SIZE];
+		long[] thread = new long[RING_SIZE];
+		int[] span = new int[RING_SIZE];
+		long count;
+		synchronized(ringSpan) {
+			count = ringCount;
+			System.arraycopy(ringStart, 0, start, 0, RING_SIZE);
+			System.arraycopy(ringDuration, 0, duration, 0, RING_SIZE);
+			System.arraycopy(ringThread, 0, thread, 0, RING_SIZE);
+			System.arraycopy(ringSpan, 0, span, 0, RING_SIZE);
+		}
+
+		out.write("\nrecent spans (us): start duration thread\n");
+		for(long i = Math.max(0, count - RING_SIZE); i < count; i++) {
+			int slot = (int) (i % RING_SIZE);
+			out.write("  " + SPAN_NAMES[span[slot]] + " " + start[slot] / 1000 + " " + duration[slot] / 1000 + " " + thread[slot] + "\n");
+		}
+	}
+
+	/**
+	 * @return {@link #dump(Writer)}'s text
+	 */
+	public static String dump() {
+		StringWriter out = new StringWriter();
+		try {
+			dump(out);
+		} catch (IOException e) {
+			// a StringWriter doesn't throw
+			throw new AssertionError(e);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Write {@link #dump(Writer)}'s text to a new file, trace-[date]-[time].txt, in a directory.
+	 *
+	 * @param dir
+	 *        The directory
+	 * @param header
+	 *        Written before the dump, or null
+	 * @return The file
+	 */
+	public static File dumpToFile(File dir, String header) throws IOException {
+		File file = new File(dir, "trace-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()) + ".txt");
+		Writer out = new BufferedWriter(new FileWriter(file));
+		try {
+			if(header != null)
+				out.write(header + "\n\n");
+			dump(out);
+		} finally {
+			out.close();
+		}
+		Log.i(TAG, "Wrote " + file);
+		return file;
+	}
+}
@@ -5,6 +5,7 @@ import com.ajhall.polloi.GlobalsApp;
 import com.ajhall.polloi.R;
 import com.ajhall.polloi.Survey;
 import com.ajhall.polloi.SurveyPagerAdapter;
+import com.ajhall.polloi.SurveyParcel;
 import com.ajhall.polloi.R.drawable;
 import com.ajhall.polloi.R.id;
 import com.ajhall.polloi.R.layout;
@@ -37,7 +38,7 @@ public class SurveyEditorActivity extends FragmentActivity {
 		setContentView(R.layout.survey_activity_viewpager);
 
 		if(savedInstanceState != null)
-			mSurvey = savedInstanceState.getParcelable("survey");
+			mSurvey = ((SurveyParcel) savedInstanceState.getParcelable("survey")).getSurvey();
 		else
 			mSurvey = new Survey("New Survey");
 
@@ -78,7 +79,7 @@ public class SurveyEditorActivity extends FragmentActivity {
 	@Override
 	protected void onSaveInstanceState(Bundle outState) {
 		super.onSaveInstanceState(outState);
-		outState.putParcelable("survey", GlobalsApp.survey);
+		outState.putParcelable("survey", new SurveyParcel(GlobalsApp.survey));
 	}
 
 	@Override
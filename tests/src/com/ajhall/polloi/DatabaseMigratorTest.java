@@ -0,0 +1,229 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+/**
+ * Copies tables with {@link DatabaseMigrator#copyInChunks} in an in-memory database, and upgrades a
+ * version 1 surveys.db, under a name of its own, through {@link DatabaseHelper}.
+ */
+public class DatabaseMigratorTest extends AndroidTestCase {
+	private static final int USERS = 300;
+
+	private SQLiteDatabase db;
+	private Context context;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		db = SQLiteDatabase.create(null);
+		db.execSQL("CREATE TABLE old_options (question_id INTEGER, option_order INTEGER, answer_text TEXT)");
+		db.execSQL("CREATE TABLE new_options (question_id INTEGER NOT NULL, option_order INTEGER NOT NULL, answer_text TEXT, PRIMARY KEY (question_id, option_order))");
+
+		context = new RenamingDelegatingContext(getContext(), "migrator_test.");
+		context.deleteDatabase(DatabaseHelper.DB_NAME);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		db.close();
+		context.deleteDatabase(DatabaseHelper.DB_NAME);
+		super.tearDown();
+	}
+
+	private static int count(SQLiteDatabase db, String sql) {
+		return (int) db.compileStatement(sql).simpleQueryForLong();
+	}
+
+	public void testCopiesEveryChunk() {
+		int rows = DatabaseMigrator.CHUNK_SIZE * 2 + 7;
+		for(int i = 0; i < rows; i++)
+			db.execSQL("INSERT INTO old_options VALUES (" + (i / 5) + ", " + (i % 5) + ", 'option " + i + "')");
+
+		assertEquals(rows, DatabaseMigrator.copyInChunks(db, "old_options", "new_options", "question_id, option_order, answer_text"));
+		assertEquals(rows, count(db, "SELECT count(*) FROM new_options"));
+	}
+
+	public void testRowThatBreaksAConstraintFailsTheCopy() {
+		db.execSQL("INSERT INTO old_options VALUES (1, 1, 'first')");
+		db.execSQL("INSERT INTO old_options VALUES (1, 1, 'duplicate')");
+		db.execSQL("INSERT INTO old_options VALUES (1, 2, 'second')");
+
+		try {
+			DatabaseMigrator.copyInChunks(db, "old_options", "new_options", "question_id, option_order, answer_text");
+			fail("Copied a duplicate key");
+		} catch (SQLiteConstraintException e) {
+			// expected
+		}
+	}
+
+	public void testUpgradeFromVersion1KeepsEverything() {
+		SQLiteDatabase old = createVersion1();
+		List<String> questions = dump(old, "SELECT question_id, survey_id, section, question_order, type, prompt FROM questions ORDER BY question_id");
+		List<String> options = dump(old, "SELECT question_id, option_order, answer_text, text_field_label FROM question_options ORDER BY question_id, option_order");
+		old.close();
+
+		// the helper finds version 1 and calls onUpgrade(db, 1, LATEST_VERSION)
+		DatabaseHelper helper = new DatabaseHelper(context);
+		SQLiteDatabase upgraded = helper.getWritableDatabase();
+		try {
+			assertEquals(DatabaseMigrator.LATEST_VERSION, upgraded.getVersion());
+			assertEquals(0, count(upgraded, "SELECT count(*) FROM sqlite_master WHERE name LIKE 'answers\\_%' ESCAPE '\\'"));
+
+			assertEquals(questions, dump(upgraded, "SELECT question_id, survey_id, section, question_order, type, prompt FROM questions ORDER BY question_id"));
+			assertEquals(options, dump(upgraded, "SELECT question_id, option_order, answer_text, text_field_label FROM question_options ORDER BY question_id, option_order"));
+
+			assertEquals(2 * USERS, count(upgraded, "SELECT count(*) FROM responses"));
+			assertEquals(expectedAnswers(), dump(upgraded, "SELECT survey_id, user_id, question_id, option_order, value, text_field FROM answers ORDER BY survey_id, user_id, question_id, option_order"));
+
+			assertTrue(TallyTable.check(upgraded, 1).isEmpty());
+			assertTrue(TallyTable.check(upgraded, 2).isEmpty());
+			assertEquals(USERS, TallyTable.getChosen(upgraded, 1, 0, 0));
+		} finally {
+			helper.close();
+		}
+	}
+
+	public void testFailedUpgradeLeavesVersion1Untouched() {
+		SQLiteDatabase old = createVersion1();
+		// version 3 keys question_options by (question_id, option_order), so this fails the upgrade
+		// after version 2 has moved every answers_N table
+		old.execSQL("INSERT INTO question_options VALUES (11, 1, 'Second option 1', NULL)");
+		List<String> before = dumpAll(old);
+		old.close();
+
+		DatabaseHelper helper = new DatabaseHelper(context);
+		try {
+			helper.getWritableDatabase();
+			fail("Upgraded a database with a duplicate option");
+		} catch (SQLiteConstraintException e) {
+			// expected
+		} finally {
+			helper.close();
+		}
+
+		old = context.openOrCreateDatabase(DatabaseHelper.DB_NAME, Context.MODE_PRIVATE, null);
+		try {
+			assertEquals(1, old.getVersion());
+			assertEquals(before, dumpAll(old));
+		} finally {
+			old.close();
+		}
+	}
+
+	/**
+	 * Create surveys.db as version 1 of the app left it: two surveys, each with an answers_N table
+	 * of {@link #USERS} rows. Survey 1 has a multiple choice question with a text field on its second
+	 * option, a checkbox question with a text field on its third, and a writing question; survey 2
+	 * has a writing question.
+	 */
+	private SQLiteDatabase createVersion1() {
+		SQLiteDatabase old = context.openOrCreateDatabase(DatabaseHelper.DB_NAME, Context.MODE_PRIVATE, null);
+		old.beginTransaction();
+		try {
+			old.execSQL("CREATE TABLE surveys (survey_id INTEGER PRIMARY KEY, title TEXT UNIQUE NOT NULL, intro_text TEXT)");
+			old.execSQL("CREATE TABLE questions (question_id INTEGER PRIMARY KEY, survey_id INTEGER, section TEXT, question_order INTEGER, type TEXT, prompt TEXT)");
+			old.execSQL("CREATE TABLE question_options (question_id INTEGER, option_order INTEGER, answer_text TEXT, text_field_label TEXT)");
+
+			old.execSQL("INSERT INTO surveys VALUES (1, 'First', 'Intro')");
+			old.execSQL("INSERT INTO surveys VALUES (2, 'Second', NULL)");
+			// question_order, not question_id, gives a question's column
+			old.execSQL("INSERT INTO questions VALUES (10, 1, 'A', 1, '2', 'Pick one')");
+			old.execSQL("INSERT INTO questions VALUES (12, 1, 'A', 3, '3', 'Write')");
+			old.execSQL("INSERT INTO questions VALUES (11, 1, 'B', 2, '1', 'Pick any')");
+			old.execSQL("INSERT INTO questions VALUES (20, 2, 'A', 1, '3', 'Anything else')");
+			old.execSQL("INSERT INTO question_options VALUES (10, 1, 'Yes', NULL)");
+			old.execSQL("INSERT INTO question_options VALUES (10, 2, 'Other', 'What?')");
+			old.execSQL("INSERT INTO question_options VALUES (11, 1, 'Red', NULL)");
+			old.execSQL("INSERT INTO question_options VALUES (11, 2, 'Green', NULL)");
+			old.execSQL("INSERT INTO question_options VALUES (11, 3, 'Other', 'Which?')");
+
+			old.execSQL("CREATE TABLE answers_1 (user_id TEXT UNIQUE NOT NULL COLLATE NOCASE, q1 TEXT, q1_2_text_field TEXT, q2_1 TEXT, q2_2 TEXT, q2_3 TEXT, q2_3_text_field TEXT, q3 TEXT)");
+			old.execSQL("CREATE TABLE answers_2 (user_id TEXT UNIQUE NOT NULL COLLATE NOCASE, q1 TEXT)");
+			for(int i = 0; i < USERS; i++) {
+				old.execSQL("INSERT INTO answers_1 VALUES (?, ?, ?, ?, ?, ?, ?, ?)", new Object[] { "user-" + i, i % 2 == 0 ? "a" : "b", i % 2 == 0 ? null : "text " + i, i % 3 == 0 ? "1" : null, i % 5 == 0 ? "1" : null, i % 7 == 0 ? "1" : null, i % 7 == 0 ? "other " + i : null, i % 4 == 0 ? null : "words " + i });
+				old.execSQL("INSERT INTO answers_2 VALUES (?, ?)", new Object[] { "user-" + i, i % 2 == 0 ? "" : "more " + i });
+			}
+
+			old.setVersion(1);
+			old.setTransactionSuccessful();
+		} finally {
+			old.endTransaction();
+		}
+		return old;
+	}
+
+	/**
+	 * @return The rows of answers the upgrade should make from {@link #createVersion1}'s tables, as
+	 *         {@link #dump} gives them
+	 */
+	private static List<String> expectedAnswers() {
+		ArrayList<String> users = new ArrayList<String>();
+		for(int i = 0; i < USERS; i++)
+			users.add("user-" + i);
+		Collections.sort(users);
+
+		ArrayList<String> rows = new ArrayList<String>();
+		for(String user : users) {
+			int i = Integer.parseInt(user.substring("user-".length()));
+			rows.add("1|" + user + "|10|0|" + (i % 2 == 0 ? "a" : "b") + "|null");
+			if(i % 2 != 0)
+				rows.add("1|" + user + "|10|2|null|text " + i);
+			if(i % 3 == 0)
+				rows.add("1|" + user + "|11|1|1|null");
+			if(i % 5 == 0)
+				rows.add("1|" + user + "|11|2|1|null");
+			if(i % 7 == 0)
+				rows.add("1|" + user + "|11|3|1|other " + i);
+			if(i % 4 != 0)
+				rows.add("1|" + user + "|12|0|words " + i + "|null");
+		}
+		for(String user : users) {
+			int i = Integer.parseInt(user.substring("user-".length()));
+			rows.add("2|" + user + "|20|0|" + (i % 2 == 0 ? "" : "more " + i) + "|null");
+		}
+		return rows;
+	}
+
+	/**
+	 * @return Every table's SQL and rows, in rowid order
+	 */
+	private static List<String> dumpAll(SQLiteDatabase db) {
+		ArrayList<String> rows = new ArrayList<String>();
+		for(String table : dump(db, "SELECT name FROM sqlite_master WHERE type = 'table' AND name NOT LIKE 'android\\_%' ESCAPE '\\' ORDER BY name")) {
+			rows.addAll(dump(db, "SELECT sql FROM sqlite_master WHERE name = '" + table + "'"));
+			rows.addAll(dump(db, "SELECT * FROM " + table + " ORDER BY rowid"));
+		}
+		return rows;
+	}
+
+	/**
+	 * @return Each row of the query's result, its columns joined by "|"
+	 */
+	private static List<String> dump(SQLiteDatabase db, String sql) {
+		ArrayList<String> rows = new ArrayList<String>();
+		Cursor c = db.rawQuery(sql, null);
+		try {
+			while(c.moveToNext()) {
+				StringBuilder row = new StringBuilder();
+				for(int i = 0; i < c.getColumnCount(); i++) {
+					if(i > 0)
+						row.append('|');
+					row.append(c.getString(i));
+				}
+				rows.add(row.toString());
+			}
+		} finally {
+			c.close();
+		}
+		return rows;
+	}
+}
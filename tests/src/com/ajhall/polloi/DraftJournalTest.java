@@ -0,0 +1,232 @@
+package com.ajhall.polloi;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+/**
+ * Writes {@link DraftJournal}s of a survey no real survey uses, replays them into fresh copies of
+ * the survey, and damages them the ways a crash or a bad sector would.
+ */
+public class DraftJournalTest extends AndroidTestCase {
+	private static final int SURVEY_ID = Integer.MAX_VALUE - 1;
+	private static final String USER_ID = "draft-test";
+	private static final long WRITE_TIMEOUT_MS = 5000;
+
+	private SurveyDefinition definition;
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		definition = newDefinition(SURVEY_ID, false);
+		file = DraftJournal.getFile(getContext(), SURVEY_ID, USER_ID);
+		DraftJournal.delete(getContext(), SURVEY_ID, USER_ID);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		DraftJournal.delete(getContext(), SURVEY_ID, USER_ID);
+		super.tearDown();
+	}
+
+	/**
+	 * A multiple choice question with a text field on its last choice, a checkbox question with a
+	 * text field on its second, and a writing question; or, if changed, the writing question has
+	 * become a second multiple choice question.
+	 */
+	private static SurveyDefinition newDefinition(int surveyId, boolean changed) {
+		ArrayList<Question> questions = new ArrayList<Question>();
+		QuestionMC mc = new QuestionMC("Pick one", "First");
+		mc.addChoice("Yes");
+		mc.addChoice("Other", "What?");
+		questions.add(mc);
+		QuestionCheckbox checkbox = new QuestionCheckbox("Pick any", "First");
+		checkbox.addChoice("Red");
+		checkbox.addChoice("Other", "Which?");
+		checkbox.addChoice("Blue");
+		questions.add(checkbox);
+		if(changed) {
+			QuestionMC replacement = new QuestionMC("Pick another", "Second");
+			replacement.addChoice("Yes");
+			replacement.addChoice("No");
+			questions.add(replacement);
+		} else {
+			questions.add(new QuestionWriting("Anything else?", "Second"));
+		}
+		for(int i = 0; i < questions.size(); i++)
+			questions.get(i).setId(i + 1);
+		return new SurveyDefinition(surveyId, "Draft", "Intro", questions);
+	}
+
+	/**
+	 * Wait for the journal's writer to make the file longer than it is.
+	 *
+	 * @return The new length
+	 */
+	private long awaitLongerThan(long length) throws InterruptedException {
+		long deadline = SystemClock.uptimeMillis() + WRITE_TIMEOUT_MS;
+		while(file.length() <= length) {
+			assertTrue("Journal not written", SystemClock.uptimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+		return file.length();
+	}
+
+	/**
+	 * Journal the header, then one frame selecting "Other" with its text field, then one checking
+	 * two boxes and writing an answer.
+	 *
+	 * @return The end of each frame in the file
+	 */
+	private long[] writeThreeFrames() throws InterruptedException {
+		Survey survey = new Survey(definition);
+		DraftJournal journal = DraftJournal.open(getContext(), survey, USER_ID);
+		long[] ends = new long[3];
+		ends[0] = awaitLongerThan(0);
+
+		ResponseState state = survey.getResponse();
+		state.setSelected(0, 1);
+		state.setTextFieldAnswer(0, 1, "Something else");
+		journal.flush();
+		ends[1] = awaitLongerThan(ends[0]);
+
+		state.setChecked(1, 0, true);
+		state.setChecked(1, 1, true);
+		state.setText(2, "Last words");
+		journal.close(survey);
+		ends[2] = file.length();
+		assertTrue(ends[2] > ends[1]);
+		return ends;
+	}
+
+	public void testReplayIntoAFreshSurvey() {
+		Survey survey = new Survey(definition);
+		DraftJournal journal = DraftJournal.open(getContext(), survey, USER_ID);
+		ResponseState state = survey.getResponse();
+		state.setSelected(0, 0);
+		state.setSelected(0, 1);
+		state.setTextFieldAnswer(0, 1, "Something else");
+		state.setChecked(1, 1, true);
+		state.setChecked(1, 2, true);
+		state.setChecked(1, 2, false);
+		state.setTextFieldAnswer(1, 1, "Green");
+		state.setText(2, "First draft");
+		state.setText(2, "Second draft");
+		journal.close(survey);
+
+		Survey replayed = new Survey(definition);
+		assertTrue(DraftJournal.replay(getContext(), replayed, USER_ID));
+		ResponseState answers = replayed.getResponse();
+		assertEquals(1, answers.getSelected(0));
+		assertEquals("Something else", answers.getTextFieldAnswer(0, 1));
+		assertFalse(answers.isChecked(1, 0));
+		assertTrue(answers.isChecked(1, 1));
+		assertFalse(answers.isChecked(1, 2));
+		assertEquals("Green", answers.getTextFieldAnswer(1, 1));
+		assertEquals("Second draft", answers.getText(2));
+
+		// another user's replay doesn't find it
+		assertFalse(DraftJournal.replay(getContext(), new Survey(definition), "someone-else"));
+	}
+
+	public void testTornLastFrameIsIgnored() throws Exception {
+		long[] ends = writeThreeFrames();
+
+		// cut inside the last frame's payload, then inside its length and checksum
+		for(long length : new long[] { ends[2] - 1, ends[1] + 3 }) {
+			truncate(length);
+			Survey replayed = new Survey(definition);
+			assertTrue(DraftJournal.replay(getContext(), replayed, USER_ID));
+			assertEquals(1, replayed.getResponse().getSelected(0));
+			assertEquals("Something else", replayed.getResponse().getTextFieldAnswer(0, 1));
+			assertFalse(replayed.getResponse().isChecked(1, 0));
+			assertNull(replayed.getResponse().getText(2));
+		}
+	}
+
+	public void testBadChecksumStopsTheReplay() throws Exception {
+		long[] ends = writeThreeFrames();
+
+		// the middle frame is damaged; the whole frame after it isn't applied either
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(ends[1] - 1);
+			int b = raf.read();
+			raf.seek(ends[1] - 1);
+			raf.write(b ^ 0xff);
+		} finally {
+			raf.close();
+		}
+
+		Survey replayed = new Survey(definition);
+		assertTrue(DraftJournal.replay(getContext(), replayed, USER_ID));
+		assertEquals(-1, replayed.getResponse().getSelected(0));
+		assertFalse(replayed.getResponse().isChecked(1, 0));
+		assertNull(replayed.getResponse().getText(2));
+	}
+
+	public void testDamagedHeaderRestoresNothing() throws Exception {
+		long[] ends = writeThreeFrames();
+		truncate(ends[0] - 1);
+
+		Survey replayed = new Survey(definition);
+		replayed.getResponse().setText(2, "Typed before the replay");
+		assertFalse(DraftJournal.replay(getContext(), replayed, USER_ID));
+		assertNull(replayed.getResponse().getText(2));
+	}
+
+	public void testReplayIntoAChangedSurveyRestoresNothing() throws Exception {
+		writeThreeFrames();
+
+		Survey changed = new Survey(newDefinition(SURVEY_ID, true));
+		assertFalse(DraftJournal.replay(getContext(), changed, USER_ID));
+		ResponseState answers = changed.getResponse();
+		for(int i = 0; i < changed.getSize(); i++) {
+			assertNull(answers.getAnswer(i));
+			for(int j = 0; j < changed.getQuestion(i).getChoiceCount(); j++)
+				assertNull(answers.getTextFieldAnswer(i, j));
+		}
+	}
+
+	/**
+	 * A submitted response goes through the {@link AnswerWriteQueue}, as
+	 * SurveyDBHelper.writeSurveyAnswers sends it, and its draft is deleted once it has committed.
+	 */
+	public void testCommittedResponseDeletesTheDraft() throws Exception {
+		writeThreeFrames();
+		Survey survey = new Survey(definition);
+		assertTrue(DraftJournal.replay(getContext(), survey, USER_ID));
+		assertTrue(file.exists());
+
+		AnswerWriteQueue queue = GlobalsApp.getAnswerWriteQueue(getContext());
+		try {
+			queue.enqueue(SurveyResponse.fromSurvey(survey, USER_ID));
+			assertTrue(queue.awaitIdle(WRITE_TIMEOUT_MS));
+
+			assertTrue(GlobalsApp.getSurveyRepository(getContext()).hasResponse(SURVEY_ID, USER_ID));
+			assertFalse(file.exists());
+			assertFalse(DraftJournal.replay(getContext(), new Survey(definition), USER_ID));
+		} finally {
+			SQLiteDatabase db = GlobalsApp.getDatabase(getContext());
+			String[] whereArgs = new String[] { Integer.toString(SURVEY_ID), USER_ID };
+			db.delete("answers", "survey_id=? AND user_id=?", whereArgs);
+			db.delete("responses", "survey_id=? AND user_id=?", whereArgs);
+			ResponseJournal responses = GlobalsApp.getResponseJournal(getContext());
+			responses.discardBefore(SURVEY_ID, responses.length(SURVEY_ID));
+		}
+	}
+
+	private void truncate(long length) throws Exception {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length);
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.ajhall.polloi;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+/**
+ * Writes {@link ExportBundle}s from a fresh in-memory database into the test's cache directory.
+ */
+public class ExportBundleTest extends AndroidTestCase {
+	private static final int RESPONSES = ExportBundle.CHUNK_ROWS + 100;
+
+	private SQLiteDatabase db;
+	private SQLiteSurveyRepository repository;
+	private File parent;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		db = SQLiteDatabase.create(null);
+		new DatabaseHelper(getContext()).onCreate(db);
+		repository = new SQLiteSurveyRepository(db);
+		GlobalsApp.getSurveyCache().clear();
+
+		parent = new File(getContext().getCacheDir(), "bundles");
+		delete(parent);
+		parent.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		db.close();
+		GlobalsApp.getSurveyCache().clear();
+		delete(parent);
+		super.tearDown();
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if(files != null) {
+			for(File child : files)
+				delete(child);
+		}
+		file.delete();
+	}
+
+	public void testResubmissionAfterAResumeCountsOnce() throws Exception {
+		int surveyId = 1;
+		for(int id : repository.getSurveyIds())
+			surveyId = Math.max(surveyId, id + 1);
+		SurveyDefinition survey = repository.writeSurvey(LoadGenerator.syntheticSurvey("Bundled", 12, 4), surveyId);
+		LoadGenerator generator = new LoadGenerator(repository, survey, 1);
+
+		ArrayList<SurveyResponse> responses = new ArrayList<SurveyResponse>();
+		for(int i = 0; i < RESPONSES; i++)
+			responses.add(generator.randomResponse("user-" + i));
+		repository.upsertResponses(responses);
+
+		// stop in the survey's second chunk, so only the first is kept
+		ExportBundle bundle = ExportBundle.openOrCreate(parent);
+		assertFalse(bundle.write(db, new CsvExporter.RowListener() {
+			@Override
+			public boolean onRowWritten(int rowCount) {
+				return rowCount < ExportBundle.CHUNK_ROWS + 10;
+			}
+		}));
+		assertEquals(ExportBundle.CHUNK_ROWS, bundle.getRowCount());
+
+		// user-5 is in the first chunk, and submits again before the bundle is resumed
+		SurveyResponse resubmitted = generator.randomResponse("user-5");
+		long responseId = repository.upsertResponse(resubmitted);
+
+		ExportBundle resumed = ExportBundle.openOrCreate(parent);
+		assertEquals(bundle.getDir(), resumed.getDir());
+		assertTrue(resumed.write(db, null));
+		assertEquals(RESPONSES - ExportBundle.CHUNK_ROWS + 1, resumed.getRowCount());
+		assertTrue(resumed.verify().isEmpty());
+
+		StringWriter csv = new StringWriter();
+		assertEquals(RESPONSES, ExportBundle.readAnswers(resumed.getDir(), surveyId, csv));
+		String[] lines = csv.toString().split("\r\n");
+		assertEquals(RESPONSES + 1, lines.length);
+
+		CsvExporter exporter = new CsvExporter(new AnswerLayout(survey));
+		StringWriter expected = new StringWriter();
+		exporter.writeResponse(expected, responseId, resubmitted);
+		int found = 0;
+		for(String line : lines) {
+			if(line.startsWith("user-5,")) {
+				assertEquals(expected.toString(), line + "\r\n");
+				found++;
+			}
+		}
+		assertEquals(1, found);
+		// it takes the place of the newer row, at the end
+		assertEquals(expected.toString(), lines[lines.length - 1] + "\r\n");
+	}
+}
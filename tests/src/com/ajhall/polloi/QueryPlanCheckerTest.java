@@ -0,0 +1,40 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+/**
+ * Runs {@link QueryPlanChecker} against the schema {@link DatabaseHelper} creates, on the device's
+ * own SQLite, and fails on any full table scan in a hot query.
+ */
+public class QueryPlanCheckerTest extends AndroidTestCase {
+	private SQLiteDatabase db;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		db = SQLiteDatabase.create(null);
+		new DatabaseHelper(getContext()).onCreate(db);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		db.close();
+		super.tearDown();
+	}
+
+	public void testHotQueriesUseIndexes() {
+		ArrayList<String> scans = QueryPlanChecker.check(db);
+		assertTrue("Full table scans: " + scans, scans.isEmpty());
+	}
+
+	public void testScanIsReported() {
+		// without its index, loading a survey's questions has to scan the table
+		db.execSQL("DROP INDEX questions_survey_order");
+		ArrayList<String> scans = QueryPlanChecker.check(db);
+		assertFalse(scans.isEmpty());
+		assertTrue(scans.get(0), scans.get(0).startsWith(SurveySchema.SELECT_SURVEY_QUESTIONS));
+	}
+}
@@ -0,0 +1,99 @@
+package com.ajhall.polloi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Appends to and trims a {@link ResponseJournal} under a survey ID no real survey uses.
+ */
+public class ResponseJournalTest extends AndroidTestCase {
+	private static final int SURVEY_ID = Integer.MAX_VALUE - 1;
+
+	private ResponseJournal journal;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		journal = new ResponseJournal(getContext());
+		journal.discardBefore(SURVEY_ID, journal.length(SURVEY_ID));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		journal.discardBefore(SURVEY_ID, journal.length(SURVEY_ID));
+		super.tearDown();
+	}
+
+	private void append(long responseId) throws Exception {
+		SurveyResponse response = new SurveyResponse(SURVEY_ID, "user-" + responseId, responseId);
+		response.addItem(1, 0, "a", null);
+		journal.append(Arrays.asList(response), Arrays.asList(responseId));
+	}
+
+	private ArrayList<Long> readFrom(long offset) throws Exception {
+		ArrayList<Long> responseIds = new ArrayList<Long>();
+		ResponseJournal.Reader reader = journal.read(SURVEY_ID, offset);
+		try {
+			while(reader.next())
+				responseIds.add(reader.getResponseId());
+		} finally {
+			reader.close();
+		}
+		return responseIds;
+	}
+
+	public void testDiscardKeepsLaterRecords() throws Exception {
+		append(1);
+		append(2);
+		long exported = journal.length(SURVEY_ID);
+		append(3);
+
+		journal.discardBefore(SURVEY_ID, exported);
+		assertEquals(Arrays.asList(3L), readFrom(0));
+
+		append(4);
+		assertEquals(Arrays.asList(3L, 4L), readFrom(0));
+		// a new journal object finds the same end
+		assertEquals(journal.length(SURVEY_ID), new ResponseJournal(getContext()).length(SURVEY_ID));
+	}
+
+	public void testReadFromAnOffset() throws Exception {
+		append(1);
+		append(2);
+		long third = journal.length(SURVEY_ID);
+		append(3);
+
+		// the reader seeks straight to the offset
+		assertEquals(Arrays.asList(3L), readFrom(third));
+		assertTrue(readFrom(journal.length(SURVEY_ID)).isEmpty());
+
+		ResponseJournal.Reader reader = journal.read(SURVEY_ID, 0);
+		try {
+			assertTrue(reader.next());
+			assertEquals(Arrays.asList(2L, 3L), readFrom(reader.getOffset()));
+		} finally {
+			reader.close();
+		}
+	}
+
+	public void testDiscardEverything() throws Exception {
+		append(1);
+		journal.discardBefore(SURVEY_ID, journal.length(SURVEY_ID));
+		assertEquals(0, journal.length(SURVEY_ID));
+		assertTrue(readFrom(0).isEmpty());
+	}
+
+	public void testOffsetPastTheEndIsRefused() throws Exception {
+		append(1);
+		try {
+			journal.discardBefore(SURVEY_ID, journal.length(SURVEY_ID) + 1);
+			fail("Discarded past the end");
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(Arrays.asList(1L), readFrom(0));
+	}
+}
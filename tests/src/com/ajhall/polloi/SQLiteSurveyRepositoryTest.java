@@ -0,0 +1,37 @@
+package com.ajhall.polloi;
+
+import java.util.List;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Runs the {@link SurveyRepositoryContract} against {@link SQLiteSurveyRepository} on an
+ * in-memory database with the app's tables, but not its default surveys.
+ */
+public class SQLiteSurveyRepositoryTest extends SurveyRepositoryContract {
+	private SQLiteDatabase db;
+
+	@Override
+	protected SurveyRepository createRepository() {
+		db = SQLiteDatabase.create(null);
+		db.execSQL("PRAGMA foreign_keys = ON");
+		for(String sql : SurveySchema.CREATE_STATEMENTS)
+			db.execSQL(sql);
+		db.execSQL(TallyTable.CREATE_TABLE_TALLIES);
+
+		// the tallies are kept from the cached definitions, which may be of another test's survey
+		GlobalsApp.getSurveyCache().clear();
+		return new SQLiteSurveyRepository(db);
+	}
+
+	@Override
+	protected List<String> checkTallies(int surveyId) {
+		return TallyTable.check(db, surveyId);
+	}
+
+	@Override
+	protected void closeRepository() {
+		GlobalsApp.getSurveyCache().clear();
+		db.close();
+	}
+}
@@ -0,0 +1,144 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+import android.util.Log;
+
+/**
+ * Times loading surveys of 10, 100 and 1,000 questions from one surveys.db file, under a name of
+ * its own, both with the single joined query {@link SurveyDBHelper#readSurveyDefinition} runs and
+ * with the query per question the app ran before it, and checks that both give the same survey.
+ * The median of each is logged under this class's name.
+ */
+public class SurveyLoadTest extends AndroidTestCase {
+	private static final String TAG = "SurveyLoadTest";
+	private static final int[] SIZES = { 10, 100, 1000 };
+	private static final int RUNS = 7;
+
+	private Context context;
+	private DatabaseHelper helper;
+	private SQLiteDatabase db;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		context = new RenamingDelegatingContext(getContext(), "load_test.");
+		context.deleteDatabase(DatabaseHelper.DB_NAME);
+		helper = new DatabaseHelper(context);
+		db = helper.getWritableDatabase();
+		GlobalsApp.getSurveyCache().clear();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		helper.close();
+		context.deleteDatabase(DatabaseHelper.DB_NAME);
+		GlobalsApp.getSurveyCache().clear();
+		super.tearDown();
+	}
+
+	public void testJoinedQueryAgainstQueryPerQuestion() {
+		SQLiteSurveyRepository repository = new SQLiteSurveyRepository(db);
+		int surveyId = 1;
+		for(int id : repository.getSurveyIds())
+			surveyId = Math.max(surveyId, id + 1);
+		int[] surveyIds = new int[SIZES.length];
+		for(int i = 0; i < SIZES.length; i++)
+			surveyIds[i] = repository.writeSurvey(LoadGenerator.syntheticSurvey("Load " + SIZES[i], SIZES[i], 5), surveyId + i).getId();
+
+		for(int i = 0; i < SIZES.length; i++) {
+			SurveyDefinition joined = SurveyDBHelper.readSurveyDefinition(db, surveyIds[i]);
+			assertSameQuestions(joined, readQueryPerQuestion(db, surveyIds[i]));
+			assertEquals(SIZES[i], joined.getSize());
+
+			// taken in turn, so both see the same state of the page cache
+			long[] joinedMicros = new long[RUNS];
+			long[] perQuestionMicros = new long[RUNS];
+			for(int run = 0; run < RUNS; run++) {
+				long start = System.nanoTime();
+				SurveyDBHelper.readSurveyDefinition(db, surveyIds[i]);
+				joinedMicros[run] = (System.nanoTime() - start) / 1000;
+
+				start = System.nanoTime();
+				readQueryPerQuestion(db, surveyIds[i]);
+				perQuestionMicros[run] = (System.nanoTime() - start) / 1000;
+			}
+			Log.i(TAG, SIZES[i] + " questions: joined query " + median(joinedMicros) + " us, query per question " + median(perQuestionMicros) + " us");
+		}
+	}
+
+	private static long median(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	/**
+	 * Read a survey as SurveyDBHelper.readSurvey did before the joined query: the questions in one
+	 * query, then the options of each multiple choice or checkbox question in a query of its own.
+	 */
+	private static SurveyDefinition readQueryPerQuestion(SQLiteDatabase db, int surveyId) {
+		Cursor c = db.query("surveys", new String[] { "title", "intro_text" }, "survey_id=?", new String[] { Integer.toString(surveyId) }, null, null, null);
+		c.moveToFirst();
+		String title = c.getString(0);
+		String introText = c.getString(1);
+		c.close();
+
+		ArrayList<Question> questions = new ArrayList<Question>();
+		c = db.query("questions", new String[] { "type", "prompt", "question_id", "section" }, "survey_id=?", new String[] { Integer.toString(surveyId) }, null, null, "question_order");
+		while(c.moveToNext()) {
+			int type = c.getInt(0);
+			String prompt = c.getString(1);
+			int questionId = c.getInt(2);
+			String section = c.getString(3);
+
+			Question q;
+			if(type == Question.QUESTION_MC)
+				q = new QuestionMC(prompt, section);
+			else if(type == Question.QUESTION_CHECKBOX)
+				q = new QuestionCheckbox(prompt, section);
+			else
+				q = new QuestionWriting(prompt, section);
+			q.setId(questionId);
+
+			if(type == Question.QUESTION_MC || type == Question.QUESTION_CHECKBOX) {
+				Cursor c2 = db.query("question_options", new String[] { "answer_text", "text_field_label" }, "question_id=?", new String[] { Integer.toString(questionId) }, null, null, "option_order");
+				while(c2.moveToNext()) {
+					String textFieldLabel = c2.isNull(1) ? null : c2.getString(1);
+					if(type == Question.QUESTION_MC)
+						((QuestionMC) q).addChoice(c2.getString(0), textFieldLabel);
+					else
+						((QuestionCheckbox) q).addChoice(c2.getString(0), textFieldLabel);
+				}
+				c2.close();
+			}
+			questions.add(q);
+		}
+		c.close();
+
+		return new SurveyDefinition(surveyId, title, introText, questions);
+	}
+
+	private static void assertSameQuestions(SurveyDefinition expected, SurveyDefinition actual) {
+		assertEquals(expected.getSize(), actual.getSize());
+		for(int i = 0; i < expected.getSize(); i++) {
+			Question a = expected.getQuestion(i);
+			Question b = actual.getQuestion(i);
+			assertEquals(a.getId(), b.getId());
+			assertEquals(a.getType(), b.getType());
+			assertEquals(a.getPrompt(), b.getPrompt());
+			assertEquals(a.getSection(), b.getSection());
+			assertEquals(a.getChoiceCount(), b.getChoiceCount());
+			for(int j = 0; j < a.getChoiceCount(); j++) {
+				assertEquals(a.getOptionLabel(j), b.getOptionLabel(j));
+				assertEquals(a.getTextFieldLabel(j), b.getTextFieldLabel(j));
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.ajhall.polloi;
+
+import android.content.Intent;
+import android.support.v4.view.ViewPager;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+
+/**
+ * Swipes through every page of a 500 question survey and checks that the heap doesn't grow with
+ * the number of pages visited: the pager only keeps the pages next to the current one, and the
+ * {@link ChoiceRowPool} reuses the rows of the pages it drops. The heap after each hundred pages
+ * is logged under this class's name. The survey is saved in the app's database the first time
+ * and reused after that.
+ */
+public class SurveyPagingMemoryTest extends ActivityInstrumentationTestCase2<SurveyActivity> {
+	private static final String TAG = "SurveyPagingMemoryTest";
+	private static final String TITLE = "Paging memory test";
+	private static final int QUESTIONS = 500;
+
+	/** How much more the heap may hold after the last page than after the first hundred */
+	private static final long ALLOWED_GROWTH = 2 * 1024 * 1024;
+
+	public SurveyPagingMemoryTest() {
+		super(SurveyActivity.class);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		int surveyId = SurveyDBHelper.getSurveyId(getInstrumentation().getTargetContext(), TITLE);
+		if(surveyId < 0)
+			surveyId = SurveyDBHelper.writeSurvey(getInstrumentation().getTargetContext(), LoadGenerator.syntheticSurvey(TITLE, QUESTIONS, 5)).getId();
+
+		Intent intent = new Intent();
+		intent.putExtra("userId", TAG);
+		intent.putExtra("surveyId", surveyId);
+		setActivityIntent(intent);
+	}
+
+	public void testHeapDoesNotGrowWithPagesVisited() throws Throwable {
+		SurveyActivity activity = getActivity();
+		final ViewPager pager = (ViewPager) activity.findViewById(R.id.pager);
+		int pages = pager.getAdapter().getCount();
+		assertTrue(pages > QUESTIONS);
+
+		long baseline = 0;
+		for(int page = 1; page < pages; page++) {
+			final int item = page;
+			runTestOnUiThread(new Runnable() {
+				@Override
+				public void run() {
+					pager.setCurrentItem(item, false);
+				}
+			});
+			getInstrumentation().waitForIdleSync();
+
+			if(page % 100 == 0 || page == pages - 1) {
+				long used = usedHeap();
+				Log.i(TAG, "Page " + page + ": " + used / 1024 + " KB used, " + activity.getChoiceRowPool());
+				if(page == 100)
+					baseline = used;
+				else if(page == pages - 1)
+					assertTrue("Heap grew by " + (used - baseline) / 1024 + " KB over " + (pages - 100) + " pages", used - baseline < ALLOWED_GROWTH);
+			}
+		}
+
+		assertTrue(activity.getChoiceRowPool().getReuseCount() > activity.getChoiceRowPool().getInflateCount());
+		activity.closeDraftJournal();
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++) {
+			runtime.gc();
+			runtime.runFinalization();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,189 @@
+package com.ajhall.polloi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+import android.util.Log;
+
+/**
+ * Creates surveys.db from nothing, under a name of its own, and checks that onCreate seeds exactly
+ * the surveys in {@link SurveySeed#ASSET_NAME}. Also seeds another new file the way the app did
+ * before SurveySeed, one ContentValues insert per row with no transaction, and logs how long each
+ * took.
+ */
+public class SurveySeedTest extends AndroidTestCase {
+	private static final String TAG = "SurveySeedTest";
+
+	private Context context;
+	private Context oldContext;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		context = new RenamingDelegatingContext(getContext(), "seed_test.");
+		oldContext = new RenamingDelegatingContext(getContext(), "seed_test_old.");
+		context.deleteDatabase(DatabaseHelper.DB_NAME);
+		oldContext.deleteDatabase(DatabaseHelper.DB_NAME);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		context.deleteDatabase(DatabaseHelper.DB_NAME);
+		oldContext.deleteDatabase(DatabaseHelper.DB_NAME);
+		super.tearDown();
+	}
+
+	public void testOnCreateSeedsTheAsset() throws Exception {
+		JSONObject seed = readAsset();
+		List<String> expected = rows(seed);
+
+		long start = SystemClock.uptimeMillis();
+		DatabaseHelper helper = new DatabaseHelper(context);
+		SQLiteDatabase db = helper.getWritableDatabase();
+		long seededIn = SystemClock.uptimeMillis() - start;
+		try {
+			assertEquals(expected, rows(db));
+		} finally {
+			helper.close();
+		}
+
+		// the same rows as the app wrote them before SurveySeed, into a file of their own
+		SQLiteDatabase old = oldContext.openOrCreateDatabase(DatabaseHelper.DB_NAME, Context.MODE_PRIVATE, null);
+		try {
+			for(String sql : SurveySchema.CREATE_STATEMENTS)
+				old.execSQL(sql);
+			start = SystemClock.uptimeMillis();
+			insertRowByRow(old, seed);
+			long oldSeededIn = SystemClock.uptimeMillis() - start;
+			assertEquals(expected, rows(old));
+
+			Log.i(TAG, expected.size() + " rows: onCreate with SurveySeed took " + seededIn + " ms, including creating the tables; one insert per row took " + oldSeededIn + " ms");
+		} finally {
+			old.close();
+		}
+	}
+
+	private JSONObject readAsset() throws Exception {
+		InputStream in = getContext().getAssets().open(SurveySeed.ASSET_NAME);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while((n = in.read(buffer)) > 0)
+				bytes.write(buffer, 0, n);
+			return new JSONObject(bytes.toString("UTF-8"));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return Every row the asset describes, one string per row, sorted
+	 */
+	private static List<String> rows(JSONObject seed) throws Exception {
+		ArrayList<String> rows = new ArrayList<String>();
+		JSONArray surveys = seed.getJSONArray("surveys");
+		for(int i = 0; i < surveys.length(); i++) {
+			JSONObject survey = surveys.getJSONObject(i);
+			rows.add("survey|" + survey.getLong("survey_id") + "|" + survey.getString("title") + "|" + string(survey, "intro_text"));
+
+			JSONArray questions = survey.optJSONArray("questions");
+			for(int j = 0; questions != null && j < questions.length(); j++) {
+				JSONObject question = questions.getJSONObject(j);
+				rows.add("question|" + question.getLong("question_id") + "|" + survey.getLong("survey_id") + "|" + string(question, "section") + "|" + question.optLong("question_order") + "|" + question.getLong("type") + "|" + string(question, "prompt"));
+
+				JSONArray options = question.optJSONArray("options");
+				for(int k = 0; options != null && k < options.length(); k++) {
+					JSONObject option = options.getJSONObject(k);
+					rows.add("option|" + question.getLong("question_id") + "|" + option.optLong("option_order") + "|" + string(option, "answer_text") + "|" + string(option, "text_field_label"));
+				}
+			}
+		}
+		Collections.sort(rows);
+		return rows;
+	}
+
+	/**
+	 * @return Every row of the survey tables, as {@link #rows(JSONObject)} gives them
+	 */
+	private static List<String> rows(SQLiteDatabase db) {
+		ArrayList<String> rows = new ArrayList<String>();
+		addRows(db, rows, "SELECT 'survey', survey_id, title, intro_text FROM surveys");
+		addRows(db, rows, "SELECT 'question', question_id, survey_id, section, question_order, type, prompt FROM questions");
+		addRows(db, rows, "SELECT 'option', question_id, option_order, answer_text, text_field_label FROM question_options");
+		Collections.sort(rows);
+		return rows;
+	}
+
+	private static void addRows(SQLiteDatabase db, List<String> rows, String sql) {
+		Cursor c = db.rawQuery(sql, null);
+		try {
+			while(c.moveToNext()) {
+				StringBuilder row = new StringBuilder(c.getString(0));
+				for(int i = 1; i < c.getColumnCount(); i++)
+					row.append('|').append(c.getString(i));
+				rows.add(row.toString());
+			}
+		} finally {
+			c.close();
+		}
+	}
+
+	private static String string(JSONObject object, String name) throws Exception {
+		return object.isNull(name) ? null : object.getString(name);
+	}
+
+	/**
+	 * Write the asset's rows as DatabaseHelper.initializeSurveys did before SurveySeed: a
+	 * ContentValues insert per row, each committed on its own.
+	 */
+	private static void insertRowByRow(SQLiteDatabase db, JSONObject seed) throws Exception {
+		ContentValues cv = new ContentValues();
+		JSONArray surveys = seed.getJSONArray("surveys");
+		for(int i = 0; i < surveys.length(); i++) {
+			JSONObject survey = surveys.getJSONObject(i);
+			cv.clear();
+			cv.put("survey_id", survey.getLong("survey_id"));
+			cv.put("title", survey.getString("title"));
+			cv.put("intro_text", string(survey, "intro_text"));
+			db.insert("surveys", null, cv);
+
+			JSONArray questions = survey.optJSONArray("questions");
+			for(int j = 0; questions != null && j < questions.length(); j++) {
+				JSONObject question = questions.getJSONObject(j);
+				cv.clear();
+				cv.put("survey_id", survey.getLong("survey_id"));
+				cv.put("question_id", question.getLong("question_id"));
+				cv.put("question_order", question.optLong("question_order"));
+				cv.put("type", question.getLong("type"));
+				cv.put("prompt", string(question, "prompt"));
+				cv.put("section", string(question, "section"));
+				db.insert("questions", null, cv);
+
+				JSONArray options = question.optJSONArray("options");
+				for(int k = 0; options != null && k < options.length(); k++) {
+					JSONObject option = options.getJSONObject(k);
+					cv.clear();
+					cv.put("question_id", question.getLong("question_id"));
+					cv.put("option_order", option.optLong("option_order"));
+					cv.put("answer_text", string(option, "answer_text"));
+					cv.put("text_field_label", string(option, "text_field_label"));
+					db.insert("question_options", null, cv);
+				}
+			}
+		}
+	}
+}
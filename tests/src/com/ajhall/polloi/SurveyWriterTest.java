@@ -0,0 +1,75 @@
+package com.ajhall.polloi;
+
+import java.util.ArrayList;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+/**
+ * Saves surveys with {@link SurveyWriter} into a fresh in-memory database set up as
+ * {@link DatabaseHelper} sets up the app's.
+ */
+public class SurveyWriterTest extends AndroidTestCase {
+	private SQLiteDatabase db;
+	private SQLiteSurveyRepository repository;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		db = SQLiteDatabase.create(null);
+		new DatabaseHelper(getContext()).onCreate(db);
+		repository = new SQLiteSurveyRepository(db);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		db.close();
+		super.tearDown();
+	}
+
+	private int nextSurveyId() {
+		int surveyId = 1;
+		for(int id : repository.getSurveyIds())
+			surveyId = Math.max(surveyId, id + 1);
+		return surveyId;
+	}
+
+	public void testSavingTwiceChangesNothing() {
+		int surveyId = nextSurveyId();
+		SurveyDefinition saved = repository.writeSurvey(LoadGenerator.syntheticSurvey("Saved twice", 6, 3), surveyId);
+		assertEquals(surveyId, saved.getId());
+		assertEquals(6, saved.getSize());
+		for(int i = 0; i < saved.getSize(); i++)
+			assertTrue(saved.getQuestion(i).getId() > 0);
+
+		SurveyDefinition again = repository.writeSurvey(new Survey(saved), surveyId);
+		assertEquals(saved.getSize(), again.getSize());
+		for(int i = 0; i < saved.getSize(); i++)
+			assertEquals(saved.getQuestion(i).getId(), again.getQuestion(i).getId());
+		assertEquals(6, count("SELECT count(*) FROM questions WHERE survey_id = " + surveyId));
+	}
+
+	public void testQuestionAddedAfterSavingIsInsertedOnce() {
+		int surveyId = nextSurveyId();
+		SurveyDefinition saved = repository.writeSurvey(LoadGenerator.syntheticSurvey("Grown", 3, 3), surveyId);
+
+		ArrayList<Question> questions = new ArrayList<Question>();
+		for(int i = 0; i < saved.getSize(); i++)
+			questions.add(saved.getQuestion(i));
+		questions.add(new QuestionWriting("Anything else?"));
+		SurveyDefinition edited = new SurveyDefinition(saved.getId(), saved.getTitle(), saved.getIntroText(), questions);
+
+		SurveyDefinition grown = repository.writeSurvey(new Survey(edited), surveyId);
+		assertEquals(4, grown.getSize());
+		assertTrue(grown.getQuestion(3).getId() > saved.getQuestion(2).getId());
+
+		SurveyDefinition again = repository.writeSurvey(new Survey(grown), surveyId);
+		assertEquals(4, again.getSize());
+		assertEquals(grown.getQuestion(3).getId(), again.getQuestion(3).getId());
+		assertEquals(4, count("SELECT count(*) FROM questions WHERE survey_id = " + surveyId));
+	}
+
+	private int count(String sql) {
+		return (int) db.compileStatement(sql).simpleQueryForLong();
+	}
+}
@@ -0,0 +1,131 @@
+#!/usr/bin/env python3
+"""Read the columnar answer files (.plc) the app writes next to its CSV files.
+
+The format is described in ColumnarExporter.java. Only the standard library is
+needed. From the command line, a file is converted to CSV on stdout:
+
+    python3 read_plc.py "Survey Title.plc" > answers.csv
+
+From Python, read() gives the column names and a list per column, and
+to_pandas() a DataFrame if pandas is installed. Checkbox columns hold booleans,
+and missing values are None.
+"""
+
+import csv
+import struct
+import sys
+
+MAGIC = b"PLC1"
+TYPE_BOOLEAN = 1
+TYPE_DICTIONARY = 2
+TYPE_STRING = 3
+
+
+class Column:
+    def __init__(self, name, type, dictionary):
+        self.name = name
+        self.type = type
+        self.dictionary = dictionary
+
+
+def _string(data, pos):
+    (length,) = struct.unpack_from("<i", data, pos)
+    pos += 4
+    return data[pos:pos + length].decode("utf-8"), pos + length
+
+
+def _bit(data, bitmap, row):
+    return data[bitmap + (row >> 3)] & (1 << (row & 7)) != 0
+
+
+def read_footer(data):
+    """Return the columns and the (offset, rows) of each row group."""
+    if len(data) < 12 or data[:4] != MAGIC or data[-4:] != MAGIC:
+        raise ValueError("not a columnar file, or an incomplete one")
+    (footer_length,) = struct.unpack_from("<i", data, len(data) - 8)
+    pos = len(data) - 8 - footer_length
+
+    (column_count,) = struct.unpack_from("<i", data, pos)
+    pos += 4
+    columns = []
+    for _ in range(column_count):
+        type = data[pos]
+        name, pos = _string(data, pos + 1)
+        dictionary = None
+        if type == TYPE_DICTIONARY:
+            (entries,) = struct.unpack_from("<i", data, pos)
+            pos += 4
+            dictionary = []
+            for _ in range(entries):
+                entry, pos = _string(data, pos)
+                dictionary.append(entry)
+        columns.append(Column(name, type, dictionary))
+
+    (group_count,) = struct.unpack_from("<i", data, pos)
+    pos += 4
+    groups = []
+    for _ in range(group_count):
+        groups.append(struct.unpack_from("<qi", data, pos))
+        pos += 12
+    (total_rows,) = struct.unpack_from("<i", data, pos)
+    if sum(rows for _, rows in groups) != total_rows:
+        raise ValueError("row groups don't add up to %d rows" % total_rows)
+    return columns, groups
+
+
+def read(path):
+    """Return (names, values): the column names and a list of values per column."""
+    with open(path, "rb") as f:
+        data = f.read()
+    columns, groups = read_footer(data)
+    values = [[] for _ in columns]
+
+    for offset, rows in groups:
+        pos = offset
+        bitmap_size = (rows + 7) // 8
+        for column, out in zip(columns, values):
+            validity = pos
+            pos += bitmap_size
+            if column.type == TYPE_BOOLEAN:
+                for row in range(rows):
+                    out.append(_bit(data, pos, row) if _bit(data, validity, row) else None)
+                pos += bitmap_size
+            elif column.type == TYPE_DICTIONARY:
+                for row in range(rows):
+                    out.append(column.dictionary[data[pos + row]] if _bit(data, validity, row) else None)
+                pos += rows
+            elif column.type == TYPE_STRING:
+                offsets = struct.unpack_from("<%di" % (rows + 1), data, pos)
+                pos += 4 * (rows + 1)
+                for row in range(rows):
+                    if _bit(data, validity, row):
+                        out.append(data[pos + offsets[row]:pos + offsets[row + 1]].decode("utf-8"))
+                    else:
+                        out.append(None)
+                pos += offsets[rows]
+            else:
+                raise ValueError("column %s has unknown type %d" % (column.name, column.type))
+
+    return [column.name for column in columns], values
+
+
+def to_pandas(path):
+    import pandas
+    names, values = read(path)
+    return pandas.DataFrame(dict(zip(names, values)), columns=names)
+
+
+def main(argv):
+    if len(argv) != 2:
+        sys.stderr.write("Usage: read_plc.py <file.plc>\n")
+        return 2
+    names, values = read(argv[1])
+    out = csv.writer(sys.stdout, lineterminator="\r\n")
+    out.writerow(names)
+    for row in zip(*values):
+        out.writerow(["" if v is None else ("1" if v is True else "0" if v is False else v) for v in row])
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main(sys.argv))